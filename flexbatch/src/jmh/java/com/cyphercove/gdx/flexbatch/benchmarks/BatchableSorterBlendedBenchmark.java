@@ -0,0 +1,106 @@
+package com.cyphercove.gdx.flexbatch.benchmarks;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.FlexBatch;
+import com.cyphercove.gdx.flexbatch.batchable.Quad3D;
+import com.cyphercove.gdx.flexbatch.utils.BatchableSorter;
+
+/** Measures a frame of blended Quad3Ds at random positions, queued, sorted far to near and drawn. The {@link BatchableSorter}
+ * radix sort is compared with sorting an Array with the comparator BatchableSorter used before, which computes two distances
+ * per comparison. Both draw the sorted quads the same way, so the difference is the queuing and sorting. Scores are per frame,
+ * and include flushing to a GL that does nothing.
+ *
+ * @author cypherdare */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchableSorterBlendedBenchmark {
+
+	@Param({"100", "1000", "20000"})
+	public int count;
+
+	private FlexBatch<Quad3D> batch;
+	private Quad3D[] quads;
+	private BatchableSorter<Quad3D> sorter;
+	private Array<Quad3D> array;
+	private Comparator<Quad3D> comparator;
+
+	@Setup
+	public void setup () {
+		Headless.initialize();
+		batch = new FlexBatch<Quad3D>(Quad3D.class, 16000, 0);
+		batch.setShader(Headless.newShader());
+		Texture texture = Headless.newTexture();
+		Random random = new Random(0);
+		quads = new Quad3D[count];
+		for (int i = 0; i < count; i++) {
+			Quad3D quad = new Quad3D().texture(texture);
+			quad.opaque = false;
+			quad.position(random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100);
+			quads[i] = quad;
+		}
+		PerspectiveCamera camera = new PerspectiveCamera();
+		sorter = new BatchableSorter<Quad3D>(camera);
+		array = new Array<Quad3D>(count);
+		final Vector3 cameraPosition = camera.position;
+		comparator = new Comparator<Quad3D>() {
+			public int compare (Quad3D o1, Quad3D o2) {
+				return (int)Math.signum(o2.calculateDistanceSquared(cameraPosition) - o1.calculateDistanceSquared(cameraPosition));
+			}
+		};
+	}
+
+	@TearDown
+	public void tearDown () {
+		batch.dispose();
+	}
+
+	@Benchmark
+	public void radixSort () {
+		final BatchableSorter<Quad3D> sorter = this.sorter;
+		final Quad3D[] quads = this.quads;
+		for (int i = 0; i < quads.length; i++)
+			sorter.add(quads[i]);
+		batch.begin();
+		sorter.flush(batch);
+		batch.end();
+	}
+
+	@Benchmark
+	public void comparatorSort () {
+		final Array<Quad3D> array = this.array;
+		final Quad3D[] quads = this.quads;
+		for (int i = 0; i < quads.length; i++)
+			array.add(quads[i]);
+		array.sort(comparator);
+		final FlexBatch<Quad3D> batch = this.batch;
+		batch.begin();
+		for (int i = 0, n = array.size; i < n; i++)
+			batch.draw(array.get(i));
+		batch.end();
+		array.clear();
+	}
+}
@@ -0,0 +1,136 @@
+package com.cyphercove.gdx.flexbatch.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.Batchable;
+import com.cyphercove.gdx.flexbatch.batchable.Quad3D;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.BatchableSorter;
+import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+import com.cyphercove.gdx.flexbatch.utils.SortableBatchable;
+
+/** Measures adding opaque Batchables, spread in random order over a number of texture groups, to a {@link BatchableSorter}.
+ * Quad3D is grouped by its texture hash. {@link UnhashedQuad3D} has the same textures and equivalence test but no hash, so the
+ * sorter compares it with each group in turn, as it did with every Batchable before texture hashes were added. Scores are per
+ * added Batchable.
+ *
+ * @author cypherdare */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchableSorterGroupingBenchmark {
+
+	private static final int COUNT = 10000;
+
+	@Param({"10", "100", "1000"})
+	public int groups;
+
+	private Quad3D[] quads;
+	private UnhashedQuad3D[] unhashedQuads;
+	private BatchableSorter<Quad3D> sorter;
+	private BatchableSorter<UnhashedQuad3D> unhashedSorter;
+
+	/** Wraps a Quad3D, hiding its texture hash. */
+	public static class UnhashedQuad3D extends Batchable implements SortableBatchable<UnhashedQuad3D> {
+		final Quad3D quad;
+
+		UnhashedQuad3D (Quad3D quad) {
+			this.quad = quad;
+		}
+
+		public boolean isOpaque () {
+			return quad.isOpaque();
+		}
+
+		public float calculateDistanceSquared (Vector3 camPosition) {
+			return quad.calculateDistanceSquared(camPosition);
+		}
+
+		public boolean hasEquivalentTextures (UnhashedQuad3D other) {
+			return quad.hasEquivalentTextures(other.quad);
+		}
+
+		protected boolean prepareContext (RenderContextAccumulator renderContext, int remainingVertices, int remainingTriangles) {
+			return false;
+		}
+
+		protected void addVertexAttributes (Array<VertexAttribute> attributes) {
+		}
+
+		protected int getNumberOfTextures () {
+			return 1;
+		}
+
+		public void refresh () {
+		}
+
+		public void reset () {
+		}
+
+		protected int apply (float[] vertices, int startingIndex, AttributeOffsets offsets, int vertexSize) {
+			return 0;
+		}
+
+		protected int apply (short[] triangles, int startingIndex, short firstVertex) {
+			return 0;
+		}
+	}
+
+	@Setup
+	public void setup () {
+		Headless.initialize();
+		Texture[] textures = new Texture[groups];
+		for (int i = 0; i < groups; i++)
+			textures[i] = Headless.newTexture();
+		Random random = new Random(0);
+		quads = new Quad3D[COUNT];
+		unhashedQuads = new UnhashedQuad3D[COUNT];
+		for (int i = 0; i < COUNT; i++) {
+			quads[i] = new Quad3D().texture(textures[random.nextInt(groups)]);
+			unhashedQuads[i] = new UnhashedQuad3D(quads[i]);
+		}
+		PerspectiveCamera camera = new PerspectiveCamera();
+		sorter = new BatchableSorter<Quad3D>(camera);
+		unhashedSorter = new BatchableSorter<UnhashedQuad3D>(camera);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public void hashed () {
+		final Quad3D[] quads = this.quads;
+		for (int i = 0; i < COUNT; i++)
+			sorter.add(quads[i]);
+		sorter.clear();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public void unhashed () {
+		final UnhashedQuad3D[] unhashedQuads = this.unhashedQuads;
+		for (int i = 0; i < COUNT; i++)
+			unhashedSorter.add(unhashedQuads[i]);
+		unhashedSorter.clear();
+	}
+}
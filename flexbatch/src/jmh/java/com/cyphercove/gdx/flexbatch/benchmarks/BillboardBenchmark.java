@@ -0,0 +1,98 @@
+package com.cyphercove.gdx.flexbatch.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector3;
+import com.cyphercove.gdx.flexbatch.FlexBatch;
+import com.cyphercove.gdx.flexbatch.batchable.Quad3D;
+import com.cyphercove.gdx.flexbatch.utils.BillboardBasis;
+
+/** Measures a frame of 50000 billboarded Quad3Ds, as decals, with a camera that orbits the scene. Each quad turning to the
+ * camera with {@link Quad3D#billboard(com.badlogic.gdx.graphics.Camera)} is compared with all quads sharing a
+ * {@link BillboardBasis} that is updated once per frame. Scores are per frame, and include flushing to a GL that does nothing.
+ *
+ * @author cypherdare */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BillboardBenchmark {
+
+	private static final int COUNT = 50000;
+
+	private FlexBatch<Quad3D> batch;
+	private PerspectiveCamera camera;
+	private float cameraAngle;
+	private Quad3D[] cameraQuads, basisQuads;
+	private BillboardBasis basis;
+
+	@Setup
+	public void setup () {
+		Headless.initialize();
+		batch = new FlexBatch<Quad3D>(Quad3D.class, 16000, 0);
+		batch.setShader(Headless.newShader());
+		camera = new PerspectiveCamera(67, 800, 600);
+		basis = new BillboardBasis();
+		Texture texture = Headless.newTexture();
+		Random random = new Random(0);
+		cameraQuads = new Quad3D[COUNT];
+		basisQuads = new Quad3D[COUNT];
+		for (int i = 0; i < COUNT; i++) {
+			final float x = random.nextFloat() * 200 - 100, y = random.nextFloat() * 20, z = random.nextFloat() * 200 - 100;
+			cameraQuads[i] = new Quad3D().texture(texture).position(x, y, z).size(1, 1);
+			basisQuads[i] = new Quad3D().texture(texture).position(x, y, z).size(1, 1).billboard(basis);
+		}
+	}
+
+	@TearDown
+	public void tearDown () {
+		batch.dispose();
+	}
+
+	private void orbitCamera () {
+		cameraAngle = (cameraAngle + 1) % 360;
+		camera.position.set(150 * MathUtils.cosDeg(cameraAngle), 50, 150 * MathUtils.sinDeg(cameraAngle));
+		camera.up.set(Vector3.Y);
+		camera.lookAt(0, 0, 0);
+		camera.update();
+	}
+
+	@Benchmark
+	public void perQuad () {
+		orbitCamera();
+		final PerspectiveCamera camera = this.camera;
+		final Quad3D[] quads = cameraQuads;
+		for (int i = 0; i < COUNT; i++)
+			quads[i].billboard(camera);
+		batch.begin();
+		batch.draw(quads, 0, COUNT);
+		batch.end();
+	}
+
+	@Benchmark
+	public void sharedBasis () {
+		orbitCamera();
+		basis.update(camera);
+		batch.begin();
+		batch.draw(basisQuads, 0, COUNT);
+		batch.end();
+	}
+}
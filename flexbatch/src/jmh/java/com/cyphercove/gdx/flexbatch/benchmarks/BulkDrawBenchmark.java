@@ -0,0 +1,97 @@
+package com.cyphercove.gdx.flexbatch.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.Batchable;
+import com.cyphercove.gdx.flexbatch.FlexBatch;
+import com.cyphercove.gdx.flexbatch.batchable.Quad2D;
+
+/** Measures drawing retained Quad2Ds one at a time with {@link FlexBatch#draw(Batchable)}, compared with the bulk
+ * {@link FlexBatch#draw(Batchable[], int, int)} and {@link FlexBatch#draw(Iterable)}. The Quad2Ds alternate between two
+ * textures in runs of 100, so there are flushes for texture changes as well as for capacity. Scores are per Quad2D, and include
+ * flushing to a GL that does nothing.
+ *
+ * @author cypherdare */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BulkDrawBenchmark {
+
+	private static final int COUNT = 20000;
+	private static final int RUN_LENGTH = 100;
+
+	private FlexBatch<Quad2D> batch;
+	private Quad2D[] quads;
+	private Iterable<Quad2D> iterable;
+
+	@Setup
+	public void setup () {
+		Headless.initialize();
+		batch = new FlexBatch<Quad2D>(Quad2D.class, 4000, 0);
+		batch.setShader(Headless.newShader());
+		Texture[] textures = {Headless.newTexture(), Headless.newTexture()};
+		Random random = new Random(0);
+		quads = new Quad2D[COUNT];
+		for (int i = 0; i < COUNT; i++) {
+			Quad2D quad = new Quad2D();
+			quad.texture(textures[i / RUN_LENGTH % 2]);
+			quad.position(random.nextFloat() * 800, random.nextFloat() * 600).size(32, 32).origin(16, 16)
+				.rotation(random.nextFloat() * 360);
+			quads[i] = quad;
+		}
+		iterable = new Array<Quad2D>(quads); // Its iterator is reused, as in typical use
+	}
+
+	@TearDown
+	public void tearDown () {
+		batch.dispose();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public void individual () {
+		final FlexBatch<Quad2D> batch = this.batch;
+		final Quad2D[] quads = this.quads;
+		batch.begin();
+		for (int i = 0; i < COUNT; i++)
+			batch.draw(quads[i]);
+		batch.end();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public void array () {
+		final FlexBatch<Quad2D> batch = this.batch;
+		batch.begin();
+		batch.draw(quads, 0, COUNT);
+		batch.end();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public void iterable () {
+		final FlexBatch<Quad2D> batch = this.batch;
+		batch.begin();
+		batch.draw(iterable);
+		batch.end();
+	}
+}
@@ -0,0 +1,74 @@
+package com.cyphercove.gdx.flexbatch.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Graphics;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+
+/** Prepares LibGDX for benchmarks without a window. The natives are loaded, and a GL20 is installed whose methods do nothing and
+ * return zero, so a benchmark measures only the CPU side of drawing. An Application and a Graphics that do nothing are also
+ * installed for the parts of LibGDX that expect them.
+ *
+ * @author cypherdare */
+final class Headless {
+
+	private static boolean initialized;
+
+	private Headless () {
+	}
+
+	static synchronized void initialize () {
+		if (initialized) return;
+		GdxNativesLoader.load();
+		InvocationHandler doNothing = new InvocationHandler() {
+			public Object invoke (Object proxy, Method method, Object[] args) {
+				if (method.getDeclaringClass() == Object.class) { // Used as a map key by managed resources
+					if (method.getName().equals("equals")) return proxy == args[0];
+					if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+					return "Headless";
+				}
+				return zero(method.getReturnType());
+			}
+		};
+		GL20 gl = (GL20)Proxy.newProxyInstance(GL20.class.getClassLoader(), new Class<?>[] {GL20.class}, doNothing);
+		Gdx.gl = gl;
+		Gdx.gl20 = gl;
+		Gdx.app = (Application)Proxy.newProxyInstance(Application.class.getClassLoader(), new Class<?>[] {Application.class},
+			doNothing);
+		Gdx.graphics = (Graphics)Proxy.newProxyInstance(Graphics.class.getClassLoader(), new Class<?>[] {Graphics.class},
+			doNothing);
+		initialized = true;
+	}
+
+	private static Object zero (Class<?> type) {
+		if (type == int.class) return 0;
+		if (type == boolean.class) return false;
+		if (type == float.class) return 0f;
+		if (type == long.class) return 0L;
+		if (type == byte.class) return (byte)0;
+		return null;
+	}
+
+	/** @return A new 1x1 texture. {@link #initialize()} must have been called. */
+	static Texture newTexture () {
+		Pixmap pixmap = new Pixmap(1, 1, Format.RGBA8888);
+		Texture texture = new Texture(pixmap);
+		pixmap.dispose();
+		return texture;
+	}
+
+	/** @return A shader that stands in for a real one. With the GL that does nothing, every uniform and attribute is at
+	 *         location 0. {@link #initialize()} must have been called. */
+	static ShaderProgram newShader () {
+		return new ShaderProgram("", "");
+	}
+}
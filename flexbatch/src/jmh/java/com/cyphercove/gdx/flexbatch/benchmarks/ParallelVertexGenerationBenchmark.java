@@ -0,0 +1,85 @@
+package com.cyphercove.gdx.flexbatch.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.cyphercove.gdx.flexbatch.FlexBatch;
+import com.cyphercove.gdx.flexbatch.batchable.Quad2D;
+
+/** Measures drawing an array of rotated Quad2Ds with {@link FlexBatch#draw(com.cyphercove.gdx.flexbatch.Batchable[], int, int)}
+ * with vertex data applied on a number of threads. With one thread, parallel vertex generation is disabled. Scores are per
+ * Quad2D, and include flushing to a GL that does nothing. Scaling depends on the number of available processors.
+ *
+ * @author cypherdare */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelVertexGenerationBenchmark {
+
+	private static final int COUNT = 20000;
+	/** Quads per flush. */
+	private static final int BATCH_QUADS = 4000;
+
+	@Param({"1", "2", "4"})
+	public int threads;
+
+	private FlexBatch<Quad2D> batch;
+	private ExecutorService executor;
+	private Quad2D[] quads;
+
+	@Setup
+	public void setup () {
+		Headless.initialize();
+		batch = new FlexBatch<Quad2D>(Quad2D.class, BATCH_QUADS * 4, 0);
+		batch.setShader(Headless.newShader());
+		if (threads > 1) {
+			executor = Executors.newFixedThreadPool(threads - 1);
+			batch.setParallelVertexGeneration(executor, threads);
+		}
+		Texture texture = Headless.newTexture();
+		Random random = new Random(0);
+		quads = new Quad2D[COUNT];
+		for (int i = 0; i < COUNT; i++) {
+			Quad2D quad = new Quad2D();
+			quad.texture(texture);
+			quad.position(random.nextFloat() * 800, random.nextFloat() * 600).size(32, 32).origin(16, 16)
+				.rotation(random.nextFloat() * 360);
+			quads[i] = quad;
+		}
+	}
+
+	@TearDown
+	public void tearDown () {
+		if (executor != null) executor.shutdown();
+		batch.dispose();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public void draw () {
+		final FlexBatch<Quad2D> batch = this.batch;
+		batch.begin();
+		batch.draw(quads, 0, COUNT);
+		batch.end();
+	}
+}
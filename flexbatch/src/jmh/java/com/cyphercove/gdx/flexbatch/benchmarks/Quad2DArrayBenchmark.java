@@ -0,0 +1,225 @@
+package com.cyphercove.gdx.flexbatch.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.GLTexture;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.Quad2DArray;
+import com.cyphercove.gdx.flexbatch.batchable.Quad2D;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+
+/** Measures generating the vertex data of sprites. {@link Quad2DArray#write(int, int, float[], int)} is compared with calling
+ * {@link Quad2D#apply(float[], int, AttributeOffsets, int)} on a Quad2D per sprite, which is what a FlexBatch does, and with
+ * {@link #blocked()}, a version of Quad2DArray.write() that works in blocks of sprites. All three write the same vertex data.
+ * Scores are per sprite.
+ *
+ * @author cypherdare */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Quad2DArrayBenchmark {
+
+	private static final int COUNT = 1000;
+	private static final int VERTEX_SIZE = Quad2DArray.SPRITE_SIZE / 4;
+
+	/** Whether the sprites are rotated, which needs sine table lookups. */
+	@Param({"false", "true"})
+	public boolean rotated;
+
+	private Quad2DArray array;
+	private ExposedQuad2D[] quads;
+	private AttributeOffsets offsets;
+	private final float[] vertices = new float[COUNT * Quad2DArray.SPRITE_SIZE];
+
+	private static final int BLOCK_SPRITES = 16;
+	private final float[] blockCos = new float[BLOCK_SPRITES], blockSin = new float[BLOCK_SPRITES];
+	private final float[] blockX1 = new float[BLOCK_SPRITES], blockY1 = new float[BLOCK_SPRITES];
+	private final float[] blockX2 = new float[BLOCK_SPRITES], blockY2 = new float[BLOCK_SPRITES];
+	private final float[] blockX3 = new float[BLOCK_SPRITES], blockY3 = new float[BLOCK_SPRITES];
+	private final float[] blockX4 = new float[BLOCK_SPRITES], blockY4 = new float[BLOCK_SPRITES];
+
+	/** A Quad2D whose protected methods can be called from the benchmark. */
+	static class ExposedQuad2D extends Quad2D {
+		int applyTo (float[] vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+			return apply(vertices, vertexStartingIndex, offsets, vertexSize);
+		}
+
+		void addVertexAttributesTo (Array<VertexAttribute> attributes) {
+			addVertexAttributes(attributes);
+		}
+	}
+
+	/** A texture with only a size, so Quad2D can compute texture coordinates without a GL context. */
+	static class SizedTexture extends GLTexture {
+		SizedTexture () {
+			super(GL20.GL_TEXTURE_2D, 0);
+		}
+
+		public int getWidth () {
+			return 64;
+		}
+
+		public int getHeight () {
+			return 64;
+		}
+
+		public int getDepth () {
+			return 0;
+		}
+
+		public boolean isManaged () {
+			return false;
+		}
+
+		protected void reload () {
+		}
+	}
+
+	@Setup
+	public void setup () {
+		GLTexture texture = new SizedTexture();
+		Random random = new Random(0);
+		array = new Quad2DArray(COUNT);
+		quads = new ExposedQuad2D[COUNT];
+		for (int i = 0; i < COUNT; i++) {
+			final float x = random.nextFloat() * 800, y = random.nextFloat() * 600;
+			final float rotation = rotated ? random.nextFloat() * 360 : 0;
+			array.add(texture, x, y, 32, 32);
+			array.originX[i] = array.originY[i] = 16;
+			array.rotation[i] = rotation;
+			ExposedQuad2D quad = new ExposedQuad2D();
+			quad.texture(texture);
+			quad.position(x, y).size(32, 32).origin(16, 16).rotation(rotation);
+			quads[i] = quad;
+		}
+
+		Array<VertexAttribute> attributes = new Array<VertexAttribute>(true, 10, VertexAttribute.class);
+		quads[0].addVertexAttributesTo(attributes);
+		offsets = new AttributeOffsets(new VertexAttributes(attributes.toArray()));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public float[] write () {
+		array.write(0, COUNT, vertices, 0);
+		return vertices;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public float[] quad2DApply () {
+		final ExposedQuad2D[] quads = this.quads;
+		final float[] vertices = this.vertices;
+		final AttributeOffsets offsets = this.offsets;
+		for (int i = 0, v = 0; i < COUNT; i++, v += Quad2DArray.SPRITE_SIZE)
+			quads[i].applyTo(vertices, v, offsets, VERTEX_SIZE);
+		return vertices;
+	}
+
+	/** The version of {@link Quad2DArray#write(int, int, float[], int)} that wrote blocks of sprites, with the corner math in a
+	 * separate unit-stride loop for the JIT to vectorize. */
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public float[] blocked () {
+		final Quad2DArray array = this.array;
+		final float[] x = array.x, y = array.y, originX = array.originX, originY = array.originY;
+		final float[] width = array.width, height = array.height, scaleX = array.scaleX, scaleY = array.scaleY;
+		final float[] rotation = array.rotation, color = array.color, u = array.u, v = array.v, u2 = array.u2, v2 = array.v2;
+		final float[] vertices = this.vertices;
+		int offset = 0;
+		final float[] blockCos = this.blockCos, blockSin = this.blockSin;
+		final float[] x1 = blockX1, y1 = blockY1, x2 = blockX2, y2 = blockY2, x3 = blockX3, y3 = blockY3, x4 = blockX4,
+			y4 = blockY4;
+
+		for (int blockStart = 0; blockStart < COUNT; blockStart += BLOCK_SPRITES) {
+			final int n = Math.min(BLOCK_SPRITES, COUNT - blockStart);
+
+			// Table lookups. The sine table is not exact at zero.
+			for (int k = 0; k < n; k++) {
+				final float degrees = rotation[blockStart + k];
+				blockCos[k] = degrees == 0 ? 1 : MathUtils.cosDeg(degrees);
+				blockSin[k] = degrees == 0 ? 0 : MathUtils.sinDeg(degrees);
+			}
+
+			// Corners: scaled relative to the origin, rotated, and translated.
+			for (int k = 0; k < n; k++) {
+				final int s = blockStart + k;
+				final float cos = blockCos[k];
+				final float sin = blockSin[k];
+				final float fx = -originX[s] * scaleX[s];
+				final float fy = -originY[s] * scaleY[s];
+				final float fx2 = (width[s] - originX[s]) * scaleX[s];
+				final float fy2 = (height[s] - originY[s]) * scaleY[s];
+				final float worldOriginX = x[s] + originX[s];
+				final float worldOriginY = y[s] + originY[s];
+				final float rx1 = cos * fx - sin * fy;
+				final float ry1 = sin * fx + cos * fy;
+				final float rx2 = cos * fx - sin * fy2;
+				final float ry2 = sin * fx + cos * fy2;
+				final float rx3 = cos * fx2 - sin * fy2;
+				final float ry3 = sin * fx2 + cos * fy2;
+				x1[k] = rx1 + worldOriginX;
+				y1[k] = ry1 + worldOriginY;
+				x2[k] = rx2 + worldOriginX;
+				y2[k] = ry2 + worldOriginY;
+				x3[k] = rx3 + worldOriginX;
+				y3[k] = ry3 + worldOriginY;
+				x4[k] = rx1 + (rx3 - rx2) + worldOriginX;
+				y4[k] = ry3 - (ry2 - ry1) + worldOriginY;
+			}
+
+			// Interleave
+			for (int k = 0, i = offset; k < n; k++, i += Quad2DArray.SPRITE_SIZE) {
+				final int s = blockStart + k;
+				final float c = color[s];
+
+				vertices[i] = x1[k];
+				vertices[i + 1] = y1[k];
+				vertices[i + 2] = c;
+				vertices[i + 3] = u[s];
+				vertices[i + 4] = v2[s];
+
+				vertices[i + 5] = x2[k];
+				vertices[i + 6] = y2[k];
+				vertices[i + 7] = c;
+				vertices[i + 8] = u[s];
+				vertices[i + 9] = v[s];
+
+				vertices[i + 10] = x3[k];
+				vertices[i + 11] = y3[k];
+				vertices[i + 12] = c;
+				vertices[i + 13] = u2[s];
+				vertices[i + 14] = v[s];
+
+				vertices[i + 15] = x4[k];
+				vertices[i + 16] = y4[k];
+				vertices[i + 17] = c;
+				vertices[i + 18] = u2[s];
+				vertices[i + 19] = v2[s];
+			}
+			offset += n * Quad2DArray.SPRITE_SIZE;
+		}
+		return vertices;
+	}
+}
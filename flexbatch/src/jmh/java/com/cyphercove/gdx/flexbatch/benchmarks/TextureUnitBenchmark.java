@@ -0,0 +1,119 @@
+package com.cyphercove.gdx.flexbatch.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.graphics.GLTexture;
+import com.badlogic.gdx.utils.IntMap;
+import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+
+/** Measures the texture checks a FlexBatch makes for each Batchable: setting the textures of a number of units, checking for
+ * pending changes, and binding them if there are any. The {@link RenderContextAccumulator}, which keeps texture units in an
+ * array with a mask of occupied units, is compared with {@link IntMapTextureUnits}, the IntMap-based tracking it used before.
+ * The accumulator also checks its other states for changes, which the reference does not. Scores are per Batchable.
+ *
+ * @author cypherdare */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextureUnitBenchmark {
+
+	private static final int COUNT = 1000;
+
+	/** The number of textures each Batchable uses. */
+	@Param({"1", "2", "4"})
+	public int textures;
+
+	/** Whether consecutive Batchables alternate between two sets of textures, so every Batchable causes bindings. */
+	@Param({"false", "true"})
+	public boolean changing;
+
+	private GLTexture[][] textureSets;
+	private RenderContextAccumulator accumulator;
+	private IntMapTextureUnits intMapTextureUnits;
+
+	/** The texture unit tracking of RenderContextAccumulator before it used an array. */
+	static class IntMapTextureUnits {
+		final IntMap<GLTexture> pending = new IntMap<GLTexture>(32), current = new IntMap<GLTexture>(32);
+
+		boolean setTextureUnit (GLTexture texture, int unit) {
+			if (pending.get(unit) != texture) {
+				if (texture == null)
+					pending.remove(unit);
+				else
+					pending.put(unit, texture);
+				return true;
+			}
+			return false;
+		}
+
+		boolean hasPendingChanges () {
+			for (IntMap.Entry<GLTexture> entry : pending) {
+				if (current.get(entry.key) != entry.value) return true;
+			}
+			return false;
+		}
+
+		void executeChanges () {
+			for (IntMap.Entry<GLTexture> entry : pending) {
+				if (current.get(entry.key) != entry.value) {
+					entry.value.bind(entry.key);
+					current.put(entry.key, entry.value);
+				}
+			}
+		}
+	}
+
+	@Setup
+	public void setup () {
+		Headless.initialize();
+		textureSets = new GLTexture[2][textures];
+		for (int s = 0; s < 2; s++)
+			for (int t = 0; t < textures; t++)
+				textureSets[s][t] = Headless.newTexture();
+		accumulator = new RenderContextAccumulator();
+		accumulator.begin();
+		intMapTextureUnits = new IntMapTextureUnits();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public void array () {
+		final RenderContextAccumulator accumulator = this.accumulator;
+		final int setMask = changing ? 1 : 0;
+		for (int i = 0; i < COUNT; i++) {
+			final GLTexture[] set = textureSets[i & setMask];
+			for (int unit = 0; unit < set.length; unit++)
+				accumulator.setTextureUnit(set[unit], unit);
+			if (accumulator.hasPendingChanges()) accumulator.executeChanges();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public void intMap () {
+		final IntMapTextureUnits intMapTextureUnits = this.intMapTextureUnits;
+		final int setMask = changing ? 1 : 0;
+		for (int i = 0; i < COUNT; i++) {
+			final GLTexture[] set = textureSets[i & setMask];
+			for (int unit = 0; unit < set.length; unit++)
+				intMapTextureUnits.setTextureUnit(set[unit], unit);
+			if (intMapTextureUnits.hasPendingChanges()) intMapTextureUnits.executeChanges();
+		}
+	}
+}
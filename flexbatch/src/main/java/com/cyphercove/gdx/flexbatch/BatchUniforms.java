@@ -0,0 +1,58 @@
+package com.cyphercove.gdx.flexbatch;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
+import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+
+/** The default uniforms of {@link FlexBatch}, {@link FlexBatchCache}, and {@link SlotBatch}: the combined projection and
+ * transform matrix, set to "u_projTrans", and the texture units, set to "u_texture" with the unit appended. The location of
+ * "u_projTrans" is looked up once per shader, and the matrix is not uploaded again while it is unchanged. The texture unit
+ * uniforms are set through a {@link RenderContextAccumulator}, which skips unchanged values.
+ *
+ * @author cypherdare */
+final class BatchUniforms {
+
+	private final Matrix4 combinedMatrix = new Matrix4();
+	/** The shader that {@link #combinedMatrix} was last uploaded to since {@link #invalidate()}, or null. */
+	private ShaderProgram matrixShader;
+	private int projTransLocation;
+	private final float[] appliedCombinedMatrix = new float[16];
+	private final String[] textureUnitUniforms;
+
+	BatchUniforms (int textureUnitCount) {
+		textureUnitUniforms = new String[textureUnitCount];
+		for (int i = 0; i < textureUnitCount; i++) {
+			textureUnitUniforms[i] = "u_texture" + i;
+		}
+	}
+
+	/** Forgets which matrix was uploaded, so it is uploaded on the next call to {@link #applyMatrices(ShaderProgram, Matrix4,
+	 * Matrix4)}. Must be called when drawing begins, since other code may have changed the uniform in the meantime. */
+	void invalidate () {
+		matrixShader = null;
+	}
+
+	/** Combines the projection and transform matrices and sets the result to the "u_projTrans" uniform of the shader, which must
+	 * be bound, unless the same value was already set to the same shader. */
+	void applyMatrices (ShaderProgram shader, Matrix4 projectionMatrix, Matrix4 transformMatrix) {
+		combinedMatrix.set(projectionMatrix).mul(transformMatrix);
+		if (shader != matrixShader) {
+			projTransLocation = shader.fetchUniformLocation("u_projTrans", false);
+			matrixShader = shader;
+		} else if (Arrays.equals(appliedCombinedMatrix, combinedMatrix.val)) {
+			return;
+		}
+		if (projTransLocation >= 0) shader.setUniformMatrix(projTransLocation, combinedMatrix);
+		System.arraycopy(combinedMatrix.val, 0, appliedCombinedMatrix, 0, 16);
+	}
+
+	/** Sets the texture unit uniforms through the render context, whose shader must be set, and applies its pending changes.
+	 * Uniforms the shader does not have are skipped. */
+	void applyTextureUniforms (RenderContextAccumulator renderContext) {
+		for (int i = 0; i < textureUnitUniforms.length; i++)
+			renderContext.setUniformi(textureUnitUniforms[i], i);
+		renderContext.executeChanges();
+	}
+}
@@ -1,6 +1,8 @@
 
 package com.cyphercove.gdx.flexbatch;
 
+import java.nio.FloatBuffer;
+
 import com.badlogic.gdx.graphics.VertexAttribute;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.ObjectMap;
@@ -16,6 +18,12 @@ public abstract class Batchable implements Poolable {
 	// This is an abstract class instead of interface so most of these methods can be hidden from the public API to make
 	// built-in implementations of Batchable easier to use.
 
+	private boolean memoized;
+	private int changeCount, cachedChangeCount, cachedSharedChangeCount;
+	private AttributeOffsets cachedOffsets;
+	private float[] cachedVertices;
+	private int cachedVertexCount;
+
 	/** Prepares the rendering context for this type of Batchable to be drawn. This method should set state changes that will be
 	 * the same for all instances of this Batchable type. It must not call {@link RenderContextAccumulator#begin() begin()},
 	 * {@link RenderContextAccumulator#executeChanges() executeChanges()}, or {@link RenderContextAccumulator#end() end()} on
@@ -56,6 +64,14 @@ public abstract class Batchable implements Poolable {
 	 *         uniforms to bind to the shader. Must always return the same value. */
 	protected abstract int getNumberOfTextures ();
 
+	/** @return The number of texture units whose sampler uniforms are set by the FlexBatch. By default, this is the number of
+	 *         textures. A Batchable that selects one of several bound textures per vertex, such as
+	 *         {@link com.cyphercove.gdx.flexbatch.batchable.TextureSlotQuad2D TextureSlotQuad2D}, uses more units than it has
+	 *         textures. Must always return the same value. */
+	protected int getNumberOfTextureUnits () {
+		return getNumberOfTextures();
+	}
+
 	/** Resets the state and default parameters of the Batchable so it can be reused for an entirely new image. */
 	public abstract void refresh ();
 
@@ -71,6 +87,23 @@ public abstract class Batchable implements Poolable {
 	 *         assumed to match {@link FixedSizeBatchable#getVerticesPerBatchable()}. */
 	protected abstract int apply (float[] vertices, int startingIndex, AttributeOffsets offsets, int vertexSize);
 
+	/** Called by FlexBatch instead of {@link #apply(float[], int, AttributeOffsets, int)} if the FlexBatch writes vertex data
+	 * directly to the Mesh's vertex buffer, rather than staging it in an array. It must write the same data as the array version,
+	 * using absolute puts so the buffer's position is not relied upon.
+	 * <p>
+	 * Support for this is optional. The default implementation throws an UnsupportedOperationException. A subclass that overrides
+	 * the array version to add vertex data must also override this method to be drawn by a FlexBatch that writes vertex data
+	 * directly.
+	 * @param vertices
+	 * @param startingIndex
+	 * @param offsets The offsets of the vertex attributes.
+	 * @param vertexSize The size of a vertex in floats.
+	 * @return The number of vertices that were added. The value is unused if this is a {@link FixedSizeBatchable}, as it is
+	 *         assumed to match {@link FixedSizeBatchable#getVerticesPerBatchable()}. */
+	protected int apply (FloatBuffer vertices, int startingIndex, AttributeOffsets offsets, int vertexSize) {
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support writing vertices to a buffer.");
+	}
+
 	/** Called by FlexBatch. Applies the triangle vertex data indices to the array that will be sent to the Mesh. This method is
 	 * never called on {@link FixedSizeBatchable FixedSizeBatchables}.
 	 * 
@@ -82,6 +115,122 @@ public abstract class Batchable implements Poolable {
 	 * @return The number of triangle indices that were added. */
 	protected abstract int apply (short[] triangles, int startingIndex, short firstVertex);
 
+	/** Called by FlexBatch instead of {@link #apply(short[], int, short)} if the FlexBatch uses 32-bit indices because it has too
+	 * high a vertex capacity for 16-bit indices. This method is never called on {@link FixedSizeBatchable FixedSizeBatchables}.
+	 * <p>
+	 * Support for this is optional. The default implementation throws an UnsupportedOperationException.
+	 * @param triangles
+	 * @param startingIndex
+	 * @param firstVertex The first vertex value that should be used.
+	 * @return The number of triangle indices that were added. */
+	protected int apply (int[] triangles, int startingIndex, int firstVertex) {
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support 32-bit indices.");
+	}
+
+	/** Sets whether this Batchable keeps a copy of the vertex data it most recently generated. While it has not changed since
+	 * then, a FlexBatch copies the cached data instead of generating it again, which saves the transform math for a retained
+	 * Batchable that is drawn on many frames without being modified. Changes made through the chaining methods of the built-in
+	 * Batchables are detected. Changes made by writing to public fields directly, such as {@code quad.x = 5}, are not, so
+	 * {@link #markChanged()} must be called after them. The cache is kept for one FlexBatch at a time, so it is regenerated
+	 * whenever this Batchable is drawn by a different FlexBatch than last time.
+	 * <p>
+	 * Memoization costs an extra copy whenever the vertex data is regenerated, so it should only be enabled for Batchables that
+	 * usually go unmodified between draws. Disabling it releases the cache. The cache is bypassed when vertex data is applied on
+	 * multiple threads. See {@link FlexBatch#setParallelVertexGeneration(java.util.concurrent.ExecutorService, int)}. */
+	public void setMemoized (boolean memoized) {
+		this.memoized = memoized;
+		if (!memoized) {
+			cachedVertices = null;
+			cachedOffsets = null;
+		}
+	}
+
+	public boolean isMemoized () {
+		return memoized;
+	}
+
+	/** Marks the vertex data of this Batchable as changed, so it will be regenerated the next time it is drawn if it is
+	 * {@link #setMemoized(boolean) memoized}. This is called by the chaining methods of the built-in Batchables. It must be
+	 * called by a subclass's own methods that change its vertex data, and after writing to public fields directly. */
+	public void markChanged () {
+		changeCount++;
+	}
+
+	/** @return A number that changes whenever state held outside this Batchable that affects its vertex data changes, such as a
+	 *         basis shared by many Batchables, so that {@link #setMemoized(boolean) memoized} vertex data is regenerated. The
+	 *         default implementation returns 0. */
+	protected int getSharedChangeCount () {
+		return 0;
+	}
+
+	/** Called by FlexBatch to apply vertex data to either a staging array or a vertex buffer, whichever is not null. If this
+	 * Batchable is memoized, the cached data is copied when it is valid, and otherwise the newly applied data is cached.
+	 * @return The number of vertices that were added. */
+	final int applyVertices (float[] vertices, FloatBuffer vertexBuffer, int startingIndex, AttributeOffsets offsets,
+		int vertexSize) {
+		return applyVertices(vertices, vertexBuffer, startingIndex, offsets, vertexSize, memoized);
+	}
+
+	/** Called by FlexBatch to apply vertex data to either a staging array or a vertex buffer, whichever is not null.
+	 * @param useCache Whether to use the cache if this Batchable is memoized. Must be false if this Batchable may be applied on
+	 *           multiple threads at once, which happens when it appears more than once in an array drawn in parallel, because the
+	 *           cache is not thread-safe.
+	 * @return The number of vertices that were added. */
+	final int applyVertices (float[] vertices, FloatBuffer vertexBuffer, int startingIndex, AttributeOffsets offsets,
+		int vertexSize, boolean useCache) {
+		if (!useCache || !memoized) {
+			return vertices != null ? apply(vertices, startingIndex, offsets, vertexSize)
+				: apply(vertexBuffer, startingIndex, offsets, vertexSize);
+		}
+
+		final int sharedChangeCount = getSharedChangeCount();
+		if (cachedVertices != null && cachedChangeCount == changeCount && cachedSharedChangeCount == sharedChangeCount
+			&& cachedOffsets == offsets) {
+			final int length = cachedVertexCount * vertexSize;
+			if (vertices != null)
+				System.arraycopy(cachedVertices, 0, vertices, startingIndex, length);
+			else
+				for (int i = 0; i < length; i++) // Absolute puts, in case vertex data is being generated on multiple threads.
+					vertexBuffer.put(startingIndex + i, cachedVertices[i]);
+			return cachedVertexCount;
+		}
+
+		final int vertexCount = vertices != null ? apply(vertices, startingIndex, offsets, vertexSize)
+			: apply(vertexBuffer, startingIndex, offsets, vertexSize);
+		final int length = vertexCount * vertexSize;
+		if (cachedVertices == null || cachedVertices.length < length) cachedVertices = new float[length];
+		if (vertices != null)
+			System.arraycopy(vertices, startingIndex, cachedVertices, 0, length);
+		else
+			for (int i = 0; i < length; i++)
+				cachedVertices[i] = vertexBuffer.get(startingIndex + i);
+		cachedVertexCount = vertexCount;
+		cachedChangeCount = changeCount;
+		cachedSharedChangeCount = sharedChangeCount;
+		cachedOffsets = offsets;
+		return vertexCount;
+	}
+
+	/** @return Whether the given Batchable type supports {@link #apply(FloatBuffer, int, AttributeOffsets, int)}, by overriding it
+	 *         in the same class or a subclass of the one that most recently overrides
+	 *         {@link #apply(float[], int, AttributeOffsets, int)}. */
+	static boolean supportsBufferApply (Class<? extends Batchable> batchableType) {
+		Class<?> arrayApplyClass = findApplyDeclaringClass(batchableType, float[].class);
+		Class<?> bufferApplyClass = findApplyDeclaringClass(batchableType, FloatBuffer.class);
+		return bufferApplyClass != Batchable.class && arrayApplyClass.isAssignableFrom(bufferApplyClass);
+	}
+
+	private static Class<?> findApplyDeclaringClass (Class<?> type, Class<?> verticesType) {
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			try {
+				c.getDeclaredMethod("apply", verticesType, int.class, AttributeOffsets.class, int.class);
+				return c;
+			} catch (NoSuchMethodException e) {
+			}
+		}
+		return Batchable.class;
+	}
+
 	/** Parent class for Batchables that all have the same number of vertices and triangles. This allows all triangle indices for a
 	 * FlexBatch to be generated one time so they don't have to be repeatedly updated when drawing. */
 	public static abstract class FixedSizeBatchable extends Batchable {
@@ -97,9 +246,7 @@ public abstract class Batchable implements Poolable {
 			} catch (Exception e) {
 				throw new IllegalArgumentException("Batchable classes must be public and have an empty constructor.", e);
 			}
-			short[] model = new short[instance.getTrianglesPerBatchable() * 3];
-			instance.populateTriangleIndices(model);
-			indicesModels.put(fixedSizeBatchableType, model);
+			((FixedSizeBatchable)instance).getIndicesModel();
 		}
 
 		/** @return The number of triangles drawn for each Batchable. Must always return the same value among all instances of a
@@ -110,6 +257,17 @@ public abstract class Batchable implements Poolable {
 		 *         class. */
 		protected abstract int getVerticesPerBatchable ();
 
+		/** @return Whether this Batchable type is drawn with hardware instancing. If true, {@link #addVertexAttributes(Array)}
+		 *         defines a per-instance record, of which {@link #apply(float[], int, AttributeOffsets, int)} writes exactly one,
+		 *         and the vertex shader expands each record into a quad with the corners from
+		 *         {@link com.cyphercove.gdx.flexbatch.utils.InstancedQuadVertexData InstancedQuadVertexData}.
+		 *         {@link #populateTriangleIndices(short[])} is called with an array for a single quad. Instanced Batchables require
+		 *         GL30 and can only be drawn by a FlexBatch that is limited to FixedSizeBatchables. Must always return the same
+		 *         value among all instances of a class. */
+		protected boolean isInstanced () {
+			return false;
+		}
+
 		/** Populate the fixed triangle array for the FlexBatch's mesh. This is called only once on one of the FlexBatch's internal
 		 * Batchable instances, or once the first time an instance is drawn with a FlexBatch that is not limited to
 		 * FixedSizeBatchables.
@@ -117,15 +275,34 @@ public abstract class Batchable implements Poolable {
 		 *           series of this Batchable type. */
 		protected abstract void populateTriangleIndices (short[] triangles);
 
-		/** Called by FlexBatch to apply triangle index data, only if this FixedSizeBatchable is drawn by a FlexBatch that is not
-		 * limited to drawing FixedSizeBatchables. See {@link Batchable#apply(short[], int, short)} */
-		protected final int apply (short[] triangles, int triangleStartingIndex, short firstVertex) {
+		/** Populate the fixed triangle array for a FlexBatch's mesh that uses 32-bit indices. The default implementation repeats
+		 * the indices of a single Batchable from {@link #populateTriangleIndices(short[])}, offset for each successive Batchable.
+		 * @param triangles An array of triangle indices that, before this method returns, must be fully populated for drawing a
+		 *           series of this Batchable type. */
+		protected void populateTriangleIndices (int[] triangles) {
+			short[] model = getIndicesModel();
+			final int verticesPerBatchable = getVerticesPerBatchable();
+			for (int i = 0, firstVertex = 0; i + model.length <= triangles.length; firstVertex += verticesPerBatchable) {
+				for (int j = 0; j < model.length; j++)
+					triangles[i++] = model[j] + firstVertex;
+			}
+		}
+
+		/** @return The triangle indices of a single Batchable of this type, generated the first time they are needed. */
+		private short[] getIndicesModel () {
 			short[] model = indicesModels.get(getClass());
 			if (model == null) {
 				model = new short[getTrianglesPerBatchable() * 3];
 				populateTriangleIndices(model);
 				indicesModels.put(getClass(), model);
 			}
+			return model;
+		}
+
+		/** Called by FlexBatch to apply triangle index data, only if this FixedSizeBatchable is drawn by a FlexBatch that is not
+		 * limited to drawing FixedSizeBatchables. See {@link Batchable#apply(short[], int, short)} */
+		protected final int apply (short[] triangles, int triangleStartingIndex, short firstVertex) {
+			short[] model = getIndicesModel();
 
 			for (int i = 0; i < model.length; i++) {
 				triangles[triangleStartingIndex++] = (short)(model[i] + firstVertex);
@@ -133,5 +310,17 @@ public abstract class Batchable implements Poolable {
 
 			return model.length;
 		}
+
+		/** Called by FlexBatch to apply triangle index data, only if this FixedSizeBatchable is drawn by a FlexBatch that is not
+		 * limited to drawing FixedSizeBatchables and uses 32-bit indices. See {@link Batchable#apply(int[], int, int)} */
+		protected final int apply (int[] triangles, int triangleStartingIndex, int firstVertex) {
+			short[] model = getIndicesModel();
+
+			for (int i = 0; i < model.length; i++) {
+				triangles[triangleStartingIndex++] = model[i] + firstVertex;
+			}
+
+			return model.length;
+		}
 	}
 }
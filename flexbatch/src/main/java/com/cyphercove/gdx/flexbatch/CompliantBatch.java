@@ -9,7 +9,9 @@ import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.badlogic.gdx.math.Affine2;
 import com.badlogic.gdx.utils.NumberUtils;
 import com.cyphercove.gdx.flexbatch.batchable.Quad2D;
+import com.cyphercove.gdx.flexbatch.batchable.TextureSlotQuad2D;
 import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
+import com.cyphercove.gdx.flexbatch.utils.DynamicTextureAtlas;
 
 /** A {@link FlexBatch} that implements the {@link Batch} interface, so it is compatible with Stage/Actor, BitmapFont,
  * ParticleEffect, Sprite, and NinePatch. It creates its own default ShaderProgram, which is owned and is disposed automatically
@@ -21,6 +23,12 @@ import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
  * Poly2Ds (or matching subclass) by submitting them to {@link #draw(Batchable)}.
  * <p>
  * A subclass of Quad2D may be passed to the constructor to customize what is drawn (multi-texturing or other attributes).
+ * <p>
+ * A {@link DynamicTextureAtlas} can be set with {@link #setDynamicAtlas(DynamicTextureAtlas)}, so small textures and regions
+ * drawn through the Batch interface are packed into shared pages at runtime, avoiding a flush for each change of texture.
+ * <p>
+ * If the type is a {@link TextureSlotQuad2D}, several textures are bound at once and each quad selects one in the shader, so a
+ * flush is only needed when all texture slots are in use. The default shader supports this.
  * 
  * @param <T> The type of Quad2D that is returned when acquiring one with {@link #draw()}. This must match the class type that is
  *           passed to the constructor.
@@ -31,6 +39,9 @@ public class CompliantBatch<T extends Quad2D> extends FlexBatch<T> implements Ba
 	private float color = Color.WHITE.toFloatBits();
 	private final Color tempColor = new Color();
 	private final float[] tempVertices = new float[20];
+	private DynamicTextureAtlas dynamicAtlas;
+	/** Explicit vertex data with the texture slot attribute added, if the type is a TextureSlotQuad2D. */
+	private float[] slotVertices;
 
 	/** Constructs a CompliantQuadBatch with a default shader and a capacity of 1000 quads that can be drawn per flush. The default
 	 * shader is owned by the CompliantQuadBatch, so it is disposed when the CompliantQuadBatch is disposed. If an alternate shader
@@ -44,7 +55,7 @@ public class CompliantBatch<T extends Quad2D> extends FlexBatch<T> implements Ba
 	/** Constructs a CompliantQuadBatch with a default shader. The default shader is owned by the CompliantQuadBatch, so it is
 	 * disposed when the CompliantQuadBatch is disposed. If an alternate shader has been applied with
 	 * {@link #setShader(ShaderProgram)}, the default can be used again by setting the shader to null.
-	 * @param maxVertices The number of vertices this FlexBatch can batch at once. Maximum of 32767.
+	 * @param maxVertices The number of vertices this FlexBatch can batch at once. Above 32767, 32-bit indices are used.
 	 * @param supportPolygons Whether Poly2Ds are supported for drawing. The FlexBatch will not be optimized for
 	 *           FixedSizeBatchables. */
 	public CompliantBatch (Class<T> batchableType, int maxVertices, boolean supportPolygons) {
@@ -52,22 +63,41 @@ public class CompliantBatch<T extends Quad2D> extends FlexBatch<T> implements Ba
 	}
 
 	/** Constructs a CompliantQuadBatch with a specified capacity and optional default shader.
-	 * @param maxVertices The number of vertices this FlexBatch can batch at once. Maximum of 32767.
+	 * @param maxVertices The number of vertices this FlexBatch can batch at once. Above 32767, 32-bit indices are used.
 	 * @param generateDefaultShader Whether a default shader should be created. The default shader is owned by the
 	 *           CompliantQuadBatch, so it is disposed when the CompliantQuadBatch is disposed. If an alternate shader has been
 	 *           applied with {@link #setShader(ShaderProgram)}, the default can be used again by setting the shader to null.
 	 * @param supportPolygons Whether Poly2Ds are supported for drawing. The FlexBatch will not be optimized for
 	 *           FixedSizeBatchables. */
 	public CompliantBatch (Class<T> batchableType, int maxVertices, boolean generateDefaultShader, boolean supportPolygons) {
-		super(batchableType, maxVertices, supportPolygons ? maxVertices * 2 : 0);
+		this(batchableType, maxVertices, generateDefaultShader, supportPolygons, UploadStrategy.SubData);
+	}
+
+	/** Constructs a CompliantQuadBatch with a specified capacity, optional default shader, and vertex upload technique.
+	 * @param maxVertices The number of vertices this FlexBatch can batch at once. Above 32767, 32-bit indices are used.
+	 * @param generateDefaultShader Whether a default shader should be created. The default shader is owned by the
+	 *           CompliantQuadBatch, so it is disposed when the CompliantQuadBatch is disposed. If an alternate shader has been
+	 *           applied with {@link #setShader(ShaderProgram)}, the default can be used again by setting the shader to null.
+	 * @param supportPolygons Whether Poly2Ds are supported for drawing. The FlexBatch will not be optimized for
+	 *           FixedSizeBatchables.
+	 * @param uploadStrategy The technique used to upload vertex data on each flush. See {@link FlexBatch.UploadStrategy}. */
+	public CompliantBatch (Class<T> batchableType, int maxVertices, boolean generateDefaultShader, boolean supportPolygons,
+		UploadStrategy uploadStrategy) {
+		super(batchableType, maxVertices, supportPolygons ? maxVertices * 2 : 0, uploadStrategy);
 		try {
 			tmp = batchableType.newInstance();
 		} catch (Exception e) {
 			throw new IllegalArgumentException("Batchable classes must be public and have an empty constructor.", e);
 		}
+		if (tmp instanceof TextureSlotQuad2D) slotVertices = new float[24];
 		if (generateDefaultShader) {
-			defaultShader = new ShaderProgram(BatchablePreparation.generateGenericVertexShader(1),
-				BatchablePreparation.generateGenericFragmentShader(1));
+			if (tmp instanceof TextureSlotQuad2D) {
+				defaultShader = new ShaderProgram(BatchablePreparation.generateTextureSlotVertexShader(),
+					BatchablePreparation.generateTextureSlotFragmentShader(((TextureSlotQuad2D)tmp).getTextureSlotCount()));
+			} else {
+				defaultShader = new ShaderProgram(BatchablePreparation.generateGenericVertexShader(1),
+					BatchablePreparation.generateGenericFragmentShader(1));
+			}
 			if (defaultShader.isCompiled() == false)
 				throw new IllegalArgumentException("Error compiling shader: " + defaultShader.getLog());
 			setShader(defaultShader);
@@ -82,6 +112,45 @@ public class CompliantBatch<T extends Quad2D> extends FlexBatch<T> implements Ba
 		super.setShader(shader);
 	}
 
+	/** Sets a dynamic atlas that small textures and regions drawn with the Batch interface's draw methods are packed into, so
+	 * they can be drawn without flushing in between. Their texture coordinates are remapped to the atlas. Batchables drawn with
+	 * {@link #draw()} or {@link #draw(Batchable)}, and vertices drawn with {@link #draw(Texture, float[], int, int)}, are not
+	 * affected. The atlas is not owned by the CompliantBatch, and may be shared by multiple CompliantBatches.
+	 * <p>
+	 * Can only be used if the Batchable type has a single texture.
+	 * @param atlas The atlas, or null to draw all textures directly. */
+	public void setDynamicAtlas (DynamicTextureAtlas atlas) {
+		if (atlas != null && ((Batchable)tmp).getNumberOfTextures() != 1)
+			throw new IllegalArgumentException("A dynamic atlas can only be used with a single-texture Batchable type.");
+		dynamicAtlas = atlas;
+	}
+
+	public DynamicTextureAtlas getDynamicAtlas () {
+		return dynamicAtlas;
+	}
+
+	@Override
+	public void begin () {
+		super.begin();
+		if (dynamicAtlas != null) dynamicAtlas.nextFrame();
+	}
+
+	/** Acquires a Quad2D with the color and a texture region set, taken from the dynamic atlas if possible. */
+	private Quad2D drawRegion (Texture texture, float u, float v, float u2, float v2) {
+		final DynamicTextureAtlas atlas = dynamicAtlas;
+		if (atlas != null) {
+			DynamicTextureAtlas.Entry entry = atlas.obtain(texture, u, v, u2, v2, getRenderContext());
+			if (entry != null) return draw().color(color).texture(entry.getTexture())
+				.region(entry.mapU(u), entry.mapV(v), entry.mapU(u2), entry.mapV(v2));
+		}
+		return draw().color(color).texture(texture).region(u, v, u2, v2);
+	}
+
+	private Quad2D drawRegion (TextureRegion region) {
+		if (dynamicAtlas == null) return draw().color(color).textureRegion(region);
+		return drawRegion(region.getTexture(), region.getU(), region.getV(), region.getU2(), region.getV2());
+	}
+
 	@Override
 	public void dispose () {
 		super.dispose();
@@ -131,9 +200,27 @@ public class CompliantBatch<T extends Quad2D> extends FlexBatch<T> implements Ba
 	public void draw (Texture texture, float[] spriteVertices, int offset, int count) {
 		tmp.refresh();
 		tmp.texture(texture);
+		if (slotVertices != null) {
+			drawWithTextureSlot(spriteVertices, offset, count);
+			return;
+		}
 		super.draw(tmp, spriteVertices, offset, count, 5);
 	}
 
+	/** Draws Batch vertex data with the texture slot of {@link #tmp} appended to each vertex. */
+	private void drawWithTextureSlot (float[] spriteVertices, int offset, int count) {
+		prepareExplicit(tmp);
+		final float slot = getRenderContext().getAssignedTextureSlot();
+		final int vertexCount = count / 5;
+		if (slotVertices.length < vertexCount * 6) slotVertices = new float[vertexCount * 6];
+		final float[] vertices = slotVertices;
+		for (int i = 0, src = offset, dst = 0; i < vertexCount; i++, src += 5, dst += 6) {
+			System.arraycopy(spriteVertices, src, vertices, dst, 5);
+			vertices[dst + 5] = slot;
+		}
+		super.draw(tmp, vertices, 0, vertexCount * 6, 6);
+	}
+
 	@Override
 	public void draw (Texture texture, float x, float y, float originX, float originY, float width, float height, float scaleX,
 		float scaleY, float rotation, int srcX, int srcY, int srcWidth, int srcHeight, boolean flipX, boolean flipY) {
@@ -143,8 +230,8 @@ public class CompliantBatch<T extends Quad2D> extends FlexBatch<T> implements Ba
 		float v = (srcY + srcHeight) * invTexHeight;
 		float u2 = (srcX + srcWidth) * invTexWidth;
 		float v2 = srcY * invTexHeight;
-		draw().color(color).texture(texture).position(x, y).origin(originX, originY).size(width, height).scale(scaleX, scaleY)
-			.rotation(rotation).region(u, v, u2, v2).flip(flipX, flipY);
+		drawRegion(texture, u, v, u2, v2).position(x, y).origin(originX, originY).size(width, height).scale(scaleX, scaleY)
+			.rotation(rotation).flip(flipX, flipY);
 	}
 
 	@Override
@@ -156,7 +243,7 @@ public class CompliantBatch<T extends Quad2D> extends FlexBatch<T> implements Ba
 		float v = (srcY + srcHeight) * invTexHeight;
 		float u2 = (srcX + srcWidth) * invTexWidth;
 		float v2 = srcY * invTexHeight;
-		draw().color(color).texture(texture).position(x, y).size(width, height).region(u, v, u2, v2).flip(flipX, flipY);
+		drawRegion(texture, u, v, u2, v2).position(x, y).size(width, height).flip(flipX, flipY);
 	}
 
 	@Override
@@ -167,60 +254,72 @@ public class CompliantBatch<T extends Quad2D> extends FlexBatch<T> implements Ba
 		float v = (srcY + srcHeight) * invTexHeight;
 		float u2 = (srcX + srcWidth) * invTexWidth;
 		float v2 = srcY * invTexHeight;
-		draw().color(color).texture(texture).position(x, y).region(u, v, u2, v2);
+		drawRegion(texture, u, v, u2, v2).position(x, y);
 	}
 
 	@Override
 	public void draw (Texture texture, float x, float y, float width, float height, float u, float v, float u2, float v2) {
-		draw().color(color).texture(texture).position(x, y).size(width, height).region(u, v, u2, v2);
+		drawRegion(texture, u, v, u2, v2).position(x, y).size(width, height);
 	}
 
 	@Override
 	public void draw (Texture texture, float x, float y) {
-		draw().color(color).texture(texture).position(x, y);
+		drawRegion(texture, 0, 0, 1, 1).position(x, y);
 	}
 
 	@Override
 	public void draw (Texture texture, float x, float y, float width, float height) {
-		draw().color(color).texture(texture).position(x, y).size(width, height);
+		drawRegion(texture, 0, 0, 1, 1).position(x, y).size(width, height);
 	}
 
 	@Override
 	public void draw (TextureRegion region, float x, float y) {
-		draw().color(color).textureRegion(region).position(x, y);
+		drawRegion(region).position(x, y);
 	}
 
 	@Override
 	public void draw (TextureRegion region, float x, float y, float width, float height) {
-		draw().color(color).textureRegion(region).position(x, y).size(width, height);
+		drawRegion(region).position(x, y).size(width, height);
 	}
 
 	@Override
 	public void draw (TextureRegion region, float x, float y, float originX, float originY, float width, float height,
 		float scaleX, float scaleY, float rotation) {
-		draw().color(color).textureRegion(region).position(x, y).origin(originX, originY).size(width, height).scale(scaleX, scaleY)
+		drawRegion(region).position(x, y).origin(originX, originY).size(width, height).scale(scaleX, scaleY)
 			.rotation(rotation);
 	}
 
 	@Override
 	public void draw (TextureRegion region, float x, float y, float originX, float originY, float width, float height,
 		float scaleX, float scaleY, float rotation, boolean clockwise) {
-		draw().color(color).textureRegion(region).position(x, y).origin(originX, originY).size(width, height).scale(scaleX, scaleY)
+		drawRegion(region).position(x, y).origin(originX, originY).size(width, height).scale(scaleX, scaleY)
 			.rotation(rotation).rotateCoordinates90(clockwise);
 	}
 
 	@Override
 	public void draw (TextureRegion region, float width, float height, Affine2 transform) {
 		float[] vertices = tempVertices;
+		Texture texture = region.getTexture();
+		float u = region.getU(), v = region.getV(), u2 = region.getU2(), v2 = region.getV2();
+		if (dynamicAtlas != null) {
+			DynamicTextureAtlas.Entry entry = dynamicAtlas.obtain(texture, u, v, u2, v2, getRenderContext());
+			if (entry != null) {
+				texture = entry.getTexture();
+				u = entry.mapU(u);
+				v = entry.mapV(v);
+				u2 = entry.mapU(u2);
+				v2 = entry.mapV(v2);
+			}
+		}
 
-		vertices[U1] = region.getU();
-		vertices[V1] = region.getV2();
-		vertices[U2] = region.getU();
-		vertices[V2] = region.getV();
-		vertices[U3] = region.getU2();
-		vertices[V3] = region.getV();
-		vertices[U4] = region.getU2();
-		vertices[V4] = region.getV2();
+		vertices[U1] = u;
+		vertices[V1] = v2;
+		vertices[U2] = u;
+		vertices[V2] = v;
+		vertices[U3] = u2;
+		vertices[V3] = v;
+		vertices[U4] = u2;
+		vertices[V4] = v2;
 
 		float color = this.color;
 		vertices[C1] = color;
@@ -238,7 +337,7 @@ public class CompliantBatch<T extends Quad2D> extends FlexBatch<T> implements Ba
 		vertices[X4] = transform.m00 * width + transform.m02;
 		vertices[Y4] = transform.m10 * width + transform.m12;
 
-		draw(region.getTexture(), vertices, 0, 20);
+		draw(texture, vertices, 0, 20);
 	}
 
 }
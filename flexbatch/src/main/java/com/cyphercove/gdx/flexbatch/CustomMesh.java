@@ -0,0 +1,14 @@
+package com.cyphercove.gdx.flexbatch;
+
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.glutils.IndexData;
+import com.badlogic.gdx.graphics.glutils.VertexData;
+
+/** A Mesh backed by a custom VertexData and/or IndexData, so they are still managed for context loss.
+ * 
+ * @author cypherdare */
+class CustomMesh extends Mesh {
+	CustomMesh (VertexData vertices, IndexData indices) {
+		super(vertices, indices, false);
+	}
+}
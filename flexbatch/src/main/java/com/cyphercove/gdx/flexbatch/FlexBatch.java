@@ -2,6 +2,11 @@
 package com.cyphercove.gdx.flexbatch;
 
 import java.lang.reflect.Modifier;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.GL20;
@@ -9,13 +14,26 @@ import com.badlogic.gdx.graphics.Mesh;
 import com.badlogic.gdx.graphics.Mesh.VertexDataType;
 import com.badlogic.gdx.graphics.VertexAttribute;
 import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.IndexBufferObject;
 import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.graphics.glutils.VertexArray;
+import com.badlogic.gdx.graphics.glutils.VertexBufferObjectWithVAO;
+import com.badlogic.gdx.graphics.glutils.VertexData;
 import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongArray;
 import com.cyphercove.gdx.flexbatch.Batchable.FixedSizeBatchable;
 import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.GLStateTracker;
+import com.cyphercove.gdx.flexbatch.utils.InstancedQuadVertexData;
+import com.cyphercove.gdx.flexbatch.utils.IntIndexBufferObject;
+import com.cyphercove.gdx.flexbatch.utils.MappedRingVertexBuffer;
+import com.cyphercove.gdx.flexbatch.utils.OrphaningVertexBuffer;
 import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+import com.cyphercove.gdx.flexbatch.utils.RoundRobinVertexBuffer;
 
 /** Draws batched {@link Batchable} objects, optimizing the drawing process by combining them into a single Mesh. FlexBatch can be
  * customized to batch almost any kind of small object by defining how to draw the object in a Batchable implementation. Most of
@@ -43,8 +61,32 @@ import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
  * names {@code "u_texture0"}, {@code "u_texture1"}, etc., but this can be customized by overriding
  * {@link #applyTextureUniforms()}.
  * <p>
- * Other uniforms can be manually applied to the shader in between calls to {@link #begin()} and {@link #end()}. Take care of when
- * these changes are made in relation to batch flushes, as only the most recently set uniforms are used when a flush occurs.
+ * Other uniforms can be set with {@link #setUniformf(String, float)} and related methods, which flush only if the value changes,
+ * or by Batchables in their {@link Batchable#prepareContext(RenderContextAccumulator, int, int) prepareContext()}. Uniforms
+ * can also be manually applied to the shader in between calls to {@link #begin()} and {@link #end()}. Take care of when these
+ * changes are made in relation to batch flushes, as only the most recently set uniforms are used when a flush occurs.
+ * <p>
+ * The technique used to upload vertex data on each flush can be selected in the constructor with an {@link UploadStrategy}. If
+ * many flushes occur per frame, a strategy other than the default may avoid stalls while the GPU is still drawing from the
+ * previous flush's data.
+ * <p>
+ * By default, vertex data is staged in an array and copied into the Mesh on each flush. The FlexBatch can instead be constructed
+ * to have Batchables write their vertex data directly into the Mesh's vertex buffer, which avoids the copy and the memory of the
+ * staging array. In that case, every drawn Batchable type must support
+ * {@link Batchable#apply(FloatBuffer, int, AttributeOffsets, int)}.
+ * <p>
+ * A FlexBatch instantiated with an instanced FixedSizeBatchable type, such as
+ * {@link com.cyphercove.gdx.flexbatch.batchable.InstancedQuad2D InstancedQuad2D}, draws with hardware instancing. One record is
+ * uploaded per Batchable and expanded into a quad by the vertex shader. This requires GL30.
+ * <p>
+ * In {@link #setDeferred(boolean) deferred mode}, drawn Batchables are recorded along with their render context instead of
+ * being queued immediately. When the FlexBatch is flushed, the recorded Batchables are grouped by render context and submitted
+ * with as few draw calls as possible. Batchables in the same {@link #setDrawLayer(int) layer} may be drawn out of order, so this
+ * is suitable for content that does not overlap or that does not depend on draw order.
+ * <p>
+ * When an executor is provided with {@link #setParallelVertexGeneration(ExecutorService, int)}, a FlexBatch that is limited to
+ * FixedSizeBatchables can apply the vertex data of large arrays of Batchables on multiple threads. See
+ * {@link #draw(Batchable[], int, int)}.
  * <p>
  * <i>This API is based on SpriteBatch and NewSpriteBatch from the LibGDX project.</i>
  * 
@@ -54,18 +96,51 @@ import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
  * @author cypherdare */
 public class FlexBatch<T extends Batchable> implements Disposable {
 
+	/** Techniques for uploading the vertex data to the GPU on each flush. */
+	public enum UploadStrategy {
+		/** The vertex data is copied into a single buffer on each flush. This is the same technique used by SpriteBatch. The
+		 * driver may stall while the GPU is still drawing from that buffer. */
+		SubData,
+		/** The buffer's data store is reallocated (orphaned) before the vertex data is copied into it on each flush, so the driver
+		 * can provide fresh memory instead of waiting for draw calls that are still reading the old data store. */
+		Orphaning,
+		/** The vertex data is written into consecutive segments of a large buffer that is mapped unsynchronized, so the upload
+		 * never waits on the GPU. The buffer is orphaned when the ring wraps around. Requires GL30 and a backend that provides
+		 * glMapBufferRange, and falls back to {@link #Orphaning} otherwise. */
+		MappedRing,
+		/** The vertex data is copied into one of several buffers on each flush, cycling through them so the buffer being written
+		 * to is most likely no longer in use by the GPU. */
+		RoundRobin
+	}
+
+	/** The number of full batches that fit in the ring buffer of the {@link UploadStrategy#MappedRing} strategy. */
+	private static final int RING_SEGMENTS = 8;
+	/** The number of buffers cycled through by the {@link UploadStrategy#RoundRobin} strategy. */
+	private static final int ROUND_ROBIN_BUFFERS = 4;
+	/** The limits of deferred commands, which are sorted by a key of the draw layer, state ID, and command index. */
+	private static final int MAX_DEFERRED_COMMANDS = 1 << 24, MAX_DEFERRED_STATES = 1 << 16;
+	private static final int MIN_DRAW_LAYER = -(1 << 23), MAX_DRAW_LAYER = (1 << 23) - 1;
+	/** The fewest Batchables given to each thread for parallel vertex generation, below which threading isn't worth the cost. */
+	private static final int MIN_BATCHABLES_PER_TASK = 128;
+
 	public final Class<T> batchableType;
 	private T internalBatchable;
 	private boolean havePendingInternal;
 	private final Mesh mesh;
 	private final AttributeOffsets attributeOffsets;
-	private final float[] vertices;
-	private final short[] triangles;
+	private final float[] vertices; // null if writing directly to vertexBuffer
+	private final FloatBuffer vertexBuffer; // null if staging in vertices
+	private final int vertexDataCapacity;
+	private final short[] triangles; // null if using 32-bit indices
+	private final int[] intTriangles; // null if using 16-bit indices
+	private final IntIndexBufferObject intIndexBuffer; // null if using 16-bit indices
 	private int vertIdx, triIdx;
 	private int unfixedVertCount; // only for non-fixed indices, for
 	// optimization
 	private final int maxVertices, vertexSize, maxIndices;
 	private final boolean fixedIndices;
+	private final boolean instanced;
+	private final UploadStrategy uploadStrategy;
 
 	// only for fixedIndices
 	private final int indicesPerBatchable, verticesPerBatchable, vertexDataPerBatchable;
@@ -76,12 +151,32 @@ public class FlexBatch<T extends Batchable> implements Disposable {
 	public int renderCalls = 0;
 	/** Number of rendering calls, ever. Will not be reset unless set manually. **/
 	public int totalRenderCalls = 0;
+	/** Number of render calls since the last {@link #begin()} that deferred Batchables would have needed if they had been
+	 * submitted in the order they were drawn, for comparison with {@link #renderCalls}. Only counted in deferred mode. **/
+	public int unsortedRenderCalls = 0;
+
+	private boolean deferred;
+	private int drawLayer;
+	// Deferred vertex data and relative triangle indices, and four ints per command: vertex offset, vertex data count, index
+	// offset, and index count.
+	private float[] deferredVertices;
+	private short[] deferredTriangles; // null if using fixed indices
+	private int deferredVertIdx, deferredTriIdx;
+	private final IntArray deferredCommands = new IntArray();
+	private final LongArray deferredKeys = new LongArray();
+	private final Array<RenderContextAccumulator.Snapshot> deferredStates = new Array<RenderContextAccumulator.Snapshot>();
+	private final RenderContextAccumulator.Snapshot recordingState = new RenderContextAccumulator.Snapshot();
+	private int deferredStateCount, deferredStateId = -1, lastRecordedStateId = -1;
+	private boolean deferredStateChanged;
+	private int unsortedVertexData, unsortedIndices;
+
+	private ExecutorService vertexExecutor;
+	private VertexGenerationTask[] vertexTasks;
+	private Future<?>[] vertexFutures;
 
 	private final Matrix4 transformMatrix = new Matrix4();
 	private final Matrix4 projectionMatrix = new Matrix4();
-	private final Matrix4 combinedMatrix = new Matrix4();
-
-	private String[] textureUnitUniforms;
+	private final BatchUniforms uniforms;
 
 	private RenderContextAccumulator renderContext;
 
@@ -92,17 +187,60 @@ public class FlexBatch<T extends Batchable> implements Disposable {
 	 * 
 	 * @param batchableType The type of Batchable that defines the VertexAttributes supported by this FlexBatch, and the + *
 	 *           default Batchable type drawn by the {@link #draw()} method.
-	 * @param maxVertices The number of vertices this FlexBatch can batch at once. Maximum of 32767. If the Batchable is a
-	 *           FixedSizeBatchable and 0 is used for maxTriangles, this value will be rounded down to a multiple of the
-	 *           Batchable's size.
+	 * @param maxVertices The number of vertices this FlexBatch can batch at once. If the Batchable is a FixedSizeBatchable and 0
+	 *           is used for maxTriangles, this value will be rounded down to a multiple of the Batchable's size. Above 32767
+	 *           (or 65536 if only FixedSizeBatchables are drawn), 32-bit indices are used, which requires GL30 or the
+	 *           OES_element_index_uint extension. See {@link IntIndexBufferObject#isSupported()}. If the Batchable is
+	 *           instanced, this is the number of instances.
 	 * @param maxTriangles The number of triangles this FlexBatch can batch at once, or 0 to optimize this FlexBatch to draw only
 	 *           FixedSizeBatchables. */
 	public FlexBatch (Class<T> batchableType, int maxVertices, int maxTriangles) {
-		// 32767 is max vertex index.
-		if (maxVertices > 32767)
-			throw new IllegalArgumentException("Can't have more than 32767 vertices per batch: " + maxTriangles);
+		this(batchableType, maxVertices, maxTriangles, UploadStrategy.SubData);
+	}
+
+	/** Construct a FlexBatch capable of drawing the given Batchable type and other compatible Batchables (ones with the same
+	 * VertexAttributes or subset of beginning VertexAttributes), using a specific technique to upload vertex data on each flush.
+	 * 
+	 * @param batchableType The type of Batchable that defines the VertexAttributes supported by this FlexBatch, and the
+	 *           default Batchable type drawn by the {@link #draw()} method.
+	 * @param maxVertices The number of vertices this FlexBatch can batch at once. If the Batchable is a FixedSizeBatchable and 0
+	 *           is used for maxTriangles, this value will be rounded down to a multiple of the Batchable's size. Above 32767
+	 *           (or 65536 if only FixedSizeBatchables are drawn), 32-bit indices are used, which requires GL30 or the
+	 *           OES_element_index_uint extension. See {@link IntIndexBufferObject#isSupported()}. If the Batchable is
+	 *           instanced, this is the number of instances.
+	 * @param maxTriangles The number of triangles this FlexBatch can batch at once, or 0 to optimize this FlexBatch to draw only
+	 *           FixedSizeBatchables.
+	 * @param uploadStrategy The technique used to upload vertex data. If it is not supported, a fallback is used. The strategy
+	 *           actually in use can be checked with {@link #getUploadStrategy()}. */
+	public FlexBatch (Class<T> batchableType, int maxVertices, int maxTriangles, UploadStrategy uploadStrategy) {
+		this(batchableType, maxVertices, maxTriangles, uploadStrategy, false);
+	}
+
+	/** Construct a FlexBatch capable of drawing the given Batchable type and other compatible Batchables (ones with the same
+	 * VertexAttributes or subset of beginning VertexAttributes), using a specific technique to upload vertex data on each flush,
+	 * and optionally having Batchables write their vertex data directly into the Mesh's vertex buffer.
+	 * 
+	 * @param batchableType The type of Batchable that defines the VertexAttributes supported by this FlexBatch, and the
+	 *           default Batchable type drawn by the {@link #draw()} method.
+	 * @param maxVertices The number of vertices this FlexBatch can batch at once. If the Batchable is a FixedSizeBatchable and 0
+	 *           is used for maxTriangles, this value will be rounded down to a multiple of the Batchable's size. Above 32767
+	 *           (or 65536 if only FixedSizeBatchables are drawn), 32-bit indices are used, which requires GL30 or the
+	 *           OES_element_index_uint extension. See {@link IntIndexBufferObject#isSupported()}. If the Batchable is
+	 *           instanced, this is the number of instances.
+	 * @param maxTriangles The number of triangles this FlexBatch can batch at once, or 0 to optimize this FlexBatch to draw only
+	 *           FixedSizeBatchables.
+	 * @param uploadStrategy The technique used to upload vertex data. If it is not supported, a fallback is used. The strategy
+	 *           actually in use can be checked with {@link #getUploadStrategy()}.
+	 * @param directVertices Whether Batchables write their vertex data directly into the Mesh's vertex buffer instead of a
+	 *           staging array. If true, the batchableType must override
+	 *           {@link Batchable#apply(FloatBuffer, int, AttributeOffsets, int)}. Other Batchable types drawn with
+	 *           this FlexBatch must also support it, but this is not checked. */
+	public FlexBatch (Class<T> batchableType, int maxVertices, int maxTriangles, UploadStrategy uploadStrategy,
+		boolean directVertices) {
 		if (Modifier.isAbstract(batchableType.getModifiers()))
 			throw new IllegalArgumentException("Can't use an abstract batchableType");
+		if (directVertices && !Batchable.supportsBufferApply(batchableType)) throw new IllegalArgumentException(
+			"batchableType must override apply(FloatBuffer, int, AttributeOffsets, int) to use directVertices.");
 
 		this.batchableType = batchableType;
 
@@ -117,39 +255,114 @@ public class FlexBatch<T extends Batchable> implements Disposable {
 		VertexAttributes vertexAttributes = new VertexAttributes(attributesArray.toArray());
 		attributeOffsets = new AttributeOffsets(vertexAttributes);
 		vertexSize = vertexAttributes.vertexSize / 4;
-		final int vertexArraySize = vertexSize * maxVertices;
-		vertices = new float[vertexArraySize];
 		fixedIndices = internalBatchable instanceof FixedSizeBatchable && maxTriangles == 0;
+		instanced = internalBatchable instanceof FixedSizeBatchable && ((FixedSizeBatchable)internalBatchable).isInstanced();
+		if (instanced) {
+			if (!fixedIndices) throw new IllegalArgumentException("maxTriangles must be 0 if batchableType is instanced");
+			if (Gdx.gl30 == null) throw new IllegalStateException("Instanced Batchables require GL30.");
+		}
 
-		if (fixedIndices) {
+		// Fixed indices are generated once and can use the full unsigned short range. Batchables that apply their own indices
+		// are given a signed short first vertex. Instances all share the indices of a single quad. A batch of fixed-size
+		// Batchables only holds whole Batchables, so its size is rounded down before checking whether it fits.
+		final int maxShortIndexedVertices = fixedIndices ? 65536 : 32767;
+		final int roundedMaxVertices = fixedIndices && !instanced
+			? maxVertices - (maxVertices % ((FixedSizeBatchable)internalBatchable).getVerticesPerBatchable()) : maxVertices;
+		final boolean intIndices = !instanced && roundedMaxVertices > maxShortIndexedVertices;
+		if (intIndices && !IntIndexBufferObject.isSupported()) throw new IllegalArgumentException("Can't have more than "
+			+ maxShortIndexedVertices + " vertices per batch without GL30 or OES_element_index_uint: " + roundedMaxVertices);
+
+		if (instanced) {
+			// Each instance record is treated as a single vertex.
+			FixedSizeBatchable fixedSizeBatchable = (FixedSizeBatchable)internalBatchable;
+			verticesPerBatchable = 1;
+			vertexDataPerBatchable = vertexSize;
+			this.maxVertices = maxVertices;
+			indicesPerBatchable = maxIndices = fixedSizeBatchable.getTrianglesPerBatchable() * 3;
+			triangles = new short[maxIndices];
+			intTriangles = null;
+			fixedSizeBatchable.populateTriangleIndices(triangles);
+		} else if (fixedIndices) {
 			FixedSizeBatchable fixedSizeBatchable = (FixedSizeBatchable)internalBatchable;
 			verticesPerBatchable = fixedSizeBatchable.getVerticesPerBatchable();
 			vertexDataPerBatchable = verticesPerBatchable * vertexSize;
-			this.maxVertices = maxVertices - (maxVertices % verticesPerBatchable);
+			this.maxVertices = roundedMaxVertices;
 			this.maxIndices = (this.maxVertices / verticesPerBatchable) * fixedSizeBatchable.getTrianglesPerBatchable() * 3;
 			indicesPerBatchable = fixedSizeBatchable.getTrianglesPerBatchable() * 3;
-			triangles = new short[maxIndices];
-			fixedSizeBatchable.populateTriangleIndices(triangles);
+			if (intIndices) {
+				triangles = null;
+				intTriangles = new int[maxIndices];
+				fixedSizeBatchable.populateTriangleIndices(intTriangles);
+			} else {
+				triangles = new short[maxIndices];
+				intTriangles = null;
+				fixedSizeBatchable.populateTriangleIndices(triangles);
+			}
 		} else {
 			if (maxTriangles == 0) throw new IllegalArgumentException(
 				"maxTriangles must be greater than 0 if batchableType is not a FixedSizeBatchable");
 			this.maxVertices = maxVertices;
 			maxIndices = maxTriangles * 3;
-			triangles = new short[maxIndices];
+			triangles = intIndices ? null : new short[maxIndices];
+			intTriangles = intIndices ? new int[maxIndices] : null;
 			indicesPerBatchable = verticesPerBatchable = vertexDataPerBatchable = 0;
 		}
 
-		Mesh.VertexDataType vertexDataType = Gdx.gl30 != null ? VertexDataType.VertexBufferObjectWithVAO
-			: Mesh.VertexDataType.VertexArray;
-		mesh = new Mesh(vertexDataType, false, this.maxVertices, maxIndices, attributesArray.toArray());
-		if (fixedIndices) mesh.setIndices(triangles);
+		if (uploadStrategy == UploadStrategy.MappedRing && !MappedRingVertexBuffer.isSupported())
+			uploadStrategy = UploadStrategy.Orphaning;
+		this.uploadStrategy = uploadStrategy;
+		VertexData vertexData;
+		switch (uploadStrategy) {
+		case Orphaning:
+			vertexData = new OrphaningVertexBuffer(this.maxVertices, vertexAttributes);
+			break;
+		case MappedRing:
+			vertexData = new MappedRingVertexBuffer(this.maxVertices, vertexAttributes, RING_SEGMENTS);
+			break;
+		case RoundRobin:
+			vertexData = new RoundRobinVertexBuffer(this.maxVertices, vertexAttributes, ROUND_ROBIN_BUFFERS);
+			break;
+		default:
+			vertexData = null;
+			break;
+		}
+		if (instanced) {
+			if (vertexData == null) vertexData = new VertexBufferObjectWithVAO(false, this.maxVertices, vertexAttributes);
+			intIndexBuffer = null;
+			mesh = new CustomMesh(new InstancedQuadVertexData(vertexData), new IndexBufferObject(true, maxIndices));
+			mesh.setIndices(triangles);
+		} else if (intIndices) {
+			if (vertexData == null) vertexData = Gdx.gl30 != null
+				? new VertexBufferObjectWithVAO(false, this.maxVertices, vertexAttributes)
+				: new VertexArray(this.maxVertices, vertexAttributes);
+			intIndexBuffer = new IntIndexBufferObject(fixedIndices, maxIndices);
+			mesh = new CustomMesh(vertexData, intIndexBuffer);
+			if (fixedIndices) intIndexBuffer.setIndices(intTriangles, 0, maxIndices);
+		} else {
+			intIndexBuffer = null;
+			if (vertexData != null) {
+				mesh = new CustomMesh(vertexData, new IndexBufferObject(fixedIndices, maxIndices));
+			} else {
+				Mesh.VertexDataType vertexDataType = Gdx.gl30 != null ? VertexDataType.VertexBufferObjectWithVAO
+					: Mesh.VertexDataType.VertexArray;
+				mesh = new Mesh(vertexDataType, false, this.maxVertices, maxIndices, attributesArray.toArray());
+			}
+			if (fixedIndices) mesh.setIndices(triangles);
+		}
 
-		textureUnitUniforms = new String[internalBatchable.getNumberOfTextures()];
-		for (int i = 0; i < textureUnitUniforms.length; i++) {
-			;
-			textureUnitUniforms[i] = "u_texture" + i;
+		if (directVertices) {
+			vertices = null;
+			vertexBuffer = mesh.getVerticesBuffer();
+			vertexBuffer.clear();
+			vertexDataCapacity = vertexBuffer.capacity();
+		} else {
+			vertexDataCapacity = vertexSize * this.maxVertices;
+			vertices = new float[vertexDataCapacity];
+			vertexBuffer = null;
 		}
 
+		uniforms = new BatchUniforms(internalBatchable.getNumberOfTextureUnits());
+
 		projectionMatrix.setToOrtho2D(0, 0, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
 
 		renderContext = new RenderContextAccumulator();
@@ -160,11 +373,15 @@ public class FlexBatch<T extends Batchable> implements Disposable {
 	public void begin () {
 		if (drawing) throw new IllegalStateException("end() must be called before begin().");
 		renderCalls = 0;
+		unsortedRenderCalls = 0;
 
 		renderContext.begin();
 		internalBatchable.prepareSharedContext(renderContext);
 		shader.begin();
+		renderContext.setShader(shader);
+		uniforms.invalidate();
 		applyMatrices();
+		applyTextureUniforms();
 
 		drawing = true;
 	}
@@ -175,6 +392,7 @@ public class FlexBatch<T extends Batchable> implements Disposable {
 		drawing = false;
 
 		renderContext.end();
+		renderContext.setShader(null);
 
 		// Avoid hanging onto native resource object references
 		renderContext.clearAllTextureUnits();
@@ -214,17 +432,196 @@ public class FlexBatch<T extends Batchable> implements Disposable {
 	public void draw (Batchable batchable) {
 		if (havePendingInternal) drawPending();
 		if (!drawing) throw new IllegalStateException("begin() must be called before drawing.");
-		if (fixedIndices) {
-			if (batchable.prepareContext(renderContext, maxVertices - vertIdx / vertexSize, 0)) flush();
-			batchable.apply(vertices, vertIdx, attributeOffsets, vertexSize);
-			triIdx += indicesPerBatchable;
-			vertIdx += vertexDataPerBatchable;
+		if (deferred)
+			drawDeferred(batchable);
+		else if (fixedIndices)
+			drawFixed(batchable);
+		else
+			drawUnfixed(batchable);
+	}
+
+	private void drawFixed (Batchable batchable) {
+		if (batchable.prepareContext(renderContext, maxVertices - vertIdx / vertexSize, 0)) flush();
+		batchable.applyVertices(vertices, vertexBuffer, vertIdx, attributeOffsets, vertexSize);
+		triIdx += indicesPerBatchable;
+		vertIdx += vertexDataPerBatchable;
+	}
+
+	private void drawUnfixed (Batchable batchable) {
+		if (batchable.prepareContext(renderContext, maxVertices - unfixedVertCount, maxIndices - triIdx)) flush();
+		triIdx += applyTriangles(batchable);
+		int verticesAdded = batchable.applyVertices(vertices, vertexBuffer, vertIdx, attributeOffsets, vertexSize);
+		unfixedVertCount += verticesAdded;
+		vertIdx += vertexSize * verticesAdded;
+	}
+
+	/** Queues an array of Batchables for drawing, in order. The same restrictions apply as for {@link #draw(Batchable)}. The state
+	 * of the FlexBatch is checked only once, but the cost of each Batchable is dominated by applying its vertex data, so this is
+	 * not measurably faster than drawing each Batchable individually unless vertex data is applied on multiple threads.
+	 * <p>
+	 * If this FlexBatch is limited to FixedSizeBatchables and is not in deferred mode, the render context of each Batchable is
+	 * prepared first. The capacity is checked once for each run of Batchables that can be drawn without a flush, and then the
+	 * vertex data of the run is applied in a tight loop. If parallel vertex generation has been
+	 * {@link #setParallelVertexGeneration(ExecutorService, int) enabled}, each run is applied on multiple threads, each filling a
+	 * separate slice of the vertex data, and {@link Batchable#setMemoized(boolean) memoized} vertex data is neither used nor
+	 * updated for runs that are split across threads. The Batchables must not be modified by other threads until this method
+	 * returns.
+	 * @param batchables The Batchables to draw.
+	 * @param offset The index of the first Batchable to draw.
+	 * @param count The number of Batchables to draw. */
+	public void draw (Batchable[] batchables, int offset, int count) {
+		drawAll(batchables, offset, count);
+	}
+
+	/** Queues an Array of Batchables for drawing, in order. See {@link #draw(Batchable[], int, int)}. */
+	public void draw (Array<? extends Batchable> batchables) {
+		drawAll(batchables.items, 0, batchables.size);
+	}
+
+	/** Queues Batchables for drawing, in the order they are iterated. The same restrictions apply as for
+	 * {@link #draw(Batchable)}. The state of the FlexBatch is checked only once. Unlike {@link #draw(Batchable[], int, int)},
+	 * vertex data is never applied on multiple threads. */
+	public void draw (Iterable<? extends Batchable> batchables) {
+		if (havePendingInternal) drawPending();
+		if (!drawing) throw new IllegalStateException("begin() must be called before drawing.");
+		if (deferred) {
+			for (Batchable batchable : batchables)
+				drawDeferred(batchable);
+		} else if (!fixedIndices) {
+			for (Batchable batchable : batchables)
+				drawUnfixed(batchable);
 		} else {
-			if (batchable.prepareContext(renderContext, maxVertices - unfixedVertCount, maxIndices - triIdx)) flush();
-			triIdx += batchable.apply(triangles, triIdx, (short)unfixedVertCount);
-			int verticesAdded = batchable.apply(vertices, vertIdx, attributeOffsets, vertexSize);
-			unfixedVertCount += verticesAdded;
-			vertIdx += vertexSize * verticesAdded;
+			// Full capacity is passed so only changes to the render context are reported. The capacity is tracked here instead.
+			final int batchCapacity = vertexDataCapacity / vertexDataPerBatchable;
+			int remaining = (vertexDataCapacity - vertIdx) / vertexDataPerBatchable;
+			for (Batchable batchable : batchables) {
+				if (batchable.prepareContext(renderContext, maxVertices, 0) || remaining == 0) {
+					flush();
+					remaining = batchCapacity;
+				}
+				batchable.applyVertices(vertices, vertexBuffer, vertIdx, attributeOffsets, vertexSize);
+				triIdx += indicesPerBatchable;
+				vertIdx += vertexDataPerBatchable;
+				remaining--;
+			}
+		}
+	}
+
+	/** Draws the Batchables in an array that may have any component type, such as the backing array of an {@link Array}. */
+	private void drawAll (Object[] batchables, int offset, int count) {
+		if (havePendingInternal) drawPending();
+		if (!drawing) throw new IllegalStateException("begin() must be called before drawing.");
+		final int end = offset + count;
+		if (deferred) {
+			for (int i = offset; i < end; i++)
+				drawDeferred((Batchable)batchables[i]);
+			return;
+		}
+		if (!fixedIndices) {
+			for (int i = offset; i < end; i++)
+				drawUnfixed((Batchable)batchables[i]);
+			return;
+		}
+
+		// Full capacity is passed so only changes to the render context are reported. Each run of Batchables that fits is
+		// reserved and then applied before the flush.
+		final int batchCapacity = vertexDataCapacity / vertexDataPerBatchable;
+		int runCapacity = (vertexDataCapacity - vertIdx) / vertexDataPerBatchable;
+		int runStart = offset;
+		for (int i = offset; i < end; i++) {
+			if (((Batchable)batchables[i]).prepareContext(renderContext, maxVertices, 0) || i - runStart == runCapacity) {
+				queueRun(batchables, runStart, i);
+				flush();
+				runStart = i;
+				runCapacity = batchCapacity;
+			}
+		}
+		queueRun(batchables, runStart, end);
+	}
+
+	/** Applies the vertex data of a run of FixedSizeBatchables that fits in the remaining capacity, and queues it. */
+	private void queueRun (Object[] batchables, int from, int to) {
+		final int count = to - from;
+		if (count == 0) return;
+		if (vertexExecutor != null)
+			applyParallel(batchables, from, to, vertIdx);
+		else
+			applyRange(batchables, from, to, vertIdx);
+		vertIdx += count * vertexDataPerBatchable;
+		triIdx += count * indicesPerBatchable;
+	}
+
+	/** Applies the vertex data of a range of FixedSizeBatchables on multiple threads, starting at the given vertex data index.
+	 * This thread applies the first slice. */
+	private void applyParallel (Object[] batchables, int from, int to, int vertexDataIndex) {
+		final int count = to - from;
+		final int taskCount = Math.min(vertexTasks.length + 1, count / MIN_BATCHABLES_PER_TASK);
+		if (taskCount <= 1) {
+			applyRange(batchables, from, to, vertexDataIndex);
+			return;
+		}
+
+		final int perTask = (count + taskCount - 1) / taskCount;
+		final int submitted = taskCount - 1;
+		for (int t = 0; t < submitted; t++) {
+			final int taskFrom = from + perTask * (t + 1);
+			VertexGenerationTask task = vertexTasks[t];
+			task.batchables = batchables;
+			task.from = taskFrom;
+			task.to = Math.min(taskFrom + perTask, to);
+			task.vertexDataIndex = vertexDataIndex + perTask * (t + 1) * vertexDataPerBatchable;
+			vertexFutures[t] = vertexExecutor.submit(task);
+		}
+		try {
+			applySlice(batchables, from, from + perTask, vertexDataIndex);
+		} finally {
+			awaitVertexTasks(submitted);
+		}
+	}
+
+	private void awaitVertexTasks (int submitted) {
+		GdxRuntimeException exception = null;
+		for (int t = 0; t < submitted; t++) {
+			try {
+				vertexFutures[t].get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				if (exception == null) exception = new GdxRuntimeException("Interrupted while applying vertex data.", e);
+			} catch (ExecutionException e) {
+				if (exception == null) exception = new GdxRuntimeException("Failed to apply vertex data.", e.getCause());
+			}
+			vertexFutures[t] = null;
+			vertexTasks[t].batchables = null;
+		}
+		if (exception != null) throw exception;
+	}
+
+	private void applyRange (Object[] batchables, int from, int to, int vertexDataIndex) {
+		for (int i = from; i < to; i++, vertexDataIndex += vertexDataPerBatchable) {
+			((Batchable)batchables[i]).applyVertices(vertices, vertexBuffer, vertexDataIndex, attributeOffsets, vertexSize);
+		}
+	}
+
+	/** Applies a slice of a range that is being applied on multiple threads. Memoized vertex caches are bypassed, because the
+	 * same Batchable may appear in more than one slice. */
+	private void applySlice (Object[] batchables, int from, int to, int vertexDataIndex) {
+		for (int i = from; i < to; i++, vertexDataIndex += vertexDataPerBatchable) {
+			((Batchable)batchables[i]).applyVertices(vertices, vertexBuffer, vertexDataIndex, attributeOffsets, vertexSize,
+				false);
+		}
+	}
+
+	private static class VertexGenerationTask implements Runnable {
+		final FlexBatch<?> flexBatch;
+		Object[] batchables;
+		int from, to, vertexDataIndex;
+
+		VertexGenerationTask (FlexBatch<?> flexBatch) {
+			this.flexBatch = flexBatch;
+		}
+
+		public void run () {
+			flexBatch.applySlice(batchables, from, to, vertexDataIndex);
 		}
 	}
 
@@ -241,27 +638,23 @@ public class FlexBatch<T extends Batchable> implements Disposable {
 	 *           garbage, but this may be acceptable if the current shader doesn't use them. It is assumed that the
 	 *           VertexAttributes being drawn match the first of the VertexAttributes of the Batchable type. */
 	protected void draw (FixedSizeBatchable batchable, float[] explicitVertices, int offset, int count, int vertexSize) {
-		if (havePendingInternal) drawPending();
-		if (!drawing) throw new IllegalStateException("begin() must be called before drawing.");
-		if (batchable.prepareContext(renderContext, maxVertices - vertIdx / vertexSize, 0)) {
-			flush();
-		}
+		prepareExplicit(batchable);
 
-		int verticesLength = vertices.length;
+		int verticesLength = vertexDataCapacity;
 		int remainingVertices = verticesLength - vertIdx;
 		// room for at least one Batchable size is assured by prepareContext()
 		// call above
 
 		if (this.vertexSize == vertexSize) {
 			int copyCount = Math.min(remainingVertices, count);
-			System.arraycopy(explicitVertices, offset, vertices, vertIdx, copyCount);
+			copyVertices(explicitVertices, offset, copyCount);
 			vertIdx += copyCount;
 			if (fixedIndices)
 				triIdx += (copyCount / this.vertexDataPerBatchable) * this.indicesPerBatchable;
 			else {
 				int verticesPerBatchable = batchable.getVerticesPerBatchable();
 				for (int i = 0, n = copyCount / (verticesPerBatchable * vertexSize); i < n; i++) {
-					int indicesAdded = batchable.apply(triangles, triIdx, (short)unfixedVertCount);
+					int indicesAdded = applyTriangles(batchable);
 					triIdx += indicesAdded;
 					unfixedVertCount += verticesPerBatchable;
 				}
@@ -271,14 +664,14 @@ public class FlexBatch<T extends Batchable> implements Disposable {
 				offset += copyCount;
 				flush();
 				copyCount = Math.min(verticesLength, count);
-				System.arraycopy(explicitVertices, offset, vertices, vertIdx, copyCount);
+				copyVertices(explicitVertices, offset, copyCount);
 				vertIdx += copyCount;
 				if (fixedIndices)
 					triIdx += (copyCount / this.vertexDataPerBatchable) * this.indicesPerBatchable;
 				else {
 					int verticesPerBatchable = batchable.getVerticesPerBatchable();
 					for (int i = 0, n = copyCount / (verticesPerBatchable * vertexSize); i < n; i++) {
-						int indicesAdded = batchable.apply(triangles, triIdx, (short)unfixedVertCount);
+						int indicesAdded = applyTriangles(batchable);
 						triIdx += indicesAdded;
 						unfixedVertCount += verticesPerBatchable;
 					}
@@ -290,7 +683,7 @@ public class FlexBatch<T extends Batchable> implements Disposable {
 			int dstCopyCount = Math.min(remainingVertices, dstCount);
 			int vertexCount = dstCopyCount / this.vertexSize;
 			for (int i = 0; i < vertexCount; i++) {
-				System.arraycopy(explicitVertices, offset, vertices, vertIdx, vertexSize);
+				copyVertices(explicitVertices, offset, vertexSize);
 				vertIdx += this.vertexSize;
 				offset += vertexSize;
 			}
@@ -299,7 +692,7 @@ public class FlexBatch<T extends Batchable> implements Disposable {
 			else {
 				int verticesPerBatchable = batchable.getVerticesPerBatchable();
 				for (int i = 0, n = vertexCount / verticesPerBatchable; i < n; i++) {
-					int indicesAdded = batchable.apply(triangles, triIdx, (short)unfixedVertCount);
+					int indicesAdded = applyTriangles(batchable);
 					triIdx += indicesAdded;
 					unfixedVertCount += verticesPerBatchable;
 				}
@@ -310,7 +703,7 @@ public class FlexBatch<T extends Batchable> implements Disposable {
 				dstCopyCount = Math.min(verticesLength, dstCount);
 				vertexCount = dstCopyCount / this.vertexSize;
 				for (int i = 0; i < vertexCount; i++) {
-					System.arraycopy(explicitVertices, offset, vertices, vertIdx, vertexSize);
+					copyVertices(explicitVertices, offset, vertexSize);
 					vertIdx += this.vertexSize;
 					offset += vertexSize;
 				}
@@ -319,7 +712,7 @@ public class FlexBatch<T extends Batchable> implements Disposable {
 				else {
 					int verticesPerBatchable = batchable.getVerticesPerBatchable();
 					for (int i = 0, n = vertexCount / verticesPerBatchable; i < n; i++) {
-						int indicesAdded = batchable.apply(triangles, triIdx, (short)unfixedVertCount);
+						int indicesAdded = applyTriangles(batchable);
 						triIdx += indicesAdded;
 						unfixedVertCount += verticesPerBatchable;
 					}
@@ -352,28 +745,35 @@ public class FlexBatch<T extends Batchable> implements Disposable {
 		if (havePendingInternal) drawPending();
 		if (!drawing) throw new IllegalStateException("begin() must be called before drawing.");
 		if (fixedIndices) throw new UnsupportedOperationException("This method can only be used for Batchables without fixed size");
+		if (deferredKeys.size > 0) submitDeferred(); // explicit vertices are not deferred
 		if (batchable.prepareContext(renderContext, maxVertices - unfixedVertCount, maxIndices - triIdx)) {
 			flush();
 		}
 
-		int verticesLength = vertices.length;
-		int trianglesLength = triangles.length;
+		int verticesLength = vertexDataCapacity;
+		int trianglesLength = maxIndices;
 		final int vertexCount = vertexDataCount / vertexSize;
 		if (verticesLength - vertIdx < vertexCount * this.vertexSize || trianglesLength - triIdx < trianglesCount) flush();
 
-		System.arraycopy(explicitTriangles, trianglesOffset, triangles, triIdx, trianglesCount);
-		final short startingVertex = (short)unfixedVertCount;
-		final int upTo = triIdx + trianglesCount;
-		for (int i = triIdx; i < upTo; i++)
-			triangles[i] += startingVertex;
+		if (intTriangles != null) {
+			final int startingVertex = unfixedVertCount;
+			for (int i = 0; i < trianglesCount; i++)
+				intTriangles[triIdx + i] = explicitTriangles[trianglesOffset + i] + startingVertex;
+		} else {
+			System.arraycopy(explicitTriangles, trianglesOffset, triangles, triIdx, trianglesCount);
+			final short startingVertex = (short)unfixedVertCount;
+			final int upTo = triIdx + trianglesCount;
+			for (int i = triIdx; i < upTo; i++)
+				triangles[i] += startingVertex;
+		}
 		triIdx += trianglesCount;
 
 		if (this.vertexSize == vertexSize) {
-			System.arraycopy(explicitVertices, verticesOffset, vertices, vertIdx, vertexDataCount);
+			copyVertices(explicitVertices, verticesOffset, vertexDataCount);
 			vertIdx += vertexDataCount;
 		} else {
 			for (int i = 0; i < vertexCount; i++) {
-				System.arraycopy(explicitVertices, verticesOffset, vertices, vertIdx, vertexSize);
+				copyVertices(explicitVertices, verticesOffset, vertexSize);
 				vertIdx += this.vertexSize;
 				verticesOffset += vertexSize;
 			}
@@ -382,23 +782,227 @@ public class FlexBatch<T extends Batchable> implements Disposable {
 		unfixedVertCount += vertexCount;
 	}
 
+	/** Prepares the render context for drawing explicit vertex data with the FixedSizeBatchable, flushing if necessary. Preparing
+	 * again before drawing the data does not cause another flush, so data that depends on the prepared context can be written
+	 * in between. */
+	void prepareExplicit (FixedSizeBatchable batchable) {
+		if (havePendingInternal) drawPending();
+		if (!drawing) throw new IllegalStateException("begin() must be called before drawing.");
+		if (deferredKeys.size > 0) submitDeferred(); // explicit vertices are not deferred
+		if (batchable.prepareContext(renderContext, maxVertices - vertIdx / vertexSize, 0)) {
+			flush();
+		}
+	}
+
+	/** Applies the triangle indices of a Batchable that is drawn without fixed indices, at the current triangle index.
+	 * @return The number of indices added. */
+	private int applyTriangles (Batchable batchable) {
+		if (intTriangles != null) return batchable.apply(intTriangles, triIdx, unfixedVertCount);
+		return batchable.apply(triangles, triIdx, (short)unfixedVertCount);
+	}
+
+	/** Copies explicit vertex data to the current vertex index of the staging array or vertex buffer. */
+	private void copyVertices (float[] source, int sourceOffset, int count) {
+		if (vertices != null) {
+			System.arraycopy(source, sourceOffset, vertices, vertIdx, count);
+		} else {
+			vertexBuffer.position(vertIdx);
+			vertexBuffer.put(source, sourceOffset, count);
+		}
+	}
+
+	/** Records a Batchable in deferred mode, along with the ID of its render context. */
+	private void drawDeferred (Batchable batchable) {
+		if (deferredKeys.size == MAX_DEFERRED_COMMANDS) submitDeferred();
+		// Full capacity is passed so only changes to the render context are reported. A texture assigned to a free texture slot
+		// changes the render context without being reported.
+		final int textureSlotChangeCount = renderContext.getTextureSlotChangeCount();
+		if (batchable.prepareContext(renderContext, maxVertices, fixedIndices ? 0 : maxIndices) || deferredStateChanged
+			|| deferredStateId == -1 || renderContext.getTextureSlotChangeCount() != textureSlotChangeCount) {
+			deferredStateId = internDeferredState();
+			deferredStateChanged = false;
+		}
+
+		final int vertexHeadroom = fixedIndices ? vertexDataPerBatchable : vertexDataCapacity;
+		if (deferredVertices.length - deferredVertIdx < vertexHeadroom) {
+			float[] newVertices = new float[Math.max(deferredVertices.length * 2, deferredVertIdx + vertexHeadroom)];
+			System.arraycopy(deferredVertices, 0, newVertices, 0, deferredVertIdx);
+			deferredVertices = newVertices;
+		}
+		final int vertexOffset = deferredVertIdx;
+		final int indexOffset = deferredTriIdx;
+		int vertexDataCount, indexCount;
+		if (fixedIndices) {
+			batchable.applyVertices(deferredVertices, null, vertexOffset, attributeOffsets, vertexSize);
+			vertexDataCount = vertexDataPerBatchable;
+			indexCount = 0;
+		} else {
+			if (deferredTriangles.length - deferredTriIdx < maxIndices) {
+				short[] newTriangles = new short[Math.max(deferredTriangles.length * 2, deferredTriIdx + maxIndices)];
+				System.arraycopy(deferredTriangles, 0, newTriangles, 0, deferredTriIdx);
+				deferredTriangles = newTriangles;
+			}
+			indexCount = batchable.apply(deferredTriangles, indexOffset, (short)0);
+			vertexDataCount = batchable.applyVertices(deferredVertices, null, vertexOffset, attributeOffsets, vertexSize)
+				* vertexSize;
+		}
+		deferredVertIdx += vertexDataCount;
+		deferredTriIdx += indexCount;
+
+		// Track the flushes that would occur without reordering.
+		if (deferredStateId != lastRecordedStateId || unsortedVertexData + vertexDataCount > vertexDataCapacity
+			|| unsortedIndices + indexCount > maxIndices) {
+			unsortedRenderCalls++;
+			unsortedVertexData = unsortedIndices = 0;
+			lastRecordedStateId = deferredStateId;
+		}
+		unsortedVertexData += vertexDataCount;
+		unsortedIndices += indexCount;
+
+		final int commandIndex = deferredKeys.size;
+		deferredKeys.add(deferredKey(drawLayer, deferredStateId, commandIndex));
+		IntArray commands = deferredCommands;
+		commands.add(vertexOffset);
+		commands.add(vertexDataCount);
+		commands.add(indexOffset);
+		commands.add(indexCount);
+	}
+
+	/** Packs the sort key of a deferred command: the draw layer in the top 24 bits, the state ID in the next 16 bits, and the
+	 * command index in the low 24 bits. A value that would overflow into a neighboring field is rejected rather than silently
+	 * corrupting the sort order. */
+	static long deferredKey (int layer, int stateId, int commandIndex) {
+		if (layer < MIN_DRAW_LAYER || layer > MAX_DRAW_LAYER)
+			throw new IllegalArgumentException("Draw layer out of range: " + layer);
+		if (stateId < 0 || stateId >= MAX_DEFERRED_STATES) throw new IllegalArgumentException("State ID out of range: " + stateId);
+		if (commandIndex < 0 || commandIndex >= MAX_DEFERRED_COMMANDS)
+			throw new IllegalArgumentException("Command index out of range: " + commandIndex);
+		return (long)layer << 40 | (long)stateId << 24 | commandIndex;
+	}
+
+	/** @return The ID of a recorded render context matching the pending one, which is recorded if it is new. */
+	private int internDeferredState () {
+		for (int i = deferredStateCount - 1; i >= 0; i--) {
+			if (renderContext.matchesState(deferredStates.get(i))) return i;
+		}
+		if (deferredStateCount == MAX_DEFERRED_STATES) submitDeferred();
+		if (deferredStateCount == deferredStates.size) deferredStates.add(new RenderContextAccumulator.Snapshot());
+		renderContext.saveState(deferredStates.get(deferredStateCount));
+		return deferredStateCount++;
+	}
+
+	/** Sorts the deferred Batchables by draw layer and then by render context, and draws them. Batchables with the same render
+	 * context remain in the order they were drawn. Afterwards, the render context in use while recording is restored. */
+	private void submitDeferred () {
+		renderContext.saveState(recordingState);
+		final LongArray keys = deferredKeys;
+		keys.sort();
+		final long[] keyItems = keys.items;
+		final int[] commands = deferredCommands.items;
+		int replayStateId = -1;
+		for (int i = 0; i < keys.size; i++) {
+			final long key = keyItems[i];
+			final int stateId = (int)(key >>> 24) & 0xffff;
+			final int command = ((int)key & 0xffffff) * 4;
+			final int vertexOffset = commands[command];
+			final int vertexDataCount = commands[command + 1];
+			final int indexOffset = commands[command + 2];
+			final int indexCount = commands[command + 3];
+
+			if (stateId != replayStateId) {
+				// With nothing queued, flushing would only apply the recording's pending state before it is replaced.
+				if (vertIdx > 0) flushVertices();
+				renderContext.restoreState(deferredStates.get(stateId));
+				renderContext.executeChanges();
+				replayStateId = stateId;
+			} else if (vertIdx + vertexDataCount > vertexDataCapacity || triIdx + indexCount > maxIndices) {
+				flushVertices();
+			}
+
+			copyVertices(deferredVertices, vertexOffset, vertexDataCount);
+			vertIdx += vertexDataCount;
+			if (fixedIndices) {
+				triIdx += (vertexDataCount / vertexDataPerBatchable) * indicesPerBatchable;
+			} else {
+				final int firstVertex = unfixedVertCount;
+				if (intTriangles != null) {
+					for (int j = 0; j < indexCount; j++)
+						intTriangles[triIdx + j] = deferredTriangles[indexOffset + j] + firstVertex;
+				} else {
+					for (int j = 0; j < indexCount; j++)
+						triangles[triIdx + j] = (short)(deferredTriangles[indexOffset + j] + firstVertex);
+				}
+				triIdx += indexCount;
+				unfixedVertCount += vertexDataCount / vertexSize;
+			}
+		}
+		flushVertices();
+
+		renderContext.restoreState(recordingState);
+		renderContext.executeChanges();
+		recordingState.clearTextureUnits();
+		for (int i = 0; i < deferredStateCount; i++)
+			deferredStates.get(i).clearTextureUnits();
+		deferredStateCount = 0;
+		deferredStateId = lastRecordedStateId = -1;
+		deferredVertIdx = deferredTriIdx = 0;
+		deferredCommands.clear();
+		keys.clear();
+	}
+
+	/** Flushes before a change to the render context. In deferred mode, the change is instead recorded with subsequently drawn
+	 * Batchables, and only explicit vertex data that is already queued is flushed. */
+	private void flushForContextChange () {
+		if (deferred) {
+			if (havePendingInternal) drawPending();
+			flushVertices();
+			deferredStateChanged = true;
+		} else {
+			flush();
+		}
+	}
+
 	public void flush () {
 		if (havePendingInternal) drawPending();
+		if (deferredKeys.size > 0) submitDeferred();
+		flushVertices();
+	}
+
+	/** Draws the queued vertex data, without submitting deferred Batchables. */
+	private void flushVertices () {
 		if (vertIdx == 0) {
 			renderContext.executeChanges(); // first item
 			return;
 		}
 
 		Mesh mesh = this.mesh;
-		mesh.setVertices(vertices, 0, vertIdx);
-		if (fixedIndices) {
-			mesh.getIndicesBuffer().position(0);
-			mesh.getIndicesBuffer().limit(triIdx);
+		if (vertices != null) {
+			mesh.setVertices(vertices, 0, vertIdx);
 		} else {
-			mesh.setIndices(triangles, 0, triIdx);
+			mesh.getVerticesBuffer(); // marks it for upload
+			vertexBuffer.position(0);
+			vertexBuffer.limit(vertIdx);
 		}
-
-		mesh.render(shader, GL20.GL_TRIANGLES, 0, triIdx);
+		if (instanced) {
+			mesh.bind(shader);
+			Gdx.gl30.glDrawElementsInstanced(GL20.GL_TRIANGLES, maxIndices, GL20.GL_UNSIGNED_SHORT, 0, vertIdx / vertexSize);
+			mesh.unbind(shader);
+		} else if (intIndexBuffer != null) {
+			// Mesh can only draw 16-bit indices.
+			if (!fixedIndices) intIndexBuffer.setIndices(intTriangles, 0, triIdx);
+			mesh.bind(shader);
+			Gdx.gl20.glDrawElements(GL20.GL_TRIANGLES, triIdx, GL20.GL_UNSIGNED_INT, 0);
+			mesh.unbind(shader);
+		} else {
+			if (fixedIndices) {
+				mesh.getIndicesBuffer().position(0);
+				mesh.getIndicesBuffer().limit(triIdx);
+			} else {
+				mesh.setIndices(triangles, 0, triIdx);
+			}
+			mesh.render(shader, GL20.GL_TRIANGLES, 0, triIdx);
+		}
+		if (vertexBuffer != null) vertexBuffer.clear();
 
 		renderContext.executeChanges(); // might have flushed for new item
 
@@ -409,6 +1013,10 @@ public class FlexBatch<T extends Batchable> implements Disposable {
 		totalRenderCalls++;
 	}
 
+	RenderContextAccumulator getRenderContext () {
+		return renderContext;
+	}
+
 	public ShaderProgram getShader () {
 		return shader;
 	}
@@ -421,19 +1029,21 @@ public class FlexBatch<T extends Batchable> implements Disposable {
 		this.shader = shader;
 		if (drawing) {
 			shader.begin();
+			renderContext.setShader(shader);
 			applyMatrices();
+			applyTextureUniforms();
 		}
 	}
 
 	public void disableBlending () {
 		if (!renderContext.isBlendingEnabled()) return;
-		flush();
+		flushForContextChange();
 		renderContext.setBlending(false);
 	}
 
 	public void enableBlending () {
 		if (renderContext.isBlendingEnabled()) return;
-		flush();
+		flushForContextChange();
 		renderContext.setBlending(true);
 	}
 
@@ -442,14 +1052,14 @@ public class FlexBatch<T extends Batchable> implements Disposable {
 		if (!renderContext.isBlendFuncSeparate() && renderContext.getBlendFuncSrcColor() == srcFunc
 			&& renderContext.getBlendFuncDstColor() == dstFunc) return;
 
-		flush();
+		flushForContextChange();
 		renderContext.setBlendFunction(srcFunc, dstFunc);
 	}
 
 	public void setBlendFunction (int srcColorFunc, int dstColorFunc, int srcAlphaFunc, int dstAlphaFunc) {
 		if (renderContext.getBlendFuncSrcColor() == srcColorFunc && renderContext.getBlendFuncDstColor() == dstColorFunc
 			&& renderContext.getBlendFuncSrcAlpha() == srcAlphaFunc && renderContext.getBlendFuncDstAlpha() == dstAlphaFunc) return;
-		flush();
+		flushForContextChange();
 		renderContext.setBlendFunction(srcColorFunc, dstColorFunc, srcAlphaFunc, dstAlphaFunc);
 	}
 
@@ -482,30 +1092,70 @@ public class FlexBatch<T extends Batchable> implements Disposable {
 	}
 
 	public void setProjectionMatrix (Matrix4 projection) {
+		if (Arrays.equals(projectionMatrix.val, projection.val)) return;
 		if (drawing) flush();
 		projectionMatrix.set(projection);
 		if (drawing) applyMatrices();
 	}
 
 	public void setTransformMatrix (Matrix4 transform) {
+		if (Arrays.equals(transformMatrix.val, transform.val)) return;
 		if (drawing) flush();
 		transformMatrix.set(transform);
 		if (drawing) applyMatrices();
 	}
 
 	/** Called only while drawing. Recalculates the matrices and sets their values to shader uniforms. The default implementation
-	 * combines the projection and transform matrices and sets them to a single uniform named "u_projTrans". */
+	 * combines the projection and transform matrices and sets them to a single uniform named "u_projTrans". Its location is
+	 * looked up once per shader, and it is not uploaded again if the combined matrix is unchanged. */
 	protected void applyMatrices () {
-		combinedMatrix.set(projectionMatrix).mul(transformMatrix);
-		getShader().setUniformMatrix("u_projTrans", combinedMatrix);
+		uniforms.applyMatrices(getShader(), projectionMatrix, transformMatrix);
 	}
 
-	/** Sets shader uniform values for the textures. The default implementation uses the uniform name "u_texture" with the texture
-	 * unit appended. For example, if the Batchable type supports two textures, uniforms will be set for "u_texture0" and
-	 * "u_texture1". */
+	/** Called only while drawing, after the shader is bound. Sets shader uniform values for the textures. The default
+	 * implementation uses the uniform name "u_texture" with the texture unit appended. For example, if the Batchable type supports
+	 * two textures, uniforms will be set for "u_texture0" and "u_texture1". Uniforms the shader does not have are skipped. */
 	protected void applyTextureUniforms () {
-		for (int i = 0; i < textureUnitUniforms.length; i++)
-			getShader().setUniformi(textureUnitUniforms[i], i);
+		uniforms.applyTextureUniforms(renderContext);
+	}
+
+	/** Sets the value of a float uniform of the shader. If the value differs from the current one, the queued Batchables are
+	 * flushed first, or in deferred mode, the value is recorded with subsequently drawn Batchables. The uniform is uploaded only
+	 * when its value changes, and its location is looked up once per shader. A Batchable can set uniforms the same way in its
+	 * {@link Batchable#prepareContext(RenderContextAccumulator, int, int) prepareContext()}. */
+	public void setUniformf (String name, float value) {
+		if (havePendingInternal) drawPending();
+		if (renderContext.setUniformf(name, value) && drawing) flushForContextChange();
+	}
+
+	/** Sets the value of a vec2 uniform of the shader. See {@link #setUniformf(String, float)}. */
+	public void setUniformf (String name, float x, float y) {
+		if (havePendingInternal) drawPending();
+		if (renderContext.setUniformf(name, x, y) && drawing) flushForContextChange();
+	}
+
+	/** Sets the value of a vec3 uniform of the shader. See {@link #setUniformf(String, float)}. */
+	public void setUniformf (String name, float x, float y, float z) {
+		if (havePendingInternal) drawPending();
+		if (renderContext.setUniformf(name, x, y, z) && drawing) flushForContextChange();
+	}
+
+	/** Sets the value of a vec4 uniform of the shader. See {@link #setUniformf(String, float)}. */
+	public void setUniformf (String name, float x, float y, float z, float w) {
+		if (havePendingInternal) drawPending();
+		if (renderContext.setUniformf(name, x, y, z, w) && drawing) flushForContextChange();
+	}
+
+	/** Sets the value of an int uniform of the shader. See {@link #setUniformf(String, float)}. */
+	public void setUniformi (String name, int value) {
+		if (havePendingInternal) drawPending();
+		if (renderContext.setUniformi(name, value) && drawing) flushForContextChange();
+	}
+
+	/** Sets the value of a mat4 uniform of the shader. See {@link #setUniformf(String, float)}. */
+	public void setUniformMatrix (String name, Matrix4 matrix) {
+		if (havePendingInternal) drawPending();
+		if (renderContext.setUniformMatrix(name, matrix) && drawing) flushForContextChange();
 	}
 
 	/** @return Whether this batch is between {@link #begin()} and {@link #end()} calls. */
@@ -513,6 +1163,99 @@ public class FlexBatch<T extends Batchable> implements Disposable {
 		return drawing;
 	}
 
+	/** Sets whether Batchables are deferred. In deferred mode, Batchables passed to {@link #draw(Batchable)} or acquired with
+	 * {@link #draw()} are recorded along with their render context instead of being queued for drawing. On the next flush, they
+	 * are sorted by {@link #setDrawLayer(int) draw layer}, and then grouped by render context, so Batchables that use the same
+	 * textures and render context are drawn together even if other Batchables were drawn between them. Within a group, Batchables
+	 * are drawn in the order they were submitted. Changing the blend function does not cause a flush in deferred mode.
+	 * <p>
+	 * Changing the shader or matrices still causes a flush, so all Batchables drawn before such a change are drawn before any
+	 * drawn after it. Explicit vertex data is not deferred, and also causes deferred Batchables to be drawn first.
+	 * <p>
+	 * The number of draw calls that would have been needed without reordering is counted in {@link #unsortedRenderCalls}. */
+	public void setDeferred (boolean deferred) {
+		if (this.deferred == deferred) return;
+		if (drawing) flush();
+		this.deferred = deferred;
+		if (deferred && deferredVertices == null) {
+			deferredVertices = new float[vertexDataCapacity];
+			if (!fixedIndices) deferredTriangles = new short[maxIndices];
+		}
+	}
+
+	/** Enables applying the vertex data of FixedSizeBatchables on multiple threads when drawn with
+	 * {@link #draw(Batchable[], int, int)} or {@link #draw(Array)}. This only has an effect if this FlexBatch is limited to
+	 * FixedSizeBatchables. Every Batchable type drawn this way must be safe to apply on multiple threads at once, which means its
+	 * {@code apply()} methods must not write to any shared objects. All built-in FixedSizeBatchables are. The same Batchable may
+	 * appear more than once in a drawn array and be applied on two threads at once, so the
+	 * {@link Batchable#setMemoized(boolean) memoized} vertex data, which is not thread-safe, is bypassed for runs that are split
+	 * across threads.
+	 * <p>
+	 * The FlexBatch does not shut down the executor.
+	 * @param executor The executor that runs the tasks, or null to apply all vertex data on the calling thread.
+	 * @param parallelism The maximum number of threads to use at once, including the calling thread. This is typically the
+	 *           number of available processors. */
+	public void setParallelVertexGeneration (ExecutorService executor, int parallelism) {
+		if (executor != null && parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1");
+		vertexExecutor = executor;
+		if (executor == null) {
+			vertexTasks = null;
+			vertexFutures = null;
+			return;
+		}
+		vertexTasks = new VertexGenerationTask[parallelism - 1];
+		for (int i = 0; i < vertexTasks.length; i++)
+			vertexTasks[i] = new VertexGenerationTask(this);
+		vertexFutures = new Future<?>[parallelism - 1];
+	}
+
+	/** @return Whether Batchables are deferred and reordered by render context. See {@link #setDeferred(boolean)}. */
+	public boolean isDeferred () {
+		return deferred;
+	}
+
+	/** Sets the layer of Batchables subsequently drawn in deferred mode. Layers are drawn in ascending order when the deferred
+	 * Batchables are submitted, so Batchables are never reordered across layers. Has no effect if not in deferred mode.
+	 * @param layer A value from -8388608 to 8388607. The default is 0. */
+	public void setDrawLayer (int layer) {
+		if (layer < MIN_DRAW_LAYER || layer > MAX_DRAW_LAYER)
+			throw new IllegalArgumentException("layer must be in the range " + MIN_DRAW_LAYER + " to " + MAX_DRAW_LAYER);
+		if (havePendingInternal) drawPending(); // it belongs to the previous layer
+		drawLayer = layer;
+	}
+
+	public int getDrawLayer () {
+		return drawLayer;
+	}
+
+	/** Sets a GL state tracker to share with other FlexBatches that are drawn in sequence, so GL states are not reset between
+	 * them and only state changes that differ from the previous batch's are made. The tracker's
+	 * {@link GLStateTracker#restoreDefaults() restoreDefaults()} must be called after the group of batches is drawn. Pending
+	 * state, such as blending enabled with {@link #enableBlending()}, is kept. Must not be called between {@link #begin()} and
+	 * {@link #end()}.
+	 * @param tracker The shared tracker, or null to stop sharing. */
+	public void setGLStateTracker (GLStateTracker tracker) {
+		if (drawing) throw new IllegalStateException("Cannot change the GL state tracker between begin() and end().");
+		renderContext.setTracker(tracker);
+	}
+
+	/** @return The GL state tracker shared with other FlexBatches, or null if there is none. */
+	public GLStateTracker getGLStateTracker () {
+		return renderContext.getTracker();
+	}
+
+	/** @return The technique in use for uploading vertex data. This may differ from the strategy requested in the constructor if
+	 *         that strategy is not supported. */
+	public UploadStrategy getUploadStrategy () {
+		return uploadStrategy;
+	}
+
+	/** @return Whether this batch uses 32-bit triangle indices, because its maximum vertex count is too high for 16-bit
+	 *         indices. */
+	public boolean hasIntIndices () {
+		return intIndexBuffer != null;
+	}
+
 	public void dispose () {
 		mesh.dispose();
 	}
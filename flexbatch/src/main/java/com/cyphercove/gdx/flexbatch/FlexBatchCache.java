@@ -0,0 +1,444 @@
+package com.cyphercove.gdx.flexbatch;
+
+import java.lang.reflect.Modifier;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.Mesh.VertexDataType;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.graphics.glutils.VertexBufferObject;
+import com.badlogic.gdx.graphics.glutils.VertexBufferObjectWithVAO;
+import com.badlogic.gdx.graphics.glutils.VertexData;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.IntIndexBufferObject;
+import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+
+/** Draws retained sets of {@link Batchable Batchables} that do not change between frames. It is the FlexBatch equivalent of
+ * SpriteCache. Batchables are applied only once, when a cache is defined, and their vertex data is kept in a static Mesh. Each
+ * cache is split into ranges of consecutive Batchables that use the same textures and render context, and each range is drawn
+ * with a single draw call and no further work on the CPU.
+ * <p>
+ * A cache is defined by calling {@link #beginCache()}, adding Batchables with {@link #add(Batchable)} or {@link #add()}, and then
+ * calling {@link #endCache()}, which returns the ID of the cache. A cache can be redefined in place with
+ * {@link #beginCache(int)}, as long as it does not exceed its original size. Caches are drawn by calling {@link #draw(int)}
+ * between calls to {@link #begin()} and {@link #end()}. The projection and transform matrices can be changed between draws of
+ * caches, so the same cache can be drawn in multiple places.
+ * <p>
+ * Like FlexBatch, the FlexBatchCache is instantiated with a Batchable class that defines the vertex attributes of the Batchables
+ * it can hold, and a shader must be set with {@link #setShader(ShaderProgram)} before drawing. The triangle indices of all
+ * Batchables are stored, including those of {@link com.cyphercove.gdx.flexbatch.Batchable.FixedSizeBatchable
+ * FixedSizeBatchables}, so different types of compatible Batchables can be mixed in one cache. A FlexBatchCache must be
+ * {@link #dispose() disposed of} when no longer used to avoid leaking memory.
+ *
+ * @param <T> The type of Batchable that is returned when acquiring one with {@link #add()}. This must match the class type that
+ *           is passed to the constructor.
+ *
+ * @author cypherdare */
+public class FlexBatchCache<T extends Batchable> implements Disposable {
+
+	public final Class<T> batchableType;
+	private final T internalBatchable;
+	private boolean havePendingInternal;
+	private final Mesh mesh;
+	private final IntIndexBufferObject intIndexBuffer; // null if using 16-bit indices
+	private final AttributeOffsets attributeOffsets;
+	private final int vertexSize, maxVertices, maxIndices;
+
+	// Staging for the cache being defined. Vertex indices are relative to the start of the Mesh.
+	private float[] vertices;
+	private short[] triangles;
+	private int[] intTriangles;
+	private int vertIdx, triIdx, vertCount;
+
+	private final Array<Cache> caches = new Array<Cache>();
+	private Cache currentCache;
+	private Range currentRange;
+	private boolean contextChanged;
+	private int usedVertices, usedIndices;
+
+	private boolean drawing = false;
+
+	/** Number of render calls since the last {@link #begin()}. **/
+	public int renderCalls = 0;
+	/** Number of rendering calls, ever. Will not be reset unless set manually. **/
+	public int totalRenderCalls = 0;
+
+	private final Matrix4 transformMatrix = new Matrix4();
+	private final Matrix4 projectionMatrix = new Matrix4();
+	private final BatchUniforms uniforms;
+
+	private final RenderContextAccumulator renderContext;
+	/** The context for defining caches, which is replaced by the context of each range while drawing. */
+	private final RenderContextAccumulator.Snapshot definitionState = new RenderContextAccumulator.Snapshot();
+
+	private ShaderProgram shader;
+
+	private static class Cache {
+		int vertexOffset, indexOffset, maxVertices, maxIndices;
+		final Array<Range> ranges = new Array<Range>(false, 8, Range.class);
+	}
+
+	private static class Range {
+		int indexOffset, indexCount;
+		final RenderContextAccumulator.Snapshot state = new RenderContextAccumulator.Snapshot();
+	}
+
+	/** Construct a FlexBatchCache capable of holding the given Batchable type and other compatible Batchables (ones with the same
+	 * VertexAttributes or subset of beginning VertexAttributes).
+	 *
+	 * @param batchableType The type of Batchable that defines the VertexAttributes supported by this FlexBatchCache, and the
+	 *           default Batchable type added by the {@link #add()} method.
+	 * @param maxVertices The total number of vertices of all caches. Above 32767, 32-bit indices are used, which requires GL30
+	 *           or the OES_element_index_uint extension. See {@link IntIndexBufferObject#isSupported()}.
+	 * @param maxTriangles The total number of triangles of all caches. */
+	public FlexBatchCache (Class<T> batchableType, int maxVertices, int maxTriangles) {
+		if (Modifier.isAbstract(batchableType.getModifiers()))
+			throw new IllegalArgumentException("Can't use an abstract batchableType");
+		if (maxTriangles <= 0) throw new IllegalArgumentException("maxTriangles must be greater than 0");
+		final boolean intIndices = maxVertices > 32767;
+		if (intIndices && !IntIndexBufferObject.isSupported()) throw new IllegalArgumentException(
+			"Can't have more than 32767 vertices without GL30 or OES_element_index_uint: " + maxVertices);
+
+		this.batchableType = batchableType;
+
+		try {
+			internalBatchable = batchableType.newInstance();
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Batchable classes must be public and have an empty constructor.", e);
+		}
+
+		Array<VertexAttribute> attributesArray = new Array<VertexAttribute>(true, 10, VertexAttribute.class);
+		internalBatchable.addVertexAttributes(attributesArray);
+		VertexAttributes vertexAttributes = new VertexAttributes(attributesArray.toArray());
+		attributeOffsets = new AttributeOffsets(vertexAttributes);
+		vertexSize = vertexAttributes.vertexSize / 4;
+		this.maxVertices = maxVertices;
+		maxIndices = maxTriangles * 3;
+
+		if (intIndices) {
+			VertexData vertexData = Gdx.gl30 != null ? new VertexBufferObjectWithVAO(true, maxVertices, vertexAttributes)
+				: new VertexBufferObject(true, maxVertices, vertexAttributes);
+			intIndexBuffer = new IntIndexBufferObject(true, maxIndices);
+			mesh = new CustomMesh(vertexData, intIndexBuffer);
+			intIndexBuffer.getIntBuffer().limit(maxIndices);
+		} else {
+			intIndexBuffer = null;
+			VertexDataType vertexDataType = Gdx.gl30 != null ? VertexDataType.VertexBufferObjectWithVAO
+				: VertexDataType.VertexBufferObject;
+			mesh = new Mesh(vertexDataType, true, maxVertices, maxIndices, attributesArray.toArray());
+			mesh.getIndicesBuffer().limit(maxIndices);
+		}
+		mesh.getVerticesBuffer().limit(maxVertices * vertexSize);
+
+		uniforms = new BatchUniforms(internalBatchable.getNumberOfTextureUnits());
+
+		projectionMatrix.setToOrtho2D(0, 0, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
+
+		renderContext = new RenderContextAccumulator();
+		renderContext.setBlending(true);
+		renderContext.setBlendFunction(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+		internalBatchable.prepareSharedContext(renderContext);
+	}
+
+	/** Starts the definition of a new cache, which uses the remaining space of this FlexBatchCache. Batchables can then be added
+	 * until {@link #endCache()} is called. */
+	public void beginCache () {
+		if (drawing) throw new IllegalStateException("end() must be called before beginCache().");
+		if (currentCache != null) throw new IllegalStateException("endCache() must be called before beginCache().");
+		Cache cache = new Cache();
+		cache.vertexOffset = usedVertices;
+		cache.indexOffset = usedIndices;
+		cache.maxVertices = maxVertices - usedVertices;
+		cache.maxIndices = maxIndices - usedIndices;
+		startCache(cache);
+	}
+
+	/** Starts the redefinition of an existing cache, replacing its contents. Batchables can then be added until
+	 * {@link #endCache()} is called. The new contents must not exceed the size of the cache when it was first defined.
+	 * @param cacheID The ID returned by {@link #endCache()} when the cache was first defined. */
+	public void beginCache (int cacheID) {
+		if (drawing) throw new IllegalStateException("end() must be called before beginCache().");
+		if (currentCache != null) throw new IllegalStateException("endCache() must be called before beginCache().");
+		startCache(caches.get(cacheID));
+	}
+
+	private void startCache (Cache cache) {
+		currentCache = cache;
+		for (Range range : cache.ranges)
+			range.state.clearTextureUnits();
+		cache.ranges.clear();
+		currentRange = null;
+		contextChanged = false;
+		vertIdx = triIdx = vertCount = 0;
+		final int vertexDataSize = cache.maxVertices * vertexSize;
+		if (vertices == null || vertices.length < vertexDataSize) vertices = new float[vertexDataSize];
+		if (intIndexBuffer != null) {
+			if (intTriangles == null || intTriangles.length < cache.maxIndices) intTriangles = new int[cache.maxIndices];
+		} else {
+			if (triangles == null || triangles.length < cache.maxIndices) triangles = new short[cache.maxIndices];
+		}
+	}
+
+	/** Finishes the definition of the current cache and uploads its data.
+	 * @return The ID of the cache, which can be passed to {@link #draw(int)} and {@link #beginCache(int)}. */
+	public int endCache () {
+		if (currentCache == null) throw new IllegalStateException("beginCache() must be called before endCache().");
+		if (havePendingInternal) addPending();
+		Cache cache = currentCache;
+		if (currentRange != null) currentRange.indexCount = cache.indexOffset + triIdx - currentRange.indexOffset;
+
+		FloatBuffer vertexBuffer = mesh.getVerticesBuffer();
+		vertexBuffer.position(cache.vertexOffset * vertexSize);
+		vertexBuffer.put(vertices, 0, vertIdx);
+		vertexBuffer.position(0);
+		if (intIndexBuffer != null) {
+			IntBuffer indexBuffer = intIndexBuffer.getIntBuffer();
+			indexBuffer.position(cache.indexOffset);
+			indexBuffer.put(intTriangles, 0, triIdx);
+			indexBuffer.position(0);
+		} else {
+			ShortBuffer indexBuffer = mesh.getIndicesBuffer();
+			indexBuffer.position(cache.indexOffset);
+			indexBuffer.put(triangles, 0, triIdx);
+			indexBuffer.position(0);
+		}
+
+		int cacheID = caches.indexOf(cache, true);
+		if (cacheID == -1) {
+			// A new cache is sized to fit its contents.
+			cache.maxVertices = vertCount;
+			cache.maxIndices = triIdx;
+			usedVertices += vertCount;
+			usedIndices += triIdx;
+			caches.add(cache);
+			cacheID = caches.size - 1;
+		}
+		currentCache = null;
+		currentRange = null;
+		renderContext.clearAllTextureUnits();
+		internalBatchable.reset();
+		return cacheID;
+	}
+
+	/** Removes all caches, so the entire capacity can be used for new caches. Previously returned cache IDs become invalid. */
+	public void clear () {
+		if (currentCache != null) throw new IllegalStateException("endCache() must be called before clear().");
+		for (Cache cache : caches) {
+			for (Range range : cache.ranges)
+				range.state.clearTextureUnits();
+		}
+		caches.clear();
+		usedVertices = usedIndices = 0;
+	}
+
+	private void addPending () {
+		havePendingInternal = false;
+		add(internalBatchable);
+	}
+
+	/** @return A Batchable that will automatically be added to the current cache upon the next call to add() or endCache(). The
+	 *         Batchable will be of the same type as the {@link #batchableType} of this FlexBatchCache.
+	 *         <p>
+	 *         Do not cache and reuse the returned Batchable. */
+	public T add () {
+		if (havePendingInternal) addPending();
+		havePendingInternal = true;
+		internalBatchable.refresh();
+		return internalBatchable;
+	}
+
+	/** Adds a Batchable to the current cache. The same restrictions apply as for {@link FlexBatch#draw(Batchable)}. The Batchable
+	 * may be modified or reused as soon as this method returns.
+	 *
+	 * @param batchable */
+	public void add (Batchable batchable) {
+		if (havePendingInternal) addPending();
+		Cache cache = currentCache;
+		if (cache == null) throw new IllegalStateException("beginCache() must be called before adding.");
+
+		final int remainingVertices = cache.maxVertices - vertCount;
+		final int remainingIndices = cache.maxIndices - triIdx;
+		if (batchable.prepareContext(renderContext, remainingVertices, remainingIndices) || contextChanged) {
+			contextChanged = false;
+			if (currentRange == null || !renderContext.matchesState(currentRange.state)) startRange();
+			// Called again to check capacity independently of the context change.
+			if (batchable.prepareContext(renderContext, remainingVertices, remainingIndices))
+				throw new IllegalStateException("Not enough space remaining in the cache.");
+		} else if (currentRange == null) {
+			startRange();
+		}
+
+		int firstVertex = cache.vertexOffset + vertCount;
+		if (intTriangles != null)
+			triIdx += batchable.apply(intTriangles, triIdx, firstVertex);
+		else
+			triIdx += batchable.apply(triangles, triIdx, (short)firstVertex);
+		int verticesAdded = batchable.apply(vertices, vertIdx, attributeOffsets, vertexSize);
+		vertCount += verticesAdded;
+		vertIdx += verticesAdded * vertexSize;
+	}
+
+	private void startRange () {
+		if (currentRange != null) currentRange.indexCount = currentCache.indexOffset + triIdx - currentRange.indexOffset;
+		Range range = new Range();
+		range.indexOffset = currentCache.indexOffset + triIdx;
+		renderContext.saveState(range.state);
+		currentCache.ranges.add(range);
+		currentRange = range;
+	}
+
+	public void begin () {
+		if (drawing) throw new IllegalStateException("end() must be called before begin().");
+		if (currentCache != null) throw new IllegalStateException("endCache() must be called before begin().");
+		renderCalls = 0;
+
+		renderContext.saveState(definitionState);
+		renderContext.begin();
+		shader.begin();
+		renderContext.setShader(shader);
+		uniforms.invalidate();
+		applyMatrices();
+		applyTextureUniforms();
+		mesh.bind(shader);
+
+		drawing = true;
+	}
+
+	public void end () {
+		if (!drawing) throw new IllegalStateException("begin() must be called before end().");
+		drawing = false;
+
+		mesh.unbind(shader);
+		renderContext.end();
+		renderContext.setShader(null);
+		renderContext.clearAllTextureUnits();
+		renderContext.restoreState(definitionState);
+
+		shader.end();
+	}
+
+	/** Draws a cache, with one draw call per range of Batchables that share the same textures and render context.
+	 * @param cacheID The ID returned by {@link #endCache()}. */
+	public void draw (int cacheID) {
+		if (!drawing) throw new IllegalStateException("begin() must be called before drawing.");
+		Cache cache = caches.get(cacheID);
+		Array<Range> ranges = cache.ranges;
+		for (int i = 0; i < ranges.size; i++) {
+			Range range = ranges.get(i);
+			if (range.indexCount == 0) continue;
+			renderContext.restoreState(range.state);
+			renderContext.executeChanges();
+			if (intIndexBuffer != null)
+				Gdx.gl20.glDrawElements(GL20.GL_TRIANGLES, range.indexCount, GL20.GL_UNSIGNED_INT, range.indexOffset * 4);
+			else
+				mesh.render(shader, GL20.GL_TRIANGLES, range.indexOffset, range.indexCount, false);
+			renderCalls++;
+			totalRenderCalls++;
+		}
+	}
+
+	/** @return The number of draw calls needed to draw the given cache. */
+	public int getRangeCount (int cacheID) {
+		return caches.get(cacheID).ranges.size;
+	}
+
+	public ShaderProgram getShader () {
+		return shader;
+	}
+
+	public void setShader (ShaderProgram shader) {
+		if (drawing) {
+			mesh.unbind(this.shader);
+			this.shader.end();
+		}
+		this.shader = shader;
+		if (drawing) {
+			shader.begin();
+			renderContext.setShader(shader);
+			applyMatrices();
+			applyTextureUniforms();
+			mesh.bind(shader);
+		}
+	}
+
+	/** Adds the pending Batchable before a change to the render context, and makes the next added Batchable start a new range
+	 * if the context no longer matches the current range. */
+	private void changeContext () {
+		if (havePendingInternal) addPending();
+		contextChanged = true;
+	}
+
+	/** Disables blending for Batchables subsequently added to a cache. */
+	public void disableBlending () {
+		changeContext();
+		renderContext.setBlending(false);
+	}
+
+	/** Enables blending for Batchables subsequently added to a cache. */
+	public void enableBlending () {
+		changeContext();
+		renderContext.setBlending(true);
+	}
+
+	/** Sets the blend function for Batchables subsequently added to a cache. */
+	public void setBlendFunction (int srcFunc, int dstFunc) {
+		changeContext();
+		renderContext.setBlendFunction(srcFunc, dstFunc);
+	}
+
+	/** Sets the blend function for Batchables subsequently added to a cache. */
+	public void setBlendFunction (int srcColorFunc, int dstColorFunc, int srcAlphaFunc, int dstAlphaFunc) {
+		changeContext();
+		renderContext.setBlendFunction(srcColorFunc, dstColorFunc, srcAlphaFunc, dstAlphaFunc);
+	}
+
+	public Matrix4 getProjectionMatrix () {
+		return projectionMatrix;
+	}
+
+	public Matrix4 getTransformMatrix () {
+		return transformMatrix;
+	}
+
+	public void setProjectionMatrix (Matrix4 projection) {
+		projectionMatrix.set(projection);
+		if (drawing) applyMatrices();
+	}
+
+	public void setTransformMatrix (Matrix4 transform) {
+		transformMatrix.set(transform);
+		if (drawing) applyMatrices();
+	}
+
+	/** Called only while drawing. Recalculates the matrices and sets their values to shader uniforms. The default implementation
+	 * combines the projection and transform matrices and sets them to a single uniform named "u_projTrans". Its location is
+	 * looked up once per shader, and it is not uploaded again if the combined matrix is unchanged. */
+	protected void applyMatrices () {
+		uniforms.applyMatrices(getShader(), projectionMatrix, transformMatrix);
+	}
+
+	/** Sets shader uniform values for the textures. The default implementation uses the uniform name "u_texture" with the texture
+	 * unit appended. For example, if the Batchable type supports two textures, uniforms will be set for "u_texture0" and
+	 * "u_texture1". Uniforms the shader does not have are skipped. */
+	protected void applyTextureUniforms () {
+		uniforms.applyTextureUniforms(renderContext);
+	}
+
+	/** @return Whether this cache is between {@link #begin()} and {@link #end()} calls. */
+	public boolean isDrawing () {
+		return drawing;
+	}
+
+	public void dispose () {
+		mesh.dispose();
+	}
+}
@@ -0,0 +1,237 @@
+package com.cyphercove.gdx.flexbatch;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GLTexture;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.batchable.Quad2D;
+
+/** A store of many sprites in parallel primitive arrays, as an alternative to keeping a {@link Quad2D} object for each sprite.
+ * Each sprite is a row across the public arrays, which may be read and modified directly for sprites with an index below
+ * {@link #size()}. The vertex data is generated for all sprites in a single loop with no object access, and has the same layout
+ * as that of a Quad2D with one texture: position, packed color, and texture coordinates.
+ * <p>
+ * Each sprite refers to a texture by its index in {@link #textures}. Consecutive sprites with the same texture are drawn without
+ * a flush, so sprites should be grouped by texture where draw order allows. Texture coordinate rotation and multi-texturing are
+ * not supported.
+ * <p>
+ * The sprites are drawn with {@link #draw(FlexBatch)}, which accepts any FlexBatch whose Batchable type is Quad2D or a subclass
+ * that begins with the same vertex attributes, including a {@link CompliantBatch}. Instanced Batchable types such as
+ * {@link com.cyphercove.gdx.flexbatch.batchable.InstancedQuad2D InstancedQuad2D} have a different layout and are not supported.
+ *
+ * @author cypherdare */
+public class Quad2DArray {
+
+	/** The number of floats of vertex data per sprite. */
+	public static final int SPRITE_SIZE = 20;
+	private static final int VERTEX_SIZE = 5;
+	/** The number of sprites written to the staging array at a time while drawing. */
+	private static final int CHUNK_SPRITES = 1000;
+	private static final float WHITE = Color.WHITE.toFloatBits();
+
+	/** Position of the bottom left corner, before rotation and scale. */
+	public final float[] x, y;
+	/** Center of rotation and scale, relative to the bottom left corner. */
+	public final float[] originX, originY;
+	public final float[] width, height;
+	public final float[] scaleX, scaleY;
+	/** Counter-clockwise rotation in degrees. */
+	public final float[] rotation;
+	/** Packed color float bits. See {@link Color#toFloatBits()}. */
+	public final float[] color;
+	/** Texture region, where {@code v} is the top and {@code v2} is the bottom, as in {@link TextureRegion}. */
+	public final float[] u, v, u2, v2;
+	/** Index of each sprite's texture in {@link #textures}. */
+	public final int[] textureIndex;
+	/** The textures used by the sprites. */
+	public final Array<GLTexture> textures = new Array<GLTexture>();
+
+	private final int capacity;
+	private int size;
+	private final Quad2D drawQuad = new Quad2D();
+	private float[] stagingVertices;
+
+	/** @param capacity The maximum number of sprites. */
+	public Quad2DArray (int capacity) {
+		this.capacity = capacity;
+		x = new float[capacity];
+		y = new float[capacity];
+		originX = new float[capacity];
+		originY = new float[capacity];
+		width = new float[capacity];
+		height = new float[capacity];
+		scaleX = new float[capacity];
+		scaleY = new float[capacity];
+		rotation = new float[capacity];
+		color = new float[capacity];
+		u = new float[capacity];
+		v = new float[capacity];
+		u2 = new float[capacity];
+		v2 = new float[capacity];
+		textureIndex = new int[capacity];
+	}
+
+	/** Adds a sprite with the full area of a texture, white color, no rotation, and no scale.
+	 * @return The index of the new sprite. */
+	public int add (GLTexture texture, float x, float y, float width, float height) {
+		return add(texture, 0, 0, 1, 1, x, y, width, height);
+	}
+
+	/** Adds a sprite that is the size of a texture region, with white color, no rotation, and no scale.
+	 * @return The index of the new sprite. */
+	public int add (TextureRegion region, float x, float y) {
+		return add(region.getTexture(), region.getU(), region.getV(), region.getU2(), region.getV2(), x, y,
+			region.getRegionWidth(), region.getRegionHeight());
+	}
+
+	/** Adds a sprite with white color, no rotation, and no scale.
+	 * @return The index of the new sprite. */
+	public int add (GLTexture texture, float u, float v, float u2, float v2, float x, float y, float width, float height) {
+		if (size == capacity) throw new IllegalStateException("The Quad2DArray is full: " + capacity);
+		int textureIndex = textures.indexOf(texture, true);
+		if (textureIndex == -1) {
+			textureIndex = textures.size;
+			textures.add(texture);
+		}
+		final int i = size++;
+		this.x[i] = x;
+		this.y[i] = y;
+		originX[i] = originY[i] = 0;
+		this.width[i] = width;
+		this.height[i] = height;
+		scaleX[i] = scaleY[i] = 1;
+		rotation[i] = 0;
+		color[i] = WHITE;
+		this.u[i] = u;
+		this.v[i] = v;
+		this.u2[i] = u2;
+		this.v2[i] = v2;
+		this.textureIndex[i] = textureIndex;
+		return i;
+	}
+
+	/** Removes a sprite by moving the last sprite into its index. */
+	public void removeIndex (int index) {
+		if (index >= size) throw new IndexOutOfBoundsException("index can't be >= size: " + index + " >= " + size);
+		final int last = --size;
+		if (index == last) return;
+		x[index] = x[last];
+		y[index] = y[last];
+		originX[index] = originX[last];
+		originY[index] = originY[last];
+		width[index] = width[last];
+		height[index] = height[last];
+		scaleX[index] = scaleX[last];
+		scaleY[index] = scaleY[last];
+		rotation[index] = rotation[last];
+		color[index] = color[last];
+		u[index] = u[last];
+		v[index] = v[last];
+		u2[index] = u2[last];
+		v2[index] = v2[last];
+		textureIndex[index] = textureIndex[last];
+	}
+
+	/** Removes all sprites and drops the texture references. */
+	public void clear () {
+		size = 0;
+		textures.clear();
+	}
+
+	public int size () {
+		return size;
+	}
+
+	public int getCapacity () {
+		return capacity;
+	}
+
+	/** Writes the vertex data of a range of sprites, in the same layout as a {@link Quad2D} with one texture.
+	 * @param from The index of the first sprite.
+	 * @param to The index after the last sprite.
+	 * @param vertices The destination, which must have room for {@value #SPRITE_SIZE} floats per sprite.
+	 * @param offset The index in the destination at which to start writing. */
+	public void write (int from, int to, float[] vertices, int offset) {
+		final float[] x = this.x, y = this.y, originX = this.originX, originY = this.originY;
+		final float[] width = this.width, height = this.height, scaleX = this.scaleX, scaleY = this.scaleY;
+		final float[] rotation = this.rotation, color = this.color, u = this.u, v = this.v, u2 = this.u2, v2 = this.v2;
+		for (int s = from, i = offset; s < to; s++, i += SPRITE_SIZE) {
+			// Corners relative to the origin, scaled
+			final float fx = -originX[s] * scaleX[s];
+			final float fy = -originY[s] * scaleY[s];
+			final float fx2 = (width[s] - originX[s]) * scaleX[s];
+			final float fy2 = (height[s] - originY[s]) * scaleY[s];
+
+			// Conditional moves rather than branches. The sine table is not exact at zero.
+			final float degrees = rotation[s];
+			final float cos = degrees == 0 ? 1 : MathUtils.cosDeg(degrees);
+			final float sin = degrees == 0 ? 0 : MathUtils.sinDeg(degrees);
+
+			final float worldOriginX = x[s] + originX[s];
+			final float worldOriginY = y[s] + originY[s];
+			final float x1 = cos * fx - sin * fy;
+			final float y1 = sin * fx + cos * fy;
+			final float x2 = cos * fx - sin * fy2;
+			final float y2 = sin * fx + cos * fy2;
+			final float x3 = cos * fx2 - sin * fy2;
+			final float y3 = sin * fx2 + cos * fy2;
+			final float x4 = x1 + (x3 - x2);
+			final float y4 = y3 - (y2 - y1);
+			final float c = color[s];
+
+			vertices[i] = x1 + worldOriginX;
+			vertices[i + 1] = y1 + worldOriginY;
+			vertices[i + 2] = c;
+			vertices[i + 3] = u[s];
+			vertices[i + 4] = v2[s];
+
+			vertices[i + 5] = x2 + worldOriginX;
+			vertices[i + 6] = y2 + worldOriginY;
+			vertices[i + 7] = c;
+			vertices[i + 8] = u[s];
+			vertices[i + 9] = v[s];
+
+			vertices[i + 10] = x3 + worldOriginX;
+			vertices[i + 11] = y3 + worldOriginY;
+			vertices[i + 12] = c;
+			vertices[i + 13] = u2[s];
+			vertices[i + 14] = v[s];
+
+			vertices[i + 15] = x4 + worldOriginX;
+			vertices[i + 16] = y4 + worldOriginY;
+			vertices[i + 17] = c;
+			vertices[i + 18] = u2[s];
+			vertices[i + 19] = v2[s];
+		}
+	}
+
+	/** Draws all sprites, in order. Must be called between {@link FlexBatch#begin()} and {@link FlexBatch#end()}. */
+	public void draw (FlexBatch<? extends Quad2D> batch) {
+		draw(batch, 0, size);
+	}
+
+	/** Draws a range of sprites, in order. Must be called between {@link FlexBatch#begin()} and {@link FlexBatch#end()}.
+	 * @param from The index of the first sprite.
+	 * @param to The index after the last sprite. */
+	public void draw (FlexBatch<? extends Quad2D> batch, int from, int to) {
+		if (stagingVertices == null) stagingVertices = new float[CHUNK_SPRITES * SPRITE_SIZE];
+		final int[] textureIndex = this.textureIndex;
+		int runStart = from;
+		while (runStart < to) {
+			final int runTexture = textureIndex[runStart];
+			int runEnd = runStart + 1;
+			while (runEnd < to && textureIndex[runEnd] == runTexture)
+				runEnd++;
+
+			drawQuad.texture(textures.get(runTexture));
+			for (int chunkStart = runStart; chunkStart < runEnd; chunkStart += CHUNK_SPRITES) {
+				final int chunkEnd = Math.min(chunkStart + CHUNK_SPRITES, runEnd);
+				write(chunkStart, chunkEnd, stagingVertices, 0);
+				batch.draw(drawQuad, stagingVertices, 0, (chunkEnd - chunkStart) * SPRITE_SIZE, VERTEX_SIZE);
+			}
+			runStart = runEnd;
+		}
+		drawQuad.reset();
+	}
+}
@@ -0,0 +1,312 @@
+package com.cyphercove.gdx.flexbatch;
+
+import java.lang.reflect.Modifier;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.IndexBufferObject;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import com.cyphercove.gdx.flexbatch.Batchable.FixedSizeBatchable;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.IncrementalVertexBuffer;
+import com.cyphercove.gdx.flexbatch.utils.IntIndexBufferObject;
+import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+
+/** Draws a set of long-lived {@link FixedSizeBatchable FixedSizeBatchables}, of which only a few change each frame. Each
+ * registered Batchable owns a fixed range of vertices, or slot, in a buffer object that keeps its contents between frames. A
+ * Batchable is applied when it is {@link #register(FixedSizeBatchable) registered}, and again only when it is
+ * {@link #markDirty(FixedSizeBatchable) marked dirty}. When {@link #draw()} is called, the ranges of the changed slots are
+ * merged where they touch and uploaded with as few glBufferSubData calls as possible, and all registered Batchables are drawn
+ * with a single draw call.
+ * <p>
+ * All registered Batchables must share the same textures and render context, so they can be drawn together. The amount of data
+ * uploaded by the most recent draw is available in {@link #uploadedBytes} and {@link #uploadCalls}.
+ * <p>
+ * Unregistering a Batchable moves the Batchable in the last slot into the freed slot, so the order in which Batchables are drawn
+ * is not preserved. A SlotBatch must be {@link #dispose() disposed of} when no longer used to avoid leaking memory.
+ *
+ * @param <T> The type of Batchable that can be registered. This must match the class type that is passed to the constructor.
+ *
+ * @author cypherdare */
+public class SlotBatch<T extends FixedSizeBatchable> implements Disposable {
+
+	public final Class<T> batchableType;
+	private final T internalBatchable;
+	private final Mesh mesh;
+	private final IncrementalVertexBuffer vertexBuffer;
+	private final IntIndexBufferObject intIndexBuffer; // null if using 16-bit indices
+	private final AttributeOffsets attributeOffsets;
+	private final int vertexSize, verticesPerBatchable, vertexDataPerBatchable, indicesPerBatchable, maxSlots;
+	private final float[] scratchVertices;
+
+	private final Array<T> slots;
+	private final ObjectIntMap<T> slotIndices = new ObjectIntMap<T>();
+
+	/** Number of bytes uploaded during the last {@link #draw()}. **/
+	public int uploadedBytes = 0;
+	/** Number of upload calls made during the last {@link #draw()}. **/
+	public int uploadCalls = 0;
+	/** Number of bytes uploaded, ever. Will not be reset unless set manually. **/
+	public long totalUploadedBytes = 0;
+	/** Number of rendering calls, ever. Will not be reset unless set manually. **/
+	public int totalRenderCalls = 0;
+
+	private final Matrix4 transformMatrix = new Matrix4();
+	private final Matrix4 projectionMatrix = new Matrix4();
+	private final BatchUniforms uniforms;
+
+	private final RenderContextAccumulator renderContext;
+	/** The context shared by all registered Batchables. */
+	private final RenderContextAccumulator.Snapshot sharedState = new RenderContextAccumulator.Snapshot();
+
+	private ShaderProgram shader;
+
+	/** Construct a SlotBatch capable of holding Batchables of the given type.
+	 *
+	 * @param batchableType The type of Batchable that defines the VertexAttributes of this SlotBatch. It must not be
+	 *           {@link FixedSizeBatchable#isInstanced() instanced}.
+	 * @param maxSlots The maximum number of Batchables that can be registered at once. If this requires more than 65536
+	 *           vertices, 32-bit indices are used, which requires GL30 or the OES_element_index_uint extension. See
+	 *           {@link IntIndexBufferObject#isSupported()}. */
+	public SlotBatch (Class<T> batchableType, int maxSlots) {
+		if (Modifier.isAbstract(batchableType.getModifiers()))
+			throw new IllegalArgumentException("Can't use an abstract batchableType");
+		if (maxSlots <= 0) throw new IllegalArgumentException("maxSlots must be greater than 0");
+
+		this.batchableType = batchableType;
+
+		try {
+			internalBatchable = batchableType.newInstance();
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Batchable classes must be public and have an empty constructor.", e);
+		}
+		FixedSizeBatchable fixedSizeBatchable = internalBatchable;
+		if (fixedSizeBatchable.isInstanced()) throw new IllegalArgumentException("Can't use an instanced batchableType");
+
+		Array<VertexAttribute> attributesArray = new Array<VertexAttribute>(true, 10, VertexAttribute.class);
+		internalBatchable.addVertexAttributes(attributesArray);
+		VertexAttributes vertexAttributes = new VertexAttributes(attributesArray.toArray());
+		attributeOffsets = new AttributeOffsets(vertexAttributes);
+		vertexSize = vertexAttributes.vertexSize / 4;
+		verticesPerBatchable = fixedSizeBatchable.getVerticesPerBatchable();
+		vertexDataPerBatchable = verticesPerBatchable * vertexSize;
+		indicesPerBatchable = fixedSizeBatchable.getTrianglesPerBatchable() * 3;
+		this.maxSlots = maxSlots;
+		scratchVertices = new float[vertexDataPerBatchable];
+		slots = new Array<T>(true, maxSlots, batchableType);
+
+		final int maxVertices = maxSlots * verticesPerBatchable;
+		final int maxIndices = maxSlots * indicesPerBatchable;
+		final boolean intIndices = maxVertices > 65536;
+		if (intIndices && !IntIndexBufferObject.isSupported()) throw new IllegalArgumentException(
+			"Can't have more than 65536 vertices without GL30 or OES_element_index_uint: " + maxVertices);
+
+		vertexBuffer = new IncrementalVertexBuffer(maxVertices, vertexAttributes);
+		if (intIndices) {
+			int[] triangles = new int[maxIndices];
+			fixedSizeBatchable.populateTriangleIndices(triangles);
+			intIndexBuffer = new IntIndexBufferObject(true, maxIndices);
+			intIndexBuffer.setIndices(triangles, 0, maxIndices);
+			mesh = new CustomMesh(vertexBuffer, intIndexBuffer);
+		} else {
+			short[] triangles = new short[maxIndices];
+			fixedSizeBatchable.populateTriangleIndices(triangles);
+			intIndexBuffer = null;
+			mesh = new CustomMesh(vertexBuffer, new IndexBufferObject(true, maxIndices));
+			mesh.setIndices(triangles);
+		}
+
+		uniforms = new BatchUniforms(internalBatchable.getNumberOfTextureUnits());
+
+		projectionMatrix.setToOrtho2D(0, 0, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
+
+		renderContext = new RenderContextAccumulator();
+		renderContext.setBlending(true);
+		renderContext.setBlendFunction(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+		internalBatchable.prepareSharedContext(renderContext);
+		renderContext.saveState(sharedState);
+	}
+
+	/** Registers a Batchable, assigning it a slot and applying its vertex data. The Batchable must not be modified again until
+	 * after it is unregistered, unless {@link #markDirty(FixedSizeBatchable)} is called afterwards.
+	 * @param batchable A Batchable that uses the same textures and render context as the other registered Batchables.
+	 * @return The slot of the Batchable, which is only valid until the next call to {@link #unregister(FixedSizeBatchable)}. */
+	public int register (T batchable) {
+		if (slotIndices.containsKey(batchable)) throw new IllegalArgumentException("The batchable is already registered.");
+		if (slots.size == maxSlots) throw new IllegalStateException("All " + maxSlots + " slots are in use.");
+		prepareContext(batchable);
+		final int slot = slots.size;
+		slots.add(batchable);
+		slotIndices.put(batchable, slot);
+		applySlot(batchable, slot);
+		return slot;
+	}
+
+	/** Unregisters a Batchable. The Batchable in the last slot is moved into the freed slot.
+	 * @return Whether the Batchable was registered. */
+	public boolean unregister (T batchable) {
+		final int slot = slotIndices.remove(batchable, -1);
+		if (slot == -1) return false;
+		final int lastSlot = slots.size - 1;
+		if (slot != lastSlot) {
+			T moved = slots.get(lastSlot);
+			slots.set(slot, moved);
+			slotIndices.put(moved, slot);
+			applySlot(moved, slot);
+		}
+		slots.removeIndex(lastSlot);
+		if (slots.size == 0) {
+			renderContext.clearAllTextureUnits();
+			internalBatchable.prepareSharedContext(renderContext);
+			renderContext.saveState(sharedState);
+		}
+		return true;
+	}
+
+	/** Re-applies the vertex data of a registered Batchable that has been modified. Its slot is uploaded on the next
+	 * {@link #draw()}. Its textures and render context must not have been changed. */
+	public void markDirty (T batchable) {
+		final int slot = slotIndices.get(batchable, -1);
+		if (slot == -1) throw new IllegalArgumentException("The batchable is not registered.");
+		prepareContext(batchable);
+		applySlot(batchable, slot);
+	}
+
+	/** Unregisters all Batchables. */
+	public void clear () {
+		slots.clear();
+		slotIndices.clear();
+		renderContext.clearAllTextureUnits();
+		internalBatchable.prepareSharedContext(renderContext);
+		renderContext.saveState(sharedState);
+	}
+
+	/** @return Whether the Batchable is registered. */
+	public boolean isRegistered (T batchable) {
+		return slotIndices.containsKey(batchable);
+	}
+
+	/** @return The number of registered Batchables. */
+	public int size () {
+		return slots.size;
+	}
+
+	private void prepareContext (T batchable) {
+		final int remainingVertices = (maxSlots - slots.size) * verticesPerBatchable;
+		final int remainingIndices = (maxSlots - slots.size) * indicesPerBatchable;
+		batchable.prepareContext(renderContext, remainingVertices, remainingIndices);
+		if (slots.size == 0) {
+			renderContext.saveState(sharedState);
+		} else if (!renderContext.matchesState(sharedState)) {
+			renderContext.restoreState(sharedState);
+			throw new IllegalArgumentException("All registered batchables must use the same textures and render context.");
+		}
+	}
+
+	private void applySlot (T batchable, int slot) {
+		batchable.apply(scratchVertices, 0, attributeOffsets, vertexSize);
+		vertexBuffer.updateVertices(slot * vertexDataPerBatchable, scratchVertices, 0, vertexDataPerBatchable);
+	}
+
+	/** Uploads the slots that have changed since the last draw and draws all registered Batchables. */
+	public void draw () {
+		if (shader == null) throw new IllegalStateException("A shader must be set before drawing.");
+		renderContext.begin();
+		renderContext.executeChanges();
+		shader.begin();
+		renderContext.setShader(shader);
+		uniforms.invalidate();
+		applyMatrices();
+		applyTextureUniforms();
+		renderContext.saveState(sharedState); // the uniforms are part of the context checked by markDirty()
+		mesh.bind(shader);
+		uploadedBytes = vertexBuffer.getLastUploadBytes();
+		uploadCalls = vertexBuffer.getLastUploadCalls();
+		totalUploadedBytes += uploadedBytes;
+
+		final int count = slots.size * indicesPerBatchable;
+		if (count > 0) {
+			if (intIndexBuffer != null)
+				Gdx.gl20.glDrawElements(GL20.GL_TRIANGLES, count, GL20.GL_UNSIGNED_INT, 0);
+			else
+				mesh.render(shader, GL20.GL_TRIANGLES, 0, count, false);
+			totalRenderCalls++;
+		}
+
+		mesh.unbind(shader);
+		renderContext.end();
+		renderContext.setShader(null);
+		shader.end();
+	}
+
+	public ShaderProgram getShader () {
+		return shader;
+	}
+
+	public void setShader (ShaderProgram shader) {
+		this.shader = shader;
+	}
+
+	/** Disables blending for all registered Batchables. */
+	public void disableBlending () {
+		renderContext.setBlending(false);
+		renderContext.saveState(sharedState);
+	}
+
+	/** Enables blending for all registered Batchables. */
+	public void enableBlending () {
+		renderContext.setBlending(true);
+		renderContext.saveState(sharedState);
+	}
+
+	public void setBlendFunction (int srcFunc, int dstFunc) {
+		renderContext.setBlendFunction(srcFunc, dstFunc);
+		renderContext.saveState(sharedState);
+	}
+
+	public void setBlendFunction (int srcColorFunc, int dstColorFunc, int srcAlphaFunc, int dstAlphaFunc) {
+		renderContext.setBlendFunction(srcColorFunc, dstColorFunc, srcAlphaFunc, dstAlphaFunc);
+		renderContext.saveState(sharedState);
+	}
+
+	public Matrix4 getProjectionMatrix () {
+		return projectionMatrix;
+	}
+
+	public Matrix4 getTransformMatrix () {
+		return transformMatrix;
+	}
+
+	public void setProjectionMatrix (Matrix4 projection) {
+		projectionMatrix.set(projection);
+	}
+
+	public void setTransformMatrix (Matrix4 transform) {
+		transformMatrix.set(transform);
+	}
+
+	/** Called only while drawing. Recalculates the matrices and sets their values to shader uniforms. The default implementation
+	 * combines the projection and transform matrices and sets them to a single uniform named "u_projTrans". Its location is
+	 * looked up once per shader, and it is not uploaded again if the combined matrix is unchanged. */
+	protected void applyMatrices () {
+		uniforms.applyMatrices(getShader(), projectionMatrix, transformMatrix);
+	}
+
+	/** Sets shader uniform values for the textures. The default implementation uses the uniform name "u_texture" with the texture
+	 * unit appended. For example, if the Batchable type supports two textures, uniforms will be set for "u_texture0" and
+	 * "u_texture1". Uniforms the shader does not have are skipped. */
+	protected void applyTextureUniforms () {
+		uniforms.applyTextureUniforms(renderContext);
+	}
+
+	public void dispose () {
+		mesh.dispose();
+	}
+}
@@ -0,0 +1,105 @@
+package com.cyphercove.gdx.flexbatch.batchable;
+
+import java.nio.FloatBuffer;
+
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
+
+/** A {@link Quad3D} that always faces the camera, with its corners expanded by the vertex shader instead of on the CPU. Each
+ * vertex holds the position of the origin and the corner's scaled offset from it, so no rotation math is done when it is applied.
+ * The {@link #rotation} and any {@link com.cyphercove.gdx.flexbatch.utils.BillboardBasis BillboardBasis} are ignored.
+ * <p>
+ * The shader can be generated with {@link BatchablePreparation#generateBillboardVertexShader(int)} and
+ * {@link BatchablePreparation#generateGenericFragmentShader(int)}. It needs the camera's view matrix in the uniform
+ * {@value BatchablePreparation#VIEW_UNIFORM}, which should be set through the FlexBatch so it is tracked with the other
+ * uniforms, for example with {@code batch.setUniformMatrix("u_view", camera.view)}. The quads are aligned with the screen.
+ * <p>
+ * Since its position is the position of its origin, it can be sorted by a
+ * {@link com.cyphercove.gdx.flexbatch.utils.BatchableSorter BatchableSorter} like any other Quad3D.
+ *
+ * @author cypherdare */
+public class BillboardQuad3D extends Quad3D {
+
+	/** A BillboardQuad3D that starts opaque. */
+	public BillboardQuad3D () {
+	}
+
+	/** A BillboardQuad3D that starts with blending enabled, with the specified blend factors. */
+	public BillboardQuad3D (int srcBlendFactor, int dstBlendFactor) {
+		super(srcBlendFactor, dstBlendFactor);
+	}
+
+	/** A BillboardQuad3D that starts with blending enabled, and a common set of blend factors. */
+	public BillboardQuad3D (Blending blending) {
+		super(blending);
+	}
+
+	protected void addVertexAttributes (Array<VertexAttribute> attributes) {
+		super.addVertexAttributes(attributes);
+		attributes.add(new VertexAttribute(Usage.Generic, 2, BatchablePreparation.BILLBOARD_OFFSET_ATTRIBUTE));
+	}
+
+	protected void applyCorners (float[] vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		final float left = (-width / 2f - originX) * scaleX;
+		final float right = (width / 2f - originX) * scaleX;
+		final float bottom = (-height / 2f - originY) * scaleY;
+		final float top = (height / 2f - originY) * scaleY;
+		final float x = this.x, y = this.y, z = this.z;
+
+		int i = vertexStartingIndex;
+		for (int j = 0; j < 4; j++, i += vertexSize) {
+			vertices[i] = x;
+			vertices[i + 1] = y;
+			vertices[i + 2] = z;
+		}
+
+		int oi = vertexStartingIndex + offsets.generic0;
+		vertices[oi] = left;
+		vertices[oi + 1] = bottom;
+		oi += vertexSize;
+		vertices[oi] = left;
+		vertices[oi + 1] = top;
+		oi += vertexSize;
+		vertices[oi] = right;
+		vertices[oi + 1] = top;
+		oi += vertexSize;
+		vertices[oi] = right;
+		vertices[oi + 1] = bottom;
+	}
+
+	protected void applyCorners (FloatBuffer vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		final float left = (-width / 2f - originX) * scaleX;
+		final float right = (width / 2f - originX) * scaleX;
+		final float bottom = (-height / 2f - originY) * scaleY;
+		final float top = (height / 2f - originY) * scaleY;
+		final float x = this.x, y = this.y, z = this.z;
+
+		int i = vertexStartingIndex;
+		for (int j = 0; j < 4; j++, i += vertexSize) {
+			vertices.put(i, x);
+			vertices.put(i + 1, y);
+			vertices.put(i + 2, z);
+		}
+
+		int oi = vertexStartingIndex + offsets.generic0;
+		vertices.put(oi, left);
+		vertices.put(oi + 1, bottom);
+		oi += vertexSize;
+		vertices.put(oi, left);
+		vertices.put(oi + 1, top);
+		oi += vertexSize;
+		vertices.put(oi, right);
+		vertices.put(oi + 1, top);
+		oi += vertexSize;
+		vertices.put(oi, right);
+		vertices.put(oi + 1, bottom);
+	}
+
+	// Usually, chain methods must be overridden to allow return of subclass
+	// type. However, BillboardQuad3D does not have any unique parameter setter
+	// methods, so it is acceptable to return Quad3Ds.
+
+}
@@ -0,0 +1,137 @@
+package com.cyphercove.gdx.flexbatch.batchable;
+
+import java.nio.FloatBuffer;
+
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
+import com.cyphercove.gdx.flexbatch.utils.Region2D;
+import com.cyphercove.gdx.flexbatch.utils.VertexPacking;
+
+/** A {@link Quad2D} with compact vertex data, from {@link BatchablePreparation#addCompactBaseAttributes(Array, int)}. The
+ * corner positions are rounded to whole numbers and stored as shorts, and the texture coordinates are stored as normalized
+ * shorts, so each vertex is 12 bytes instead of 20. This suits pixel art drawn with a camera in pixel units, where it reduces
+ * the amount of vertex data uploaded by 40%. The positions must be within the range of a short.
+ * <p>
+ * It can only be drawn by a FlexBatch instantiated with a CompactQuad2D type, or a subclass. Three-dimensional texture
+ * coordinates are not supported. Since the vertex data is packed into floats with {@link VertexPacking}, it is not supported on
+ * GWT.
+ *
+ * @author cypherdare */
+public class CompactQuad2D extends Quad2D {
+
+	protected final boolean isTextureCoordinate3D () {
+		return false;
+	}
+
+	protected void addVertexAttributes (Array<VertexAttribute> attributes) {
+		BatchablePreparation.addCompactBaseAttributes(attributes, getNumberOfTextures());
+	}
+
+	protected int apply (float[] vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		applyDefaultSize();
+
+		final float worldOriginX = x + originX;
+		final float worldOriginY = y + originY;
+		final float fx = -originX * scaleX;
+		final float fy = -originY * scaleY;
+		final float fx2 = (width - originX) * scaleX;
+		final float fy2 = (height - originY) * scaleY;
+		final float cos = rotation == 0 ? 1 : MathUtils.cosDeg(rotation);
+		final float sin = rotation == 0 ? 0 : MathUtils.sinDeg(rotation);
+		final float x1 = cos * fx - sin * fy;
+		final float y1 = sin * fx + cos * fy;
+		final float x2 = cos * fx - sin * fy2;
+		final float y2 = sin * fx + cos * fy2;
+		final float x3 = cos * fx2 - sin * fy2;
+		final float y3 = sin * fx2 + cos * fy2;
+
+		int i = vertexStartingIndex + offsets.position;
+		vertices[i] = VertexPacking.packShorts(x1 + worldOriginX, y1 + worldOriginY);
+		i += vertexSize;
+		vertices[i] = VertexPacking.packShorts(x2 + worldOriginX, y2 + worldOriginY);
+		i += vertexSize;
+		vertices[i] = VertexPacking.packShorts(x3 + worldOriginX, y3 + worldOriginY);
+		i += vertexSize;
+		vertices[i] = VertexPacking.packShorts(x1 + (x3 - x2) + worldOriginX, y3 - (y2 - y1) + worldOriginY);
+
+		final float color = this.color;
+		i = vertexStartingIndex + offsets.color0;
+		for (int corner = 0; corner < 4; corner++, i += vertexSize)
+			vertices[i] = color;
+
+		final int rotation = coordinatesRotation % 4;
+		int tci = vertexStartingIndex + offsets.textureCoordinate0;
+		for (int r = 0; r < regions.length; r++, tci++) {
+			final Region2D region = regions[r];
+			for (int corner = 0, v = tci; corner < 4; corner++, v += vertexSize)
+				vertices[v] = packTextureCoordinates(region, (corner + 4 - rotation) % 4);
+		}
+
+		return 4;
+	}
+
+	protected int apply (FloatBuffer vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		applyDefaultSize();
+
+		final float worldOriginX = x + originX;
+		final float worldOriginY = y + originY;
+		final float fx = -originX * scaleX;
+		final float fy = -originY * scaleY;
+		final float fx2 = (width - originX) * scaleX;
+		final float fy2 = (height - originY) * scaleY;
+		final float cos = rotation == 0 ? 1 : MathUtils.cosDeg(rotation);
+		final float sin = rotation == 0 ? 0 : MathUtils.sinDeg(rotation);
+		final float x1 = cos * fx - sin * fy;
+		final float y1 = sin * fx + cos * fy;
+		final float x2 = cos * fx - sin * fy2;
+		final float y2 = sin * fx + cos * fy2;
+		final float x3 = cos * fx2 - sin * fy2;
+		final float y3 = sin * fx2 + cos * fy2;
+
+		int i = vertexStartingIndex + offsets.position;
+		vertices.put(i, VertexPacking.packShorts(x1 + worldOriginX, y1 + worldOriginY));
+		i += vertexSize;
+		vertices.put(i, VertexPacking.packShorts(x2 + worldOriginX, y2 + worldOriginY));
+		i += vertexSize;
+		vertices.put(i, VertexPacking.packShorts(x3 + worldOriginX, y3 + worldOriginY));
+		i += vertexSize;
+		vertices.put(i, VertexPacking.packShorts(x1 + (x3 - x2) + worldOriginX, y3 - (y2 - y1) + worldOriginY));
+
+		final float color = this.color;
+		i = vertexStartingIndex + offsets.color0;
+		for (int corner = 0; corner < 4; corner++, i += vertexSize)
+			vertices.put(i, color);
+
+		final int rotation = coordinatesRotation % 4;
+		int tci = vertexStartingIndex + offsets.textureCoordinate0;
+		for (int r = 0; r < regions.length; r++, tci++) {
+			final Region2D region = regions[r];
+			for (int corner = 0, v = tci; corner < 4; corner++, v += vertexSize)
+				vertices.put(v, packTextureCoordinates(region, (corner + 4 - rotation) % 4));
+		}
+
+		return 4;
+	}
+
+	/** Unrotated, the corners are ordered (u, v2), (u, v), (u2, v), (u2, v2). */
+	private static float packTextureCoordinates (Region2D region, int unrotatedCorner) {
+		switch (unrotatedCorner) {
+		case 0:
+			return VertexPacking.packUnsignedNormalizedShorts(region.u, region.v2);
+		case 1:
+			return VertexPacking.packUnsignedNormalizedShorts(region.u, region.v);
+		case 2:
+			return VertexPacking.packUnsignedNormalizedShorts(region.u2, region.v);
+		default:
+			return VertexPacking.packUnsignedNormalizedShorts(region.u2, region.v2);
+		}
+	}
+
+	// Usually, chain methods must be overridden to allow return of subclass
+	// type. However, CompactQuad2D does not have any unique parameter setter
+	// methods, so it is acceptable to return Quad2Ds.
+
+}
@@ -0,0 +1,188 @@
+package com.cyphercove.gdx.flexbatch.batchable;
+
+import java.nio.FloatBuffer;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
+import com.cyphercove.gdx.flexbatch.utils.Region2D;
+import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+
+/** A {@link Quad2D} that is drawn with hardware instancing. Instead of four complete vertices, a single record of its position,
+ * rotation, edges, color, and texture region(s) is sent to the GPU, and the vertex shader expands it into the four corners. This
+ * uploads less vertex data and does less work on the CPU per quad, at the cost of a slightly more complex vertex shader.
+ * <p>
+ * It requires GL30, and can only be drawn by a FlexBatch instantiated with an InstancedQuad2D type and zero max triangles. For
+ * such a FlexBatch, the max vertices parameter is the maximum number of quads. The shader can be generated with
+ * {@link BatchablePreparation#generateInstancedQuadVertexShader(int)} and
+ * {@link BatchablePreparation#generateGenericFragmentShader(int)}.
+ * <p>
+ * Three-dimensional texture coordinates are not supported. It may be subclassed to support zero or multiple textures--see
+ * {@link #getNumberOfTextures()}.
+ *
+ * @author cypherdare */
+public class InstancedQuad2D extends Quad2D {
+
+	protected final boolean isInstanced () {
+		return true;
+	}
+
+	protected final boolean isTextureCoordinate3D () {
+		return false;
+	}
+
+	protected void addVertexAttributes (Array<VertexAttribute> attributes) {
+		BatchablePreparation.addInstancedQuadAttributes(attributes, getNumberOfTextures());
+	}
+
+	protected boolean prepareContext (RenderContextAccumulator renderContext, int remainingVertices, int remainingIndices) {
+		boolean textureChanged = false;
+		for (int i = 0; i < textures.length; i++) {
+			textureChanged |= renderContext.setTextureUnit(textures[i], i);
+		}
+
+		return textureChanged || remainingVertices < 1;
+	}
+
+	protected int apply (float[] vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		applyDefaultSize();
+
+		int i = vertexStartingIndex + offsets.position;
+		vertices[i] = x + originX;
+		vertices[i + 1] = y + originY;
+		vertices[i + 2] = rotation;
+		vertices[i + 3] = coordinatesRotation % 4;
+
+		i = vertexStartingIndex + offsets.generic0;
+		vertices[i] = -originX * scaleX;
+		vertices[i + 1] = -originY * scaleY;
+		vertices[i + 2] = (width - originX) * scaleX;
+		vertices[i + 3] = (height - originY) * scaleY;
+
+		vertices[vertexStartingIndex + offsets.color0] = color;
+
+		i = vertexStartingIndex + offsets.textureCoordinate0;
+		for (int j = 0; j < regions.length; j++) {
+			Region2D region = regions[j];
+			vertices[i] = region.u;
+			vertices[i + 1] = region.v;
+			vertices[i + 2] = region.u2;
+			vertices[i + 3] = region.v2;
+			i += 4;
+		}
+
+		return 1;
+	}
+
+	protected int apply (FloatBuffer vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		applyDefaultSize();
+
+		int i = vertexStartingIndex + offsets.position;
+		vertices.put(i, x + originX);
+		vertices.put(i + 1, y + originY);
+		vertices.put(i + 2, rotation);
+		vertices.put(i + 3, coordinatesRotation % 4);
+
+		i = vertexStartingIndex + offsets.generic0;
+		vertices.put(i, -originX * scaleX);
+		vertices.put(i + 1, -originY * scaleY);
+		vertices.put(i + 2, (width - originX) * scaleX);
+		vertices.put(i + 3, (height - originY) * scaleY);
+
+		vertices.put(vertexStartingIndex + offsets.color0, color);
+
+		i = vertexStartingIndex + offsets.textureCoordinate0;
+		for (int j = 0; j < regions.length; j++) {
+			Region2D region = regions[j];
+			vertices.put(i, region.u);
+			vertices.put(i + 1, region.v);
+			vertices.put(i + 2, region.u2);
+			vertices.put(i + 3, region.v2);
+			i += 4;
+		}
+
+		return 1;
+	}
+
+	// Chain methods must be overridden to allow return of subclass type.
+
+	public InstancedQuad2D position (float x, float y) {
+		super.position(x, y);
+		return this;
+	}
+
+	public InstancedQuad2D position (Vector2 position) {
+		super.position(position);
+		return this;
+	}
+
+	public InstancedQuad2D rotation (float rotation) {
+		super.rotation(rotation);
+		return this;
+	}
+
+	public InstancedQuad2D texture (Texture texture) {
+		super.texture(texture);
+		return this;
+	}
+
+	public InstancedQuad2D region (float u, float v, float u2, float v2) {
+		super.region(u, v, u2, v2);
+		return this;
+	}
+
+	public InstancedQuad2D textureRegion (TextureRegion region) {
+		super.textureRegion(region);
+		return this;
+	}
+
+	public InstancedQuad2D flip (boolean flipX, boolean flipY) {
+		super.flip(flipX, flipY);
+		return this;
+	}
+
+	public InstancedQuad2D flipAll (boolean flipX, boolean flipY) {
+		super.flipAll(flipX, flipY);
+		return this;
+	}
+
+	public InstancedQuad2D size (float width, float height) {
+		super.size(width, height);
+		return this;
+	}
+
+	public InstancedQuad2D origin (float originX, float originY) {
+		super.origin(originX, originY);
+		return this;
+	}
+
+	public InstancedQuad2D rotateCoordinates90 (boolean clockwise) {
+		super.rotateCoordinates90(clockwise);
+		return this;
+	}
+
+	public InstancedQuad2D color (Color color) {
+		super.color(color);
+		return this;
+	}
+
+	public InstancedQuad2D color (float r, float g, float b, float a) {
+		super.color(r, g, b, a);
+		return this;
+	}
+
+	public InstancedQuad2D color (float floatBits) {
+		super.color(floatBits);
+		return this;
+	}
+
+	public InstancedQuad2D scale (float scaleX, float scaleY) {
+		super.scale(scaleX, scaleY);
+		return this;
+	}
+}
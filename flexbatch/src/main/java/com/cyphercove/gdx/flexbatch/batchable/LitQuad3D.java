@@ -1,19 +1,21 @@
 
 package com.cyphercove.gdx.flexbatch.batchable;
 
+import java.nio.FloatBuffer;
+
+import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.VertexAttribute;
 import com.badlogic.gdx.graphics.VertexAttributes.Usage;
-import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
 import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.BillboardBasis;
+import com.cyphercove.gdx.flexbatch.utils.VertexPacking;
 
 /** A {@link Quad3D} with support for lighting through the use of normal, tangent, and binormal vertex attributes.
  * 
  * @author cypherdare */
 public class LitQuad3D extends Quad3D {
 
-	private static final Vector3 TMP1 = new Vector3();
-
 	/** A LitQuad3D that starts opaque. */
 	public LitQuad3D () {
 	}
@@ -28,76 +30,101 @@ public class LitQuad3D extends Quad3D {
 		super(blending);
 	}
 
+	/** Determines whether the normal, tangent, and binormal are each stored as four normalized signed bytes instead of three
+	 * floats, which makes each vertex 24 bytes smaller. The fourth component is zero. Must return the same constant value for
+	 * every instance of the class. Compact vectors are packed with {@link VertexPacking}, so they are not supported on GWT.
+	 * <p>
+	 * Overriding this method will produce a subclass that is incompatible with a FlexBatch that was instantiated for the
+	 * superclass type. */
+	protected boolean isBasisCompact () {
+		return false;
+	}
+
 	protected void addVertexAttributes (Array<VertexAttribute> attributes) {
 		super.addVertexAttributes(attributes);
-		attributes.add(new VertexAttribute(Usage.Normal, 3, "a_normal"));
-		attributes.add(new VertexAttribute(Usage.Tangent, 3, "a_tangent"));
-		attributes.add(new VertexAttribute(Usage.BiNormal, 3, "a_binormal"));
+		if (isBasisCompact()) {
+			attributes.add(new VertexAttribute(Usage.Normal, 4, GL20.GL_BYTE, true, "a_normal"));
+			attributes.add(new VertexAttribute(Usage.Tangent, 4, GL20.GL_BYTE, true, "a_tangent"));
+			attributes.add(new VertexAttribute(Usage.BiNormal, 4, GL20.GL_BYTE, true, "a_binormal"));
+		} else {
+			attributes.add(new VertexAttribute(Usage.Normal, 3, "a_normal"));
+			attributes.add(new VertexAttribute(Usage.Tangent, 3, "a_tangent"));
+			attributes.add(new VertexAttribute(Usage.BiNormal, 3, "a_binormal"));
+		}
 	}
 
 	protected int apply (float[] vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
 		super.apply(vertices, vertexStartingIndex, offsets, vertexSize);
 
-		TMP1.set(0, 0, 1);
-		rotation.transform(TMP1);
-		int ni = vertexStartingIndex + offsets.normal;
-		vertices[ni] = TMP1.x;
-		vertices[ni + 1] = TMP1.y;
-		vertices[ni + 2] = TMP1.z;
-		ni += vertexSize;
-		vertices[ni] = TMP1.x;
-		vertices[ni + 1] = TMP1.y;
-		vertices[ni + 2] = TMP1.z;
-		ni += vertexSize;
-		vertices[ni] = TMP1.x;
-		vertices[ni + 1] = TMP1.y;
-		vertices[ni + 2] = TMP1.z;
-		ni += vertexSize;
-		vertices[ni] = TMP1.x;
-		vertices[ni + 1] = TMP1.y;
-		vertices[ni + 2] = TMP1.z;
-
-		TMP1.set(1, 0, 0);
-		rotation.transform(TMP1);
-		int ti = vertexStartingIndex + offsets.tangent;
-		vertices[ti] = TMP1.x;
-		vertices[ti + 1] = TMP1.y;
-		vertices[ti + 2] = TMP1.z;
-		ti += vertexSize;
-		vertices[ti] = TMP1.x;
-		vertices[ti + 1] = TMP1.y;
-		vertices[ti + 2] = TMP1.z;
-		ti += vertexSize;
-		vertices[ti] = TMP1.x;
-		vertices[ti + 1] = TMP1.y;
-		vertices[ti + 2] = TMP1.z;
-		ti += vertexSize;
-		vertices[ti] = TMP1.x;
-		vertices[ti + 1] = TMP1.y;
-		vertices[ti + 2] = TMP1.z;
-
-		TMP1.set(0, 1, 0);
-		rotation.transform(TMP1);
-		int bni = vertexStartingIndex + offsets.biNormal;
-		vertices[bni] = TMP1.x;
-		vertices[bni + 1] = TMP1.y;
-		vertices[bni + 2] = TMP1.z;
-		bni += vertexSize;
-		vertices[bni] = TMP1.x;
-		vertices[bni + 1] = TMP1.y;
-		vertices[bni + 2] = TMP1.z;
-		bni += vertexSize;
-		vertices[bni] = TMP1.x;
-		vertices[bni + 1] = TMP1.y;
-		vertices[bni + 2] = TMP1.z;
-		bni += vertexSize;
-		vertices[bni] = TMP1.x;
-		vertices[bni + 1] = TMP1.y;
-		vertices[bni + 2] = TMP1.z;
+		// The columns of the rotation matrix are the rotated basis vectors. No shared temporary objects are used, so Batchables
+		// can be applied on multiple threads.
+		final BillboardBasis basis = billboardBasis;
+		if (basis != null) {
+			putBasisVector(vertices, vertexStartingIndex + offsets.normal, vertexSize, basis.normalX, basis.normalY, basis.normalZ);
+			putBasisVector(vertices, vertexStartingIndex + offsets.tangent, vertexSize, basis.rightX, basis.rightY, basis.rightZ);
+			putBasisVector(vertices, vertexStartingIndex + offsets.biNormal, vertexSize, basis.upX, basis.upY, basis.upZ);
+			return 4;
+		}
+		final float qx = rotation.x, qy = rotation.y, qz = rotation.z, qw = rotation.w;
+		putBasisVector(vertices, vertexStartingIndex + offsets.normal, vertexSize, 2 * (qx * qz + qw * qy),
+			2 * (qy * qz - qw * qx), qw * qw - qx * qx - qy * qy + qz * qz);
+		putBasisVector(vertices, vertexStartingIndex + offsets.tangent, vertexSize, qw * qw + qx * qx - qy * qy - qz * qz,
+			2 * (qx * qy + qw * qz), 2 * (qx * qz - qw * qy));
+		putBasisVector(vertices, vertexStartingIndex + offsets.biNormal, vertexSize, 2 * (qx * qy - qw * qz),
+			qw * qw - qx * qx + qy * qy - qz * qz, 2 * (qy * qz + qw * qx));
+
+		return 4;
+	}
+
+	protected int apply (FloatBuffer vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		super.apply(vertices, vertexStartingIndex, offsets, vertexSize);
+
+		final BillboardBasis basis = billboardBasis;
+		if (basis != null) {
+			putBasisVector(vertices, vertexStartingIndex + offsets.normal, vertexSize, basis.normalX, basis.normalY, basis.normalZ);
+			putBasisVector(vertices, vertexStartingIndex + offsets.tangent, vertexSize, basis.rightX, basis.rightY, basis.rightZ);
+			putBasisVector(vertices, vertexStartingIndex + offsets.biNormal, vertexSize, basis.upX, basis.upY, basis.upZ);
+			return 4;
+		}
+		final float qx = rotation.x, qy = rotation.y, qz = rotation.z, qw = rotation.w;
+		putBasisVector(vertices, vertexStartingIndex + offsets.normal, vertexSize, 2 * (qx * qz + qw * qy),
+			2 * (qy * qz - qw * qx), qw * qw - qx * qx - qy * qy + qz * qz);
+		putBasisVector(vertices, vertexStartingIndex + offsets.tangent, vertexSize, qw * qw + qx * qx - qy * qy - qz * qz,
+			2 * (qx * qy + qw * qz), 2 * (qx * qz - qw * qy));
+		putBasisVector(vertices, vertexStartingIndex + offsets.biNormal, vertexSize, 2 * (qx * qy - qw * qz),
+			qw * qw - qx * qx + qy * qy - qz * qz, 2 * (qy * qz + qw * qx));
 
 		return 4;
 	}
 
+	private void putBasisVector (float[] vertices, int index, int vertexSize, float x, float y, float z) {
+		if (isBasisCompact()) {
+			final float packed = VertexPacking.packSignedNormalizedBytes(x, y, z, 0);
+			for (int i = 0; i < 4; i++, index += vertexSize)
+				vertices[index] = packed;
+			return;
+		}
+		for (int i = 0; i < 4; i++, index += vertexSize) {
+			vertices[index] = x;
+			vertices[index + 1] = y;
+			vertices[index + 2] = z;
+		}
+	}
+
+	private void putBasisVector (FloatBuffer vertices, int index, int vertexSize, float x, float y, float z) {
+		if (isBasisCompact()) {
+			final float packed = VertexPacking.packSignedNormalizedBytes(x, y, z, 0);
+			for (int i = 0; i < 4; i++, index += vertexSize)
+				vertices.put(index, packed);
+			return;
+		}
+		for (int i = 0; i < 4; i++, index += vertexSize) {
+			vertices.put(index, x);
+			vertices.put(index + 1, y);
+			vertices.put(index + 2, z);
+		}
+	}
+
 	// Usually, chain methods must be overridden to allow return of subclass
 	// type. However, LitQuad3D does not have any unique parameter setter
 	// methods, so it is acceptable to return Quad3Ds.
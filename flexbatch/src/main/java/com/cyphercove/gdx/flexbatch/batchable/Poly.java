@@ -1,6 +1,8 @@
 
 package com.cyphercove.gdx.flexbatch.batchable;
 
+import java.nio.FloatBuffer;
+
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.VertexAttribute;
 import com.badlogic.gdx.graphics.g2d.PolygonRegion;
@@ -64,6 +66,7 @@ public abstract class Poly extends Batchable implements Poolable {
 		scaleX = scaleY = 1;
 		color = WHITE;
 		sizeSet = false;
+		markChanged();
 	}
 
 	/** Resets the state of the object and drops Texture references to prepare it for returning to a {@link Pool}. */
@@ -80,6 +83,7 @@ public abstract class Poly extends Batchable implements Poolable {
 		this.region = region;
 		numVertices = region.getVertices().length / 2;
 		numIndices = region.getTriangles().length;
+		markChanged();
 		return this;
 	}
 
@@ -87,6 +91,7 @@ public abstract class Poly extends Batchable implements Poolable {
 		this.width = width;
 		this.height = height;
 		sizeSet = true;
+		markChanged();
 		return this;
 	}
 
@@ -97,28 +102,33 @@ public abstract class Poly extends Batchable implements Poolable {
 	public Poly origin (float originX, float originY) {
 		this.originX = originX;
 		this.originY = originY;
+		markChanged();
 		return this;
 	}
 
 	public Poly color (Color color) {
 		this.color = color.toFloatBits();
+		markChanged();
 		return this;
 	}
 
 	public Poly color (float r, float g, float b, float a) {
 		int intBits = (int)(255 * a) << 24 | (int)(255 * b) << 16 | (int)(255 * g) << 8 | (int)(255 * r);
 		color = NumberUtils.intToFloatColor(intBits);
+		markChanged();
 		return this;
 	}
 
 	public Poly color (float floatBits) {
 		color = floatBits;
+		markChanged();
 		return this;
 	}
 
 	public Poly scale (float scaleX, float scaleY) {
 		this.scaleX = scaleX;
 		this.scaleY = scaleY;
+		markChanged();
 		return this;
 	}
 
@@ -145,6 +155,29 @@ public abstract class Poly extends Batchable implements Poolable {
 		return 0; // handled by subclass
 	}
 
+	protected int apply (FloatBuffer vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		final PolygonRegion region = this.region;
+		final TextureRegion tRegion = region.getRegion();
+		if (!sizeSet && region != null) {
+			width = tRegion.getRegionWidth();
+			height = tRegion.getRegionHeight();
+		}
+
+		float color = this.color;
+		for (int i = 0, v = vertexStartingIndex + offsets.color0; i < numVertices; i++, v += vertexSize) {
+			vertices.put(v, color);
+		}
+
+		float[] textureCoords = region.getTextureCoords();
+		for (int i = 0, v = vertexStartingIndex
+			+ offsets.textureCoordinate0, n = textureCoords.length; i < n; i += 2, v += vertexSize) {
+			vertices.put(v, textureCoords[i]);
+			vertices.put(v + 1, textureCoords[i + 1]);
+		}
+
+		return 0; // handled by subclass
+	}
+
 	protected int apply (short[] triangles, int triangleStartingIndex, short firstVertex) {
 		short[] regionTriangles = region.getTriangles();
 		for (int i = 0; i < regionTriangles.length; i++) {
@@ -152,4 +185,12 @@ public abstract class Poly extends Batchable implements Poolable {
 		}
 		return numIndices;
 	}
+
+	protected int apply (int[] triangles, int triangleStartingIndex, int firstVertex) {
+		short[] regionTriangles = region.getTriangles();
+		for (int i = 0; i < regionTriangles.length; i++) {
+			triangles[triangleStartingIndex++] = regionTriangles[i] + firstVertex;
+		}
+		return numIndices;
+	}
 }
@@ -1,6 +1,8 @@
 
 package com.cyphercove.gdx.flexbatch.batchable;
 
+import java.nio.FloatBuffer;
+
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g2d.PolygonRegion;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
@@ -37,6 +39,7 @@ public class Poly2D extends Poly {
 	public Poly2D position (float x, float y) {
 		this.x = x;
 		this.y = y;
+		markChanged();
 		return this;
 	}
 
@@ -45,11 +48,13 @@ public class Poly2D extends Poly {
 	public Poly2D position (Vector2 position) {
 		x = position.x;
 		y = position.y;
+		markChanged();
 		return this;
 	}
 
 	public Poly2D rotation (float rotation) {
 		this.rotation = rotation;
+		markChanged();
 		return this;
 	}
 
@@ -83,6 +88,36 @@ public class Poly2D extends Poly {
 		return numVertices;
 	}
 
+	@Override
+	protected int apply (FloatBuffer vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		super.apply(vertices, vertexStartingIndex, offsets, vertexSize);
+		final PolygonRegion region = this.region;
+		final TextureRegion tRegion = region.getRegion();
+
+		final float originX = this.originX;
+		final float originY = this.originY;
+		final float scaleX = this.scaleX;
+		final float scaleY = this.scaleY;
+		final float[] regionVertices = region.getVertices();
+
+		final float worldOriginX = x + originX;
+		final float worldOriginY = y + originY;
+		final float sX = width / tRegion.getRegionWidth();
+		final float sY = height / tRegion.getRegionHeight();
+		final float cos = MathUtils.cosDeg(rotation);
+		final float sin = MathUtils.sinDeg(rotation);
+
+		float fx, fy;
+		for (int i = 0, v = vertexStartingIndex + offsets.position, n = regionVertices.length; i < n; i += 2, v += vertexSize) {
+			fx = (regionVertices[i] * sX - originX) * scaleX;
+			fy = (regionVertices[i + 1] * sY - originY) * scaleY;
+			vertices.put(v, cos * fx - sin * fy + worldOriginX);
+			vertices.put(v + 1, sin * fx + cos * fy + worldOriginY);
+		}
+
+		return numVertices;
+	}
+
 	// Chain methods must be overridden to allow return of subclass type.
 
 	public Poly2D region (PolygonRegion region) {
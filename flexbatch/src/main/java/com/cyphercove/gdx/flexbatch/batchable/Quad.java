@@ -1,8 +1,11 @@
 
 package com.cyphercove.gdx.flexbatch.batchable;
 
+import java.nio.FloatBuffer;
+
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GLTexture;
+import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.VertexAttribute;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.utils.Array;
@@ -14,6 +17,7 @@ import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
 import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
 import com.cyphercove.gdx.flexbatch.utils.Region2D;
 import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+import com.cyphercove.gdx.flexbatch.utils.TextureArrayManager;
 
 /** A Batchable representing a rectangle and supporting zero or more Textures/TextureRegions, and supporting color, position,
  * scale, and an origin offset.
@@ -51,6 +55,10 @@ public abstract class Quad extends FixedSizeBatchable implements Poolable {
 		BatchablePreparation.populateQuadrangleIndices(triangles);
 	}
 
+	protected final void populateTriangleIndices (int[] triangles) {
+		BatchablePreparation.populateQuadrangleIndices(triangles);
+	}
+
 	protected final int getTrianglesPerBatchable () {
 		return 2;
 	}
@@ -98,6 +106,7 @@ public abstract class Quad extends FixedSizeBatchable implements Poolable {
 		color = WHITE;
 		regionIndex = -1;
 		sizeSet = false;
+		markChanged();
 	}
 
 	/** Resets the state of the object and drops Texture references to prepare it for returning to a {@link Pool}. */
@@ -117,6 +126,7 @@ public abstract class Quad extends FixedSizeBatchable implements Poolable {
 		regionIndex = (regionIndex + 1) % getNumberOfTextures();
 		textures[regionIndex] = texture;
 		regions[regionIndex].setFull();
+		markChanged();
 		return this;
 	}
 
@@ -136,6 +146,7 @@ public abstract class Quad extends FixedSizeBatchable implements Poolable {
 		region.v = v;
 		region.u2 = u2;
 		region.v2 = v2;
+		markChanged();
 		return this;
 	}
 
@@ -165,14 +176,29 @@ public abstract class Quad extends FixedSizeBatchable implements Poolable {
 		regionIndex = (regionIndex + 1) % getNumberOfTextures();
 		textures[regionIndex] = region.getTexture();
 		regions[regionIndex].set(region);
+		markChanged();
 		return this;
 	}
 
+	/** Replaces the most recently applied texture with the TextureArray holding it, and sets the layer of its region. Has no
+	 * effect if the texture is not a Texture, such as a TextureArray that was applied directly. For use by subclasses with
+	 * three-dimensional texture coordinates.
+	 * @throws IllegalArgumentException If the texture cannot be placed in a TextureArray. */
+	protected final void applyTextureArray (TextureArrayManager manager) {
+		GLTexture texture = textures[regionIndex];
+		if (!(texture instanceof Texture)) return;
+		TextureArrayManager.Layer layer = manager.obtain((Texture)texture);
+		if (layer == null) throw new IllegalArgumentException("The texture cannot be placed in a TextureArray: " + texture);
+		textures[regionIndex] = layer.getTextureArray();
+		regions[regionIndex].layer = layer.getIndex();
+	}
+
 	/** Flips the UV region of the most recently applied texture. This must be called after a texture or region has been set with
 	 * {@link #texture(GLTexture)} or {@link #textureRegion(TextureRegion)}.
 	 * @return This object for chaining. */
 	public Quad flip (boolean flipX, boolean flipY) {
 		regions[regionIndex].flip(flipX, flipY);
+		markChanged();
 		return this;
 	}
 
@@ -183,6 +209,7 @@ public abstract class Quad extends FixedSizeBatchable implements Poolable {
 		for (int i = 0; i < regions.length; i++) {
 			regions[i].flip(flipX, flipY);
 		}
+		markChanged();
 		return this;
 	}
 
@@ -190,6 +217,7 @@ public abstract class Quad extends FixedSizeBatchable implements Poolable {
 		this.width = width;
 		this.height = height;
 		sizeSet = true;
+		markChanged();
 		return this;
 	}
 
@@ -200,6 +228,7 @@ public abstract class Quad extends FixedSizeBatchable implements Poolable {
 	public Quad origin (float originX, float originY) {
 		this.originX = originX;
 		this.originY = originY;
+		markChanged();
 		return this;
 	}
 
@@ -207,37 +236,48 @@ public abstract class Quad extends FixedSizeBatchable implements Poolable {
 	 * @return This object for chaining. */
 	public Quad rotateCoordinates90 (boolean clockwise) {
 		coordinatesRotation += clockwise ? 1 : 3;
+		markChanged();
 		return this;
 	}
 
 	public Quad color (Color color) {
 		this.color = color.toFloatBits();
+		markChanged();
 		return this;
 	}
 
 	public Quad color (float r, float g, float b, float a) {
 		int intBits = (int)(255 * a) << 24 | (int)(255 * b) << 16 | (int)(255 * g) << 8 | (int)(255 * r);
 		color = NumberUtils.intToFloatColor(intBits);
+		markChanged();
 		return this;
 	}
 
 	public Quad color (float floatBits) {
 		color = floatBits;
+		markChanged();
 		return this;
 	}
 
 	public Quad scale (float scaleX, float scaleY) {
 		this.scaleX = scaleX;
 		this.scaleY = scaleY;
+		markChanged();
 		return this;
 	}
 
-	protected int apply (float[] vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+	/** Sets the width and height to match the first texture region if they have not been set since the last call to
+	 * {@link #refresh()}. Called at the start of {@link #apply(float[], int, AttributeOffsets, int)}. */
+	protected final void applyDefaultSize () {
 		if (!sizeSet && regions.length > 0) {
 			Region2D region = regions[0];
 			width = (region.u2 - region.u) * textures[0].getWidth();
 			height = (region.v2 - region.v) * textures[0].getHeight();
 		}
+	}
+
+	protected int apply (float[] vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		applyDefaultSize();
 
 		float color = this.color;
 		int ci = vertexStartingIndex + offsets.color0;
@@ -351,7 +391,7 @@ public abstract class Quad extends FixedSizeBatchable implements Poolable {
 		}
 
 		if (isTextureCoordinate3D()) {
-			int tci3 = ci + 3;
+			int tci3 = vertexStartingIndex + offsets.textureCoordinate0 + 2;
 			for (int i = 0; i < regions.length; i++) {
 				Region2D region = regions[i];
 				final float layer = (float)region.layer;
@@ -370,4 +410,50 @@ public abstract class Quad extends FixedSizeBatchable implements Poolable {
 
 		return 4;
 	}
+
+	protected int apply (FloatBuffer vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		applyDefaultSize();
+
+		float color = this.color;
+		int ci = vertexStartingIndex + offsets.color0;
+		vertices.put(ci, color);
+		ci += vertexSize;
+		vertices.put(ci, color);
+		ci += vertexSize;
+		vertices.put(ci, color);
+		ci += vertexSize;
+		vertices.put(ci, color);
+
+		final boolean textureCoordinate3D = isTextureCoordinate3D();
+		final int tcSize = textureCoordinate3D ? 3 : 2;
+		final int rotation = coordinatesRotation % 4;
+		int tci = vertexStartingIndex + offsets.textureCoordinate0;
+		for (int i = 0; i < regions.length; i++, tci += tcSize) {
+			Region2D region = regions[i];
+			// Unrotated, the corners are ordered (u, v2), (u, v), (u2, v), (u2, v2). Each rotation shifts them one corner over.
+			for (int corner = 0, v = tci; corner < 4; corner++, v += vertexSize) {
+				switch ((corner + 4 - rotation) % 4) {
+				case 0:
+					vertices.put(v, region.u);
+					vertices.put(v + 1, region.v2);
+					break;
+				case 1:
+					vertices.put(v, region.u);
+					vertices.put(v + 1, region.v);
+					break;
+				case 2:
+					vertices.put(v, region.u2);
+					vertices.put(v + 1, region.v);
+					break;
+				case 3:
+					vertices.put(v, region.u2);
+					vertices.put(v + 1, region.v2);
+					break;
+				}
+				if (textureCoordinate3D) vertices.put(v + 2, region.layer);
+			}
+		}
+
+		return 4;
+	}
 }
@@ -1,6 +1,8 @@
 
 package com.cyphercove.gdx.flexbatch.batchable;
 
+import java.nio.FloatBuffer;
+
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
@@ -46,6 +48,7 @@ public class Quad2D extends Quad {
 	public Quad2D position (float x, float y) {
 		this.x = x;
 		this.y = y;
+		markChanged();
 		return this;
 	}
 
@@ -54,11 +57,13 @@ public class Quad2D extends Quad {
 	public Quad2D position (Vector2 position) {
 		x = position.x;
 		y = position.y;
+		markChanged();
 		return this;
 	}
 
 	public Quad2D rotation (float rotation) {
 		this.rotation = rotation;
+		markChanged();
 		return this;
 	}
 
@@ -146,6 +151,56 @@ public class Quad2D extends Quad {
 		return 4;
 	}
 
+	protected int apply (FloatBuffer vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		super.apply(vertices, vertexStartingIndex, offsets, vertexSize);
+
+		final float worldOriginX = x + originX;
+		final float worldOriginY = y + originY;
+		final float fx = -originX * scaleX;
+		final float fy = -originY * scaleY;
+		final float fx2 = (width - originX) * scaleX;
+		final float fy2 = (height - originY) * scaleY;
+
+		int i = vertexStartingIndex;
+		if (rotation != 0) {
+			final float cos = MathUtils.cosDeg(rotation);
+			final float sin = MathUtils.sinDeg(rotation);
+
+			final float x1 = cos * fx - sin * fy;
+			final float y1 = sin * fx + cos * fy;
+			final float x2 = cos * fx - sin * fy2;
+			final float y2 = sin * fx + cos * fy2;
+			final float x3 = cos * fx2 - sin * fy2;
+			final float y3 = sin * fx2 + cos * fy2;
+
+			vertices.put(i, x1 + worldOriginX);
+			vertices.put(i + 1, y1 + worldOriginY);
+			i += vertexSize;
+			vertices.put(i, x2 + worldOriginX);
+			vertices.put(i + 1, y2 + worldOriginY);
+			i += vertexSize;
+			vertices.put(i, x3 + worldOriginX);
+			vertices.put(i + 1, y3 + worldOriginY);
+			i += vertexSize;
+			vertices.put(i, x1 + (x3 - x2) + worldOriginX);
+			vertices.put(i + 1, y3 - (y2 - y1) + worldOriginY);
+		} else {
+			vertices.put(i, fx + worldOriginX);
+			vertices.put(i + 1, fy + worldOriginY);
+			i += vertexSize;
+			vertices.put(i, fx + worldOriginX);
+			vertices.put(i + 1, fy2 + worldOriginY);
+			i += vertexSize;
+			vertices.put(i, fx2 + worldOriginX);
+			vertices.put(i + 1, fy2 + worldOriginY);
+			i += vertexSize;
+			vertices.put(i, fx2 + worldOriginX);
+			vertices.put(i + 1, fy + worldOriginY);
+		}
+
+		return 4;
+	}
+
 	// Chain methods must be overridden to allow return of subclass type.
 
 	public Quad2D texture (Texture texture) {
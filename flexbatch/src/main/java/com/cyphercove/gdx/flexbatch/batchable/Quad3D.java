@@ -1,6 +1,8 @@
 
 package com.cyphercove.gdx.flexbatch.batchable;
 
+import java.nio.FloatBuffer;
+
 import com.badlogic.gdx.graphics.Camera;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
@@ -9,29 +11,40 @@ import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.math.Vector3;
 import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.BillboardBasis;
 import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+import com.cyphercove.gdx.flexbatch.utils.RenderState;
 import com.cyphercove.gdx.flexbatch.utils.SortableBatchable;
+import com.cyphercove.gdx.flexbatch.utils.TextureHashable;
 
 /** A {@link Quad} {@link com.cyphercove.gdx.flexbatch.Batchable Batchable} that supports a single texture at a time, with
  * two-dimensional position and color. It is designed to be drawn in 3D space, and is commonly called a decal.
  * <p>
  * The default origin of a Quad3D is its center. Its origin is used for positioning, and as the center of rotation and scaling.
  * <p>
- * Quad3D manages its own blending, so calls to the FlexBatch's blend function setters will be ineffective.
+ * Quad3D manages its own blending, so calls to the FlexBatch's blend function setters will be ineffective. A Quad3D with a
+ * {@link #renderState(RenderState) RenderState} also sets the depth, face culling and blend equation states. A Quad3D without
+ * one leaves those states as they were set through the FlexBatch's render context, unless the previous Batchable set them with
+ * a RenderState. Then they are returned to the defaults of {@link RenderState.Builder}.
  * <p>
  * It may be subclassed to create a Batchable class that supports multiple textures and additional attributes--see
  * {@link #getNumberOfTextures()} and {@link #addVertexAttributes(com.badlogic.gdx.utils.Array) addVertexAttributes()}. Such a
  * subclass would not be compatible with a FlexBatch that was instantiated for the base Sprite type.
  * 
  * @author cypherdare */
-public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
+public class Quad3D extends Quad implements SortableBatchable<Quad3D>, TextureHashable {
 
 	public float z;
 	public final Quaternion rotation = new Quaternion();
 	public boolean opaque = true;
 	public int srcBlendFactor = GL20.GL_SRC_ALPHA;
 	public int dstBlendFactor = GL20.GL_ONE_MINUS_SRC_ALPHA;
+	/** If not null, the orientation is taken from this instead of {@link #rotation}. */
+	protected BillboardBasis billboardBasis;
+	/** If not null, the blending, depth, culling and texture states are taken from this instead of from this Quad3D. */
+	protected RenderState renderState;
 
+	// Only for the orientation setters. apply() must not use shared objects, so it can run on multiple threads.
 	private static final Quaternion TMPQ = new Quaternion();
 	private static final Vector3 TMP1 = new Vector3();
 	private static final Vector3 TMP2 = new Vector3();
@@ -85,7 +98,7 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 	}
 
 	public boolean isOpaque () {
-		return opaque;
+		return renderState == null ? opaque : !renderState.blending;
 	}
 
 	public float calculateDistanceSquared (Vector3 camPosition) {
@@ -98,7 +111,9 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 	}
 
 	protected boolean prepareContext (RenderContextAccumulator renderContext, int remainingVertices, int remainingTriangles) {
-		boolean needsFlush = super.prepareContext(renderContext, remainingVertices, remainingTriangles);
+		if (renderState != null) return renderContext.setRenderState(renderState) | remainingVertices < 4;
+		boolean needsFlush = renderContext.clearRenderState();
+		needsFlush |= super.prepareContext(renderContext, remainingVertices, remainingTriangles);
 		needsFlush |= renderContext.setBlending(!opaque);
 		if (!opaque) {
 			needsFlush |= renderContext.setBlendFunction(srcBlendFactor, dstBlendFactor);
@@ -107,12 +122,33 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 	}
 
 	public boolean hasEquivalentTextures (Quad3D other) {
+		if (renderState != null) {
+			if (other.renderState != null) return renderState.hasEquivalentTextures(other.renderState);
+			return other.hasTexturesOf(renderState);
+		}
+		if (other.renderState != null) return hasTexturesOf(other.renderState);
 		for (int i = 0; i < textures.length; i++) {
 			if (other.textures[i] != textures[i]) return false;
 		}
 		return true;
 	}
 
+	private boolean hasTexturesOf (RenderState state) {
+		if (state.getTextureCount() != textures.length) return false;
+		for (int i = 0; i < textures.length; i++) {
+			if (state.getTexture(i) != textures[i]) return false;
+		}
+		return true;
+	}
+
+	public int getTextureHash () {
+		if (renderState != null) return renderState.getTextureHash();
+		int result = 1;
+		for (int i = 0; i < textures.length; i++)
+			result = 31 * result + System.identityHashCode(textures[i]);
+		return result;
+	}
+
 	public void refresh () {
 		super.refresh();
 		z = 0;
@@ -120,6 +156,12 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 		opaque = true; // refresh most commonly used for on-the-fly batch.draw(), so default to mode that doesn't need sorting
 		srcBlendFactor = GL20.GL_SRC_ALPHA;
 		dstBlendFactor = GL20.GL_ONE_MINUS_SRC_ALPHA;
+		billboardBasis = null;
+		renderState = null;
+	}
+
+	protected int getSharedChangeCount () {
+		return billboardBasis == null ? 0 : billboardBasis.getChangeCount();
 	}
 
 	/** Disables blending. Blending is disabled by default.
@@ -171,6 +213,7 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 		this.x = x;
 		this.y = y;
 		this.z = z;
+		markChanged();
 		return this;
 	}
 
@@ -180,6 +223,7 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 		this.x = position.x;
 		this.y = position.y;
 		this.z = position.z;
+		markChanged();
 		return this;
 	}
 
@@ -189,6 +233,7 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 		this.x += x;
 		this.y += y;
 		this.z += z;
+		markChanged();
 		return this;
 	}
 
@@ -198,6 +243,7 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 		this.x += amount.x;
 		this.y += amount.y;
 		this.z += amount.z;
+		markChanged();
 		return this;
 	}
 
@@ -205,6 +251,7 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 	 * @return This object for chaining. */
 	public Quad3D rotation (Quaternion rotation) {
 		this.rotation.set(rotation);
+		markChanged();
 		return this;
 	}
 
@@ -212,6 +259,7 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 	 * @return This object for chaining. */
 	public Quad3D rotation (float x, float y, float z, float w) {
 		rotation.set(x, y, z, w);
+		markChanged();
 		return this;
 	}
 
@@ -219,6 +267,7 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 	 * @return This object for chaining. */
 	public Quad3D rotation (Vector3 axis, float angle) {
 		rotation.setFromAxis(axis, angle);
+		markChanged();
 		return this;
 	}
 
@@ -226,6 +275,7 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 	 * @return This object for chaining. */
 	public Quad3D rotation (float yaw, float pitch, float roll) {
 		rotation.setEulerAngles(yaw, pitch, roll);
+		markChanged();
 		return this;
 	}
 
@@ -236,6 +286,7 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 		TMP1.set(upX, upY, upZ).nor().crs(TMP2).nor();
 		TMP2.crs(TMP1).nor();
 		rotation.setFromAxes(TMP1.x, TMP2.x, directionX, TMP1.y, TMP2.y, directionY, TMP1.z, TMP2.z, directionZ);
+		markChanged();
 		return this;
 	}
 
@@ -245,6 +296,7 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 		TMP1.set(up).crs(direction).nor();
 		TMP2.set(direction).crs(TMP1).nor();
 		rotation.setFromAxes(TMP1.x, TMP2.x, direction.x, TMP1.y, TMP2.y, direction.y, TMP1.z, TMP2.z, direction.z);
+		markChanged();
 		return this;
 	}
 
@@ -256,6 +308,7 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 		TMP1.set(up).crs(TMP3).nor();
 		TMP2.set(TMP3).crs(TMP1).nor();
 		rotation.setFromAxes(TMP1.x, TMP2.x, TMP3.x, TMP1.y, TMP2.y, TMP3.y, TMP1.z, TMP2.z, TMP3.z);
+		markChanged();
 		return this;
 	}
 
@@ -273,10 +326,39 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 		return lookAt(camera.position, up);
 	}
 
+	/** Sets a shared orientation that is used instead of {@link #rotation} while it is set. This is faster than
+	 * {@link #billboard(Camera)} for large numbers of quads, since the basis is computed once per frame rather than for each quad.
+	 * Unlike with billboard(Camera), all quads that share a basis face the same direction.
+	 * The origin is still used as the center of the quad.
+	 * @param basis The shared basis, or null to use the rotation again.
+	 * @return This object for chaining. */
+	public Quad3D billboard (BillboardBasis basis) {
+		billboardBasis = basis;
+		markChanged();
+		return this;
+	}
+
+	/** Sets a RenderState that is used instead of this Quad3D's blending settings and textures while it is set. Quad3Ds that
+	 * share a RenderState can be drawn in sequence with a single reference comparison to check for state changes. The
+	 * {@link #texture(Texture) texture} is still used for the default size and texture region, so it should be the first texture
+	 * of the RenderState.
+	 * @param renderState The shared state, or null to use this Quad3D's own settings again.
+	 * @return This object for chaining. */
+	public Quad3D renderState (RenderState renderState) {
+		this.renderState = renderState;
+		return this;
+	}
+
+	/** @return The RenderState set with {@link #renderState(RenderState)}, or null. */
+	public RenderState getRenderState () {
+		return renderState;
+	}
+
 	/** Rotates the current orientation by a specific Quaternion.
 	 * @return This object for chaining. */
 	public Quad3D rotate (Quaternion rotation) {
 		this.rotation.mul(rotation);
+		markChanged();
 		return this;
 	}
 
@@ -284,6 +366,7 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 	 * @return This object for chaining. */
 	public Quad3D rotateX (float angle) {
 		rotation.mul(TMPQ.setFromAxis(1, 0, 0, angle));
+		markChanged();
 		return this;
 	}
 
@@ -291,6 +374,7 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 	 * @return This object for chaining. */
 	public Quad3D rotateY (float angle) {
 		rotation.mul(TMPQ.setFromAxis(0, 1, 0, angle));
+		markChanged();
 		return this;
 	}
 
@@ -298,52 +382,122 @@ public class Quad3D extends Quad implements SortableBatchable<Quad3D> {
 	 * @return This object for chaining. */
 	public Quad3D rotateZ (float angle) {
 		rotation.mul(TMPQ.setFromAxis(0, 0, 1, angle));
+		markChanged();
 		return this;
 	}
 
 	protected int apply (float[] vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
 		super.apply(vertices, vertexStartingIndex, offsets, vertexSize);
-		float left = -width / 2f;
-		float right = left + width;
-		float bottom = -height / 2f;
-		float top = bottom + height;
+		applyCorners(vertices, vertexStartingIndex, offsets, vertexSize);
+		return 4;
+	}
+
+	/** Called by {@link #apply(float[], int, AttributeOffsets, int)} after the color and texture coordinates are written, to write
+	 * the position of each corner. */
+	protected void applyCorners (float[] vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		final float left = (-width / 2f - originX) * scaleX;
+		final float right = (width / 2f - originX) * scaleX;
+		final float bottom = (-height / 2f - originY) * scaleY;
+		final float top = (height / 2f - originY) * scaleY;
+
+		// The first two columns of the rotation matrix, or the shared basis. The third is not needed because the corners have no
+		// local z. No shared temporary objects are used, so Batchables can be applied on multiple threads.
+		final float m00, m10, m20, m01, m11, m21;
+		final BillboardBasis basis = billboardBasis;
+		if (basis != null) {
+			m00 = basis.rightX;
+			m10 = basis.rightY;
+			m20 = basis.rightZ;
+			m01 = basis.upX;
+			m11 = basis.upY;
+			m21 = basis.upZ;
+		} else {
+			final float qx = rotation.x, qy = rotation.y, qz = rotation.z, qw = rotation.w;
+			m00 = qw * qw + qx * qx - qy * qy - qz * qz;
+			m10 = 2 * (qx * qy + qw * qz);
+			m20 = 2 * (qx * qz - qw * qy);
+			m01 = 2 * (qx * qy - qw * qz);
+			m11 = qw * qw - qx * qx + qy * qy - qz * qz;
+			m21 = 2 * (qy * qz + qw * qx);
+		}
 
 		int i = vertexStartingIndex;
 
 		// bottom left
-		TMP1.set((left - originX) * scaleX, (bottom - originY) * scaleY, 0); // local vertex position
-		rotation.transform(TMP1); // local vertex position rotated
-		vertices[i] = TMP1.x + x; // world position
-		vertices[i + 1] = TMP1.y + y;
-		vertices[i + 2] = TMP1.z + z;
+		vertices[i] = m00 * left + m01 * bottom + x;
+		vertices[i + 1] = m10 * left + m11 * bottom + y;
+		vertices[i + 2] = m20 * left + m21 * bottom + z;
 		i += vertexSize;
 
 		// top left
-		TMP1.set((left - originX) * scaleX, (top - originY) * scaleY, 0);
-		rotation.transform(TMP1);
-		vertices[i] = TMP1.x + x;
-		vertices[i + 1] = TMP1.y + y;
-		vertices[i + 2] = TMP1.z + z;
+		vertices[i] = m00 * left + m01 * top + x;
+		vertices[i + 1] = m10 * left + m11 * top + y;
+		vertices[i + 2] = m20 * left + m21 * top + z;
 		i += vertexSize;
 
 		// top right
-		TMP1.set((right - originX) * scaleX, (top - originY) * scaleY, 0);
-		rotation.transform(TMP1);
-		vertices[i] = TMP1.x + x;
-		vertices[i + 1] = TMP1.y + y;
-		vertices[i + 2] = TMP1.z + z;
+		vertices[i] = m00 * right + m01 * top + x;
+		vertices[i + 1] = m10 * right + m11 * top + y;
+		vertices[i + 2] = m20 * right + m21 * top + z;
 		i += vertexSize;
 
 		// bottom right
-		TMP1.set((right - originX) * scaleX, (bottom - originY) * scaleY, 0);
-		rotation.transform(TMP1);
-		vertices[i] = TMP1.x + x;
-		vertices[i + 1] = TMP1.y + y;
-		vertices[i + 2] = TMP1.z + z;
+		vertices[i] = m00 * right + m01 * bottom + x;
+		vertices[i + 1] = m10 * right + m11 * bottom + y;
+		vertices[i + 2] = m20 * right + m21 * bottom + z;
+	}
 
+	protected int apply (FloatBuffer vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		super.apply(vertices, vertexStartingIndex, offsets, vertexSize);
+		applyCorners(vertices, vertexStartingIndex, offsets, vertexSize);
 		return 4;
 	}
 
+	/** Called by {@link #apply(FloatBuffer, int, AttributeOffsets, int)} after the color and texture coordinates are written, to
+	 * write the position of each corner. */
+	protected void applyCorners (FloatBuffer vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		final float left = (-width / 2f - originX) * scaleX;
+		final float right = (width / 2f - originX) * scaleX;
+		final float bottom = (-height / 2f - originY) * scaleY;
+		final float top = (height / 2f - originY) * scaleY;
+
+		final float m00, m10, m20, m01, m11, m21;
+		final BillboardBasis basis = billboardBasis;
+		if (basis != null) {
+			m00 = basis.rightX;
+			m10 = basis.rightY;
+			m20 = basis.rightZ;
+			m01 = basis.upX;
+			m11 = basis.upY;
+			m21 = basis.upZ;
+		} else {
+			final float qx = rotation.x, qy = rotation.y, qz = rotation.z, qw = rotation.w;
+			m00 = qw * qw + qx * qx - qy * qy - qz * qz;
+			m10 = 2 * (qx * qy + qw * qz);
+			m20 = 2 * (qx * qz - qw * qy);
+			m01 = 2 * (qx * qy - qw * qz);
+			m11 = qw * qw - qx * qx + qy * qy - qz * qz;
+			m21 = 2 * (qy * qz + qw * qx);
+		}
+
+		int i = vertexStartingIndex;
+		vertices.put(i, m00 * left + m01 * bottom + x);
+		vertices.put(i + 1, m10 * left + m11 * bottom + y);
+		vertices.put(i + 2, m20 * left + m21 * bottom + z);
+		i += vertexSize;
+		vertices.put(i, m00 * left + m01 * top + x);
+		vertices.put(i + 1, m10 * left + m11 * top + y);
+		vertices.put(i + 2, m20 * left + m21 * top + z);
+		i += vertexSize;
+		vertices.put(i, m00 * right + m01 * top + x);
+		vertices.put(i + 1, m10 * right + m11 * top + y);
+		vertices.put(i + 2, m20 * right + m21 * top + z);
+		i += vertexSize;
+		vertices.put(i, m00 * right + m01 * bottom + x);
+		vertices.put(i + 1, m10 * right + m11 * bottom + y);
+		vertices.put(i + 2, m20 * right + m21 * bottom + z);
+	}
+
 	// Chain methods must be overridden to allow return of subclass type.
 
 	public Quad3D texture (Texture texture) {
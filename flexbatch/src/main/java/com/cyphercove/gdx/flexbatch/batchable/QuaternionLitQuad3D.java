@@ -0,0 +1,99 @@
+package com.cyphercove.gdx.flexbatch.batchable;
+
+import java.nio.FloatBuffer;
+
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
+import com.cyphercove.gdx.flexbatch.utils.BillboardBasis;
+
+/** A {@link Quad3D} with support for lighting, like {@link LitQuad3D}, but with its tangent frame encoded as its rotation
+ * quaternion in a single four-component attribute, {@value BatchablePreparation#ROTATION_ATTRIBUTE}, instead of as three
+ * separate vectors. This makes each vertex five floats smaller. The vertex shader reconstructs the normal, tangent, and binormal
+ * from the quaternion. A suitable one can be generated with
+ * {@link BatchablePreparation#generateQuaternionLitVertexShader(int)}, to be paired with a fragment shader that does the
+ * lighting.
+ * <p>
+ * If a {@link BillboardBasis} is set, its orientation is used instead of the {@link #rotation}.
+ *
+ * @author cypherdare */
+public class QuaternionLitQuad3D extends Quad3D {
+
+	/** A QuaternionLitQuad3D that starts opaque. */
+	public QuaternionLitQuad3D () {
+	}
+
+	/** A QuaternionLitQuad3D that starts with blending enabled, with the specified blend factors. */
+	public QuaternionLitQuad3D (int srcBlendFactor, int dstBlendFactor) {
+		super(srcBlendFactor, dstBlendFactor);
+	}
+
+	/** A QuaternionLitQuad3D that starts with blending enabled, and a common set of blend factors. */
+	public QuaternionLitQuad3D (Blending blending) {
+		super(blending);
+	}
+
+	protected void addVertexAttributes (Array<VertexAttribute> attributes) {
+		super.addVertexAttributes(attributes);
+		attributes.add(new VertexAttribute(Usage.Generic, 4, BatchablePreparation.ROTATION_ATTRIBUTE));
+	}
+
+	protected int apply (float[] vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		super.apply(vertices, vertexStartingIndex, offsets, vertexSize);
+
+		final BillboardBasis basis = billboardBasis;
+		final float qx, qy, qz, qw;
+		if (basis != null) {
+			qx = basis.rotationX;
+			qy = basis.rotationY;
+			qz = basis.rotationZ;
+			qw = basis.rotationW;
+		} else {
+			qx = rotation.x;
+			qy = rotation.y;
+			qz = rotation.z;
+			qw = rotation.w;
+		}
+		for (int i = 0, index = vertexStartingIndex + offsets.generic0; i < 4; i++, index += vertexSize) {
+			vertices[index] = qx;
+			vertices[index + 1] = qy;
+			vertices[index + 2] = qz;
+			vertices[index + 3] = qw;
+		}
+
+		return 4;
+	}
+
+	protected int apply (FloatBuffer vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		super.apply(vertices, vertexStartingIndex, offsets, vertexSize);
+
+		final BillboardBasis basis = billboardBasis;
+		final float qx, qy, qz, qw;
+		if (basis != null) {
+			qx = basis.rotationX;
+			qy = basis.rotationY;
+			qz = basis.rotationZ;
+			qw = basis.rotationW;
+		} else {
+			qx = rotation.x;
+			qy = rotation.y;
+			qz = rotation.z;
+			qw = rotation.w;
+		}
+		for (int i = 0, index = vertexStartingIndex + offsets.generic0; i < 4; i++, index += vertexSize) {
+			vertices.put(index, qx);
+			vertices.put(index + 1, qy);
+			vertices.put(index + 2, qz);
+			vertices.put(index + 3, qw);
+		}
+
+		return 4;
+	}
+
+	// Usually, chain methods must be overridden to allow return of subclass
+	// type. However, QuaternionLitQuad3D does not have any unique parameter setter
+	// methods, so it is acceptable to return Quad3Ds.
+
+}
@@ -0,0 +1,53 @@
+package com.cyphercove.gdx.flexbatch.batchable;
+
+import com.badlogic.gdx.graphics.GLTexture;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
+import com.cyphercove.gdx.flexbatch.utils.TextureArrayManager;
+
+/** A {@link Quad2D} with three-dimensional texture coordinates, whose textures are layers of
+ * {@link com.badlogic.gdx.graphics.TextureArray TextureArrays}. When a {@link TextureArrayManager} is set with
+ * {@link #textureArrays(TextureArrayManager)}, each Texture or TextureRegion applied afterwards is replaced by the TextureArray
+ * holding it, and its layer index is emitted as the third texture coordinate. Quads whose textures share a TextureArray can be
+ * drawn without a flush between them, even if their source textures differ. A TextureArray may also be applied directly, with
+ * layer 0 used.
+ * <p>
+ * The shader can be generated with {@link BatchablePreparation#generateGenericVertexShader(int, boolean)} and
+ * {@link BatchablePreparation#generateGenericFragmentShader(int, boolean)}. It can only be drawn by a FlexBatch instantiated
+ * with a TextureArrayQuad2D type, or a subclass. Requires GL30.
+ *
+ * @author cypherdare */
+public class TextureArrayQuad2D extends Quad2D {
+	protected TextureArrayManager textureArrayManager;
+
+	protected boolean isTextureCoordinate3D () {
+		return true;
+	}
+
+	/** Sets the manager used to look up the TextureArrays of subsequently applied textures. It is retained by {@link #refresh()}
+	 * and {@link #reset()}, so it only needs to be set once on a reused instance.
+	 * @return This object for chaining. */
+	public TextureArrayQuad2D textureArrays (TextureArrayManager manager) {
+		textureArrayManager = manager;
+		return this;
+	}
+
+	public TextureArrayQuad2D texture (GLTexture texture) {
+		super.texture(texture);
+		if (textureArrayManager != null) applyTextureArray(textureArrayManager);
+		return this;
+	}
+
+	public TextureArrayQuad2D texture (Texture texture) {
+		super.texture(texture);
+		if (textureArrayManager != null) applyTextureArray(textureArrayManager);
+		return this;
+	}
+
+	public TextureArrayQuad2D textureRegion (TextureRegion region) {
+		super.textureRegion(region);
+		if (textureArrayManager != null) applyTextureArray(textureArrayManager);
+		return this;
+	}
+}
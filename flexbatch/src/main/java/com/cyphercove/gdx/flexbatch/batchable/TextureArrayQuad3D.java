@@ -0,0 +1,68 @@
+package com.cyphercove.gdx.flexbatch.batchable;
+
+import com.badlogic.gdx.graphics.GLTexture;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
+import com.cyphercove.gdx.flexbatch.utils.TextureArrayManager;
+
+/** A {@link Quad3D} with three-dimensional texture coordinates, whose textures are layers of
+ * {@link com.badlogic.gdx.graphics.TextureArray TextureArrays}. When a {@link TextureArrayManager} is set with
+ * {@link #textureArrays(TextureArrayManager)}, each Texture or TextureRegion applied afterwards is replaced by the TextureArray
+ * holding it, and its layer index is emitted as the third texture coordinate. Quads whose textures share a TextureArray can be
+ * drawn without a flush between them, even if their source textures differ. A TextureArray may also be applied directly, with
+ * layer 0 used. If a {@link com.cyphercove.gdx.flexbatch.utils.RenderState RenderState} is set, its textures must be the
+ * TextureArrays.
+ * <p>
+ * The shader can be generated with {@link BatchablePreparation#generateGenericVertexShader(int, boolean)} and
+ * {@link BatchablePreparation#generateGenericFragmentShader(int, boolean)}. It can only be drawn by a FlexBatch instantiated
+ * with a TextureArrayQuad3D type, or a subclass. Requires GL30.
+ *
+ * @author cypherdare */
+public class TextureArrayQuad3D extends Quad3D {
+	protected TextureArrayManager textureArrayManager;
+
+	/** A TextureArrayQuad3D that starts opaque. */
+	public TextureArrayQuad3D () {
+	}
+
+	/** A TextureArrayQuad3D that starts with blending enabled, with the specified blend factors. */
+	public TextureArrayQuad3D (int srcBlendFactor, int dstBlendFactor) {
+		super(srcBlendFactor, dstBlendFactor);
+	}
+
+	/** A TextureArrayQuad3D that starts with blending enabled, and a common set of blend factors. */
+	public TextureArrayQuad3D (Blending blending) {
+		super(blending);
+	}
+
+	protected boolean isTextureCoordinate3D () {
+		return true;
+	}
+
+	/** Sets the manager used to look up the TextureArrays of subsequently applied textures. It is retained by {@link #refresh()}
+	 * and {@link #reset()}, so it only needs to be set once on a reused instance.
+	 * @return This object for chaining. */
+	public TextureArrayQuad3D textureArrays (TextureArrayManager manager) {
+		textureArrayManager = manager;
+		return this;
+	}
+
+	public TextureArrayQuad3D texture (GLTexture texture) {
+		super.texture(texture);
+		if (textureArrayManager != null) applyTextureArray(textureArrayManager);
+		return this;
+	}
+
+	public TextureArrayQuad3D texture (Texture texture) {
+		super.texture(texture);
+		if (textureArrayManager != null) applyTextureArray(textureArrayManager);
+		return this;
+	}
+
+	public TextureArrayQuad3D textureRegion (TextureRegion region) {
+		super.textureRegion(region);
+		if (textureArrayManager != null) applyTextureArray(textureArrayManager);
+		return this;
+	}
+}
@@ -0,0 +1,87 @@
+package com.cyphercove.gdx.flexbatch.batchable;
+
+import java.nio.FloatBuffer;
+
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.BatchablePreparation;
+import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator;
+
+/** A {@link Quad2D} whose texture is bound to any of several texture units, or slots, at once, with the unit stored in a vertex
+ * attribute so the fragment shader can select the sampler. Quads with different textures are drawn without a flush until every
+ * slot holds a texture used by queued quads. This is a GL20-compatible alternative to
+ * {@link TextureArrayQuad2D}, and suits Scene2D UIs that draw from a handful of textures. It can be used as the type of a
+ * {@link com.cyphercove.gdx.flexbatch.CompliantBatch CompliantBatch}.
+ * <p>
+ * The shader can be generated with {@link BatchablePreparation#generateTextureSlotVertexShader()} and
+ * {@link BatchablePreparation#generateTextureSlotFragmentShader(int)}, passing {@link #getTextureSlotCount()}. It can only be
+ * drawn by a FlexBatch instantiated with a TextureSlotQuad2D type, or a subclass, and every Batchable drawn by that FlexBatch
+ * must be a TextureSlotQuad2D.
+ *
+ * @author cypherdare */
+public class TextureSlotQuad2D extends Quad2D {
+	/** The texture unit chosen when the render context was last prepared. */
+	protected int textureSlot;
+
+	/** Determines the number of texture units used, up to the GL_MAX_TEXTURE_IMAGE_UNITS of the device, which is at least 8. The
+	 * default is 8. Must return the same constant value for every instance of the class, and the value must match the shader.
+	 * <p>
+	 * Overriding this method will produce a subclass that is incompatible with a FlexBatch that was instantiated for the
+	 * superclass type. */
+	public int getTextureSlotCount () {
+		return 8;
+	}
+
+	protected final int getNumberOfTextures () {
+		return 1;
+	}
+
+	protected int getNumberOfTextureUnits () {
+		return getTextureSlotCount();
+	}
+
+	protected void addVertexAttributes (Array<VertexAttribute> attributes) {
+		super.addVertexAttributes(attributes);
+		attributes.add(new VertexAttribute(Usage.Generic, 1, BatchablePreparation.TEXTURE_SLOT_ATTRIBUTE));
+	}
+
+	protected boolean prepareContext (RenderContextAccumulator renderContext, int remainingVertices, int remainingIndices) {
+		final boolean needsFlush = renderContext.assignTextureSlot(textures[0], getTextureSlotCount());
+		final int slot = renderContext.getAssignedTextureSlot();
+		if (slot != textureSlot) {
+			textureSlot = slot;
+			markChanged(); // a memoized copy of the vertex data holds the old slot
+		}
+		return needsFlush || remainingVertices < 4;
+	}
+
+	protected int apply (float[] vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		super.apply(vertices, vertexStartingIndex, offsets, vertexSize);
+		final float slot = textureSlot;
+		int i = vertexStartingIndex + offsets.generic0;
+		vertices[i] = slot;
+		i += vertexSize;
+		vertices[i] = slot;
+		i += vertexSize;
+		vertices[i] = slot;
+		i += vertexSize;
+		vertices[i] = slot;
+		return 4;
+	}
+
+	protected int apply (FloatBuffer vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+		super.apply(vertices, vertexStartingIndex, offsets, vertexSize);
+		final float slot = textureSlot;
+		int i = vertexStartingIndex + offsets.generic0;
+		vertices.put(i, slot);
+		i += vertexSize;
+		vertices.put(i, slot);
+		i += vertexSize;
+		vertices.put(i, slot);
+		i += vertexSize;
+		vertices.put(i, slot);
+		return 4;
+	}
+}
@@ -6,7 +6,11 @@ import com.badlogic.gdx.graphics.VertexAttributes;
 import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.utils.ObjectIntMap;
 
-/** Provides fast and convenient access to VertexAttribute offsets, in float-size units.
+/** Provides fast and convenient access to VertexAttribute offsets, in float-size units. Each attribute must have a size in bytes
+ * that is a multiple of four, so it occupies a whole number of floats. Compact attributes made of shorts or bytes, such as those
+ * from {@link BatchablePreparation#addCompactBaseAttributes(com.badlogic.gdx.utils.Array, int)}, are written as single floats
+ * with {@link VertexPacking}. The offset in bytes is four times the offset in floats. Types that LibGDX cannot size, such as
+ * GL_HALF_FLOAT, are rejected.
  * 
  * @author cypherdare */
 public class AttributeOffsets {
@@ -26,6 +30,11 @@ public class AttributeOffsets {
 			textureCoordinate3 = 0, generic0 = 0, generic1 = 0, generic2 = 0, generic3 = 0;
 		for (int i = 0; i < byIndex.length; i++) {
 			VertexAttribute attribute = attributes.get(i);
+			final int size = attribute.getSizeInBytes();
+			if (size == 0) throw new IllegalArgumentException("Vertex attribute " + attribute.alias + " has type " + attribute.type
+				+ ", which has no known size.");
+			if (size % 4 != 0) throw new IllegalArgumentException("Vertex attribute " + attribute.alias + " has a size of " + size
+				+ " bytes, which is not a multiple of 4.");
 			int offset = attribute.offset / 4;
 			byAlias.put(attribute.alias, offset);
 			byIndex[i] = offset;
@@ -2,6 +2,7 @@
 package com.cyphercove.gdx.flexbatch.utils;
 
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.VertexAttribute;
 import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.graphics.glutils.ShaderProgram;
@@ -10,6 +11,27 @@ import com.badlogic.gdx.utils.StringBuilder;
 
 public final class BatchablePreparation {
 
+	/** The name of the vec4 instance attribute that holds the left, bottom, right, and top edges of an instanced quad, relative to
+	 * its origin and already scaled. */
+	public static final String BOUNDS_ATTRIBUTE = "a_bounds";
+
+	/** The name of the vec2 attribute that holds the scaled offset of a corner of a
+	 * {@link com.cyphercove.gdx.flexbatch.batchable.BillboardQuad3D BillboardQuad3D} from its origin, in the camera's right and
+	 * up directions. */
+	public static final String BILLBOARD_OFFSET_ATTRIBUTE = "a_offset";
+
+	/** The name of the vec4 attribute that holds the rotation quaternion of a
+	 * {@link com.cyphercove.gdx.flexbatch.batchable.QuaternionLitQuad3D QuaternionLitQuad3D}, in the order x, y, z, w. */
+	public static final String ROTATION_ATTRIBUTE = "a_rotation";
+
+	/** The name of the float attribute that holds the texture unit a
+	 * {@link com.cyphercove.gdx.flexbatch.batchable.TextureSlotQuad2D TextureSlotQuad2D} samples from. */
+	public static final String TEXTURE_SLOT_ATTRIBUTE = "a_textureSlot";
+
+	/** The name of the mat4 uniform that holds the camera's view matrix in
+	 * {@link #generateBillboardVertexShader(int)}. */
+	public static final String VIEW_UNIFORM = "u_view";
+
 	/** Generate vertex attributes suitable for multi-texturing and vertex color. 32 bit floats are used for each position
 	 * component and texture coordinate. The four color components are packed into a single 32 bit float.
 	 * @param textureCount The number of textures to support.
@@ -27,10 +49,50 @@ public final class BatchablePreparation {
 		}
 	}
 
+	/** Generate compact vertex attributes for 2D Batchables, such as {@link com.cyphercove.gdx.flexbatch.batchable.CompactQuad2D
+	 * CompactQuad2D}, that use a third less vertex data than {@link #addBaseAttributes(Array, int, boolean, boolean)}. The
+	 * position is two shorts, so it is limited to whole numbers. The four color components are packed into a single 32 bit
+	 * float. Each texture coordinate is two normalized unsigned shorts. Every attribute fills one float, and is written with
+	 * {@link VertexPacking}. The shaders from {@link #generateGenericVertexShader(int)} and
+	 * {@link #generateGenericFragmentShader(int)} can be used.
+	 * @param textureCount The number of textures to support.
+	 * @param attributes The array to add the vertex attributes to. */
+	public static void addCompactBaseAttributes (Array<VertexAttribute> attributes, int textureCount) {
+		attributes.add(new VertexAttribute(Usage.Position, 2, GL20.GL_SHORT, false, ShaderProgram.POSITION_ATTRIBUTE));
+		attributes.add(new VertexAttribute(Usage.ColorPacked, 4, ShaderProgram.COLOR_ATTRIBUTE));
+		for (int i = 0; i < textureCount; i++) {
+			attributes.add(new VertexAttribute(Usage.TextureCoordinates, 2, GL20.GL_UNSIGNED_SHORT, true,
+				ShaderProgram.TEXCOORD_ATTRIBUTE + i, i));
+		}
+	}
+
+	/** Generate per-instance vertex attributes for quads drawn with instancing, such as
+	 * {@link com.cyphercove.gdx.flexbatch.batchable.InstancedQuad2D InstancedQuad2D}. The four color components are packed into a
+	 * single 32 bit float. The position attribute holds the world position of the origin, the rotation in degrees, and the
+	 * number of clockwise 90 degree rotations of the texture coordinates. The {@value #BOUNDS_ATTRIBUTE} attribute holds the
+	 * scaled edges relative to the origin. Each texture coordinate attribute holds the region's {@code u, v, u2, v2}.
+	 * @param textureCount The number of textures to support.
+	 * @param attributes The array to add the vertex attributes to. */
+	public static void addInstancedQuadAttributes (Array<VertexAttribute> attributes, int textureCount) {
+		attributes.add(new VertexAttribute(Usage.Position, 4, ShaderProgram.POSITION_ATTRIBUTE));
+		attributes.add(new VertexAttribute(Usage.Generic, 4, BOUNDS_ATTRIBUTE));
+		attributes.add(new VertexAttribute(Usage.ColorPacked, 4, ShaderProgram.COLOR_ATTRIBUTE));
+		for (int i = 0; i < textureCount; i++)
+			attributes.add(new VertexAttribute(Usage.TextureCoordinates, 4, ShaderProgram.TEXCOORD_ATTRIBUTE + i, i));
+	}
+
 	public static String generateGenericVertexShader (int textureCount) {
+		return generateGenericVertexShader(textureCount, false);
+	}
+
+	/** Generate a vertex shader for the attributes from {@link #addBaseAttributes(Array, int, boolean, boolean)}.
+	 * @param textureArrays Whether the texture coordinates are three-dimensional, with the third component being the layer of a
+	 *           TextureArray. Requires GL30. */
+	public static String generateGenericVertexShader (int textureCount, boolean textureArrays) {
 		boolean v3 = Gdx.gl30 != null;
 		String attribute = v3 ? "in" : "attribute";
 		String varying = v3 ? "out" : "varying";
+		String texCoordType = textureArrays ? " vec3 " : " vec2 ";
 
 		StringBuilder sb = new StringBuilder();
 
@@ -38,11 +100,11 @@ public final class BatchablePreparation {
 		sb.append(attribute).append(" vec4 ").append(ShaderProgram.POSITION_ATTRIBUTE).append(";\n");
 		sb.append(attribute).append(" vec4 ").append(ShaderProgram.COLOR_ATTRIBUTE).append(";\n");
 		for (int i = 0; i < textureCount; i++)
-			sb.append(attribute).append(" vec2 ").append(ShaderProgram.TEXCOORD_ATTRIBUTE).append(i).append(";\n");
+			sb.append(attribute).append(texCoordType).append(ShaderProgram.TEXCOORD_ATTRIBUTE).append(i).append(";\n");
 		sb.append("uniform mat4 u_projTrans;\n");
 		sb.append(varying).append(" vec4 v_color;\n");
 		for (int i = 0; i < textureCount; i++)
-			sb.append(varying).append(" vec2 v_texCoords").append(i).append(";\n\n");
+			sb.append(varying).append(texCoordType).append("v_texCoords").append(i).append(";\n\n");
 
 		sb.append("void main()\n");
 		sb.append("{\n");
@@ -56,11 +118,49 @@ public final class BatchablePreparation {
 		return sb.toString();
 	}
 
-	public static String generateGenericFragmentShader (int textureCount) { // TODO default should only use first texture
+	/** Generate a vertex shader for {@link com.cyphercove.gdx.flexbatch.batchable.TextureSlotQuad2D TextureSlotQuad2Ds}. It passes
+	 * the texture unit in {@value #TEXTURE_SLOT_ATTRIBUTE} to the fragment shader from
+	 * {@link #generateTextureSlotFragmentShader(int)}. */
+	public static String generateTextureSlotVertexShader () {
+		boolean v3 = Gdx.gl30 != null;
+		String attribute = v3 ? "in" : "attribute";
+		String varying = v3 ? "out" : "varying";
+
+		StringBuilder sb = new StringBuilder();
+
+		if (v3) sb.append("#version 300 es\n");
+		sb.append(attribute).append(" vec4 ").append(ShaderProgram.POSITION_ATTRIBUTE).append(";\n");
+		sb.append(attribute).append(" vec4 ").append(ShaderProgram.COLOR_ATTRIBUTE).append(";\n");
+		sb.append(attribute).append(" vec2 ").append(ShaderProgram.TEXCOORD_ATTRIBUTE).append("0;\n");
+		sb.append(attribute).append(" float ").append(TEXTURE_SLOT_ATTRIBUTE).append(";\n");
+		sb.append("uniform mat4 u_projTrans;\n");
+		sb.append(varying).append(" vec4 v_color;\n");
+		sb.append(varying).append(" vec2 v_texCoords0;\n");
+		sb.append(varying).append(" float v_textureSlot;\n");
+
+		sb.append("\n");
+		sb.append("void main()\n");
+		sb.append("{\n");
+		sb.append("   v_color = ").append(ShaderProgram.COLOR_ATTRIBUTE).append(";\n");
+		sb.append("   v_color.a = v_color.a * (255.0/254.0);\n");
+		sb.append("   v_texCoords0 = ").append(ShaderProgram.TEXCOORD_ATTRIBUTE).append("0;\n");
+		sb.append("   v_textureSlot = ").append(TEXTURE_SLOT_ATTRIBUTE).append(";\n");
+		sb.append("   gl_Position =  u_projTrans * ").append(ShaderProgram.POSITION_ATTRIBUTE).append(";\n");
+		sb.append("}\n");
+
+		return sb.toString();
+	}
+
+	/** Generate a fragment shader for {@link com.cyphercove.gdx.flexbatch.batchable.TextureSlotQuad2D TextureSlotQuad2Ds}, to pair
+	 * with {@link #generateTextureSlotVertexShader()}. It samples the texture from the uniform {@code u_texture} with the slot
+	 * appended, selected by comparisons because GLSL ES 1.0 cannot index samplers by a varying.
+	 * @param slotCount The number of texture units to select from. It must not exceed the GL_MAX_TEXTURE_IMAGE_UNITS of the
+	 *           device, which is at least 8. */
+	public static String generateTextureSlotFragmentShader (int slotCount) {
 		boolean v3 = Gdx.gl30 != null;
 		String varying = v3 ? "in" : "varying";
 		String outColor = v3 ? "fragmentColor" : "gl_FragColor";
-		String tex2D = v3 ? "texture, " : "texture2D";
+		String tex2D = v3 ? "texture" : "texture2D";
 
 		StringBuilder sb = new StringBuilder();
 
@@ -73,11 +173,197 @@ public final class BatchablePreparation {
 		sb.append("#endif\n\n");
 
 		sb.append(varying).append(" LOWP vec4 v_color;\n");
+		sb.append(varying).append(" vec2 v_texCoords0;\n");
+		sb.append(varying).append(" float v_textureSlot;\n");
+		for (int i = 0; i < slotCount; i++)
+			sb.append("uniform sampler2D u_texture").append(i).append(";\n");
+		if (v3) sb.append("out LOWP vec4 ").append(outColor).append(";\n");
+
+		sb.append("\n");
+		sb.append("void main()\n");
+		sb.append("{\n");
+		sb.append("  LOWP vec4 color;\n");
+		for (int i = 0; i < slotCount - 1; i++) {
+			sb.append(i == 0 ? "  if" : "  else if").append(" (v_textureSlot < ").append(i).append(".5) color = ").append(tex2D)
+				.append("(u_texture").append(i).append(", v_texCoords0);\n");
+		}
+		sb.append(slotCount == 1 ? "  " : "  else ").append("color = ").append(tex2D).append("(u_texture").append(slotCount - 1)
+			.append(", v_texCoords0);\n");
+		sb.append("  ").append(outColor).append(" = v_color * color;\n");
+		sb.append("}");
+
+		return sb.toString();
+	}
+
+	/** Generate a vertex shader for {@link com.cyphercove.gdx.flexbatch.batchable.BillboardQuad3D BillboardQuad3Ds}. Each corner
+	 * is moved from the origin position along the camera's right and up directions, which are the first two rows of the view
+	 * matrix in the uniform {@value #VIEW_UNIFORM}. It can be paired with {@link #generateGenericFragmentShader(int)}. */
+	public static String generateBillboardVertexShader (int textureCount) {
+		boolean v3 = Gdx.gl30 != null;
+		String attribute = v3 ? "in" : "attribute";
+		String varying = v3 ? "out" : "varying";
+
+		StringBuilder sb = new StringBuilder();
+
+		if (v3) sb.append("#version 300 es\n");
+		sb.append(attribute).append(" vec4 ").append(ShaderProgram.POSITION_ATTRIBUTE).append(";\n");
+		sb.append(attribute).append(" vec4 ").append(ShaderProgram.COLOR_ATTRIBUTE).append(";\n");
+		for (int i = 0; i < textureCount; i++)
+			sb.append(attribute).append(" vec2 ").append(ShaderProgram.TEXCOORD_ATTRIBUTE).append(i).append(";\n");
+		sb.append(attribute).append(" vec2 ").append(BILLBOARD_OFFSET_ATTRIBUTE).append(";\n");
+		sb.append("uniform mat4 u_projTrans;\n");
+		sb.append("uniform mat4 ").append(VIEW_UNIFORM).append(";\n");
+		sb.append(varying).append(" vec4 v_color;\n");
 		for (int i = 0; i < textureCount; i++)
 			sb.append(varying).append(" vec2 v_texCoords").append(i).append(";\n");
+
+		sb.append("\n");
+		sb.append("void main()\n");
+		sb.append("{\n");
+		sb.append("   v_color = ").append(ShaderProgram.COLOR_ATTRIBUTE).append(";\n");
+		sb.append("   v_color.a = v_color.a * (255.0/254.0);\n");
 		for (int i = 0; i < textureCount; i++)
-			sb.append("uniform sampler2D u_texture").append(i).append(";\n");
-		if (v3) sb.append("out LOWP vec4 ").append(outColor).append("\n");
+			sb.append("   v_texCoords").append(i).append(" = ").append(ShaderProgram.TEXCOORD_ATTRIBUTE).append(i).append(";\n");
+		sb.append("   vec3 right = vec3(").append(VIEW_UNIFORM).append("[0][0], ").append(VIEW_UNIFORM).append("[1][0], ")
+			.append(VIEW_UNIFORM).append("[2][0]);\n");
+		sb.append("   vec3 up = vec3(").append(VIEW_UNIFORM).append("[0][1], ").append(VIEW_UNIFORM).append("[1][1], ")
+			.append(VIEW_UNIFORM).append("[2][1]);\n");
+		sb.append("   vec3 world = ").append(ShaderProgram.POSITION_ATTRIBUTE).append(".xyz + right * ")
+			.append(BILLBOARD_OFFSET_ATTRIBUTE).append(".x + up * ").append(BILLBOARD_OFFSET_ATTRIBUTE).append(".y;\n");
+		sb.append("   gl_Position = u_projTrans * vec4(world, 1.0);\n");
+		sb.append("}\n");
+
+		return sb.toString();
+	}
+
+	/** Generate a vertex shader for {@link com.cyphercove.gdx.flexbatch.batchable.QuaternionLitQuad3D QuaternionLitQuad3Ds}. In
+	 * addition to the color and texture coordinates of {@link #generateGenericVertexShader(int)}, it passes the world space
+	 * normal, tangent, and binormal to the fragment shader as {@code v_normal}, {@code v_tangent}, and {@code v_binormal}. They
+	 * are the columns of the rotation matrix of the quaternion in {@value #ROTATION_ATTRIBUTE}. */
+	public static String generateQuaternionLitVertexShader (int textureCount) {
+		boolean v3 = Gdx.gl30 != null;
+		String attribute = v3 ? "in" : "attribute";
+		String varying = v3 ? "out" : "varying";
+
+		StringBuilder sb = new StringBuilder();
+
+		if (v3) sb.append("#version 300 es\n");
+		sb.append(attribute).append(" vec4 ").append(ShaderProgram.POSITION_ATTRIBUTE).append(";\n");
+		sb.append(attribute).append(" vec4 ").append(ShaderProgram.COLOR_ATTRIBUTE).append(";\n");
+		for (int i = 0; i < textureCount; i++)
+			sb.append(attribute).append(" vec2 ").append(ShaderProgram.TEXCOORD_ATTRIBUTE).append(i).append(";\n");
+		sb.append(attribute).append(" vec4 ").append(ROTATION_ATTRIBUTE).append(";\n");
+		sb.append("uniform mat4 u_projTrans;\n");
+		sb.append(varying).append(" vec4 v_color;\n");
+		for (int i = 0; i < textureCount; i++)
+			sb.append(varying).append(" vec2 v_texCoords").append(i).append(";\n");
+		sb.append(varying).append(" vec3 v_normal;\n");
+		sb.append(varying).append(" vec3 v_tangent;\n");
+		sb.append(varying).append(" vec3 v_binormal;\n");
+
+		sb.append("\n");
+		sb.append("void main()\n");
+		sb.append("{\n");
+		sb.append("   v_color = ").append(ShaderProgram.COLOR_ATTRIBUTE).append(";\n");
+		sb.append("   v_color.a = v_color.a * (255.0/254.0);\n");
+		for (int i = 0; i < textureCount; i++)
+			sb.append("   v_texCoords").append(i).append(" = ").append(ShaderProgram.TEXCOORD_ATTRIBUTE).append(i).append(";\n");
+		sb.append("   vec4 q = ").append(ROTATION_ATTRIBUTE).append(";\n");
+		sb.append("   vec4 q2 = q * q;\n");
+		sb.append("   v_tangent = vec3(q2.w + q2.x - q2.y - q2.z, 2.0 * (q.x * q.y + q.w * q.z),");
+		sb.append(" 2.0 * (q.x * q.z - q.w * q.y));\n");
+		sb.append("   v_binormal = vec3(2.0 * (q.x * q.y - q.w * q.z), q2.w - q2.x + q2.y - q2.z,");
+		sb.append(" 2.0 * (q.y * q.z + q.w * q.x));\n");
+		sb.append("   v_normal = vec3(2.0 * (q.x * q.z + q.w * q.y), 2.0 * (q.y * q.z - q.w * q.x),");
+		sb.append(" q2.w - q2.x - q2.y + q2.z);\n");
+		sb.append("   gl_Position = u_projTrans * ").append(ShaderProgram.POSITION_ATTRIBUTE).append(";\n");
+		sb.append("}\n");
+
+		return sb.toString();
+	}
+
+	/** Generate a vertex shader for quads drawn with instancing, using the attributes from
+	 * {@link #addInstancedQuadAttributes(Array, int)} and the unit quad corner from {@link InstancedQuadVertexData}. It can be
+	 * paired with {@link #generateGenericFragmentShader(int)}. Requires GL30. */
+	public static String generateInstancedQuadVertexShader (int textureCount) {
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("#version 300 es\n");
+		sb.append("in vec2 ").append(InstancedQuadVertexData.CORNER_ATTRIBUTE).append(";\n");
+		sb.append("in vec4 ").append(ShaderProgram.POSITION_ATTRIBUTE).append(";\n");
+		sb.append("in vec4 ").append(BOUNDS_ATTRIBUTE).append(";\n");
+		sb.append("in vec4 ").append(ShaderProgram.COLOR_ATTRIBUTE).append(";\n");
+		for (int i = 0; i < textureCount; i++)
+			sb.append("in vec4 ").append(ShaderProgram.TEXCOORD_ATTRIBUTE).append(i).append(";\n");
+		sb.append("uniform mat4 u_projTrans;\n");
+		sb.append("out vec4 v_color;\n");
+		for (int i = 0; i < textureCount; i++)
+			sb.append("out vec2 v_texCoords").append(i).append(";\n");
+
+		sb.append("\n");
+		sb.append("void main()\n");
+		sb.append("{\n");
+		sb.append("   vec2 corner = ").append(InstancedQuadVertexData.CORNER_ATTRIBUTE).append(";\n");
+		sb.append("   v_color = ").append(ShaderProgram.COLOR_ATTRIBUTE).append(";\n");
+		sb.append("   v_color.a = v_color.a * (255.0/254.0);\n");
+		if (textureCount > 0) {
+			sb.append("   float coordinatesRotation = ").append(ShaderProgram.POSITION_ATTRIBUTE).append(".w;\n");
+			sb.append("   vec2 uvCorner;\n");
+			sb.append("   if (coordinatesRotation > 2.5) uvCorner = vec2(corner.y, 1.0 - corner.x);\n");
+			sb.append("   else if (coordinatesRotation > 1.5) uvCorner = 1.0 - corner;\n");
+			sb.append("   else if (coordinatesRotation > 0.5) uvCorner = vec2(1.0 - corner.y, corner.x);\n");
+			sb.append("   else uvCorner = corner;\n");
+			for (int i = 0; i < textureCount; i++) {
+				String region = ShaderProgram.TEXCOORD_ATTRIBUTE + i;
+				sb.append("   v_texCoords").append(i).append(" = vec2(mix(").append(region).append(".x, ").append(region)
+					.append(".z, uvCorner.x), mix(").append(region).append(".w, ").append(region).append(".y, uvCorner.y));\n");
+			}
+		}
+		sb.append("   vec2 local = mix(").append(BOUNDS_ATTRIBUTE).append(".xy, ").append(BOUNDS_ATTRIBUTE)
+			.append(".zw, corner);\n");
+		sb.append("   float angle = radians(").append(ShaderProgram.POSITION_ATTRIBUTE).append(".z);\n");
+		sb.append("   float c = cos(angle);\n");
+		sb.append("   float s = sin(angle);\n");
+		sb.append("   vec2 world = ").append(ShaderProgram.POSITION_ATTRIBUTE)
+			.append(".xy + vec2(c * local.x - s * local.y, s * local.x + c * local.y);\n");
+		sb.append("   gl_Position = u_projTrans * vec4(world, 0.0, 1.0);\n");
+		sb.append("}\n");
+
+		return sb.toString();
+	}
+
+	public static String generateGenericFragmentShader (int textureCount) { // TODO default should only use first texture
+		return generateGenericFragmentShader(textureCount, false);
+	}
+
+	/** Generate a fragment shader to pair with {@link #generateGenericVertexShader(int, boolean)}.
+	 * @param textureArrays Whether the textures are TextureArrays sampled with three-dimensional texture coordinates. Requires
+	 *           GL30. */
+	public static String generateGenericFragmentShader (int textureCount, boolean textureArrays) {
+		boolean v3 = Gdx.gl30 != null;
+		String varying = v3 ? "in" : "varying";
+		String outColor = v3 ? "fragmentColor" : "gl_FragColor";
+		String tex2D = v3 ? "texture" : "texture2D";
+		String texCoordType = textureArrays ? " vec3 " : " vec2 ";
+		String samplerType = textureArrays ? " sampler2DArray " : " sampler2D ";
+
+		StringBuilder sb = new StringBuilder();
+
+		if (v3) sb.append("#version 300 es\n");
+		sb.append("#ifdef GL_ES\n");
+		sb.append("#define LOWP lowp\n");
+		sb.append("precision mediump float;\n");
+		if (textureArrays) sb.append("precision mediump sampler2DArray;\n");
+		sb.append("#else\n");
+		sb.append("#define LOWP \n");
+		sb.append("#endif\n\n");
+
+		sb.append(varying).append(" LOWP vec4 v_color;\n");
+		for (int i = 0; i < textureCount; i++)
+			sb.append(varying).append(texCoordType).append("v_texCoords").append(i).append(";\n");
+		for (int i = 0; i < textureCount; i++)
+			sb.append("uniform").append(samplerType).append("u_texture").append(i).append(";\n");
+		if (v3) sb.append("out LOWP vec4 ").append(outColor).append(";\n");
 
 		sb.append("\n");
 		sb.append("void main()\n");
@@ -85,7 +371,7 @@ public final class BatchablePreparation {
 		if (textureCount == 0)
 			sb.append("  ").append(outColor).append(" = v_color;\n");
 		else if (textureCount == 1)
-			sb.append("  ").append(outColor).append(" = v_color * texture2D(u_texture0, v_texCoords0);\n");
+			sb.append("  ").append(outColor).append(" = v_color * ").append(tex2D).append("(u_texture0, v_texCoords0);\n");
 		else {
 			sb.append("LOWP vec4 color = ").append(tex2D).append("(u_texture0, v_texCoords0);\n");
 			for (int i = 1; i < textureCount; i++)
@@ -116,4 +402,19 @@ public final class BatchablePreparation {
 			triangles[i + 5] = (short)(j + 2);
 		}
 	}
+
+	/** Populates an array of 32-bit triangle indices for quadrangles made up of two triangles, in the same order as
+	 * {@link #populateQuadrangleIndices(short[])}.
+	 * @param triangles The array that will be filled with triangle indices. */
+	public static void populateQuadrangleIndices (int[] triangles) {
+		int j = 0;
+		for (int i = 0; i + 5 < triangles.length; i += 6, j += 4) {
+			triangles[i] = j;
+			triangles[i + 1] = j + 2;
+			triangles[i + 2] = j + 1;
+			triangles[i + 3] = j;
+			triangles[i + 4] = j + 3;
+			triangles[i + 5] = j + 2;
+		}
+	}
 }
@@ -1,13 +1,12 @@
 
 package com.cyphercove.gdx.flexbatch.utils;
 
-import java.util.Comparator;
+import java.util.Arrays;
 
 import com.badlogic.gdx.graphics.Camera;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
-import com.badlogic.gdx.utils.ObjectMap;
-import com.badlogic.gdx.utils.ObjectSet;
+import com.badlogic.gdx.utils.IntMap;
 import com.badlogic.gdx.utils.Pool;
 import com.cyphercove.gdx.flexbatch.Batchable;
 import com.cyphercove.gdx.flexbatch.FlexBatch;
@@ -15,74 +14,106 @@ import com.cyphercove.gdx.flexbatch.FlexBatch;
 /** Sorts 3D {@link Batchable Batchables} to ensure proper render order before passing them to a {@link FlexBatch}.
  * <p>
  * Opaque Batchables are sorted by texture configuration to minimize flushes and drawn first. Blended Batchables are sorted by
- * distance from camera and drawn far to near.
+ * distance from camera and drawn far to near. Blended Batchables at equal distances keep the order they were added in.
+ * <p>
+ * Opaque Batchables that implement {@link TextureHashable} are grouped by their {@link TextureHashable#getTextureHash() texture
+ * hash}, so adding one takes constant time regardless of how many texture configurations are queued. Other Batchables share a
+ * single hash, so each one is compared with the groups in turn. Each group is a plain array, and groups are drawn in the order
+ * their texture configurations were first added. A Batchable added more than once is drawn more than once.
+ * <p>
+ * The sorter also keeps a {@link BillboardBasis}, which is updated from the camera each time the Batchables are drawn. Queued
+ * {@link com.cyphercove.gdx.flexbatch.batchable.Quad3D Quad3Ds} can share it with
+ * {@link com.cyphercove.gdx.flexbatch.batchable.Quad3D#billboard(BillboardBasis) billboard(BillboardBasis)}.
  * 
  * @author cypherdare */
 public class BatchableSorter<T extends Batchable & SortableBatchable<T>> {
 
+	private static final int MIN_RADIX_SORT_SIZE = 64;
 	protected final int opaqueInitialCapacityPerTexture;
-	private final ObjectMap<T, ObjectSet<T>> opaqueBatchables; // first entered to material group
-	private final Array<T> blendedBatchables;
-	private final Comparator<T> comparator;
+	private final IntMap<OpaqueGroup<T>> opaqueGroupsByHash;
+	private final Array<OpaqueGroup<T>> opaqueGroups; // in order of first use
+	private OpaqueGroup<T> lastOpaqueGroup; // consecutive additions often share textures
+	private Array<T> blendedBatchables;
+	// Scratch for sorting the blended Batchables, grown as needed
+	private int[] sortKeys = new int[0], sortKeysTemp = new int[0];
+	private int[] sortIndices = new int[0], sortIndicesTemp = new int[0];
+	/** Receives the blended Batchables in sorted order, then is swapped with {@link #blendedBatchables}. */
+	private Array<T> sortedBatchables;
+	private final int[] radixCounts = new int[256];
 	protected Vector3 cameraPosition;
+	private Camera camera;
+	private final BillboardBasis billboardBasis = new BillboardBasis();
 	private boolean needSort;
 
-	private Pool<ObjectSet<T>> objectSetPool = new Pool<ObjectSet<T>>() {
-		protected void reset (ObjectSet<T> object) {
-			object.clear();
+	private Pool<OpaqueGroup<T>> opaqueGroupPool = new Pool<OpaqueGroup<T>>() {
+		protected void reset (OpaqueGroup<T> object) {
+			object.batchables.clear();
+			object.next = null;
 		}
 
-		protected ObjectSet<T> newObject () {
-			return new ObjectSet<T>(opaqueInitialCapacityPerTexture);
+		protected OpaqueGroup<T> newObject () {
+			return new OpaqueGroup<T>(opaqueInitialCapacityPerTexture);
 		}
 
 	};
 
+	/** Opaque Batchables with equivalent textures. */
+	private static final class OpaqueGroup<T> {
+		final Array<T> batchables;
+		/** Another group whose textures have the same hash but are not equivalent. */
+		OpaqueGroup<T> next;
+
+		OpaqueGroup (int initialCapacity) {
+			batchables = new Array<T>(initialCapacity);
+		}
+	}
+
 	public BatchableSorter (Camera camera) {
 		this(camera, 2, 1000, 1000);
 	}
 
 	public BatchableSorter (Camera camera, int opaqueIntialTextureCapacity, int opaqueInitialCapacityPerTexture,
 		int blendedInitialCapacity) {
+		this.camera = camera;
 		this.cameraPosition = camera.position;
 		this.opaqueInitialCapacityPerTexture = opaqueInitialCapacityPerTexture;
-		opaqueBatchables = new ObjectMap<T, ObjectSet<T>>();
+		opaqueGroupsByHash = new IntMap<OpaqueGroup<T>>(Math.max(opaqueIntialTextureCapacity, 1));
+		opaqueGroups = new Array<OpaqueGroup<T>>(Math.max(opaqueIntialTextureCapacity, 1));
 		for (int i = 0; i < opaqueIntialTextureCapacity; i++) { // seed the pool to avoid delay on first use
-			objectSetPool.free(objectSetPool.obtain());
+			opaqueGroupPool.free(opaqueGroupPool.obtain());
 		}
 		blendedBatchables = new Array<T>(blendedInitialCapacity);
-		comparator = new Comparator<T>() {
-			public int compare (T o1, T o2) {
-				return (int)Math.signum(o2.calculateDistanceSquared(cameraPosition) - o1.calculateDistanceSquared(cameraPosition));
-			}
-		};
+		sortedBatchables = new Array<T>(blendedInitialCapacity);
 	}
 
 	/** Clear the queue without drawing anything. */
 	public void clear () {
-		for (ObjectSet<T> set : opaqueBatchables.values())
-			objectSetPool.free(set);
-		opaqueBatchables.clear();
+		opaqueGroupPool.freeAll(opaqueGroups);
+		opaqueGroups.clear();
+		opaqueGroupsByHash.clear();
+		lastOpaqueGroup = null;
 		blendedBatchables.clear();
 	}
 
 	/** Sort (if necessary) and draw the queued Batchables without clearing them. Must be called in between
 	 * {@link FlexBatch#begin()} and {@link FlexBatch#end()}. */
-	public void draw (FlexBatch<T> flexBatch) {
-		if (needSort) {
-			blendedBatchables.sort(comparator);
-			needSort = false;
+	public void draw (FlexBatch<?> flexBatch) {
+		billboardBasis.update(camera);
+		sortIfNeeded();
+		final Array<OpaqueGroup<T>> opaqueGroups = this.opaqueGroups;
+		for (int i = 0, n = opaqueGroups.size; i < n; i++) {
+			final Array<T> batchables = opaqueGroups.get(i).batchables;
+			for (int j = 0, m = batchables.size; j < m; j++)
+				flexBatch.draw(batchables.get(j));
 		}
-		for (ObjectSet<T> set : opaqueBatchables.values())
-			for (T batchable : set)
-				flexBatch.draw(batchable);
-		for (T batchable : blendedBatchables)
-			flexBatch.draw(batchable);
+		final Array<T> blendedBatchables = this.blendedBatchables;
+		for (int i = 0, n = blendedBatchables.size; i < n; i++)
+			flexBatch.draw(blendedBatchables.get(i));
 	}
 
 	/** Sort (if necessary), draw, and clear references to the queued Batchables. Must be called in between
 	 * {@link FlexBatch#begin()} and {@link FlexBatch#end()}. */
-	public void flush (FlexBatch<T> flexBatch) {
+	public void flush (FlexBatch<?> flexBatch) {
 		draw(flexBatch);
 		clear();
 	}
@@ -90,23 +121,129 @@ public class BatchableSorter<T extends Batchable & SortableBatchable<T>> {
 	/** Add a Batchable to the queue. */
 	public void add (T batchable) {
 		if (batchable.isOpaque()) {
-			for (ObjectMap.Entry<T, ObjectSet<T>> entry : opaqueBatchables) {
-				if (batchable.hasEquivalentTextures(entry.key)) {
-					entry.value.add((T)batchable);
-					return;
-				}
+			OpaqueGroup<T> group = lastOpaqueGroup;
+			if (group != null && batchable.hasEquivalentTextures(group.batchables.first())) {
+				group.batchables.add(batchable);
+				return;
+			}
+			final int textureHash = batchable instanceof TextureHashable ? ((TextureHashable)batchable).getTextureHash() : 0;
+			OpaqueGroup<T> previous = null;
+			group = opaqueGroupsByHash.get(textureHash);
+			while (group != null && !batchable.hasEquivalentTextures(group.batchables.first())) {
+				previous = group;
+				group = group.next;
+			}
+			if (group == null) {
+				group = opaqueGroupPool.obtain();
+				if (previous == null)
+					opaqueGroupsByHash.put(textureHash, group);
+				else
+					previous.next = group;
+				opaqueGroups.add(group);
 			}
-			ObjectSet<T> set = objectSetPool.obtain();
-			set.add(batchable);
-			opaqueBatchables.put(batchable, set);
+			group.batchables.add(batchable);
+			lastOpaqueGroup = group;
 		} else {
 			blendedBatchables.add(batchable);
 		}
 		needSort = true;
 	}
 
-	/** Sets the camera that is used for distance comparisons to sort the blended Batchables. */
+	private void sortIfNeeded () {
+		if (needSort) {
+			sortBlended();
+			needSort = false;
+		}
+	}
+
+	/** Sorts the queued Batchables if necessary. Exposed for testing.
+	 * @return The blended Batchables, in drawing order. */
+	Array<T> getSortedBlendedBatchables () {
+		sortIfNeeded();
+		return blendedBatchables;
+	}
+
+	/** Sorts the blended Batchables far to near. Each distance is computed once and converted to an integer key that sorts in the
+	 * same order as the float, and the keys are sorted with a stable least-significant-digit radix sort that carries the indices
+	 * of the Batchables along. Short lists are insertion sorted instead. The order matches {@link Float#compare(float, float)}
+	 * reversed, so NaN distances are drawn first and -0 is nearer than 0. */
+	private void sortBlended () {
+		final Array<T> blendedBatchables = this.blendedBatchables;
+		final int n = blendedBatchables.size;
+		if (n < 2) return;
+		if (sortKeys.length < n) {
+			final int capacity = Math.max(n, (int)(sortKeys.length * 1.75f));
+			sortKeys = new int[capacity];
+			sortKeysTemp = new int[capacity];
+			sortIndices = new int[capacity];
+			sortIndicesTemp = new int[capacity];
+		}
+		int[] keys = sortKeys, keysTemp = sortKeysTemp, indices = sortIndices, indicesTemp = sortIndicesTemp;
+
+		final Vector3 cameraPosition = this.cameraPosition;
+		for (int i = 0; i < n; i++) {
+			final int bits = Float.floatToIntBits(blendedBatchables.get(i).calculateDistanceSquared(cameraPosition));
+			// Flip to unsigned ascending order, then invert so farther Batchables have smaller keys.
+			keys[i] = ~(bits ^ (bits >> 31 | 0x80000000));
+			indices[i] = i;
+		}
+
+		if (n < MIN_RADIX_SORT_SIZE) {
+			for (int i = 1; i < n; i++) {
+				final int key = keys[i], index = indices[i];
+				int j = i - 1;
+				for (; j >= 0 && (keys[j] ^ 0x80000000) > (key ^ 0x80000000); j--) { // unsigned comparison
+					keys[j + 1] = keys[j];
+					indices[j + 1] = indices[j];
+				}
+				keys[j + 1] = key;
+				indices[j + 1] = index;
+			}
+		} else {
+			final int[] counts = radixCounts;
+			for (int shift = 0; shift < 32; shift += 8) {
+				Arrays.fill(counts, 0);
+				for (int i = 0; i < n; i++)
+					counts[keys[i] >>> shift & 0xff]++;
+				if (counts[keys[0] >>> shift & 0xff] == n) continue; // all keys share this digit
+				for (int digit = 0, total = 0; digit < 256; digit++) {
+					final int count = counts[digit];
+					counts[digit] = total;
+					total += count;
+				}
+				for (int i = 0; i < n; i++) {
+					final int key = keys[i];
+					final int destination = counts[key >>> shift & 0xff]++;
+					keysTemp[destination] = key;
+					indicesTemp[destination] = indices[i];
+				}
+				int[] swap = keys;
+				keys = keysTemp;
+				keysTemp = swap;
+				swap = indices;
+				indices = indicesTemp;
+				indicesTemp = swap;
+			}
+		}
+
+		final Array<T> sortedBatchables = this.sortedBatchables;
+		for (int i = 0; i < n; i++)
+			sortedBatchables.add(blendedBatchables.get(indices[i]));
+		blendedBatchables.clear();
+		this.blendedBatchables = sortedBatchables;
+		this.sortedBatchables = blendedBatchables;
+	}
+
+	/** Sets the camera that is used for distance comparisons to sort the blended Batchables, and to orient the
+	 * {@link #getBillboardBasis() billboard basis}. */
 	public void setCamera (Camera camera) {
+		this.camera = camera;
 		cameraPosition = camera.position;
 	}
+
+	/** @return The basis for billboarded quads, which is updated from the camera at the start of {@link #draw(FlexBatch)}. It is
+	 *         spherical by default, and may be set to cylindrical. */
+	public BillboardBasis getBillboardBasis () {
+		return billboardBasis;
+	}
 }
@@ -0,0 +1,139 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.math.Vector3;
+
+/** An orientation shared by many billboarded {@link com.cyphercove.gdx.flexbatch.batchable.Quad3D Quad3Ds}, computed once per
+ * frame from a camera with {@link #update(Camera)}. A Quad3D using a basis does not need its own rotation, so each corner is
+ * found with two multiply-adds per component.
+ * <p>
+ * A spherical basis faces the quads opposite the camera's direction, so they are aligned with the screen. A cylindrical basis
+ * keeps the quads' up direction fixed to an axis, and turns them about it to face the camera as closely as possible, as for trees
+ * or characters that should stay upright.
+ * <p>
+ * Unlike {@link com.cyphercove.gdx.flexbatch.batchable.Quad3D#billboard(Camera) Quad3D.billboard(Camera)}, the quads face a
+ * plane rather than the camera's position, so quads far from the center of the view are not turned toward it.
+ *
+ * @author cypherdare */
+public class BillboardBasis {
+
+	/** The direction of the quads' right side, which is the local X axis. */
+	public float rightX = 1, rightY, rightZ;
+	/** The direction of the quads' top side, which is the local Y axis. */
+	public float upX, upY = 1, upZ;
+	/** The direction the quads face, which is the local Z axis. */
+	public float normalX, normalY, normalZ = 1;
+	/** The same orientation as a unit quaternion. */
+	public float rotationX, rotationY, rotationZ, rotationW = 1;
+	private final Vector3 axis = new Vector3();
+	private boolean cylindrical;
+	private int changeCount;
+
+	/** Creates a spherical basis. */
+	public BillboardBasis () {
+	}
+
+	/** Creates a cylindrical basis.
+	 * @param axis The up direction of the quads. It does not need to be normalized. */
+	public BillboardBasis (Vector3 axis) {
+		setCylindrical(axis);
+	}
+
+	/** Sets this basis to spherical mode, where the quads are aligned with the screen. Takes effect on the next
+	 * {@link #update(Camera)}. */
+	public void setSpherical () {
+		cylindrical = false;
+	}
+
+	/** Sets this basis to cylindrical mode, where the quads turn only about an axis. Takes effect on the next
+	 * {@link #update(Camera)}.
+	 * @param axis The up direction of the quads. It does not need to be normalized. */
+	public void setCylindrical (Vector3 axis) {
+		this.axis.set(axis).nor();
+		cylindrical = true;
+	}
+
+	public boolean isCylindrical () {
+		return cylindrical;
+	}
+
+	/** Recomputes the basis from the camera's direction and up vectors. Must be called whenever the camera turns, typically once
+	 * per frame before the quads are drawn. In cylindrical mode, the basis is left unchanged while the camera looks along the
+	 * axis. */
+	public void update (Camera camera) {
+		final Vector3 direction = camera.direction;
+		final Vector3 up = cylindrical ? axis : camera.up;
+
+		// right = direction x up
+		float rx = direction.y * up.z - direction.z * up.y;
+		float ry = direction.z * up.x - direction.x * up.z;
+		float rz = direction.x * up.y - direction.y * up.x;
+		final float length2 = rx * rx + ry * ry + rz * rz;
+		if (length2 < 0.000001f) return;
+		final float invLength = 1f / (float)Math.sqrt(length2);
+		rx *= invLength;
+		ry *= invLength;
+		rz *= invLength;
+
+		if (cylindrical) {
+			upX = up.x;
+			upY = up.y;
+			upZ = up.z;
+			// normal = right x up
+			normalX = ry * upZ - rz * upY;
+			normalY = rz * upX - rx * upZ;
+			normalZ = rx * upY - ry * upX;
+		} else {
+			normalX = -direction.x;
+			normalY = -direction.y;
+			normalZ = -direction.z;
+			// up = normal x right
+			upX = normalY * rz - normalZ * ry;
+			upY = normalZ * rx - normalX * rz;
+			upZ = normalX * ry - normalY * rx;
+		}
+		rightX = rx;
+		rightY = ry;
+		rightZ = rz;
+		updateRotation();
+		changeCount++;
+	}
+
+	/** Converts the basis vectors, which are the columns of a rotation matrix, to a quaternion. */
+	private void updateRotation () {
+		final float m00 = rightX, m10 = rightY, m20 = rightZ;
+		final float m01 = upX, m11 = upY, m21 = upZ;
+		final float m02 = normalX, m12 = normalY, m22 = normalZ;
+		final float trace = m00 + m11 + m22;
+		if (trace > 0) {
+			final float s = 0.5f / (float)Math.sqrt(trace + 1);
+			rotationW = 0.25f / s;
+			rotationX = (m21 - m12) * s;
+			rotationY = (m02 - m20) * s;
+			rotationZ = (m10 - m01) * s;
+		} else if (m00 > m11 && m00 > m22) {
+			final float s = 2 * (float)Math.sqrt(1 + m00 - m11 - m22);
+			rotationW = (m21 - m12) / s;
+			rotationX = 0.25f * s;
+			rotationY = (m01 + m10) / s;
+			rotationZ = (m02 + m20) / s;
+		} else if (m11 > m22) {
+			final float s = 2 * (float)Math.sqrt(1 + m11 - m00 - m22);
+			rotationW = (m02 - m20) / s;
+			rotationX = (m01 + m10) / s;
+			rotationY = 0.25f * s;
+			rotationZ = (m12 + m21) / s;
+		} else {
+			final float s = 2 * (float)Math.sqrt(1 + m22 - m00 - m11);
+			rotationW = (m10 - m01) / s;
+			rotationX = (m02 + m20) / s;
+			rotationY = (m12 + m21) / s;
+			rotationZ = 0.25f * s;
+		}
+	}
+
+	/** @return A number that changes every time the basis is updated. */
+	public int getChangeCount () {
+		return changeCount;
+	}
+}
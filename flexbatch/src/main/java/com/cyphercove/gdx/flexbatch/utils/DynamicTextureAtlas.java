@@ -0,0 +1,450 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import java.nio.IntBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.graphics.Texture.TextureWrap;
+import com.badlogic.gdx.graphics.TextureData;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.ObjectSet;
+
+/** Packs small textures and texture regions into shared pages at runtime, so a batch can draw them from the same texture
+ * without flushing in between. Used by {@link com.cyphercove.gdx.flexbatch.CompliantBatch CompliantBatch} when set with
+ * {@link com.cyphercove.gdx.flexbatch.CompliantBatch#setDynamicAtlas(DynamicTextureAtlas) setDynamicAtlas()}.
+ * <p>
+ * Each page is divided into square cells of a single power-of-two size, and each region is placed in the smallest cell that fits
+ * it with a one-texel border copied from around it, or repeated from the region's own edge where it touches the edge of the
+ * texture. The pixels are copied on the GPU from the source texture, which therefore must be RGBA8888 or RGBA4444, must not use
+ * mip maps, must use the same filter as the pages, and must use {@link TextureWrap#ClampToEdge ClampToEdge} wrapping. Other
+ * textures, and regions that extend past the edges of their texture, are drawn directly. When the page memory budget is used
+ * up, the least recently used region of the needed cell size is evicted, or if none is available, the least recently used page
+ * of another cell size is cleared. Regions used since the last
+ * {@link #nextFrame()} are never evicted, so a frame that needs more regions than fit draws the rest directly.
+ * <p>
+ * The pages are not restored after the OpenGL context is lost, so the atlas must be {@link #clear() cleared} when the
+ * application resumes. A texture drawn through the atlas is referenced until it is {@link #remove(Texture) removed} or the
+ * atlas is cleared. A DynamicTextureAtlas must be {@link #dispose() disposed of} when no longer used.
+ *
+ * @author cypherdare */
+public class DynamicTextureAtlas implements Disposable {
+
+	/** Number of lookups of a region that was already in the atlas. Will not be reset unless set manually. **/
+	public int hits = 0;
+	/** Number of lookups of a supported region that had to be copied into the atlas. Will not be reset unless set manually. **/
+	public int misses = 0;
+	/** Number of lookups that could not use the atlas, because the texture or region is not supported, or the atlas is full of
+	 * regions used in the current frame. Will not be reset unless set manually. **/
+	public int bypasses = 0;
+	/** Number of regions evicted to make room for others. Will not be reset unless set manually. **/
+	public int evictions = 0;
+	/** Number of consecutive lookups with different source textures that resolved to the same atlas page, each of which would
+	 * otherwise have caused a flush. Will not be reset unless set manually. **/
+	public int flushesSaved = 0;
+
+	private final int pageSize, maxPages, minCellSize, maxRegionSize;
+	private final TextureFilter filter;
+	private final Array<Page> pages = new Array<Page>();
+	private final SizeClass[] sizeClasses;
+	private final ObjectMap<Texture, LongMap<Entry>> entries = new ObjectMap<Texture, LongMap<Entry>>();
+	private final ObjectSet<Texture> unsupported = new ObjectSet<Texture>();
+	private int frame;
+	private int framebufferHandle;
+	private final IntBuffer intBuffer = BufferUtils.newIntBuffer(16);
+	/** Runs of texels to copy along each axis, as triples of source start, destination start, and length. */
+	private final int[] segmentsX = new int[9], segmentsY = new int[9];
+	private Texture lastSource, lastTexture;
+
+	/** A region's place in the atlas. */
+	public static final class Entry {
+		Texture source;
+		long key;
+		Page page;
+		int cell;
+		float scaleU, offsetU, scaleV, offsetV;
+		int usedFrame;
+		Entry previous, next;
+
+		/** @return The atlas page texture holding the region. */
+		public Texture getTexture () {
+			return page.texture;
+		}
+
+		/** @return The U coordinate on the atlas page corresponding to a U coordinate in the region's source texture. */
+		public float mapU (float u) {
+			return u * scaleU + offsetU;
+		}
+
+		/** @return The V coordinate on the atlas page corresponding to a V coordinate in the region's source texture. */
+		public float mapV (float v) {
+			return v * scaleV + offsetV;
+		}
+	}
+
+	static final class Page {
+		final Texture texture;
+		final int index;
+		int sizeClass;
+		Entry[] cells;
+		int usedFrame;
+
+		Page (Texture texture, int index) {
+			this.texture = texture;
+			this.index = index;
+		}
+	}
+
+	/** The pages with one cell size, their free cells, and their regions from most to least recently used. */
+	static final class SizeClass {
+		final int cellSize, cellsPerSide;
+		final IntArray freeCells = new IntArray();
+		Entry head, tail;
+
+		SizeClass (int cellSize, int pageSize) {
+			this.cellSize = cellSize;
+			cellsPerSide = pageSize / cellSize;
+		}
+	}
+
+	/** @param pageSize The width and height of each page, a power of two.
+	 * @param memoryBudget The maximum number of bytes of page texture memory. At least one page is always allowed.
+	 * @param maxRegionSize The largest width or height of a region that is put in the atlas. Larger regions are drawn directly.
+	 * @param filter The filter used for the pages, either {@link TextureFilter#Nearest Nearest} or
+	 *           {@link TextureFilter#Linear Linear}. Only textures with the same minification and magnification filter are put in
+	 *           the atlas. */
+	public DynamicTextureAtlas (int pageSize, int memoryBudget, int maxRegionSize, TextureFilter filter) {
+		if (filter != TextureFilter.Nearest && filter != TextureFilter.Linear)
+			throw new IllegalArgumentException("The filter must be Nearest or Linear.");
+		if (pageSize < 64 || pageSize > 4096 || (pageSize & (pageSize - 1)) != 0)
+			throw new IllegalArgumentException("pageSize must be a power of two from 64 to 4096.");
+		if (maxRegionSize < 1 || maxRegionSize + 2 > pageSize)
+			throw new IllegalArgumentException("maxRegionSize must be positive and at least two less than the pageSize.");
+		this.pageSize = pageSize;
+		this.maxPages = Math.max(1, memoryBudget / (pageSize * pageSize * 4));
+		this.maxRegionSize = maxRegionSize;
+		this.filter = filter;
+		minCellSize = 16;
+		int classCount = 1;
+		while (minCellSize << (classCount - 1) < maxRegionSize + 2)
+			classCount++;
+		sizeClasses = new SizeClass[classCount];
+		for (int i = 0; i < classCount; i++)
+			sizeClasses[i] = new SizeClass(minCellSize << i, pageSize);
+	}
+
+	/** Must be called once per frame, before drawing. Regions used in the previous frame become eligible for eviction. */
+	public void nextFrame () {
+		frame++;
+		lastSource = lastTexture = null;
+	}
+
+	/** Finds or places a region in the atlas. This may issue GL calls that copy texture data, which change the texture bound to
+	 * texture unit 0, so it must only be called while a GL context is current.
+	 * @param texture The source texture.
+	 * @param u The left or right side of the region. The region's edges must lie on texel boundaries, and inside the texture.
+	 * @param v The top or bottom side of the region.
+	 * @param u2 The opposite side of the region from u.
+	 * @param v2 The opposite side of the region from v.
+	 * @param renderContext If not null, its tracked texture for unit 0 is bound again after texture data is copied.
+	 * @return The region's place in the atlas, or null if it must be drawn directly from the source texture. */
+	public Entry obtain (Texture texture, float u, float v, float u2, float v2, RenderContextAccumulator renderContext) {
+		Entry entry = find(texture, u, v, u2, v2, renderContext);
+		Texture result = entry == null ? texture : entry.page.texture;
+		if (entry != null && texture != lastSource && result == lastTexture) flushesSaved++;
+		lastSource = texture;
+		lastTexture = result;
+		return entry;
+	}
+
+	private Entry find (Texture texture, float u, float v, float u2, float v2, RenderContextAccumulator renderContext) {
+		final int textureWidth = texture.getWidth(), textureHeight = texture.getHeight();
+		final float left = Math.min(u, u2) * textureWidth, top = Math.min(v, v2) * textureHeight;
+		final int x = Math.round(left), y = Math.round(top);
+		final int width = Math.round(Math.abs(u2 - u) * textureWidth), height = Math.round(Math.abs(v2 - v) * textureHeight);
+		if (width == 0 || height == 0 || width > maxRegionSize || height > maxRegionSize || Math.abs(left - x) > 0.01f
+			|| Math.abs(top - y) > 0.01f || x < 0 || y < 0 || x + width > textureWidth || y + height > textureHeight) {
+			bypasses++;
+			return null;
+		}
+
+		LongMap<Entry> textureEntries = entries.get(texture);
+		if (textureEntries == null) {
+			if (unsupported.contains(texture) || !isSupported(texture)) {
+				unsupported.add(texture);
+				bypasses++;
+				return null;
+			}
+			textureEntries = new LongMap<Entry>();
+			entries.put(texture, textureEntries);
+		}
+
+		final long key = (long)x << 48 | (long)y << 32 | (long)width << 16 | height;
+		Entry entry = textureEntries.get(key);
+		if (entry != null) {
+			touch(entry);
+			hits++;
+			return entry;
+		}
+
+		int sizeClass = 0;
+		while (sizeClasses[sizeClass].cellSize < Math.max(width, height) + 2)
+			sizeClass++;
+		Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
+		entry = allocate(sizeClass);
+		if (entry == null) {
+			if (renderContext != null) renderContext.rebindTextureUnit(0);
+			bypasses++;
+			return null;
+		}
+
+		final SizeClass sc = sizeClasses[sizeClass];
+		final int cellX = (entry.cell % sc.cellsPerSide) * sc.cellSize, cellY = (entry.cell / sc.cellsPerSide) * sc.cellSize;
+		final int countX = segment(segmentsX, x, width, textureWidth, cellX);
+		final int countY = segment(segmentsY, y, height, textureHeight, cellY);
+		final boolean copied = copy(texture, entry.page, countX, countY);
+		if (renderContext != null) renderContext.rebindTextureUnit(0);
+		if (!copied) {
+			freeCell(entry.page, entry.cell);
+			unsupported.add(texture);
+			entries.remove(texture);
+			bypasses++;
+			return null;
+		}
+
+		entry.source = texture;
+		entry.key = key;
+		entry.scaleU = (float)textureWidth / pageSize;
+		entry.offsetU = (float)(cellX + 1 - x) / pageSize;
+		entry.scaleV = (float)textureHeight / pageSize;
+		entry.offsetV = (float)(cellY + 1 - y) / pageSize;
+		entry.page.cells[entry.cell] = entry;
+		textureEntries.put(key, entry);
+		link(sc, entry);
+		touch(entry);
+		misses++;
+		return entry;
+	}
+
+	private boolean isSupported (Texture texture) {
+		if (texture.getMinFilter() != filter || texture.getMagFilter() != filter) return false;
+		if (texture.getUWrap() != TextureWrap.ClampToEdge || texture.getVWrap() != TextureWrap.ClampToEdge) return false;
+		TextureData data = texture.getTextureData();
+		if (data == null || data.useMipMaps()) return false;
+		return data.getFormat() == Format.RGBA8888 || data.getFormat() == Format.RGBA4444;
+	}
+
+	/** @return An unlinked entry holding a free cell of the size class, or null if none can be freed. */
+	private Entry allocate (int sizeClass) {
+		final SizeClass sc = sizeClasses[sizeClass];
+		if (sc.freeCells.size == 0) {
+			if (pages.size < maxPages) {
+				Texture texture = new Texture(pageSize, pageSize, Format.RGBA8888);
+				texture.setFilter(filter, filter);
+				Page page = new Page(texture, pages.size);
+				pages.add(page);
+				assignPage(page, sizeClass);
+			} else if (sc.tail != null && sc.tail.usedFrame != frame) {
+				Entry evicted = sc.tail;
+				evict(evicted);
+				evictions++;
+				return evicted;
+			} else {
+				Page reclaimed = null;
+				for (int i = 0; i < pages.size; i++) {
+					Page page = pages.get(i);
+					if (page.sizeClass != sizeClass && page.usedFrame != frame
+						&& (reclaimed == null || page.usedFrame - reclaimed.usedFrame < 0)) reclaimed = page;
+				}
+				if (reclaimed == null) return null;
+				reclaimPage(reclaimed);
+				assignPage(reclaimed, sizeClass);
+			}
+		}
+		final int freeCell = sc.freeCells.pop();
+		Entry entry = new Entry();
+		entry.page = pages.get(freeCell >>> 16);
+		entry.cell = freeCell & 0xffff;
+		return entry;
+	}
+
+	private void assignPage (Page page, int sizeClass) {
+		final SizeClass sc = sizeClasses[sizeClass];
+		final int cellCount = sc.cellsPerSide * sc.cellsPerSide;
+		page.sizeClass = sizeClass;
+		page.cells = new Entry[cellCount];
+		for (int i = cellCount - 1; i >= 0; i--)
+			sc.freeCells.add(page.index << 16 | i);
+	}
+
+	/** Evicts all regions of a page and removes its free cells from its size class. */
+	private void reclaimPage (Page page) {
+		final Entry[] cells = page.cells;
+		for (int i = 0; i < cells.length; i++) {
+			if (cells[i] != null) {
+				evict(cells[i]);
+				evictions++;
+			}
+		}
+		final IntArray freeCells = sizeClasses[page.sizeClass].freeCells;
+		for (int i = freeCells.size - 1; i >= 0; i--) {
+			if (freeCells.get(i) >>> 16 == page.index) freeCells.removeIndex(i);
+		}
+	}
+
+	/** Removes an entry from the lookup map and its size class, leaving its cell unavailable. */
+	private void evict (Entry entry) {
+		LongMap<Entry> textureEntries = entries.get(entry.source);
+		if (textureEntries != null) textureEntries.remove(entry.key);
+		unlink(sizeClasses[entry.page.sizeClass], entry);
+		entry.page.cells[entry.cell] = null;
+		entry.source = null;
+	}
+
+	private void freeCell (Page page, int cell) {
+		page.cells[cell] = null;
+		sizeClasses[page.sizeClass].freeCells.add(page.index << 16 | cell);
+	}
+
+	private void touch (Entry entry) {
+		entry.usedFrame = frame;
+		entry.page.usedFrame = frame;
+		final SizeClass sc = sizeClasses[entry.page.sizeClass];
+		if (sc.head == entry) return;
+		unlink(sc, entry);
+		link(sc, entry);
+	}
+
+	/** Adds the entry at the head. */
+	private static void link (SizeClass sc, Entry entry) {
+		entry.previous = null;
+		entry.next = sc.head;
+		if (sc.head != null) sc.head.previous = entry;
+		sc.head = entry;
+		if (sc.tail == null) sc.tail = entry;
+	}
+
+	private static void unlink (SizeClass sc, Entry entry) {
+		if (entry.previous != null)
+			entry.previous.next = entry.next;
+		else if (sc.head == entry) sc.head = entry.next;
+		if (entry.next != null)
+			entry.next.previous = entry.previous;
+		else if (sc.tail == entry) sc.tail = entry.previous;
+		entry.previous = entry.next = null;
+	}
+
+	/** Divides one axis of a region and its one-texel border into runs of texels to copy. The border is copied along with the
+	 * region where the texture has texels beyond the region's edge, and otherwise the region's edge texel is repeated into it, so
+	 * linear filtering at the edge of the region matches ClampToEdge sampling of the source.
+	 * @param segments Receives triples of source start, destination start, and length.
+	 * @return The number of triples. */
+	private static int segment (int[] segments, int start, int length, int textureLength, int cellStart) {
+		int count = 0;
+		int srcStart = start, dstStart = cellStart + 1, runLength = length;
+		if (start > 0) {
+			srcStart--;
+			dstStart--;
+			runLength++;
+		} else {
+			count = addSegment(segments, count, start, cellStart, 1);
+		}
+		final boolean atEnd = start + length == textureLength;
+		if (!atEnd) runLength++;
+		count = addSegment(segments, count, srcStart, dstStart, runLength);
+		if (atEnd) count = addSegment(segments, count, start + length - 1, cellStart + length + 1, 1);
+		return count;
+	}
+
+	private static int addSegment (int[] segments, int count, int srcStart, int dstStart, int length) {
+		final int i = count * 3;
+		segments[i] = srcStart;
+		segments[i + 1] = dstStart;
+		segments[i + 2] = length;
+		return count + 1;
+	}
+
+	/** Copies texels from the source texture to a page by attaching the source to a framebuffer and reading from it, once for
+	 * each combination of the segments in {@link #segmentsX} and {@link #segmentsY}. The previous framebuffer binding is restored.
+	 * Leaves the page bound to the active texture unit.
+	 * @return Whether the source could be attached to the framebuffer. */
+	private boolean copy (Texture source, Page page, int countX, int countY) {
+		final GL20 gl = Gdx.gl;
+		intBuffer.clear();
+		gl.glGetIntegerv(GL20.GL_FRAMEBUFFER_BINDING, intBuffer);
+		final int previousFramebuffer = intBuffer.get(0);
+		if (framebufferHandle == 0) framebufferHandle = gl.glGenFramebuffer();
+		gl.glBindFramebuffer(GL20.GL_FRAMEBUFFER, framebufferHandle);
+		gl.glFramebufferTexture2D(GL20.GL_FRAMEBUFFER, GL20.GL_COLOR_ATTACHMENT0, GL20.GL_TEXTURE_2D,
+			source.getTextureObjectHandle(), 0);
+		final boolean complete = gl.glCheckFramebufferStatus(GL20.GL_FRAMEBUFFER) == GL20.GL_FRAMEBUFFER_COMPLETE;
+		if (complete) {
+			gl.glBindTexture(GL20.GL_TEXTURE_2D, page.texture.getTextureObjectHandle());
+			final int[] segmentsX = this.segmentsX, segmentsY = this.segmentsY;
+			for (int j = 0; j < countY * 3; j += 3) {
+				for (int i = 0; i < countX * 3; i += 3) {
+					gl.glCopyTexSubImage2D(GL20.GL_TEXTURE_2D, 0, segmentsX[i + 1], segmentsY[j + 1], segmentsX[i], segmentsY[j],
+						segmentsX[i + 2], segmentsY[j + 2]);
+				}
+			}
+		}
+		gl.glFramebufferTexture2D(GL20.GL_FRAMEBUFFER, GL20.GL_COLOR_ATTACHMENT0, GL20.GL_TEXTURE_2D, 0, 0);
+		gl.glBindFramebuffer(GL20.GL_FRAMEBUFFER, previousFramebuffer);
+		return complete;
+	}
+
+	/** Removes all regions of the texture from the atlas and drops the reference to it. Should be called before disposing a
+	 * texture that was drawn through the atlas. */
+	public void remove (Texture texture) {
+		unsupported.remove(texture);
+		LongMap<Entry> textureEntries = entries.remove(texture);
+		if (textureEntries == null) return;
+		for (Entry entry : textureEntries.values()) {
+			unlink(sizeClasses[entry.page.sizeClass], entry);
+			freeCell(entry.page, entry.cell);
+			entry.source = null;
+		}
+	}
+
+	/** Removes all regions and drops all texture references. The pages are kept for reuse. */
+	public void clear () {
+		entries.clear();
+		unsupported.clear();
+		lastSource = lastTexture = null;
+		for (SizeClass sc : sizeClasses) {
+			sc.freeCells.clear();
+			sc.head = sc.tail = null;
+		}
+		for (Page page : pages)
+			assignPage(page, page.sizeClass);
+	}
+
+	/** @return The fraction of lookups of supported regions that found the region already in the atlas. */
+	public float getHitRate () {
+		final int lookups = hits + misses;
+		return lookups == 0 ? 0 : (float)hits / lookups;
+	}
+
+	/** @return The number of pages created so far. */
+	public int getPageCount () {
+		return pages.size;
+	}
+
+	public void dispose () {
+		clear();
+		for (Page page : pages)
+			page.texture.dispose();
+		pages.clear();
+		if (framebufferHandle != 0) {
+			Gdx.gl.glDeleteFramebuffer(framebufferHandle);
+			framebufferHandle = 0;
+		}
+	}
+}
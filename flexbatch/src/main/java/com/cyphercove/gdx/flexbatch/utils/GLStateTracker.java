@@ -0,0 +1,64 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+
+/** Tracks the actual GL state on behalf of multiple {@link RenderContextAccumulator RenderContextAccumulators}, typically those
+ * of several FlexBatches drawn one after another. Sharing a tracker lets each batch pick up the GL state left by the previous
+ * one, so a batch's {@link RenderContextAccumulator#begin() begin()} and {@link RenderContextAccumulator#end() end()} do not
+ * reset states to their defaults, and only the state changes and texture bindings that actually differ are issued.
+ * <p>
+ * The tracker can only know about GL calls made through the accumulators that share it. {@link #restoreDefaults()} must be
+ * called before other rendering code that expects default states, such as a SpriteBatch or a Stage, and {@link #invalidate()}
+ * must be called after any other code changes GL state or binds textures, which includes creating or loading textures. Both are
+ * typically needed only once per frame, around the group of FlexBatches.
+ *
+ * @author cypherdare */
+public class GLStateTracker {
+
+	final RenderContextAccumulator.State current = new RenderContextAccumulator.State();
+	/** Whether {@link #current} reflects the actual GL state. */
+	boolean valid;
+
+	/** Number of GL state changes and texture bindings issued by the accumulators sharing this tracker. Will not be reset unless
+	 * set manually. **/
+	public int glCalls = 0;
+	/** Number of GL calls at the beginning and end of batches that were skipped because the state was already known. Will not be
+	 * reset unless set manually. **/
+	public int savedGlCalls = 0;
+
+	/** Forgets the tracked GL state and drops all texture references, so the next batch to begin resets the GL state. Must be
+	 * called after any code outside the sharing accumulators changes GL state or binds textures. Must not be called while a
+	 * sharing accumulator is between begin() and end(). */
+	public void invalidate () {
+		valid = false;
+		current.clearTextureUnits();
+	}
+
+	/** Returns the GL states changed by the sharing accumulators to their defaults, like {@link RenderContextAccumulator#end()}
+	 * does for an unshared accumulator, and then {@link #invalidate() invalidates} this tracker. Must not be called while a
+	 * sharing accumulator is between begin() and end(). */
+	public void restoreDefaults () {
+		if (!valid) return;
+		final RenderContextAccumulator.State current = this.current;
+		if (!current.depthMasking) {
+			Gdx.gl.glDepthMask(true);
+			glCalls++;
+		}
+		if (current.depthTesting) {
+			Gdx.gl.glDisable(GL20.GL_DEPTH_TEST);
+			glCalls++;
+		}
+		if (current.culling) {
+			Gdx.gl.glDisable(GL20.GL_CULL_FACE);
+			glCalls++;
+		}
+		if (current.blending) {
+			Gdx.gl.glDisable(GL20.GL_BLEND);
+			glCalls++;
+		}
+		Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
+		glCalls++;
+		invalidate();
+	}
+}
@@ -0,0 +1,203 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.graphics.glutils.VertexData;
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.LongArray;
+
+/** A {@link VertexData} whose buffer object keeps its contents between draws and is only partially updated. Each call to
+ * {@link #updateVertices(int, float[], int, int)} records the modified range. When the buffer is next bound, overlapping and
+ * adjacent ranges are merged and each merged range is uploaded with a single glBufferSubData call. On GL30, a vertex array object
+ * is used.
+ * <p>
+ * The amount of data uploaded on the most recent bind can be checked with {@link #getLastUploadBytes()} and
+ * {@link #getLastUploadCalls()}.
+ *
+ * @author cypherdare */
+public class IncrementalVertexBuffer implements VertexData {
+
+	private final VertexAttributes attributes;
+	private final FloatBuffer buffer;
+	private final ByteBuffer byteBuffer;
+	private final IntBuffer tmpHandle = BufferUtils.newIntBuffer(1);
+	private int bufferHandle;
+	private int vaoHandle = -1;
+	/** Modified ranges in floats, each packed with the start in the high bits and the end in the low bits. */
+	private final LongArray dirtyRanges = new LongArray();
+	private boolean fullUploadPending;
+	private int lastUploadBytes, lastUploadCalls;
+
+	public IncrementalVertexBuffer (int maxVertices, VertexAttributes attributes) {
+		this.attributes = attributes;
+		byteBuffer = BufferUtils.newUnsafeByteBuffer(attributes.vertexSize * maxVertices);
+		buffer = byteBuffer.asFloatBuffer();
+		createBufferObjects();
+	}
+
+	private void createBufferObjects () {
+		bufferHandle = Gdx.gl20.glGenBuffer();
+		if (Gdx.gl30 != null) {
+			tmpHandle.clear();
+			Gdx.gl30.glGenVertexArrays(1, tmpHandle);
+			vaoHandle = tmpHandle.get(0);
+		}
+		fullUploadPending = true;
+	}
+
+	/** @return The capacity in vertices. The entire buffer is always available for drawing. */
+	public int getNumVertices () {
+		return buffer.capacity() * 4 / attributes.vertexSize;
+	}
+
+	public int getNumMaxVertices () {
+		return byteBuffer.capacity() / attributes.vertexSize;
+	}
+
+	public VertexAttributes getAttributes () {
+		return attributes;
+	}
+
+	/** Replaces the vertices at the start of the buffer. Equivalent to {@code updateVertices(0, vertices, offset, count)}. */
+	public void setVertices (float[] vertices, int offset, int count) {
+		updateVertices(0, vertices, offset, count);
+	}
+
+	/** Copies vertex data into the buffer and records the range for upload on the next bind.
+	 * @param targetOffset The offset in the buffer, in floats.
+	 * @param vertices The source data.
+	 * @param sourceOffset The offset in the source data, in floats.
+	 * @param count The number of floats to copy. */
+	public void updateVertices (int targetOffset, float[] vertices, int sourceOffset, int count) {
+		if (count <= 0) return;
+		buffer.position(targetOffset);
+		buffer.put(vertices, sourceOffset, count);
+		buffer.position(0);
+		if (!fullUploadPending) dirtyRanges.add((long)targetOffset << 32 | (targetOffset + count));
+	}
+
+	/** Returns the buffer. It is assumed that it will be modified, so the entire buffer is uploaded on the next bind. Use
+	 * {@link #updateVertices(int, float[], int, int)} for partial updates. */
+	public FloatBuffer getBuffer () {
+		fullUploadPending = true;
+		dirtyRanges.clear();
+		return buffer;
+	}
+
+	/** @return The number of bytes uploaded on the most recent bind. */
+	public int getLastUploadBytes () {
+		return lastUploadBytes;
+	}
+
+	/** @return The number of upload calls made on the most recent bind. */
+	public int getLastUploadCalls () {
+		return lastUploadCalls;
+	}
+
+	public void bind (ShaderProgram shader) {
+		bind(shader, null);
+	}
+
+	public void bind (ShaderProgram shader, int[] locations) {
+		if (vaoHandle != -1) Gdx.gl30.glBindVertexArray(vaoHandle);
+		Gdx.gl20.glBindBuffer(GL20.GL_ARRAY_BUFFER, bufferHandle);
+		upload();
+
+		final VertexAttributes attributes = this.attributes;
+		final int numAttributes = attributes.size();
+		for (int i = 0; i < numAttributes; i++) {
+			final VertexAttribute attribute = attributes.get(i);
+			final int location = locations == null ? shader.getAttributeLocation(attribute.alias) : locations[i];
+			if (location < 0) continue;
+			shader.enableVertexAttribute(location);
+			shader.setVertexAttribute(location, attribute.numComponents, attribute.type, attribute.normalized,
+				attributes.vertexSize, attribute.offset);
+		}
+	}
+
+	private void upload () {
+		lastUploadBytes = lastUploadCalls = 0;
+		if (fullUploadPending) {
+			byteBuffer.position(0);
+			byteBuffer.limit(byteBuffer.capacity());
+			Gdx.gl20.glBufferData(GL20.GL_ARRAY_BUFFER, byteBuffer.capacity(), byteBuffer, GL20.GL_DYNAMIC_DRAW);
+			lastUploadBytes = byteBuffer.capacity();
+			lastUploadCalls = 1;
+			fullUploadPending = false;
+			dirtyRanges.clear();
+			return;
+		}
+		if (dirtyRanges.size == 0) return;
+
+		final LongArray dirtyRanges = this.dirtyRanges;
+		dirtyRanges.sort();
+		long[] ranges = dirtyRanges.items;
+		int start = (int)(ranges[0] >>> 32);
+		int end = (int)ranges[0];
+		for (int i = 1; i < dirtyRanges.size; i++) {
+			final int nextStart = (int)(ranges[i] >>> 32);
+			final int nextEnd = (int)ranges[i];
+			if (nextStart <= end) {
+				if (nextEnd > end) end = nextEnd;
+			} else {
+				uploadRange(start, end);
+				start = nextStart;
+				end = nextEnd;
+			}
+		}
+		uploadRange(start, end);
+		dirtyRanges.clear();
+		byteBuffer.limit(byteBuffer.capacity());
+		byteBuffer.position(0);
+	}
+
+	private void uploadRange (int start, int end) {
+		byteBuffer.limit(end * 4);
+		byteBuffer.position(start * 4);
+		Gdx.gl20.glBufferSubData(GL20.GL_ARRAY_BUFFER, start * 4, (end - start) * 4, byteBuffer);
+		lastUploadBytes += (end - start) * 4;
+		lastUploadCalls++;
+	}
+
+	public void unbind (ShaderProgram shader) {
+		unbind(shader, null);
+	}
+
+	public void unbind (ShaderProgram shader, int[] locations) {
+		final VertexAttributes attributes = this.attributes;
+		final int numAttributes = attributes.size();
+		for (int i = 0; i < numAttributes; i++) {
+			final int location = locations == null ? shader.getAttributeLocation(attributes.get(i).alias) : locations[i];
+			if (location >= 0) shader.disableVertexAttribute(location);
+		}
+		Gdx.gl20.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
+		if (vaoHandle != -1) Gdx.gl30.glBindVertexArray(0);
+	}
+
+	/** Recreates the buffer object after the GL context was lost. The entire buffer is uploaded on the next bind. */
+	public void invalidate () {
+		createBufferObjects();
+		dirtyRanges.clear();
+	}
+
+	public void dispose () {
+		Gdx.gl20.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
+		Gdx.gl20.glDeleteBuffer(bufferHandle);
+		bufferHandle = 0;
+		if (vaoHandle != -1) {
+			tmpHandle.clear();
+			tmpHandle.put(vaoHandle);
+			tmpHandle.flip();
+			Gdx.gl30.glDeleteVertexArrays(1, tmpHandle);
+			vaoHandle = -1;
+		}
+		BufferUtils.disposeUnsafeByteBuffer(byteBuffer);
+	}
+}
@@ -0,0 +1,122 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import java.nio.FloatBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.graphics.glutils.VertexData;
+import com.badlogic.gdx.utils.BufferUtils;
+
+/** A {@link VertexData} for drawing quads with instancing. It wraps a VertexData that holds one record per instance, and binds
+ * its attributes with a divisor of 1. A static unit quad is bound alongside it to the attribute {@value #CORNER_ATTRIBUTE}, with
+ * the corners in the order bottom left, top left, top right, bottom right, matching
+ * {@link BatchablePreparation#populateQuadrangleIndices(short[])}. The vertex shader expands each instance record into the four
+ * corners. Requires GL30.
+ * <p>
+ * The wrapped VertexData should use a vertex array object, since the divisors are set while it is bound.
+ *
+ * @author cypherdare */
+public class InstancedQuadVertexData implements VertexData {
+
+	/** The name of the vec2 attribute that holds the unit quad corner, from (0, 0) at the bottom left to (1, 1) at the top
+	 * right. */
+	public static final String CORNER_ATTRIBUTE = "a_corner";
+
+	private static final float[] CORNERS = {0, 0, 0, 1, 1, 1, 1, 0};
+
+	private final VertexData instances;
+	private final FloatBuffer cornerBuffer;
+	private int cornerBufferHandle;
+	private boolean cornerBufferDirty = true;
+
+	/** @param instances The VertexData that holds the per-instance records. It is owned by this object and disposed with it. */
+	public InstancedQuadVertexData (VertexData instances) {
+		this.instances = instances;
+		cornerBuffer = BufferUtils.newFloatBuffer(CORNERS.length);
+		cornerBuffer.put(CORNERS);
+		cornerBuffer.flip();
+		cornerBufferHandle = Gdx.gl20.glGenBuffer();
+	}
+
+	/** @return The number of instance records. */
+	public int getNumVertices () {
+		return instances.getNumVertices();
+	}
+
+	/** @return The maximum number of instance records. */
+	public int getNumMaxVertices () {
+		return instances.getNumMaxVertices();
+	}
+
+	/** @return The attributes of the instance records. */
+	public VertexAttributes getAttributes () {
+		return instances.getAttributes();
+	}
+
+	public void setVertices (float[] vertices, int offset, int count) {
+		instances.setVertices(vertices, offset, count);
+	}
+
+	public void updateVertices (int targetOffset, float[] vertices, int sourceOffset, int count) {
+		instances.updateVertices(targetOffset, vertices, sourceOffset, count);
+	}
+
+	public FloatBuffer getBuffer () {
+		return instances.getBuffer();
+	}
+
+	public void bind (ShaderProgram shader) {
+		bind(shader, null);
+	}
+
+	public void bind (ShaderProgram shader, int[] locations) {
+		instances.bind(shader, locations);
+		setDivisors(shader, locations, 1);
+
+		final int cornerLocation = shader.getAttributeLocation(CORNER_ATTRIBUTE);
+		if (cornerLocation >= 0) {
+			Gdx.gl20.glBindBuffer(GL20.GL_ARRAY_BUFFER, cornerBufferHandle);
+			if (cornerBufferDirty) {
+				Gdx.gl20.glBufferData(GL20.GL_ARRAY_BUFFER, CORNERS.length * 4, cornerBuffer, GL20.GL_STATIC_DRAW);
+				cornerBufferDirty = false;
+			}
+			shader.enableVertexAttribute(cornerLocation);
+			shader.setVertexAttribute(cornerLocation, 2, GL20.GL_FLOAT, false, 8, 0);
+		}
+	}
+
+	public void unbind (ShaderProgram shader) {
+		unbind(shader, null);
+	}
+
+	public void unbind (ShaderProgram shader, int[] locations) {
+		final int cornerLocation = shader.getAttributeLocation(CORNER_ATTRIBUTE);
+		if (cornerLocation >= 0) shader.disableVertexAttribute(cornerLocation);
+		setDivisors(shader, locations, 0);
+		instances.unbind(shader, locations);
+	}
+
+	private void setDivisors (ShaderProgram shader, int[] locations, int divisor) {
+		final VertexAttributes attributes = instances.getAttributes();
+		final int numAttributes = attributes.size();
+		for (int i = 0; i < numAttributes; i++) {
+			final int location = locations == null ? shader.getAttributeLocation(attributes.get(i).alias) : locations[i];
+			if (location >= 0) Gdx.gl30.glVertexAttribDivisor(location, divisor);
+		}
+	}
+
+	public void invalidate () {
+		instances.invalidate();
+		cornerBufferHandle = Gdx.gl20.glGenBuffer();
+		cornerBufferDirty = true;
+	}
+
+	public void dispose () {
+		instances.dispose();
+		Gdx.gl20.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
+		Gdx.gl20.glDeleteBuffer(cornerBufferHandle);
+		cornerBufferHandle = 0;
+	}
+}
@@ -0,0 +1,115 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import com.badlogic.gdx.Application.ApplicationType;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.glutils.IndexData;
+import com.badlogic.gdx.utils.BufferUtils;
+
+/** An {@link IndexData} that stores 32-bit indices in an element array buffer object, for meshes with more vertices than can be
+ * addressed with unsigned short indices. The indices must be drawn with {@link GL20#GL_UNSIGNED_INT}, which requires GL30 or the
+ * OES_element_index_uint extension--see {@link #isSupported()}.
+ * <p>
+ * Since Mesh only draws unsigned short indices, the short-based methods of IndexData are unsupported. It can still be given to a
+ * Mesh so it will be bound by {@link com.badlogic.gdx.graphics.Mesh#bind(com.badlogic.gdx.graphics.glutils.ShaderProgram)
+ * Mesh.bind()} and restored along with it after the GL context is lost.
+ *
+ * @author cypherdare */
+public class IntIndexBufferObject implements IndexData {
+
+	private final IntBuffer buffer;
+	private final ByteBuffer byteBuffer;
+	private int bufferHandle;
+	private final int usage;
+	private boolean isDirty = true;
+
+	/** @return Whether 32-bit indices can be drawn in the current GL context. */
+	public static boolean isSupported () {
+		return Gdx.gl30 != null || Gdx.app.getType() == ApplicationType.Desktop
+			|| Gdx.graphics.supportsExtension("GL_OES_element_index_uint")
+			|| Gdx.graphics.supportsExtension("OES_element_index_uint");
+	}
+
+	/** @param isStatic Whether the indices will be set once and not modified.
+	 * @param maxIndices The maximum number of indices this buffer can hold. */
+	public IntIndexBufferObject (boolean isStatic, int maxIndices) {
+		byteBuffer = BufferUtils.newUnsafeByteBuffer(maxIndices * 4);
+		buffer = byteBuffer.asIntBuffer();
+		buffer.flip();
+		byteBuffer.flip();
+		bufferHandle = Gdx.gl20.glGenBuffer();
+		usage = isStatic ? GL20.GL_STATIC_DRAW : GL20.GL_DYNAMIC_DRAW;
+	}
+
+	public int getNumIndices () {
+		return buffer.limit();
+	}
+
+	public int getNumMaxIndices () {
+		return buffer.capacity();
+	}
+
+	/** Sets the indices, replacing any previously set. They are uploaded the next time this is bound.
+	 * @param indices The source array.
+	 * @param offset The offset in the source array.
+	 * @param count The number of indices to copy. */
+	public void setIndices (int[] indices, int offset, int count) {
+		isDirty = true;
+		buffer.clear();
+		buffer.put(indices, offset, count);
+		buffer.flip();
+	}
+
+	/** Returns the backing buffer. It is assumed that it will be modified, so it is uploaded the next time this is bound. */
+	public IntBuffer getIntBuffer () {
+		isDirty = true;
+		return buffer;
+	}
+
+	public void setIndices (short[] indices, int offset, int count) {
+		throw new UnsupportedOperationException("IntIndexBufferObject does not accept short indices.");
+	}
+
+	public void setIndices (ShortBuffer indices) {
+		throw new UnsupportedOperationException("IntIndexBufferObject does not accept short indices.");
+	}
+
+	public void updateIndices (int targetOffset, short[] indices, int offset, int count) {
+		throw new UnsupportedOperationException("IntIndexBufferObject does not accept short indices.");
+	}
+
+	/** Unsupported. Use {@link #getIntBuffer()}. */
+	public ShortBuffer getBuffer () {
+		throw new UnsupportedOperationException("IntIndexBufferObject does not have a ShortBuffer. Use getIntBuffer().");
+	}
+
+	public void bind () {
+		Gdx.gl20.glBindBuffer(GL20.GL_ELEMENT_ARRAY_BUFFER, bufferHandle);
+		if (isDirty) {
+			byteBuffer.position(0);
+			byteBuffer.limit(buffer.limit() * 4);
+			Gdx.gl20.glBufferData(GL20.GL_ELEMENT_ARRAY_BUFFER, byteBuffer.limit(), byteBuffer, usage);
+			isDirty = false;
+		}
+	}
+
+	public void unbind () {
+		Gdx.gl20.glBindBuffer(GL20.GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+
+	public void invalidate () {
+		bufferHandle = Gdx.gl20.glGenBuffer();
+		isDirty = true;
+	}
+
+	public void dispose () {
+		Gdx.gl20.glBindBuffer(GL20.GL_ELEMENT_ARRAY_BUFFER, 0);
+		Gdx.gl20.glDeleteBuffer(bufferHandle);
+		bufferHandle = 0;
+		BufferUtils.disposeUnsafeByteBuffer(byteBuffer);
+	}
+}
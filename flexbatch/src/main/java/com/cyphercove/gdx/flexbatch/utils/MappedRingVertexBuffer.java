@@ -0,0 +1,107 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import java.nio.ByteBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.GL30;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.reflect.ClassReflection;
+import com.badlogic.gdx.utils.reflect.Method;
+import com.badlogic.gdx.utils.reflect.ReflectionException;
+
+/** A {@link StreamingVertexBuffer} that writes each draw call's vertex data into the next segment of a large ring buffer, using
+ * {@code glMapBufferRange} with {@link GL30#GL_MAP_UNSYNCHRONIZED_BIT} so the upload never waits on the GPU. When the ring wraps
+ * around, the whole data store is orphaned with {@link GL30#GL_MAP_INVALIDATE_BUFFER_BIT}, so a segment that may still be in use
+ * is never overwritten. Requires GL30.
+ * <p>
+ * The GL30 interface of the libGDX versions this library supports does not declare glMapBufferRange, so it is looked up on the
+ * GL30 implementation of the backend. Use {@link #isSupported()} to check whether it is available.
+ * 
+ * @author cypherdare */
+public class MappedRingVertexBuffer extends StreamingVertexBuffer {
+
+	private final int ringSizeBytes;
+	private int bufferHandle;
+	private int writeOffset;
+	private final Method mapBufferRange;
+
+	private static Class<?> checkedGLClass;
+	private static Method checkedMapBufferRange;
+
+	/** @return Whether GL30 is available and its backend implementation provides glMapBufferRange. */
+	public static boolean isSupported () {
+		return findMapBufferRange() != null;
+	}
+
+	private static Method findMapBufferRange () {
+		final GL30 gl = Gdx.gl30;
+		if (gl == null) return null;
+		if (gl.getClass() != checkedGLClass) {
+			checkedGLClass = gl.getClass();
+			try {
+				checkedMapBufferRange = ClassReflection.getMethod(checkedGLClass, "glMapBufferRange", int.class, int.class,
+					int.class, int.class);
+			} catch (ReflectionException e) {
+				checkedMapBufferRange = null;
+			}
+		}
+		return checkedMapBufferRange;
+	}
+
+	/** @param segmentCount The number of full batches the ring buffer can hold before it wraps around. */
+	public MappedRingVertexBuffer (int maxVertices, VertexAttributes attributes, int segmentCount) {
+		super(maxVertices, attributes);
+		mapBufferRange = findMapBufferRange();
+		if (mapBufferRange == null)
+			throw new IllegalStateException("MappedRingVertexBuffer requires GL30 with glMapBufferRange.");
+		if (segmentCount < 1) throw new IllegalArgumentException("segmentCount must be at least 1.");
+		ringSizeBytes = batchSizeBytes * segmentCount;
+		createBufferObjects();
+	}
+
+	protected void createBufferObjects () {
+		super.createBufferObjects();
+		GL20 gl = Gdx.gl20;
+		bufferHandle = gl.glGenBuffer();
+		gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, bufferHandle);
+		gl.glBufferData(GL20.GL_ARRAY_BUFFER, ringSizeBytes, null, GL20.GL_STREAM_DRAW);
+		gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
+		writeOffset = 0;
+	}
+
+	protected void deleteBufferObjects () {
+		super.deleteBufferObjects();
+		Gdx.gl20.glDeleteBuffer(bufferHandle);
+		bufferHandle = 0;
+	}
+
+	protected int upload (int bytes) {
+		GL30 gl = Gdx.gl30;
+		gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, bufferHandle);
+		int access = GL30.GL_MAP_WRITE_BIT;
+		if (writeOffset + bytes > ringSizeBytes) {
+			writeOffset = 0;
+			access |= GL30.GL_MAP_INVALIDATE_BUFFER_BIT;
+		} else {
+			access |= GL30.GL_MAP_INVALIDATE_RANGE_BIT | GL30.GL_MAP_UNSYNCHRONIZED_BIT;
+		}
+		ByteBuffer mapped;
+		try {
+			mapped = (ByteBuffer)mapBufferRange.invoke(gl, GL20.GL_ARRAY_BUFFER, writeOffset, bytes, access);
+		} catch (ReflectionException e) {
+			throw new GdxRuntimeException("Failed to map the vertex buffer.", e);
+		}
+		mapped.put(byteBuffer);
+		gl.glUnmapBuffer(GL20.GL_ARRAY_BUFFER);
+
+		int offset = writeOffset;
+		writeOffset += bytes;
+		return offset;
+	}
+
+	protected void bindCurrentBufferObject () {
+		Gdx.gl20.glBindBuffer(GL20.GL_ARRAY_BUFFER, bufferHandle);
+	}
+}
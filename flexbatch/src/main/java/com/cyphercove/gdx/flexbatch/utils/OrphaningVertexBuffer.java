@@ -0,0 +1,47 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.VertexAttributes;
+
+/** A {@link StreamingVertexBuffer} that orphans its data store before each upload by reallocating it with
+ * {@code glBufferData}. The driver can then supply fresh memory instead of waiting for pending draw calls that read from the old
+ * data store.
+ * 
+ * @author cypherdare */
+public class OrphaningVertexBuffer extends StreamingVertexBuffer {
+
+	private int bufferHandle;
+
+	public OrphaningVertexBuffer (int maxVertices, VertexAttributes attributes) {
+		super(maxVertices, attributes);
+		createBufferObjects();
+	}
+
+	protected void createBufferObjects () {
+		super.createBufferObjects();
+		GL20 gl = Gdx.gl20;
+		bufferHandle = gl.glGenBuffer();
+		gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, bufferHandle);
+		gl.glBufferData(GL20.GL_ARRAY_BUFFER, batchSizeBytes, null, GL20.GL_STREAM_DRAW);
+		gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
+	}
+
+	protected void deleteBufferObjects () {
+		super.deleteBufferObjects();
+		Gdx.gl20.glDeleteBuffer(bufferHandle);
+		bufferHandle = 0;
+	}
+
+	protected int upload (int bytes) {
+		GL20 gl = Gdx.gl20;
+		gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, bufferHandle);
+		gl.glBufferData(GL20.GL_ARRAY_BUFFER, batchSizeBytes, null, GL20.GL_STREAM_DRAW);
+		gl.glBufferSubData(GL20.GL_ARRAY_BUFFER, 0, bytes, byteBuffer);
+		return 0;
+	}
+
+	protected void bindCurrentBufferObject () {
+		Gdx.gl20.glBindBuffer(GL20.GL_ARRAY_BUFFER, bufferHandle);
+	}
+}
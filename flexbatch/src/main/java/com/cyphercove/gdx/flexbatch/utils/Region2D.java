@@ -19,6 +19,7 @@ public class Region2D {
 		u2 = region.getU2();
 		v = region.getV();
 		v2 = region.getV2();
+		layer = 0;
 	}
 
 	public void flip (boolean x, boolean y) {
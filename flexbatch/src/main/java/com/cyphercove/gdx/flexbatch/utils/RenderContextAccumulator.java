@@ -4,17 +4,36 @@ package com.cyphercove.gdx.flexbatch.utils;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.GLTexture;
-import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.NumberUtils;
+import com.badlogic.gdx.utils.ObjectMap;
 
 /** Stores up pending GL state changes and textures to bind, and executes them on demand. Minimizes actual state changes.
  * Remembers and can restore state between uses.
  * <p>
  * Pending state changes can be made at any time, but can only be applied by calling {@link #executeChanges()} between calls to
  * {@link #begin()} and {@link #end()}.
+ * <p>
+ * Texture units 0 through {@value #MAX_TEXTURE_UNITS} - 1 can be tracked.
+ * <p>
+ * Multiple accumulators that are used one after another can share a {@link GLStateTracker}, so they skip resetting GL state
+ * between uses.
+ * <p>
+ * Shader uniform values can also be accumulated, for the shader set with {@link #setShader(ShaderProgram)}. A uniform is only
+ * uploaded when its value differs from the one last uploaded, and its location is looked up once per shader.
+ * <p>
+ * Textures can also be {@link #assignTextureSlot(GLTexture, int) assigned} to any of several texture units, or slots, for
+ * Batchables that select their texture per vertex. A flush is then only needed when every slot is used by queued vertices.
  * 
  * @author cypherdare */
 public class RenderContextAccumulator {
 
+	/** The number of texture units that can be tracked. This covers the GL_MAX_TEXTURE_IMAGE_UNITS of common hardware, and is the
+	 * number of bits in the mask of units that hold a texture. */
+	public static final int MAX_TEXTURE_UNITS = 32;
+
 	static final class State {
 		boolean depthMasking, depthTesting, blending, culling;
 		int blendSrcFuncColor, blendDstFuncColor, blendEquationColor;
@@ -22,7 +41,33 @@ public class RenderContextAccumulator {
 		int depthFunc;
 		float depthRangeNear, depthRangeFar;
 		int cullFace;
-		final IntMap<GLTexture> textureUnits = new IntMap<GLTexture>(32);
+		final GLTexture[] textureUnits = new GLTexture[MAX_TEXTURE_UNITS];
+		/** Has a bit set for each texture unit that holds a texture, so only those units need to be visited. */
+		int textureUnitMask;
+		/** Uniform values, laid out by the owning accumulator's uniform slots. Values of unset uniforms are NaN. */
+		float[] uniformValues = new float[0];
+		int uniformValueCount;
+		/** Whether the depth, face culling and blend equation states were last set by a RenderState. This is not a GL state, so it
+		 * is not compared by {@link #matches(State)}. */
+		boolean renderStateApplied;
+
+		void ensureUniformValues (int count) {
+			if (count <= uniformValueCount) return;
+			if (uniformValues.length < count) {
+				float[] newValues = new float[Math.max(count, uniformValues.length * 2)];
+				System.arraycopy(uniformValues, 0, newValues, 0, uniformValueCount);
+				uniformValues = newValues;
+			}
+			for (int i = uniformValueCount; i < count; i++)
+				uniformValues[i] = Float.NaN;
+			uniformValueCount = count;
+		}
+
+		void clearTextureUnits () {
+			for (int mask = textureUnitMask; mask != 0; mask &= mask - 1)
+				textureUnits[Integer.numberOfTrailingZeros(mask)] = null;
+			textureUnitMask = 0;
+		}
 
 		public void applyDefaults () {
 			blending = depthTesting = culling = false;
@@ -34,7 +79,8 @@ public class RenderContextAccumulator {
 			blendDstFuncColor = blendDstFuncAlpha = GL20.GL_ZERO;
 			blendEquationColor = blendEquationAlpha = GL20.GL_FUNC_ADD;
 			depthFunc = GL20.GL_LESS;
-			textureUnits.clear();
+			renderStateApplied = false;
+			clearTextureUnits();
 		}
 
 		/** Set invalid values on parameters to force them to be applied on the first call to
@@ -44,26 +90,157 @@ public class RenderContextAccumulator {
 			cullFace = blendSrcFuncColor = blendSrcFuncAlpha = blendDstFuncColor = blendDstFuncAlpha = depthFunc = -1;
 			depthRangeNear = depthRangeFar = -2f;
 		}
+
+		void set (State other) {
+			depthMasking = other.depthMasking;
+			depthTesting = other.depthTesting;
+			blending = other.blending;
+			culling = other.culling;
+			blendSrcFuncColor = other.blendSrcFuncColor;
+			blendDstFuncColor = other.blendDstFuncColor;
+			blendEquationColor = other.blendEquationColor;
+			blendSrcFuncAlpha = other.blendSrcFuncAlpha;
+			blendDstFuncAlpha = other.blendDstFuncAlpha;
+			blendEquationAlpha = other.blendEquationAlpha;
+			depthFunc = other.depthFunc;
+			depthRangeNear = other.depthRangeNear;
+			depthRangeFar = other.depthRangeFar;
+			cullFace = other.cullFace;
+			renderStateApplied = other.renderStateApplied;
+			clearTextureUnits();
+			for (int mask = other.textureUnitMask; mask != 0; mask &= mask - 1) {
+				final int unit = Integer.numberOfTrailingZeros(mask);
+				textureUnits[unit] = other.textureUnits[unit];
+			}
+			textureUnitMask = other.textureUnitMask;
+			if (uniformValues.length < other.uniformValueCount) uniformValues = new float[other.uniformValueCount];
+			System.arraycopy(other.uniformValues, 0, uniformValues, 0, other.uniformValueCount);
+			uniformValueCount = other.uniformValueCount;
+		}
+
+		boolean matches (State other) {
+			if (depthMasking != other.depthMasking || depthTesting != other.depthTesting || blending != other.blending
+				|| culling != other.culling) return false;
+			if (blendSrcFuncColor != other.blendSrcFuncColor || blendDstFuncColor != other.blendDstFuncColor
+				|| blendEquationColor != other.blendEquationColor || blendSrcFuncAlpha != other.blendSrcFuncAlpha
+				|| blendDstFuncAlpha != other.blendDstFuncAlpha || blendEquationAlpha != other.blendEquationAlpha) return false;
+			if (depthFunc != other.depthFunc || depthRangeNear != other.depthRangeNear || depthRangeFar != other.depthRangeFar
+				|| cullFace != other.cullFace) return false;
+			if (textureUnitMask != other.textureUnitMask) return false;
+			for (int mask = textureUnitMask; mask != 0; mask &= mask - 1) {
+				final int unit = Integer.numberOfTrailingZeros(mask);
+				if (textureUnits[unit] != other.textureUnits[unit]) return false;
+			}
+			if (uniformValueCount != other.uniformValueCount) return false;
+			for (int i = 0; i < uniformValueCount; i++) {
+				if (NumberUtils.floatToRawIntBits(uniformValues[i]) != NumberUtils.floatToRawIntBits(other.uniformValues[i]))
+					return false;
+			}
+			return true;
+		}
+	}
+
+	/** A stored copy of a set of pending state changes and texture bindings, which can be used to return a
+	 * RenderContextAccumulator to that state later. See {@link RenderContextAccumulator#saveState(Snapshot)}. */
+	public static final class Snapshot {
+		final State state = new State();
+
+		/** Drops the Texture references held by this Snapshot. */
+		public void clearTextureUnits () {
+			state.clearTextureUnits();
+		}
 	}
 
-	private final State current = new State();
+	private State current;
+	private GLStateTracker tracker;
 	private State pending = new State();
 	private static final State DEF = new State();
+	/** The RenderState most recently applied to the pending state, or null if the pending state has been changed since. */
+	private RenderState pendingRenderState;
+
+	/** Has a bit set for each texture slot that vertices queued since changes were last executed may refer to. */
+	private int textureSlotsInUse;
+	private int assignedTextureSlot = -1;
+	private int nextReplacedTextureSlot;
+	private int textureSlotChangeCount;
+
+	private static final int UNIFORM_FLOAT = 0, UNIFORM_INT = 1, UNIFORM_MATRIX4 = 2;
+
+	/** A named uniform and where its values are stored in a State's uniform values. */
+	private static final class UniformSlot {
+		final String name;
+		final int type, offset, size;
+		/** The shader {@link #location} was fetched from. */
+		ShaderProgram shader;
+		int location;
+
+		UniformSlot (String name, int type, int offset, int size) {
+			this.name = name;
+			this.type = type;
+			this.offset = offset;
+			this.size = size;
+		}
+	}
+
+	private final Array<UniformSlot> uniformSlots = new Array<UniformSlot>();
+	private final ObjectMap<String, UniformSlot> uniformSlotsByName = new ObjectMap<String, UniformSlot>();
+	private int uniformValueCount;
+	private ShaderProgram shader;
+	/** The uniform values last uploaded to the shader, laid out like {@link State#uniformValues}. NaN where unknown. */
+	private float[] uploadedUniformValues = new float[0];
 
 	static {
 		DEF.applyDefaults();
 	}
 
 	public RenderContextAccumulator () {
+		this(null);
+	}
+
+	/** @param tracker A tracker of the actual GL state, shared with other accumulators, or null to track GL state only between
+	 *           this accumulator's {@link #begin()} and {@link #end()}. */
+	public RenderContextAccumulator (GLStateTracker tracker) {
+		this.tracker = tracker;
+		current = tracker == null ? new State() : tracker.current;
 		pending.applyDefaults();
 	}
 
+	/** Sets the tracker of the actual GL state to share with other accumulators. Pending changes are kept. Must not be called
+	 * between {@link #begin()} and {@link #end()}.
+	 * @param tracker The shared tracker, or null to track GL state only between this accumulator's {@link #begin()} and
+	 *           {@link #end()}. */
+	public void setTracker (GLStateTracker tracker) {
+		if (tracker == this.tracker) return;
+		if (this.tracker == null) current.clearTextureUnits();
+		this.tracker = tracker;
+		current = tracker == null ? new State() : tracker.current;
+	}
+
+	/** @return The shared GL state tracker, or null if there is none. */
+	public GLStateTracker getTracker () {
+		return tracker;
+	}
+
 	/** Begin tracking GL state. If any pending changes to state have been made, they will be applied on the first call to
 	 * {@link #executeChanges()}.
 	 * <p>
 	 * This call must be matched with a call to {@link #end()}, which returns OpenGL states to their defaults. The
-	 * {@link #executeChanges()} method may only be called in between {@link #begin()} and {@link #end()}. */
+	 * {@link #executeChanges()} method may only be called in between {@link #begin()} and {@link #end()}.
+	 * <p>
+	 * If this accumulator has a {@link GLStateTracker} that already knows the GL state, nothing is reset. */
 	public void begin () {
+		invalidateUniforms();
+		textureSlotsInUse = 0;
+		assignedTextureSlot = -1;
+		final GLStateTracker tracker = this.tracker;
+		if (tracker != null) {
+			if (tracker.valid) {
+				tracker.savedGlCalls += 4;
+				return;
+			}
+			tracker.valid = true;
+			tracker.glCalls += 4;
+		}
 		current.applyDefaults();
 		current.invalidateParameters(); // Avoids having to forcibly set defaults here for parameters that can hold an invalid state
 		Gdx.gl.glDepthMask(true);
@@ -82,6 +259,10 @@ public class RenderContextAccumulator {
 
 		if (pending.depthTesting && pending.depthFunc != current.depthFunc) return true;
 
+		if (pending.culling != current.culling) return true;
+
+		if (pending.culling && pending.cullFace != current.cullFace) return true;
+
 		if (pending.blending != current.blending) return true;
 
 		if (pending.blending) {
@@ -92,9 +273,21 @@ public class RenderContextAccumulator {
 				return true;
 		}
 
-		IntMap<GLTexture> actualTextureUnits = current.textureUnits;
-		for (IntMap.Entry<GLTexture> entry : pending.textureUnits) {
-			if (actualTextureUnits.get(entry.key) != entry.value) return true;
+		final GLTexture[] pendingTextureUnits = pending.textureUnits;
+		final GLTexture[] currentTextureUnits = current.textureUnits;
+		for (int mask = pending.textureUnitMask; mask != 0; mask &= mask - 1) {
+			final int unit = Integer.numberOfTrailingZeros(mask);
+			if (currentTextureUnits[unit] != pendingTextureUnits[unit]) return true;
+		}
+
+		if (shader != null) {
+			final float[] values = pending.uniformValues;
+			for (int s = 0, n = uniformSlots.size; s < n; s++) {
+				final UniformSlot slot = uniformSlots.get(s);
+				final int offset = slot.offset, end = offset + slot.size;
+				if (end > pending.uniformValueCount) break;
+				if (!Float.isNaN(values[offset]) && uniformChanged(values, uploadedUniformValues, offset, end)) return true;
+			}
 		}
 
 		return false;
@@ -105,9 +298,11 @@ public class RenderContextAccumulator {
 	public void executeChanges () {
 		State pending = this.pending;
 		State current = this.current;
+		int calls = 0;
 
 		if (pending.depthMasking != current.depthMasking) {
 			Gdx.gl.glDepthMask(pending.depthMasking);
+			calls++;
 			current.depthMasking = pending.depthMasking;
 		}
 
@@ -116,27 +311,46 @@ public class RenderContextAccumulator {
 				Gdx.gl.glEnable(GL20.GL_DEPTH_TEST);
 			else
 				Gdx.gl.glDisable(GL20.GL_DEPTH_TEST);
+			calls++;
 			current.depthTesting = pending.depthTesting;
 		}
 
 		if (pending.depthTesting) {
 			if (pending.depthFunc != current.depthFunc) {
 				Gdx.gl.glDepthFunc(pending.depthFunc);
+				calls++;
 				current.depthFunc = pending.depthFunc;
 			}
 
 			if (pending.depthRangeNear != current.depthRangeNear || pending.depthRangeFar != current.depthRangeFar) {
 				Gdx.gl.glDepthRangef(pending.depthRangeNear, pending.depthRangeFar);
+				calls++;
 				current.depthRangeNear = pending.depthRangeNear;
 				current.depthRangeFar = pending.depthRangeFar;
 			}
 		}
 
+		if (pending.culling != current.culling) {
+			if (pending.culling)
+				Gdx.gl.glEnable(GL20.GL_CULL_FACE);
+			else
+				Gdx.gl.glDisable(GL20.GL_CULL_FACE);
+			calls++;
+			current.culling = pending.culling;
+		}
+
+		if (pending.culling && pending.cullFace != current.cullFace) {
+			Gdx.gl.glCullFace(pending.cullFace);
+			calls++;
+			current.cullFace = pending.cullFace;
+		}
+
 		if (pending.blending != current.blending) {
 			if (pending.blending)
 				Gdx.gl.glEnable(GL20.GL_BLEND);
 			else
 				Gdx.gl.glDisable(GL20.GL_BLEND);
+			calls++;
 			current.blending = pending.blending;
 		}
 
@@ -150,6 +364,7 @@ public class RenderContextAccumulator {
 					Gdx.gl.glBlendFuncSeparate(pending.blendSrcFuncColor, pending.blendDstFuncColor, pending.blendSrcFuncAlpha,
 						pending.blendDstFuncAlpha);
 				}
+				calls++;
 				current.blendSrcFuncColor = pending.blendSrcFuncColor;
 				current.blendDstFuncColor = pending.blendDstFuncColor;
 				current.blendSrcFuncAlpha = pending.blendSrcFuncAlpha;
@@ -162,22 +377,100 @@ public class RenderContextAccumulator {
 					Gdx.gl.glBlendEquation(pending.blendEquationColor);
 				else
 					Gdx.gl.glBlendEquationSeparate(pending.blendEquationColor, pending.blendEquationAlpha);
+				calls++;
+				current.blendEquationColor = pending.blendEquationColor;
+				current.blendEquationAlpha = pending.blendEquationAlpha;
 			}
 		}
 
-		IntMap<GLTexture> currentTextureUnits = current.textureUnits;
-		for (IntMap.Entry<GLTexture> entry : pending.textureUnits) {
-			if (currentTextureUnits.get(entry.key) != entry.value) {
-				entry.value.bind(entry.key);
-				currentTextureUnits.put(entry.key, entry.value);
+		final GLTexture[] pendingTextureUnits = pending.textureUnits;
+		final GLTexture[] currentTextureUnits = current.textureUnits;
+		for (int mask = pending.textureUnitMask; mask != 0; mask &= mask - 1) {
+			final int unit = Integer.numberOfTrailingZeros(mask);
+			final GLTexture texture = pendingTextureUnits[unit];
+			if (currentTextureUnits[unit] != texture) {
+				texture.bind(unit);
+				calls++;
+				currentTextureUnits[unit] = texture;
+				current.textureUnitMask |= 1 << unit;
 			}
 		}
 
+		if (shader != null) calls += executeUniformChanges();
+
+		if (tracker != null) tracker.glCalls += calls;
+
+		// Only vertices of the most recently assigned slot can still be queued, if its Batchable triggered this flush.
+		textureSlotsInUse = assignedTextureSlot == -1 ? 0 : 1 << assignedTextureSlot;
+	}
+
+	private int executeUniformChanges () {
+		final State pending = this.pending;
+		final ShaderProgram shader = this.shader;
+		final float[] values = pending.uniformValues;
+		final float[] uploaded = uploadedUniformValues;
+		int calls = 0;
+		for (int s = 0, n = uniformSlots.size; s < n; s++) {
+			final UniformSlot slot = uniformSlots.get(s);
+			final int offset = slot.offset, end = offset + slot.size;
+			if (end > pending.uniformValueCount) break;
+			if (Float.isNaN(values[offset]) || !uniformChanged(values, uploaded, offset, end)) continue;
+			if (slot.shader != shader) {
+				slot.location = shader.fetchUniformLocation(slot.name, false);
+				slot.shader = shader;
+			}
+			final int location = slot.location;
+			if (location >= 0) {
+				switch (slot.type) {
+				case UNIFORM_INT:
+					shader.setUniformi(location, (int)values[offset]);
+					break;
+				case UNIFORM_MATRIX4:
+					shader.setUniformMatrix4fv(location, values, offset, 16);
+					break;
+				default:
+					switch (slot.size) {
+					case 1:
+						shader.setUniformf(location, values[offset]);
+						break;
+					case 2:
+						shader.setUniformf(location, values[offset], values[offset + 1]);
+						break;
+					case 3:
+						shader.setUniformf(location, values[offset], values[offset + 1], values[offset + 2]);
+						break;
+					default:
+						shader.setUniformf(location, values[offset], values[offset + 1], values[offset + 2], values[offset + 3]);
+						break;
+					}
+				}
+				calls++;
+			}
+			System.arraycopy(values, offset, uploaded, offset, slot.size);
+		}
+		return calls;
+	}
+
+	private static boolean uniformChanged (float[] values, float[] uploaded, int offset, int end) {
+		for (int i = offset; i < end; i++) {
+			if (NumberUtils.floatToRawIntBits(values[i]) != NumberUtils.floatToRawIntBits(uploaded[i])) return true;
+		}
+		return false;
 	}
 
 	/** Returns actual OpenGL states to defaults. The blend function parameters, depth test function parameters, and culled face
-	 * parameter are left unchanged. */
+	 * parameter are left unchanged.
+	 * <p>
+	 * If this accumulator has a {@link GLStateTracker}, the states are left as they are for the next accumulator to use, and must
+	 * eventually be returned to defaults with {@link GLStateTracker#restoreDefaults()}. */
 	public void end () {
+		final GLStateTracker tracker = this.tracker;
+		if (tracker != null) {
+			final State current = this.current;
+			tracker.savedGlCalls += 1 + (current.depthMasking ? 0 : 1) + (current.depthTesting ? 1 : 0) + (current.culling ? 1 : 0)
+				+ (current.blending ? 1 : 0);
+			return;
+		}
 		State temp = pending;
 		pending = DEF;
 		executeChanges();
@@ -185,9 +478,27 @@ public class RenderContextAccumulator {
 		Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
 	}
 
+	/** Copies the pending state changes and texture bindings into the given Snapshot. */
+	public void saveState (Snapshot snapshot) {
+		snapshot.state.set(pending);
+	}
+
+	/** Replaces the pending state changes and texture bindings with those stored in the given Snapshot. They are applied on the
+	 * next call to {@link #executeChanges()}. */
+	public void restoreState (Snapshot snapshot) {
+		pendingRenderState = null;
+		pending.set(snapshot.state);
+	}
+
+	/** @return Whether the pending state changes and texture bindings are the same as those stored in the given Snapshot. */
+	public boolean matchesState (Snapshot snapshot) {
+		return pending.matches(snapshot.state);
+	}
+
 	/** Enables or disables depth buffer writing.
 	 * @return Whether the pending depth masking state was changed. */
 	public boolean setDepthMasking (boolean enabled) {
+		pendingRenderState = null;
 		if (pending.depthMasking != enabled) {
 			pending.depthMasking = enabled;
 			return true;
@@ -198,6 +509,7 @@ public class RenderContextAccumulator {
 	/** Enables or disables depth testing.
 	 * @return Whether the pending depth testing state was changed. */
 	public boolean setDepthTesting (boolean enabled) {
+		pendingRenderState = null;
 		if (pending.depthTesting != enabled) {
 			pending.depthTesting = enabled;
 			return true;
@@ -215,6 +527,7 @@ public class RenderContextAccumulator {
 	/** Sets the depth test function and range. These parameters will only be applied if depth testing is enabled.
 	 * @return Whether the pending depth function state or parameters were changed. */
 	public boolean setDepthFunction (int depthFunc, float depthRangeNear, float depthRangeFar) {
+		pendingRenderState = null;
 		if (pending.depthFunc != depthFunc || pending.depthRangeNear != depthRangeNear || pending.depthRangeFar != depthRangeFar) {
 			pending.depthFunc = depthFunc;
 			pending.depthRangeNear = depthRangeNear;
@@ -227,6 +540,7 @@ public class RenderContextAccumulator {
 	/** Enables or disables blending.
 	 * @return Whether the pending blending state was changed. */
 	public boolean setBlending (boolean enabled) {
+		pendingRenderState = null;
 		if (pending.blending != enabled) {
 			pending.blending = enabled;
 			return true;
@@ -244,6 +558,7 @@ public class RenderContextAccumulator {
 	 * is enabled.
 	 * @return Whether the pending blend parameters were changed while the pending blending state is true. */
 	public boolean setBlendFunction (int sColorFactor, int dColorFactor, int sAlphaFactor, int dAlphaFactor) {
+		pendingRenderState = null;
 		if (pending.blendSrcFuncColor != sColorFactor || pending.blendDstFuncColor != dColorFactor
 			|| pending.blendSrcFuncAlpha != sAlphaFactor || pending.blendDstFuncAlpha != dAlphaFactor) {
 			pending.blendSrcFuncColor = sColorFactor;
@@ -265,7 +580,8 @@ public class RenderContextAccumulator {
 	 * blending is enabled.
 	 * @return Whether the pending blend equations were changed while the pending blending state is true. */
 	public boolean setBlendEquation (int blendEquationColor, int blendEquationAlpha) {
-		if (pending.blendEquationColor != blendEquationColor || pending.blendEquationAlpha != blendEquationColor) {
+		pendingRenderState = null;
+		if (pending.blendEquationColor != blendEquationColor || pending.blendEquationAlpha != blendEquationAlpha) {
 			pending.blendEquationColor = blendEquationColor;
 			pending.blendEquationAlpha = blendEquationAlpha;
 			return pending.blending;
@@ -276,6 +592,7 @@ public class RenderContextAccumulator {
 	/** Enables or disables face culling.
 	 * @return Whether the pending face culling state was changed. */
 	public boolean setFaceCulling (boolean enabled) {
+		pendingRenderState = null;
 		if (pending.culling != enabled) {
 			pending.culling = enabled;
 			return true;
@@ -286,36 +603,263 @@ public class RenderContextAccumulator {
 	/** Sets which face(s) is culled when face culling is enabled. It will only be applied when face culling is enabled.
 	 * @return Whether the pending cull face parameter was changed while face culling is true; */
 	public boolean setCullFace (int face) {
-		if (pending.cullFace != current.cullFace) {
-			pending.cullFace = current.cullFace;
+		pendingRenderState = null;
+		if (pending.cullFace != face) {
+			pending.cullFace = face;
 			return pending.culling;
 		}
 		return false;
 	}
 
+	/** Sets all the states and textures of a RenderState. Only the texture units used by the RenderState are changed. If the
+	 * same RenderState was the last one set and no other changes have been made since, this is a single reference comparison.
+	 * @return Whether any pending state or texture was changed, excluding parameters of disabled states. */
+	public boolean setRenderState (RenderState renderState) {
+		if (renderState == pendingRenderState) return false;
+		boolean changed = setBlending(renderState.blending);
+		changed |= setBlendFunction(renderState.blendSrcFuncColor, renderState.blendDstFuncColor, renderState.blendSrcFuncAlpha,
+			renderState.blendDstFuncAlpha);
+		changed |= setBlendEquation(renderState.blendEquationColor, renderState.blendEquationAlpha);
+		changed |= setDepthTesting(renderState.depthTesting);
+		changed |= setDepthFunction(renderState.depthFunc) && renderState.depthTesting;
+		changed |= setDepthMasking(renderState.depthMasking);
+		changed |= setFaceCulling(renderState.culling);
+		changed |= setCullFace(renderState.cullFace);
+		final GLTexture[] textures = renderState.textures;
+		for (int i = 0; i < textures.length; i++)
+			changed |= setTextureUnit(textures[i], i);
+		pendingRenderState = renderState;
+		pending.renderStateApplied = true;
+		return changed;
+	}
+
+	/** Returns the depth testing, depth function, depth masking, face culling and blend equation states to the defaults of
+	 * {@link RenderState.Builder} if they were last set by {@link #setRenderState(RenderState)}. Otherwise they are left as they
+	 * are. A Batchable that may be drawn either with or without a RenderState calls this when drawn without one, so the states
+	 * of a previous Batchable's RenderState do not carry over to it.
+	 * @return Whether any pending state was changed, excluding parameters of disabled states. */
+	public boolean clearRenderState () {
+		final State pending = this.pending;
+		if (!pending.renderStateApplied) return false;
+		boolean changed = setDepthTesting(true);
+		changed |= setDepthFunction(GL20.GL_LESS);
+		changed |= setDepthMasking(true);
+		changed |= setFaceCulling(false);
+		changed |= setBlendEquation(GL20.GL_FUNC_ADD);
+		pending.renderStateApplied = false;
+		return changed;
+	}
+
 	/** Sets the texture to be bound to the given texture unit.
+	 * @param unit The texture unit, less than {@value #MAX_TEXTURE_UNITS}.
 	 * @return Whether the pending texture for the unit was changed. */
 	public boolean setTextureUnit (GLTexture texture, int unit) {
-		if (pending.textureUnits.get(unit) != texture) {
+		pendingRenderState = null;
+		final State pending = this.pending;
+		if (pending.textureUnits[unit] != texture) {
+			pending.textureUnits[unit] = texture;
 			if (texture == null)
-				pending.textureUnits.remove(unit);
+				pending.textureUnitMask &= ~(1 << unit);
 			else
-				pending.textureUnits.put(unit, texture);
+				pending.textureUnitMask |= 1 << unit;
 			return true;
 		}
 		return false;
 	}
 
+	/** Assigns a texture to one of the texture units 0 through slotCount - 1, for Batchables that select their texture per vertex
+	 * from several bound textures. If the texture is already pending for one of those units, that unit is used. Otherwise, the
+	 * texture is bound right away to a unit that no queued vertices refer to, preferring an empty one. If every unit is in use,
+	 * the texture is set as a pending change to one of them in turn, and a flush is needed before drawing with it.
+	 * <p>
+	 * Units are considered in use from when they are assigned until the next call to {@link #executeChanges()}, which a
+	 * FlexBatch makes after each flush. Since a texture may be bound right away, this must be called between {@link #begin()}
+	 * and {@link #end()}.
+	 * @param slotCount The number of units to use, no more than {@value #MAX_TEXTURE_UNITS} or the GL_MAX_TEXTURE_IMAGE_UNITS of
+	 *           the device.
+	 * @return Whether a flush is needed before drawing vertices that refer to the assigned unit, which is returned by
+	 *         {@link #getAssignedTextureSlot()}. */
+	public boolean assignTextureSlot (GLTexture texture, int slotCount) {
+		final GLTexture[] pendingTextureUnits = pending.textureUnits;
+		final int inUse = textureSlotsInUse;
+		int freeUnit = -1;
+		for (int unit = 0; unit < slotCount; unit++) {
+			final GLTexture unitTexture = pendingTextureUnits[unit];
+			if (unitTexture == texture) {
+				textureSlotsInUse = inUse | 1 << unit;
+				assignedTextureSlot = unit;
+				return false;
+			}
+			if ((inUse & 1 << unit) == 0 && (freeUnit == -1 || unitTexture == null && pendingTextureUnits[freeUnit] != null))
+				freeUnit = unit;
+		}
+
+		textureSlotChangeCount++;
+		if (freeUnit != -1) {
+			setTextureUnit(texture, freeUnit);
+			final State current = this.current;
+			if (current.textureUnits[freeUnit] != texture) {
+				texture.bind(freeUnit);
+				current.textureUnits[freeUnit] = texture;
+				current.textureUnitMask |= 1 << freeUnit;
+				if (tracker != null) tracker.glCalls++;
+			}
+			textureSlotsInUse = inUse | 1 << freeUnit;
+			assignedTextureSlot = freeUnit;
+			return false;
+		}
+
+		final int unit = nextReplacedTextureSlot % slotCount;
+		nextReplacedTextureSlot = unit + 1;
+		setTextureUnit(texture, unit);
+		// The other units are free for vertices drawn after the flush.
+		textureSlotsInUse = 1 << unit;
+		assignedTextureSlot = unit;
+		return true;
+	}
+
+	/** @return The texture unit chosen by the most recent call to {@link #assignTextureSlot(GLTexture, int)}, or -1 if there has
+	 *         been none since {@link #begin()}. */
+	public int getAssignedTextureSlot () {
+		return assignedTextureSlot;
+	}
+
+	/** @return The number of times {@link #assignTextureSlot(GLTexture, int)} has changed the pending texture of a unit. Since
+	 *         a texture may be assigned to a free unit without needing a flush, this can be compared to detect a change to the
+	 *         pending state that was not reported. */
+	public int getTextureSlotChangeCount () {
+		return textureSlotChangeCount;
+	}
+
 	/** Cancels any pending texture that is to be bound to the given texture unit.
 	 * @return whether a unit was cleared. */
 	public boolean clearTextureUnit (int unit) {
-		return null != pending.textureUnits.remove(unit);
+		pendingRenderState = null;
+		if (pending.textureUnits[unit] == null) return false;
+		pending.textureUnits[unit] = null;
+		pending.textureUnitMask &= ~(1 << unit);
+		return true;
 	}
 
-	/** Cancels all pending texture bindings and drops all Texture references held by RenderContextAccumulator. */
+	/** Binds the texture that was last applied to the given texture unit again, after other code has bound a different texture
+	 * to it. Makes the unit active. Does nothing if no texture has been applied to the unit since {@link #begin()}. */
+	public void rebindTextureUnit (int unit) {
+		final GLTexture texture = current.textureUnits[unit];
+		if (texture != null) texture.bind(unit);
+	}
+
+	/** Cancels all pending texture bindings and drops all Texture references held by RenderContextAccumulator. The textures known
+	 * to be bound by a shared {@link GLStateTracker} are kept. */
 	public void clearAllTextureUnits () {
-		pending.textureUnits.clear();
-		current.textureUnits.clear();
+		pendingRenderState = null;
+		textureSlotsInUse = 0;
+		assignedTextureSlot = -1;
+		pending.clearTextureUnits();
+		if (tracker == null) current.clearTextureUnits();
+	}
+
+	/** Sets the shader that uniform values are uploaded to by {@link #executeChanges()}. It must be bound whenever changes are
+	 * executed. Uniform values are uploaded again after the shader changes.
+	 * @param shader The shader, or null to stop uploading uniforms. */
+	public void setShader (ShaderProgram shader) {
+		if (this.shader == shader) return;
+		this.shader = shader;
+		invalidateUniforms();
+	}
+
+	/** Forgets the uniform values last uploaded to the shader, so all set uniforms are uploaded on the next call to
+	 * {@link #executeChanges()}. Should be called if the shader's uniforms are set by other means. */
+	public void invalidateUniforms () {
+		final float[] uploaded = uploadedUniformValues;
+		for (int i = 0; i < uploaded.length; i++)
+			uploaded[i] = Float.NaN;
+	}
+
+	private UniformSlot uniformSlot (String name, int type, int size) {
+		UniformSlot slot = uniformSlotsByName.get(name);
+		if (slot == null) {
+			slot = new UniformSlot(name, type, uniformValueCount, size);
+			uniformValueCount += size;
+			uniformSlots.add(slot);
+			uniformSlotsByName.put(name, slot);
+			if (uploadedUniformValues.length < uniformValueCount) {
+				float[] uploaded = new float[Math.max(uniformValueCount, uploadedUniformValues.length * 2)];
+				for (int i = 0; i < uploaded.length; i++)
+					uploaded[i] = Float.NaN;
+				System.arraycopy(uploadedUniformValues, 0, uploaded, 0, uploadedUniformValues.length);
+				uploadedUniformValues = uploaded;
+			}
+		} else if (slot.type != type || slot.size != size) {
+			throw new IllegalArgumentException("The uniform " + name + " was already set with a different type.");
+		}
+		pending.ensureUniformValues(slot.offset + size);
+		return slot;
+	}
+
+	private boolean setUniformValues (UniformSlot slot, float x, float y, float z, float w) {
+		final float[] values = pending.uniformValues;
+		final int offset = slot.offset;
+		boolean changed = values[offset] != x;
+		values[offset] = x;
+		if (slot.size > 1) {
+			changed |= values[offset + 1] != y;
+			values[offset + 1] = y;
+			if (slot.size > 2) {
+				changed |= values[offset + 2] != z;
+				values[offset + 2] = z;
+				if (slot.size > 3) {
+					changed |= values[offset + 3] != w;
+					values[offset + 3] = w;
+				}
+			}
+		}
+		return changed;
+	}
+
+	/** Sets the value of a float uniform. A uniform name must always be set with the same number of components.
+	 * @return Whether the pending value was changed. */
+	public boolean setUniformf (String name, float value) {
+		return setUniformValues(uniformSlot(name, UNIFORM_FLOAT, 1), value, 0, 0, 0);
+	}
+
+	/** Sets the value of a vec2 uniform. A uniform name must always be set with the same number of components.
+	 * @return Whether the pending value was changed. */
+	public boolean setUniformf (String name, float x, float y) {
+		return setUniformValues(uniformSlot(name, UNIFORM_FLOAT, 2), x, y, 0, 0);
+	}
+
+	/** Sets the value of a vec3 uniform. A uniform name must always be set with the same number of components.
+	 * @return Whether the pending value was changed. */
+	public boolean setUniformf (String name, float x, float y, float z) {
+		return setUniformValues(uniformSlot(name, UNIFORM_FLOAT, 3), x, y, z, 0);
+	}
+
+	/** Sets the value of a vec4 uniform. A uniform name must always be set with the same number of components.
+	 * @return Whether the pending value was changed. */
+	public boolean setUniformf (String name, float x, float y, float z, float w) {
+		return setUniformValues(uniformSlot(name, UNIFORM_FLOAT, 4), x, y, z, w);
+	}
+
+	/** Sets the value of an int or sampler uniform. The value must be exactly representable as a float.
+	 * @return Whether the pending value was changed. */
+	public boolean setUniformi (String name, int value) {
+		return setUniformValues(uniformSlot(name, UNIFORM_INT, 1), value, 0, 0, 0);
+	}
+
+	/** Sets the value of a mat4 uniform.
+	 * @return Whether the pending value was changed. */
+	public boolean setUniformMatrix (String name, Matrix4 matrix) {
+		final UniformSlot slot = uniformSlot(name, UNIFORM_MATRIX4, 16);
+		final float[] values = pending.uniformValues;
+		final float[] matrixValues = matrix.val;
+		boolean changed = false;
+		for (int i = 0, j = slot.offset; i < 16; i++, j++) {
+			if (values[j] != matrixValues[i]) {
+				values[j] = matrixValues[i];
+				changed = true;
+			}
+		}
+		return changed;
 	}
 
 	/** @return Whether depth buffer writing is enabled. This state may not have been applied yet. */
@@ -0,0 +1,246 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.GLTexture;
+
+/** An immutable set of GL render states and textures: blending, depth testing, face culling, and the textures bound to the
+ * first texture units. Instances are obtained from a {@link RenderStateCache}, which interns them, so two RenderStates with the
+ * same settings are the same object. This allows a {@link RenderContextAccumulator} to skip an unchanged RenderState with a
+ * single reference comparison, and allows Batchables that share a RenderState to be grouped without comparing their states
+ * field by field.
+ * <p>
+ * Each RenderState has a precomputed {@link #getKey() key} that can be used to sort Batchables by state.
+ *
+ * @author cypherdare */
+public final class RenderState {
+
+	public final boolean blending;
+	public final int blendSrcFuncColor, blendDstFuncColor, blendSrcFuncAlpha, blendDstFuncAlpha;
+	public final int blendEquationColor, blendEquationAlpha;
+	public final boolean depthTesting, depthMasking;
+	public final int depthFunc;
+	public final boolean culling;
+	public final int cullFace;
+	/** The textures, in order of texture unit starting from unit 0. Must not be modified. */
+	final GLTexture[] textures;
+	final int hashCode, textureHash;
+	long key;
+
+	RenderState (Builder builder) {
+		blending = builder.blending;
+		blendSrcFuncColor = builder.blendSrcFuncColor;
+		blendDstFuncColor = builder.blendDstFuncColor;
+		blendSrcFuncAlpha = builder.blendSrcFuncAlpha;
+		blendDstFuncAlpha = builder.blendDstFuncAlpha;
+		blendEquationColor = builder.blendEquationColor;
+		blendEquationAlpha = builder.blendEquationAlpha;
+		depthTesting = builder.depthTesting;
+		depthMasking = builder.depthMasking;
+		depthFunc = builder.depthFunc;
+		culling = builder.culling;
+		cullFace = builder.cullFace;
+		textures = new GLTexture[builder.textureCount];
+		System.arraycopy(builder.textures, 0, textures, 0, textures.length);
+		textureHash = computeTextureHash();
+		hashCode = computeHashCode();
+	}
+
+	/** @return The number of textures, which are bound to texture units 0 through this number - 1. */
+	public int getTextureCount () {
+		return textures.length;
+	}
+
+	/** @return The texture for the given texture unit. */
+	public GLTexture getTexture (int unit) {
+		return textures[unit];
+	}
+
+	/** @return A key assigned by the {@link RenderStateCache} that created this RenderState. It is unique among the
+	 *         RenderStates of that cache. Sorting by key places all opaque RenderStates before all blended ones, and within each
+	 *         of those groups, RenderStates with the same textures next to each other. */
+	public long getKey () {
+		return key;
+	}
+
+	/** @return Whether this has the same textures as the other RenderState. */
+	public boolean hasEquivalentTextures (RenderState other) {
+		if (textures.length != other.textures.length) return false;
+		for (int i = 0; i < textures.length; i++) {
+			if (textures[i] != other.textures[i]) return false;
+		}
+		return true;
+	}
+
+	/** @return A hash of the textures, which is the same for RenderStates that {@link #hasEquivalentTextures(RenderState) have
+	 *         equivalent textures}. It starts from 1 and is multiplied by 31 before adding each texture's identity hash code, in
+	 *         order, so a Batchable holding the same textures itself can produce a matching hash. */
+	public int getTextureHash () {
+		return textureHash;
+	}
+
+	private int computeTextureHash () {
+		int result = 1;
+		for (GLTexture texture : textures)
+			result = 31 * result + System.identityHashCode(texture);
+		return result;
+	}
+
+	private int computeHashCode () {
+		int result = blending ? 1 : 0;
+		if (blending) {
+			result = 31 * result + blendSrcFuncColor;
+			result = 31 * result + blendDstFuncColor;
+			result = 31 * result + blendSrcFuncAlpha;
+			result = 31 * result + blendDstFuncAlpha;
+			result = 31 * result + blendEquationColor;
+			result = 31 * result + blendEquationAlpha;
+		}
+		result = 31 * result + (depthTesting ? 1 : 0);
+		result = 31 * result + (depthMasking ? 1 : 0);
+		result = 31 * result + depthFunc;
+		result = 31 * result + (culling ? 1 : 0);
+		result = 31 * result + cullFace;
+		return 31 * result + textureHash;
+	}
+
+	public int hashCode () {
+		return hashCode;
+	}
+
+	/** RenderStates are equal if all their states match and they have the same texture instances. The blend parameters are
+	 * ignored if blending is disabled. */
+	public boolean equals (Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof RenderState)) return false;
+		RenderState other = (RenderState)obj;
+		if (hashCode != other.hashCode || blending != other.blending) return false;
+		if (blending && (blendSrcFuncColor != other.blendSrcFuncColor || blendDstFuncColor != other.blendDstFuncColor
+			|| blendSrcFuncAlpha != other.blendSrcFuncAlpha || blendDstFuncAlpha != other.blendDstFuncAlpha
+			|| blendEquationColor != other.blendEquationColor || blendEquationAlpha != other.blendEquationAlpha)) return false;
+		return depthTesting == other.depthTesting && depthMasking == other.depthMasking && depthFunc == other.depthFunc
+			&& culling == other.culling && cullFace == other.cullFace && hasEquivalentTextures(other);
+	}
+
+	/** Describes a {@link RenderState} to obtain from {@link RenderStateCache#obtain(Builder)}. A Builder can be reused. It starts
+	 * with blending disabled, depth testing enabled with GL_LESS, depth masking enabled, face culling disabled, and no textures.
+	 *
+	 * @author cypherdare */
+	public static class Builder {
+		boolean blending;
+		int blendSrcFuncColor, blendDstFuncColor, blendSrcFuncAlpha, blendDstFuncAlpha;
+		int blendEquationColor, blendEquationAlpha;
+		boolean depthTesting, depthMasking;
+		int depthFunc;
+		boolean culling;
+		int cullFace;
+		final GLTexture[] textures = new GLTexture[RenderContextAccumulator.MAX_TEXTURE_UNITS];
+		int textureCount;
+
+		public Builder () {
+			reset();
+		}
+
+		/** Returns all settings to their defaults and drops all texture references.
+		 * @return This object for chaining. */
+		public Builder reset () {
+			blending = false;
+			blendSrcFuncColor = blendSrcFuncAlpha = GL20.GL_SRC_ALPHA;
+			blendDstFuncColor = blendDstFuncAlpha = GL20.GL_ONE_MINUS_SRC_ALPHA;
+			blendEquationColor = blendEquationAlpha = GL20.GL_FUNC_ADD;
+			depthTesting = depthMasking = true;
+			depthFunc = GL20.GL_LESS;
+			culling = false;
+			cullFace = GL20.GL_BACK;
+			for (int i = 0; i < textureCount; i++)
+				textures[i] = null;
+			textureCount = 0;
+			return this;
+		}
+
+		/** Disables blending.
+		 * @return This object for chaining. */
+		public Builder opaque () {
+			blending = false;
+			return this;
+		}
+
+		/** Enables blending and sets the blend function parameters.
+		 * @return This object for chaining. */
+		public Builder blend (int srcBlendFactor, int dstBlendFactor) {
+			return blend(srcBlendFactor, dstBlendFactor, srcBlendFactor, dstBlendFactor);
+		}
+
+		/** Enables blending and sets the blend function parameters, using separate parameters for the color and alpha components.
+		 * @return This object for chaining. */
+		public Builder blend (int srcColorFactor, int dstColorFactor, int srcAlphaFactor, int dstAlphaFactor) {
+			blending = true;
+			blendSrcFuncColor = srcColorFactor;
+			blendDstFuncColor = dstColorFactor;
+			blendSrcFuncAlpha = srcAlphaFactor;
+			blendDstFuncAlpha = dstAlphaFactor;
+			return this;
+		}
+
+		/** Sets the blend equation, which is used only if blending is enabled.
+		 * @return This object for chaining. */
+		public Builder blendEquation (int blendEquation) {
+			return blendEquation(blendEquation, blendEquation);
+		}
+
+		/** Sets the blend equations for the color and alpha components, which are used only if blending is enabled.
+		 * @return This object for chaining. */
+		public Builder blendEquation (int blendEquationColor, int blendEquationAlpha) {
+			this.blendEquationColor = blendEquationColor;
+			this.blendEquationAlpha = blendEquationAlpha;
+			return this;
+		}
+
+		/** Enables or disables depth testing.
+		 * @return This object for chaining. */
+		public Builder depthTesting (boolean enabled) {
+			depthTesting = enabled;
+			return this;
+		}
+
+		/** Sets the depth test function, which is used only if depth testing is enabled.
+		 * @return This object for chaining. */
+		public Builder depthFunction (int depthFunc) {
+			this.depthFunc = depthFunc;
+			return this;
+		}
+
+		/** Enables or disables depth buffer writing.
+		 * @return This object for chaining. */
+		public Builder depthMasking (boolean enabled) {
+			depthMasking = enabled;
+			return this;
+		}
+
+		/** Enables face culling of the given face(s), such as GL_BACK.
+		 * @return This object for chaining. */
+		public Builder cull (int face) {
+			culling = true;
+			cullFace = face;
+			return this;
+		}
+
+		/** Disables face culling.
+		 * @return This object for chaining. */
+		public Builder noCulling () {
+			culling = false;
+			return this;
+		}
+
+		/** Sets the textures, in order of texture unit starting from unit 0.
+		 * @return This object for chaining. */
+		public Builder textures (GLTexture... textures) {
+			if (textures.length > this.textures.length)
+				throw new IllegalArgumentException("A RenderState can hold at most " + this.textures.length + " textures.");
+			for (int i = textures.length; i < textureCount; i++)
+				this.textures[i] = null;
+			System.arraycopy(textures, 0, this.textures, 0, textures.length);
+			textureCount = textures.length;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/** Creates and interns {@link RenderState RenderStates}, so each distinct combination of states and textures exists as a single
+ * object, and assigns each one its {@link RenderState#getKey() key}. Obtaining a RenderState involves a hash lookup, so
+ * RenderStates should be obtained ahead of time rather than every frame.
+ * <p>
+ * The cache holds references to the textures of every RenderState it has created, so it should be {@link #clear() cleared} when
+ * they are disposed. Keys are only comparable between RenderStates of the same cache.
+ *
+ * @author cypherdare */
+public class RenderStateCache {
+
+	private static final int INDEX_BITS = 24;
+	private static final int MAX_INDEX = (1 << INDEX_BITS) - 1;
+	private static final long BLENDING_BIT = 1L << (2 * INDEX_BITS);
+
+	private final ObjectMap<RenderState, RenderState> states = new ObjectMap<RenderState, RenderState>();
+	/** One RenderState for each distinct set of textures, in the order they were first seen. */
+	private final Array<RenderState> textureGroups = new Array<RenderState>();
+
+	/** @return The RenderState described by the builder. If one with the same settings was already obtained from this cache, that
+	 *         same instance is returned. */
+	public RenderState obtain (RenderState.Builder builder) {
+		RenderState state = new RenderState(builder);
+		RenderState existing = states.get(state);
+		if (existing != null) return existing;
+		if (states.size > MAX_INDEX) throw new IllegalStateException("Too many RenderStates in the cache.");
+
+		int textureGroup = -1;
+		for (int i = 0; i < textureGroups.size; i++) {
+			if (textureGroups.get(i).hasEquivalentTextures(state)) {
+				textureGroup = i;
+				break;
+			}
+		}
+		if (textureGroup == -1) {
+			textureGroup = textureGroups.size;
+			textureGroups.add(state);
+		}
+
+		state.key = (state.blending ? BLENDING_BIT : 0L) | (long)textureGroup << INDEX_BITS | states.size;
+		states.put(state, state);
+		return state;
+	}
+
+	/** @return The number of distinct RenderStates created by this cache. */
+	public int size () {
+		return states.size;
+	}
+
+	/** Drops all references to RenderStates and their textures. RenderStates obtained before clearing can still be used, but their
+	 * keys may collide with those obtained afterwards. */
+	public void clear () {
+		states.clear();
+		textureGroups.clear();
+	}
+}
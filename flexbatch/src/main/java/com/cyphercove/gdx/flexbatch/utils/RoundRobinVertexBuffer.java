@@ -0,0 +1,61 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.VertexAttributes;
+
+/** A {@link StreamingVertexBuffer} that cycles through several buffer objects, uploading to the next one on each draw call.
+ * As long as there are enough buffers, the one being written to is no longer in use by the GPU, so the upload does not wait on
+ * pending draw calls.
+ * 
+ * @author cypherdare */
+public class RoundRobinVertexBuffer extends StreamingVertexBuffer {
+
+	private final int[] bufferHandles;
+	private int current;
+
+	/** @param bufferCount The number of buffer objects to cycle through. Each one has the capacity for a full batch. */
+	public RoundRobinVertexBuffer (int maxVertices, VertexAttributes attributes, int bufferCount) {
+		super(maxVertices, attributes);
+		if (bufferCount < 1) throw new IllegalArgumentException("bufferCount must be at least 1.");
+		bufferHandles = new int[bufferCount];
+		createBufferObjects();
+	}
+
+	protected void createBufferObjects () {
+		super.createBufferObjects();
+		GL20 gl = Gdx.gl20;
+		for (int i = 0; i < bufferHandles.length; i++) {
+			bufferHandles[i] = gl.glGenBuffer();
+			gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, bufferHandles[i]);
+			gl.glBufferData(GL20.GL_ARRAY_BUFFER, batchSizeBytes, null, GL20.GL_STREAM_DRAW);
+		}
+		gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
+		current = 0;
+	}
+
+	protected void deleteBufferObjects () {
+		super.deleteBufferObjects();
+		for (int i = 0; i < bufferHandles.length; i++) {
+			Gdx.gl20.glDeleteBuffer(bufferHandles[i]);
+			bufferHandles[i] = 0;
+		}
+	}
+
+	protected int upload (int bytes) {
+		current = (current + 1) % bufferHandles.length;
+		GL20 gl = Gdx.gl20;
+		gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, bufferHandles[current]);
+		gl.glBufferSubData(GL20.GL_ARRAY_BUFFER, 0, bytes, byteBuffer);
+		return 0;
+	}
+
+	protected void bindCurrentBufferObject () {
+		Gdx.gl20.glBindBuffer(GL20.GL_ARRAY_BUFFER, bufferHandles[current]);
+	}
+
+	/** @return The number of buffer objects that are cycled through. */
+	public int getBufferCount () {
+		return bufferHandles.length;
+	}
+}
@@ -0,0 +1,162 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.graphics.glutils.VertexData;
+import com.badlogic.gdx.utils.BufferUtils;
+
+/** Base class for a {@link VertexData} that streams a complete new set of vertices to the GPU for every draw call, using a
+ * technique that avoids an implicit synchronization when writing to a buffer object that the GPU may still be reading from.
+ * <p>
+ * Vertex data is staged in a direct buffer and uploaded the next time the StreamingVertexBuffer is bound. Subclasses define how
+ * the upload is done by implementing {@link #upload(int)}. On GL30, a vertex array object is used.
+ *
+ * @author cypherdare */
+public abstract class StreamingVertexBuffer implements VertexData {
+
+	protected final VertexAttributes attributes;
+	protected final FloatBuffer buffer;
+	protected final ByteBuffer byteBuffer;
+	/** The size of the data store needed for one full batch of vertices, in bytes. */
+	protected final int batchSizeBytes;
+	private final IntBuffer tmpHandle = BufferUtils.newIntBuffer(1);
+	private int vaoHandle = -1;
+	private int dataOffset;
+	private boolean dirty;
+
+	protected StreamingVertexBuffer (int maxVertices, VertexAttributes attributes) {
+		this.attributes = attributes;
+		batchSizeBytes = attributes.vertexSize * maxVertices;
+		byteBuffer = BufferUtils.newUnsafeByteBuffer(batchSizeBytes);
+		buffer = byteBuffer.asFloatBuffer();
+		buffer.flip();
+		byteBuffer.flip();
+	}
+
+	/** Creates the buffer object(s) and allocates their data stores. Called on construction and after the GL context is lost.
+	 * Subclasses must call this at the end of their constructors. */
+	protected void createBufferObjects () {
+		if (Gdx.gl30 != null) {
+			tmpHandle.clear();
+			Gdx.gl30.glGenVertexArrays(1, tmpHandle);
+			vaoHandle = tmpHandle.get(0);
+		}
+		dirty = true;
+	}
+
+	/** Deletes the buffer object(s). */
+	protected void deleteBufferObjects () {
+		if (vaoHandle != -1) {
+			tmpHandle.clear();
+			tmpHandle.put(vaoHandle);
+			tmpHandle.flip();
+			Gdx.gl30.glDeleteVertexArrays(1, tmpHandle);
+			vaoHandle = -1;
+		}
+	}
+
+	/** Uploads the staged vertex data to a buffer object. {@link #byteBuffer} has its position set to 0 and its limit set to the
+	 * number of bytes to upload. The buffer object must be left bound to {@link GL20#GL_ARRAY_BUFFER}.
+	 * @param bytes The number of bytes to upload.
+	 * @return The offset in bytes of the uploaded data in the bound buffer object. */
+	protected abstract int upload (int bytes);
+
+	/** Binds the buffer object that contains the most recently uploaded data to {@link GL20#GL_ARRAY_BUFFER}. */
+	protected abstract void bindCurrentBufferObject ();
+
+	public int getNumVertices () {
+		return buffer.limit() * 4 / attributes.vertexSize;
+	}
+
+	public int getNumMaxVertices () {
+		return byteBuffer.capacity() / attributes.vertexSize;
+	}
+
+	public VertexAttributes getAttributes () {
+		return attributes;
+	}
+
+	public void setVertices (float[] vertices, int offset, int count) {
+		dirty = true;
+		BufferUtils.copy(vertices, byteBuffer, count, offset);
+		buffer.position(0);
+		buffer.limit(count);
+	}
+
+	public void updateVertices (int targetOffset, float[] vertices, int sourceOffset, int count) {
+		dirty = true;
+		final int pos = byteBuffer.position();
+		byteBuffer.position(targetOffset * 4);
+		BufferUtils.copy(vertices, sourceOffset, count, byteBuffer);
+		byteBuffer.position(pos);
+		buffer.position(0);
+	}
+
+	/** Returns the staging buffer. The data is uploaded on the next bind, so it is assumed that it will be modified. */
+	public FloatBuffer getBuffer () {
+		dirty = true;
+		return buffer;
+	}
+
+	public void bind (ShaderProgram shader) {
+		bind(shader, null);
+	}
+
+	public void bind (ShaderProgram shader, int[] locations) {
+		if (vaoHandle != -1) Gdx.gl30.glBindVertexArray(vaoHandle);
+
+		if (dirty) {
+			int bytes = buffer.limit() * 4;
+			byteBuffer.position(0);
+			byteBuffer.limit(bytes);
+			dataOffset = upload(bytes);
+			dirty = false;
+		} else {
+			bindCurrentBufferObject();
+		}
+
+		final VertexAttributes attributes = this.attributes;
+		final int numAttributes = attributes.size();
+		for (int i = 0; i < numAttributes; i++) {
+			final VertexAttribute attribute = attributes.get(i);
+			final int location = locations == null ? shader.getAttributeLocation(attribute.alias) : locations[i];
+			if (location < 0) continue;
+			shader.enableVertexAttribute(location);
+			shader.setVertexAttribute(location, attribute.numComponents, attribute.type, attribute.normalized,
+				attributes.vertexSize, dataOffset + attribute.offset);
+		}
+	}
+
+	public void unbind (ShaderProgram shader) {
+		unbind(shader, null);
+	}
+
+	public void unbind (ShaderProgram shader, int[] locations) {
+		final VertexAttributes attributes = this.attributes;
+		final int numAttributes = attributes.size();
+		for (int i = 0; i < numAttributes; i++) {
+			final int location = locations == null ? shader.getAttributeLocation(attributes.get(i).alias) : locations[i];
+			if (location >= 0) shader.disableVertexAttribute(location);
+		}
+		Gdx.gl20.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
+		if (vaoHandle != -1) Gdx.gl30.glBindVertexArray(0);
+	}
+
+	/** Recreates the buffer object(s) after the GL context was lost. */
+	public void invalidate () {
+		createBufferObjects();
+	}
+
+	public void dispose () {
+		Gdx.gl20.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
+		deleteBufferObjects();
+		BufferUtils.disposeUnsafeByteBuffer(byteBuffer);
+	}
+}
@@ -0,0 +1,274 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import java.nio.IntBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL30;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.graphics.Texture.TextureWrap;
+import com.badlogic.gdx.graphics.TextureArray;
+import com.badlogic.gdx.graphics.TextureArrayData;
+import com.badlogic.gdx.graphics.TextureData;
+import com.badlogic.gdx.graphics.TextureData.TextureDataType;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.ObjectSet;
+
+/** Gathers textures of the same size, format, filter, and wrap into shared {@link TextureArray TextureArrays}, so Batchables
+ * with three-dimensional texture coordinates, such as {@link com.cyphercove.gdx.flexbatch.batchable.TextureArrayQuad2D
+ * TextureArrayQuad2D}, can draw any of them without changing the bound texture. Each texture becomes a layer of a TextureArray,
+ * and Batchables emit the layer index as the third texture coordinate. Requires GL30.
+ * <p>
+ * Textures are added when first {@link #obtain(Texture) obtained}, or ahead of time with the same method to avoid loading their
+ * pixel data in the middle of a frame. The pixel data is read from each texture's {@link TextureData}, so only textures with
+ * Pixmap-based data and without mip maps can be added. A texture created from a Pixmap must be added before that Pixmap is
+ * disposed. Each TextureArray holds a fixed number of layers, with storage for all of them allocated when it is created.
+ * <p>
+ * The TextureArrays are managed. After the OpenGL context is lost, each layer is restored if its source texture is managed.
+ * Adding a texture leaves the TextureArray binding of the active texture unit unchanged, so it is safe to do while a FlexBatch
+ * is drawing. A TextureArrayManager must be {@link #dispose() disposed of} when no longer used.
+ *
+ * @author cypherdare */
+public class TextureArrayManager implements Disposable {
+
+	private final int layersPerArray;
+	private int maxLayers;
+	private final Array<Group> groups = new Array<Group>();
+	private final ObjectMap<Texture, Layer> layers = new ObjectMap<Texture, Layer>();
+	private final ObjectSet<Texture> unsupported = new ObjectSet<Texture>();
+	private final IntBuffer intBuffer = BufferUtils.newIntBuffer(16);
+
+	/** A texture's place in a TextureArray. */
+	public static final class Layer {
+		LayeredArray array;
+		int index;
+
+		/** @return The TextureArray holding the texture. */
+		public TextureArray getTextureArray () {
+			return array.textureArray;
+		}
+
+		/** @return The index of the texture's layer, to be used as the third texture coordinate. */
+		public int getIndex () {
+			return index;
+		}
+	}
+
+	/** The TextureArrays holding textures that share size, format, filter, and wrap. */
+	static final class Group {
+		final int width, height;
+		final Format format;
+		final TextureFilter minFilter, magFilter;
+		final TextureWrap uWrap, vWrap;
+		final Array<LayeredArray> arrays = new Array<LayeredArray>();
+
+		Group (Texture texture) {
+			width = texture.getWidth();
+			height = texture.getHeight();
+			format = texture.getTextureData().getFormat();
+			minFilter = texture.getMinFilter();
+			magFilter = texture.getMagFilter();
+			uWrap = texture.getUWrap();
+			vWrap = texture.getVWrap();
+		}
+
+		boolean matches (Texture texture) {
+			return width == texture.getWidth() && height == texture.getHeight()
+				&& format == texture.getTextureData().getFormat() && minFilter == texture.getMinFilter()
+				&& magFilter == texture.getMagFilter() && uWrap == texture.getUWrap() && vWrap == texture.getVWrap();
+		}
+	}
+
+	/** A TextureArray and the source textures of its layers. It is its own TextureArrayData, so the layers can be uploaded again
+	 * when the TextureArray is reloaded after context loss. */
+	static final class LayeredArray implements TextureArrayData {
+		final Group group;
+		final Texture[] sources;
+		final IntArray freeLayers = new IntArray();
+		TextureArray textureArray;
+
+		LayeredArray (Group group, int depth) {
+			this.group = group;
+			sources = new Texture[depth];
+			for (int i = depth - 1; i >= 0; i--)
+				freeLayers.add(i);
+		}
+
+		public boolean isPrepared () {
+			return true;
+		}
+
+		public void prepare () {
+		}
+
+		public void consumeTextureArrayData () {
+			for (int i = 0; i < sources.length; i++) {
+				Texture source = sources[i];
+				if (source != null && source.getTextureData().isManaged()) uploadLayer(source.getTextureData(), i);
+			}
+		}
+
+		/** Uploads the texture data to a layer of the TextureArray, which must be bound to the active texture unit. */
+		void uploadLayer (TextureData data, int layer) {
+			if (!data.isPrepared()) data.prepare();
+			Pixmap pixmap = data.consumePixmap();
+			boolean disposePixmap = data.disposePixmap();
+			if (pixmap.getFormat() != group.format) {
+				Pixmap converted = new Pixmap(pixmap.getWidth(), pixmap.getHeight(), group.format);
+				converted.setBlending(Pixmap.Blending.None);
+				converted.drawPixmap(pixmap, 0, 0, 0, 0, pixmap.getWidth(), pixmap.getHeight());
+				if (disposePixmap) pixmap.dispose();
+				pixmap = converted;
+				disposePixmap = true;
+			}
+			Gdx.gl30.glTexSubImage3D(GL30.GL_TEXTURE_2D_ARRAY, 0, 0, 0, layer, pixmap.getWidth(), pixmap.getHeight(), 1,
+				pixmap.getGLFormat(), pixmap.getGLType(), pixmap.getPixels());
+			if (disposePixmap) pixmap.dispose();
+		}
+
+		public int getWidth () {
+			return group.width;
+		}
+
+		public int getHeight () {
+			return group.height;
+		}
+
+		public int getDepth () {
+			return sources.length;
+		}
+
+		public boolean isManaged () {
+			return true;
+		}
+
+		public int getInternalFormat () {
+			return Format.toGlFormat(group.format);
+		}
+
+		public int getGLType () {
+			return Format.toGlType(group.format);
+		}
+	}
+
+	/** @param layersPerArray The number of layers in each TextureArray. It is limited to the maximum supported by the device,
+	 *           which is at least 256. Storage for every layer is allocated when a TextureArray is created, so this should be
+	 *           close to the number of same-sized textures expected to be used together. */
+	public TextureArrayManager (int layersPerArray) {
+		if (layersPerArray < 1) throw new IllegalArgumentException("layersPerArray must be positive.");
+		this.layersPerArray = layersPerArray;
+	}
+
+	/** Finds the layer holding the texture, adding it to a TextureArray first if necessary. Adding a texture reads its pixel data,
+	 * which loads it again from its file if it is file-based, so textures should be obtained ahead of time where possible.
+	 * @return The texture's layer, or null if the texture cannot be placed in a TextureArray. */
+	public Layer obtain (Texture texture) {
+		Layer layer = layers.get(texture);
+		if (layer != null) return layer;
+		if (unsupported.contains(texture)) return null;
+		if (!isSupported(texture)) {
+			unsupported.add(texture);
+			return null;
+		}
+
+		Group group = null;
+		for (Group candidate : groups) {
+			if (candidate.matches(texture)) {
+				group = candidate;
+				break;
+			}
+		}
+		if (group == null) {
+			group = new Group(texture);
+			groups.add(group);
+		}
+
+		final GL30 gl = Gdx.gl30;
+		intBuffer.clear();
+		gl.glGetIntegerv(GL30.GL_TEXTURE_BINDING_2D_ARRAY, intBuffer);
+		final int previousBinding = intBuffer.get(0);
+
+		LayeredArray array = null;
+		for (LayeredArray candidate : group.arrays) {
+			if (candidate.freeLayers.size > 0) {
+				array = candidate;
+				break;
+			}
+		}
+		if (array == null) {
+			if (maxLayers == 0) {
+				intBuffer.clear();
+				gl.glGetIntegerv(GL30.GL_MAX_ARRAY_TEXTURE_LAYERS, intBuffer);
+				maxLayers = Math.max(1, intBuffer.get(0));
+			}
+			array = new LayeredArray(group, Math.min(layersPerArray, maxLayers));
+			array.textureArray = new TextureArray(array);
+			array.textureArray.setFilter(group.minFilter, group.magFilter);
+			array.textureArray.setWrap(group.uWrap, group.vWrap);
+			group.arrays.add(array);
+		}
+
+		layer = new Layer();
+		layer.array = array;
+		layer.index = array.freeLayers.pop();
+		array.sources[layer.index] = texture;
+		gl.glBindTexture(GL30.GL_TEXTURE_2D_ARRAY, array.textureArray.getTextureObjectHandle());
+		array.uploadLayer(texture.getTextureData(), layer.index);
+		gl.glBindTexture(GL30.GL_TEXTURE_2D_ARRAY, previousBinding);
+		layers.put(texture, layer);
+		return layer;
+	}
+
+	/** @return The layer holding the texture, or null if it has not been added. */
+	public Layer get (Texture texture) {
+		return layers.get(texture);
+	}
+
+	private boolean isSupported (Texture texture) {
+		TextureData data = texture.getTextureData();
+		if (data == null || data.getType() != TextureDataType.Pixmap || data.useMipMaps()) return false;
+		final TextureFilter minFilter = texture.getMinFilter();
+		return minFilter == TextureFilter.Nearest || minFilter == TextureFilter.Linear;
+	}
+
+	/** Removes the texture from its TextureArray and drops the reference to it. Its layer may be reused by a texture added later,
+	 * so this must not be called while a FlexBatch has queued Batchables that use the texture. Should be called before disposing a
+	 * texture that was added. */
+	public void remove (Texture texture) {
+		unsupported.remove(texture);
+		Layer layer = layers.remove(texture);
+		if (layer == null) return;
+		layer.array.sources[layer.index] = null;
+		layer.array.freeLayers.add(layer.index);
+	}
+
+	/** @return The number of textures held in TextureArrays. */
+	public int size () {
+		return layers.size;
+	}
+
+	/** @return The number of TextureArrays created so far. */
+	public int getTextureArrayCount () {
+		int count = 0;
+		for (Group group : groups)
+			count += group.arrays.size;
+		return count;
+	}
+
+	/** Disposes of all the TextureArrays and drops all texture references. */
+	public void dispose () {
+		for (Group group : groups) {
+			for (LayeredArray array : group.arrays)
+				array.textureArray.dispose();
+		}
+		groups.clear();
+		layers.clear();
+		unsupported.clear();
+	}
+}
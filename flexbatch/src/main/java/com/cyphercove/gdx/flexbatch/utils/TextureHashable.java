@@ -0,0 +1,12 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import com.cyphercove.gdx.flexbatch.Batchable;
+
+/** An optional addition to {@link SortableBatchable} that lets {@link BatchableSorter} group opaque Batchables by a hash of
+ * their textures, instead of comparing each one with every group. */
+public interface TextureHashable {
+	/** @return A hash of the texture configuration, which must be the same for any two Batchables that
+	 *         {@link SortableBatchable#hasEquivalentTextures(Batchable) have equivalent textures}. It should rarely be equal for
+	 *         different texture configurations. */
+	int getTextureHash ();
+}
@@ -0,0 +1,86 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import java.nio.ByteOrder;
+
+import com.badlogic.gdx.utils.NumberUtils;
+
+/** Packs compact vertex attribute components into the bits of a single float, so they can be written to the same float arrays
+ * and buffers as full precision attributes, the same way {@link com.badlogic.gdx.graphics.Color#toFloatBits() packed colors}
+ * are. Each method fills exactly four bytes, matching one of the attributes from
+ * {@link BatchablePreparation#addCompactBaseAttributes(com.badlogic.gdx.utils.Array, int)} or a four-component normalized
+ * byte attribute. The components are ordered for the platform's native byte order, which is what vertex buffers use.
+ * <p>
+ * Packed bytes are kept out of the NaN range the same way packed colors are: if the exponent bits would all be set, the lowest
+ * bit of the most significant byte is cleared, which changes one component by 1/127. Packed shorts cannot be adjusted that way
+ * without moving a component by 128 steps, so they are packed exactly, and the component in the most significant half (the
+ * second on little-endian platforms, or the first on big-endian) produces a NaN or infinity bit pattern when its value is
+ * in [-128, -1] or [32640, 32767] as a signed short, or about 0.998 or more or in [0.498, 0.5) as a normalized unsigned short.
+ * FlexBatch only copies vertex floats without doing arithmetic on them, which keeps such patterns intact on desktop and
+ * Android. Platforms that canonicalize NaNs, such as GWT, can alter them, so packed shorts are only usable there if the values
+ * stay outside those ranges. Floats from this class must not be used in arithmetic or compared.
+ * <p>
+ * Half-float attributes are not supported, because LibGDX's VertexAttribute does not compute a size for GL_HALF_FLOAT.
+ *
+ * @author cypherdare */
+public final class VertexPacking {
+
+	private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+	private static final int EXPONENT_MASK = 0x7f800000;
+
+	private VertexPacking () {
+	}
+
+	/** Packs two values as unsigned normalized shorts, for an attribute with two components of type GL_UNSIGNED_SHORT with
+	 * normalization, such as compact texture coordinates.
+	 * @param a The first component, clamped to [0, 1].
+	 * @param b The second component, clamped to [0, 1]. */
+	public static float packUnsignedNormalizedShorts (float a, float b) {
+		return packShorts(toUnsignedNormalizedShort(a), toUnsignedNormalizedShort(b));
+	}
+
+	/** Packs two values as signed shorts, for an attribute with two components of type GL_SHORT without normalization, such as
+	 * compact 2D positions.
+	 * @param a The first component, rounded to the nearest integer and clamped to the range of a short.
+	 * @param b The second component, rounded to the nearest integer and clamped to the range of a short. */
+	public static float packShorts (float a, float b) {
+		return packShorts(toShort(a), toShort(b));
+	}
+
+	/** Packs four values as signed normalized bytes, for an attribute with four components of type GL_BYTE with normalization,
+	 * such as compact normals. For a three-component vector, the fourth component can be zero. If the result would be a NaN or
+	 * infinity bit pattern, the fourth component (the first on big-endian platforms) is moved one step toward zero.
+	 * @param x The first component, clamped to [-1, 1].
+	 * @param y The second component, clamped to [-1, 1].
+	 * @param z The third component, clamped to [-1, 1].
+	 * @param w The fourth component, clamped to [-1, 1]. */
+	public static float packSignedNormalizedBytes (float x, float y, float z, float w) {
+		final int bx = toSignedNormalizedByte(x), by = toSignedNormalizedByte(y), bz = toSignedNormalizedByte(z),
+			bw = toSignedNormalizedByte(w);
+		int bits = LITTLE_ENDIAN ? bw << 24 | bz << 16 | by << 8 | bx : bx << 24 | by << 16 | bz << 8 | bw;
+		if ((bits & EXPONENT_MASK) == EXPONENT_MASK) bits &= 0xfeffffff;
+		return NumberUtils.intBitsToFloat(bits);
+	}
+
+	private static float packShorts (int a, int b) {
+		return NumberUtils.intBitsToFloat(LITTLE_ENDIAN ? b << 16 | a : a << 16 | b);
+	}
+
+	private static int toUnsignedNormalizedShort (float value) {
+		if (value <= 0) return 0;
+		if (value >= 1) return 0xffff;
+		return (int)(value * 0xffff + 0.5f);
+	}
+
+	private static int toShort (float value) {
+		final int rounded = Math.round(value);
+		if (rounded < Short.MIN_VALUE) return Short.MIN_VALUE & 0xffff;
+		if (rounded > Short.MAX_VALUE) return Short.MAX_VALUE;
+		return rounded & 0xffff;
+	}
+
+	private static int toSignedNormalizedByte (float value) {
+		if (value <= -1) return -127 & 0xff;
+		if (value >= 1) return 127;
+		return Math.round(value * 127) & 0xff;
+	}
+}
@@ -0,0 +1,90 @@
+package com.cyphercove.gdx.flexbatch;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.cyphercove.gdx.flexbatch.batchable.Quad2D;
+import com.cyphercove.gdx.flexbatch.utils.AttributeOffsets;
+import com.cyphercove.gdx.flexbatch.utils.RecordingGL20;
+import com.cyphercove.gdx.flexbatch.utils.RecordingGL20.TestTexture;
+
+public class BatchableTest {
+
+	/** Counts how many times its vertex data is generated. */
+	public static class CountingQuad2D extends Quad2D {
+		int applyCount;
+
+		protected int apply (float[] vertices, int vertexStartingIndex, AttributeOffsets offsets, int vertexSize) {
+			applyCount++;
+			return super.apply(vertices, vertexStartingIndex, offsets, vertexSize);
+		}
+	}
+
+	private FlexBatch<CountingQuad2D> batch;
+	private CountingQuad2D quad;
+
+	@BeforeClass
+	public static void installApplication () {
+		RecordingGL20.installApplication();
+	}
+
+	@Before
+	public void setUp () {
+		RecordingGL20.install();
+		batch = new FlexBatch<CountingQuad2D>(CountingQuad2D.class, 400, 0);
+		batch.setShader(new ShaderProgram("", ""));
+		quad = new CountingQuad2D();
+		quad.texture(new TestTexture(10));
+		quad.setMemoized(true);
+	}
+
+	@After
+	public void tearDown () {
+		batch.dispose();
+	}
+
+	private void drawFrame () {
+		batch.begin();
+		batch.draw(quad);
+		batch.end();
+	}
+
+	@Test
+	public void chainingSettersInvalidateMemoizedData () {
+		drawFrame();
+		drawFrame();
+		assertEquals(1, quad.applyCount);
+
+		quad.position(5, 0);
+		drawFrame();
+		assertEquals(2, quad.applyCount);
+		quad.size(2, 2).rotation(45);
+		drawFrame();
+		assertEquals(3, quad.applyCount);
+	}
+
+	@Test
+	public void directFieldWritesRequireMarkChanged () {
+		drawFrame();
+		quad.x = 5;
+		drawFrame();
+		assertEquals(1, quad.applyCount); // the stale cached data is drawn
+
+		quad.markChanged();
+		drawFrame();
+		assertEquals(2, quad.applyCount);
+	}
+
+	@Test
+	public void unmemoizedDataIsAlwaysGenerated () {
+		quad.setMemoized(false);
+		drawFrame();
+		drawFrame();
+		assertEquals(2, quad.applyCount);
+	}
+}
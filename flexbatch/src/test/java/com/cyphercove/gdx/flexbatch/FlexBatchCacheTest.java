@@ -0,0 +1,77 @@
+package com.cyphercove.gdx.flexbatch;
+
+import static com.cyphercove.gdx.flexbatch.utils.RecordingGL20.call;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.cyphercove.gdx.flexbatch.batchable.Quad2D;
+import com.cyphercove.gdx.flexbatch.utils.RecordingGL20;
+import com.cyphercove.gdx.flexbatch.utils.RecordingGL20.TestTexture;
+
+public class FlexBatchCacheTest {
+
+	private RecordingGL20 gl;
+	private FlexBatchCache<Quad2D> cache;
+	private final TestTexture texture = new TestTexture(10);
+	private final TestTexture otherTexture = new TestTexture(11);
+
+	@BeforeClass
+	public static void installApplication () {
+		RecordingGL20.installApplication();
+	}
+
+	@Before
+	public void setUp () {
+		gl = RecordingGL20.install();
+		cache = new FlexBatchCache<Quad2D>(Quad2D.class, 400, 200);
+		cache.setShader(new ShaderProgram("", ""));
+	}
+
+	@After
+	public void tearDown () {
+		cache.dispose();
+	}
+
+	private static String drawElements (int indexCount, int firstIndex) {
+		return call("glDrawElements", GL20.GL_TRIANGLES, indexCount, GL20.GL_UNSIGNED_SHORT, firstIndex * 2);
+	}
+
+	@Test
+	public void oneDrawCallPerRunOfSharedContext () {
+		cache.beginCache();
+		for (TestTexture quadTexture : new TestTexture[] {texture, texture, otherTexture, otherTexture, otherTexture, texture})
+			cache.add().texture(quadTexture);
+		int cacheID = cache.endCache();
+		assertEquals(3, cache.getRangeCount(cacheID));
+
+		gl.clear();
+		cache.begin();
+		cache.draw(cacheID);
+		cache.end();
+		assertEquals(3, cache.renderCalls);
+		gl.assertCallsStartingWith("glDrawElements", drawElements(12, 0), drawElements(18, 12), drawElements(6, 30));
+	}
+
+	@Test
+	public void blendingChangeStartsARange () {
+		cache.beginCache();
+		cache.add().texture(texture);
+		cache.disableBlending();
+		cache.add().texture(texture);
+		cache.add().texture(texture);
+		int cacheID = cache.endCache();
+
+		gl.clear();
+		cache.begin();
+		cache.draw(cacheID);
+		cache.end();
+		assertEquals(2, cache.renderCalls);
+		gl.assertCallsStartingWith("glDrawElements", drawElements(6, 0), drawElements(12, 6));
+	}
+}
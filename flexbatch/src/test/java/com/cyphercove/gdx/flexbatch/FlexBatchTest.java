@@ -0,0 +1,117 @@
+package com.cyphercove.gdx.flexbatch;
+
+import static com.cyphercove.gdx.flexbatch.utils.RecordingGL20.BUFFER;
+import static com.cyphercove.gdx.flexbatch.utils.RecordingGL20.call;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.batchable.Quad2D;
+import com.cyphercove.gdx.flexbatch.utils.RecordingGL20;
+import com.cyphercove.gdx.flexbatch.utils.RecordingGL20.TestTexture;
+
+public class FlexBatchTest {
+
+	private RecordingGL20 gl;
+	private final TestTexture texture = new TestTexture(10);
+	private final TestTexture otherTexture = new TestTexture(11);
+
+	@BeforeClass
+	public static void installApplication () {
+		RecordingGL20.installApplication();
+	}
+
+	@Before
+	public void setUp () {
+		gl = RecordingGL20.install(); // without GL30 or an extension for 32-bit indices
+	}
+
+	private static FlexBatch<Quad2D> newQuadBatch (int maxVertices) {
+		FlexBatch<Quad2D> batch = new FlexBatch<Quad2D>(Quad2D.class, maxVertices, 0);
+		batch.setShader(new ShaderProgram("", ""));
+		return batch;
+	}
+
+	@Test
+	public void shortIndicesForRoundedSize () {
+		// 65537 vertices hold 16384 whole quads, which 16-bit indices can address.
+		FlexBatch<Quad2D> batch = newQuadBatch(65537);
+		batch.begin();
+		batch.draw().texture(texture);
+		batch.end();
+		gl.assertCallsStartingWith("glDrawElements",
+			call("glDrawElements", GL20.GL_TRIANGLES, 6, GL20.GL_UNSIGNED_SHORT, BUFFER));
+		batch.dispose();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void intIndicesRequireSupport () {
+		newQuadBatch(65540);
+	}
+
+	@Test
+	public void deferredGroupsInterleavedContexts () {
+		FlexBatch<Quad2D> batch = newQuadBatch(4000);
+		batch.setDeferred(true);
+		batch.begin();
+		for (int i = 0; i < 4; i++)
+			batch.draw().texture(i % 2 == 0 ? texture : otherTexture);
+		batch.end();
+		assertEquals(4, batch.unsortedRenderCalls);
+		assertEquals(2, batch.renderCalls);
+
+		Array<String> bindsAndDraws = new Array<String>();
+		for (String call : gl.takeCalls())
+			if (call.startsWith("glBindTexture") || call.startsWith("glDrawElements")) bindsAndDraws.add(call);
+		assertEquals(call("glBindTexture", GL20.GL_TEXTURE_2D, 10), bindsAndDraws.get(0));
+		assertEquals(call("glDrawElements", GL20.GL_TRIANGLES, 12, GL20.GL_UNSIGNED_SHORT, BUFFER), bindsAndDraws.get(1));
+		assertEquals(call("glBindTexture", GL20.GL_TEXTURE_2D, 11), bindsAndDraws.get(2));
+		assertEquals(call("glDrawElements", GL20.GL_TRIANGLES, 12, GL20.GL_UNSIGNED_SHORT, BUFFER), bindsAndDraws.get(3));
+		assertEquals(4, bindsAndDraws.size);
+		batch.dispose();
+	}
+
+	@Test
+	public void deferredLayersAreNotReordered () {
+		FlexBatch<Quad2D> batch = newQuadBatch(4000);
+		batch.setDeferred(true);
+		batch.begin();
+		batch.setDrawLayer(1);
+		batch.draw().texture(texture);
+		batch.setDrawLayer(0);
+		batch.draw().texture(otherTexture);
+		batch.setDrawLayer(1);
+		batch.draw().texture(texture);
+		batch.end();
+		assertEquals(2, batch.renderCalls);
+		gl.assertCallsStartingWith("glBindTexture", call("glBindTexture", GL20.GL_TEXTURE_2D, 11),
+			call("glBindTexture", GL20.GL_TEXTURE_2D, 10));
+		batch.dispose();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void drawLayerOverflowIsRejected () {
+		newQuadBatch(4000).setDrawLayer(1 << 23);
+	}
+
+	@Test
+	public void deferredKeyFieldsDoNotOverlap () {
+		long key = FlexBatch.deferredKey(-(1 << 23), (1 << 16) - 1, (1 << 24) - 1);
+		assertEquals(-(1 << 23), (int)(key >> 40));
+		assertEquals((1 << 16) - 1, (int)(key >>> 24) & 0xffff);
+		assertEquals((1 << 24) - 1, (int)key & 0xffffff);
+		// A lower layer sorts first regardless of the state ID and command index.
+		assertTrue(key < FlexBatch.deferredKey(-(1 << 23) + 1, 0, 0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void deferredStateIdOverflowIsRejected () {
+		FlexBatch.deferredKey(0, 1 << 16, 0);
+	}
+}
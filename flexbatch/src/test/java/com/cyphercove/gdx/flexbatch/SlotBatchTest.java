@@ -0,0 +1,83 @@
+package com.cyphercove.gdx.flexbatch;
+
+import static com.cyphercove.gdx.flexbatch.utils.RecordingGL20.BUFFER;
+import static com.cyphercove.gdx.flexbatch.utils.RecordingGL20.call;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.cyphercove.gdx.flexbatch.batchable.Quad2D;
+import com.cyphercove.gdx.flexbatch.utils.RecordingGL20;
+import com.cyphercove.gdx.flexbatch.utils.RecordingGL20.TestTexture;
+
+public class SlotBatchTest {
+
+	/** Four vertices of two position, one packed color, and two texture coordinate floats. */
+	private static final int SLOT_BYTES = 80;
+
+	private RecordingGL20 gl;
+	private SlotBatch<Quad2D> slotBatch;
+	private final Quad2D[] quads = new Quad2D[4];
+
+	@BeforeClass
+	public static void installApplication () {
+		RecordingGL20.installApplication();
+	}
+
+	@Before
+	public void setUp () {
+		gl = RecordingGL20.install();
+		slotBatch = new SlotBatch<Quad2D>(Quad2D.class, 8);
+		slotBatch.setShader(new ShaderProgram("", ""));
+		TestTexture texture = new TestTexture(10);
+		for (int i = 0; i < quads.length; i++) {
+			quads[i] = new Quad2D().position(i * 10, 0);
+			quads[i].texture(texture);
+			slotBatch.register(quads[i]);
+		}
+		slotBatch.draw();
+		gl.clear();
+	}
+
+	@After
+	public void tearDown () {
+		slotBatch.dispose();
+	}
+
+	private static String bufferSubData (int slot, int slotCount) {
+		return call("glBufferSubData", GL20.GL_ARRAY_BUFFER, slot * SLOT_BYTES, slotCount * SLOT_BYTES, BUFFER);
+	}
+
+	@Test
+	public void adjacentDirtySlotsMerge () {
+		slotBatch.markDirty(quads[2].position(0, 5));
+		slotBatch.markDirty(quads[1].position(0, 5));
+		slotBatch.draw();
+		gl.assertCallsStartingWith("glBufferSubData", bufferSubData(1, 2));
+		assertEquals(2 * SLOT_BYTES, slotBatch.uploadedBytes);
+		assertEquals(1, slotBatch.uploadCalls);
+	}
+
+	@Test
+	public void separateDirtySlotsUploadSeparately () {
+		slotBatch.markDirty(quads[3].position(0, 5));
+		slotBatch.markDirty(quads[0].position(0, 5));
+		slotBatch.draw();
+		gl.assertCallsStartingWith("glBufferSubData", bufferSubData(0, 1), bufferSubData(3, 1));
+		assertEquals(2 * SLOT_BYTES, slotBatch.uploadedBytes);
+		assertEquals(2, slotBatch.uploadCalls);
+	}
+
+	@Test
+	public void cleanSlotsAreNotUploaded () {
+		slotBatch.draw();
+		gl.assertCallsStartingWith("glBuffer");
+		assertEquals(0, slotBatch.uploadedBytes);
+		assertEquals(0, slotBatch.uploadCalls);
+	}
+}
@@ -0,0 +1,162 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.cyphercove.gdx.flexbatch.Batchable;
+
+public class BatchableSorterTest {
+
+	/** A blended Batchable with a fixed distance, which may be any float. */
+	public static class DistanceBatchable extends Batchable implements SortableBatchable<DistanceBatchable> {
+		final float distance;
+		final int id;
+
+		DistanceBatchable (float distance, int id) {
+			this.distance = distance;
+			this.id = id;
+		}
+
+		public boolean isOpaque () {
+			return false;
+		}
+
+		public float calculateDistanceSquared (Vector3 camPosition) {
+			return distance;
+		}
+
+		public boolean hasEquivalentTextures (DistanceBatchable other) {
+			return true;
+		}
+
+		protected boolean prepareContext (RenderContextAccumulator renderContext, int remainingVertices, int remainingTriangles) {
+			return false;
+		}
+
+		protected void addVertexAttributes (Array<VertexAttribute> attributes) {
+		}
+
+		protected int getNumberOfTextures () {
+			return 0;
+		}
+
+		public void refresh () {
+		}
+
+		public void reset () {
+		}
+
+		protected int apply (float[] vertices, int startingIndex, AttributeOffsets offsets, int vertexSize) {
+			return 0;
+		}
+
+		protected int apply (short[] triangles, int startingIndex, short firstVertex) {
+			return 0;
+		}
+
+		public String toString () {
+			return distance + "#" + id;
+		}
+	}
+
+	private static final float[] SPECIAL_DISTANCES = {0f, -0f, 1f, -1f, 0.5f, -0.5f, Float.NaN, Float.intBitsToFloat(0xffc00001),
+		Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.MIN_VALUE, -Float.MIN_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE,
+		1e-30f, -1e-30f, 1e30f, 256f, 65536f};
+
+	/** Adds the distances in order and checks that the sorter's order is a stable sort by {@link Float#compare(float, float)},
+	 * farthest first. */
+	private static void assertSortedStably (float[] distances) {
+		BatchableSorter<DistanceBatchable> sorter = new BatchableSorter<DistanceBatchable>(new PerspectiveCamera());
+		List<DistanceBatchable> expected = new ArrayList<DistanceBatchable>();
+		for (int i = 0; i < distances.length; i++) {
+			DistanceBatchable batchable = new DistanceBatchable(distances[i], i);
+			sorter.add(batchable);
+			expected.add(batchable);
+		}
+		Collections.sort(expected, new Comparator<DistanceBatchable>() { // stable merge sort
+			public int compare (DistanceBatchable o1, DistanceBatchable o2) {
+				return Float.compare(o2.distance, o1.distance);
+			}
+		});
+
+		Array<DistanceBatchable> sorted = sorter.getSortedBlendedBatchables();
+		assertEquals(expected.size(), sorted.size);
+		for (int i = 0; i < sorted.size; i++)
+			assertSame("Wrong Batchable at index " + i, expected.get(i), sorted.get(i));
+	}
+
+	private static float[] randomDistances (int count, long seed) {
+		Random random = new Random(seed);
+		float[] distances = new float[count];
+		for (int i = 0; i < count; i++) {
+			switch (random.nextInt(4)) {
+			case 0: // many exact ties
+				distances[i] = random.nextInt(8) - 4;
+				break;
+			case 1:
+				distances[i] = SPECIAL_DISTANCES[random.nextInt(SPECIAL_DISTANCES.length)];
+				break;
+			case 2:
+				distances[i] = (random.nextFloat() - 0.5f) * 2000f;
+				break;
+			default:
+				distances[i] = Float.intBitsToFloat(random.nextInt()); // includes NaNs and denormals of both signs
+				break;
+			}
+		}
+		return distances;
+	}
+
+	@Test
+	public void specialValuesInsertionSort () {
+		assertSortedStably(SPECIAL_DISTANCES);
+	}
+
+	@Test
+	public void specialValuesRadixSort () {
+		float[] distances = new float[SPECIAL_DISTANCES.length * 10];
+		for (int i = 0; i < distances.length; i++)
+			distances[i] = SPECIAL_DISTANCES[i % SPECIAL_DISTANCES.length];
+		assertSortedStably(distances);
+	}
+
+	@Test
+	public void equalDistancesKeepInsertionOrder () {
+		assertSortedStably(new float[10]);
+		assertSortedStably(new float[1000]);
+		float[] negativeZeros = new float[1000];
+		for (int i = 0; i < negativeZeros.length; i++)
+			negativeZeros[i] = i % 2 == 0 ? -0f : 0f;
+		assertSortedStably(negativeZeros);
+	}
+
+	@Test
+	public void randomDistances () {
+		for (int count : new int[] {0, 1, 2, 63, 64, 65, 1000, 20000})
+			assertSortedStably(randomDistances(count, count));
+	}
+
+	@Test
+	public void resortsAfterMoreAreAdded () {
+		BatchableSorter<DistanceBatchable> sorter = new BatchableSorter<DistanceBatchable>(new PerspectiveCamera());
+		DistanceBatchable near = new DistanceBatchable(1f, 0), far = new DistanceBatchable(2f, 1);
+		sorter.add(near);
+		assertSame(near, sorter.getSortedBlendedBatchables().first());
+		sorter.add(far);
+		assertSame(far, sorter.getSortedBlendedBatchables().first());
+		sorter.clear();
+		assertEquals(0, sorter.getSortedBlendedBatchables().size);
+	}
+}
@@ -0,0 +1,77 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import static com.cyphercove.gdx.flexbatch.utils.RecordingGL20.call;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.cyphercove.gdx.flexbatch.utils.RecordingGL20.TestTexture;
+
+public class GLStateTrackerTest {
+
+	private RecordingGL20 gl;
+	private GLStateTracker tracker;
+	private RenderContextAccumulator first, second;
+	private final TestTexture texture = new TestTexture(10);
+
+	@Before
+	public void setUp () {
+		gl = RecordingGL20.install();
+		tracker = new GLStateTracker();
+		first = new RenderContextAccumulator(tracker);
+		second = new RenderContextAccumulator(tracker);
+	}
+
+	private void drawBlended (RenderContextAccumulator accumulator) {
+		accumulator.begin();
+		accumulator.setBlending(true);
+		accumulator.setBlendFunction(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+		accumulator.setTextureUnit(texture, 0);
+		accumulator.executeChanges();
+		accumulator.end();
+	}
+
+	@Test
+	public void sharedStateIsNotReset () {
+		drawBlended(first);
+		gl.assertCalls(call("glDepthMask", true), call("glDisable", GL20.GL_DEPTH_TEST), call("glDisable", GL20.GL_CULL_FACE),
+			call("glDisable", GL20.GL_BLEND), call("glEnable", GL20.GL_BLEND),
+			call("glBlendFunc", GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA), call("glActiveTexture", GL20.GL_TEXTURE0),
+			call("glBindTexture", GL20.GL_TEXTURE_2D, 10));
+		assertEquals(7, tracker.glCalls); // a texture binding counts as one call
+		assertEquals(2, tracker.savedGlCalls); // disabling blending and activating unit 0 at end()
+
+		drawBlended(second);
+		gl.assertCalls();
+		assertEquals(7, tracker.glCalls);
+		assertEquals(2 + 4 + 2, tracker.savedGlCalls);
+
+		second.begin();
+		second.setBlending(false);
+		second.executeChanges();
+		second.end();
+		gl.assertCalls(call("glDisable", GL20.GL_BLEND));
+		assertEquals(8, tracker.glCalls);
+	}
+
+	@Test
+	public void restoreDefaultsAndInvalidate () {
+		drawBlended(first);
+		gl.clear();
+		tracker.restoreDefaults();
+		gl.assertCalls(call("glDisable", GL20.GL_BLEND), call("glActiveTexture", GL20.GL_TEXTURE0));
+
+		// The state is unknown again, so the next batch resets it and binds its texture again.
+		drawBlended(second);
+		gl.assertCalls(call("glDepthMask", true), call("glDisable", GL20.GL_DEPTH_TEST), call("glDisable", GL20.GL_CULL_FACE),
+			call("glDisable", GL20.GL_BLEND), call("glEnable", GL20.GL_BLEND),
+			call("glBlendFunc", GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA), call("glActiveTexture", GL20.GL_TEXTURE0),
+			call("glBindTexture", GL20.GL_TEXTURE_2D, 10));
+
+		tracker.invalidate();
+		tracker.restoreDefaults();
+		gl.assertCalls();
+	}
+}
@@ -0,0 +1,192 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Graphics;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.GL30;
+import com.badlogic.gdx.graphics.GLTexture;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.badlogic.gdx.utils.ObjectIntMap;
+
+/** Records the calls made to a GL20 instead of drawing, so tests can check the sequence of GL calls. Each call is recorded as
+ * a string in the form returned by {@link #call(String, Object...)}. It can also stand in for a GL30 whose backend provides
+ * glMapBufferRange.
+ * <p>
+ * Calls that return a value return zero or null, except that glGenBuffer and glGenTexture return increasing handles starting
+ * from 1, glGetUniformLocation returns a distinct location for each uniform name, and glMapBufferRange returns a new buffer of
+ * the mapped size.
+ *
+ * @author cypherdare */
+public class RecordingGL20 implements InvocationHandler {
+
+	/** Stands in for any Buffer argument in a recorded call. */
+	public static final String BUFFER = "buffer";
+	/** Stands in for any array argument in a recorded call. */
+	public static final String ARRAY = "array";
+
+	public final GL20 gl;
+	/** The GL30 view of {@link #gl}, or null if this only records a GL20. */
+	public final GL30 gl30;
+	private final Array<String> calls = new Array<String>();
+	private final ObjectIntMap<String> uniformLocations = new ObjectIntMap<String>();
+	private int nextHandle = 1;
+
+	/** A GL30 with the glMapBufferRange method that LibGDX backends implement without declaring it in GL30. */
+	public interface MappingGL30 extends GL30 {
+		Buffer glMapBufferRange (int target, int offset, int length, int access);
+	}
+
+	/** @param gl30 Whether to record a GL30 instead of a GL20. */
+	public RecordingGL20 (boolean gl30) {
+		if (gl30) {
+			this.gl30 = (GL30)Proxy.newProxyInstance(GL30.class.getClassLoader(), new Class<?>[] {MappingGL30.class}, this);
+			gl = this.gl30;
+		} else {
+			this.gl30 = null;
+			gl = (GL20)Proxy.newProxyInstance(GL20.class.getClassLoader(), new Class<?>[] {GL20.class}, this);
+		}
+	}
+
+	/** Creates a RecordingGL20 and sets it as {@link Gdx#gl} and {@link Gdx#gl20}. {@link Gdx#gl30} is set to null. */
+	public static RecordingGL20 install () {
+		return install(false);
+	}
+
+	/** Creates a RecordingGL20 and sets it as {@link Gdx#gl}, {@link Gdx#gl20}, and, if gl30 is true, {@link Gdx#gl30}.
+	 * @param gl30 Whether to record a GL30 instead of a GL20. */
+	public static RecordingGL20 install (boolean gl30) {
+		RecordingGL20 recorder = new RecordingGL20(gl30);
+		Gdx.gl = recorder.gl;
+		Gdx.gl20 = recorder.gl;
+		Gdx.gl30 = recorder.gl30;
+		return recorder;
+	}
+
+	/** Loads the natives and sets an Application and a Graphics whose methods do nothing as {@link Gdx#app} and
+	 * {@link Gdx#graphics}, so batches, Meshes and ShaderPrograms can be created. The Graphics supports no extensions. */
+	public static void installApplication () {
+		GdxNativesLoader.load();
+		InvocationHandler doNothing = new InvocationHandler() {
+			public Object invoke (Object proxy, Method method, Object[] args) {
+				if (method.getDeclaringClass() == Object.class) { // Used as a map key by managed resources
+					if (method.getName().equals("equals")) return proxy == args[0];
+					if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+					return "TestApplication";
+				}
+				return zero(method.getReturnType());
+			}
+		};
+		Gdx.app = (Application)Proxy.newProxyInstance(Application.class.getClassLoader(), new Class<?>[] {Application.class},
+			doNothing);
+		Gdx.graphics = (Graphics)Proxy.newProxyInstance(Graphics.class.getClassLoader(), new Class<?>[] {Graphics.class},
+			doNothing);
+	}
+
+	private static Object zero (Class<?> type) {
+		if (type == int.class) return 0;
+		if (type == long.class) return 0L;
+		if (type == boolean.class) return false;
+		if (type == float.class) return 0f;
+		if (type == double.class) return 0.0;
+		return null;
+	}
+
+	public Object invoke (Object proxy, Method method, Object[] args) {
+		final String name = method.getName();
+		if (method.getDeclaringClass() == Object.class) {
+			if (name.equals("equals")) return proxy == args[0];
+			if (name.equals("hashCode")) return System.identityHashCode(proxy);
+			return "RecordingGL20";
+		}
+		calls.add(call(name, args == null ? new Object[0] : args));
+		if (name.equals("glGenBuffer") || name.equals("glGenTexture")) return nextHandle++;
+		if (name.equals("glGetUniformLocation")) return getUniformLocation((String)args[1]);
+		if (name.equals("glMapBufferRange")) return ByteBuffer.allocate((Integer)args[2]);
+		return zero(method.getReturnType());
+	}
+
+	/** @return A description of a GL call, as it is recorded: the method name followed by the comma-separated arguments in
+	 *         parentheses. Buffers are described as {@link #BUFFER} and arrays as {@link #ARRAY}. */
+	public static String call (String name, Object... args) {
+		StringBuilder builder = new StringBuilder(name).append('(');
+		for (int i = 0; i < args.length; i++) {
+			if (i > 0) builder.append(", ");
+			final Object arg = args[i];
+			if (arg instanceof Buffer)
+				builder.append(BUFFER);
+			else if (arg != null && arg.getClass().isArray())
+				builder.append(ARRAY);
+			else
+				builder.append(arg);
+		}
+		return builder.append(')').toString();
+	}
+
+	/** @return The calls recorded since the last call to this method or to {@link #clear()}, which are then cleared. */
+	public Array<String> takeCalls () {
+		Array<String> taken = new Array<String>(calls);
+		calls.clear();
+		return taken;
+	}
+
+	public void clear () {
+		calls.clear();
+	}
+
+	/** Asserts that the calls recorded since they were last taken are exactly the expected ones, and clears them. */
+	public void assertCalls (String... expected) {
+		assertEquals(Arrays.asList(expected), Arrays.asList(takeCalls().toArray(String.class)));
+	}
+
+	/** Asserts that the calls whose names start with the given prefix, among those recorded since the calls were last taken,
+	 * are exactly the expected ones, and clears all recorded calls. */
+	public void assertCallsStartingWith (String prefix, String... expected) {
+		Array<String> matching = new Array<String>(String.class);
+		for (String call : takeCalls())
+			if (call.startsWith(prefix)) matching.add(call);
+		assertEquals(Arrays.asList(expected), Arrays.asList(matching.toArray()));
+	}
+
+	/** @return The location returned for the named uniform, which is assigned on first use. */
+	public int getUniformLocation (String uniform) {
+		if (!uniformLocations.containsKey(uniform)) uniformLocations.put(uniform, uniformLocations.size);
+		return uniformLocations.get(uniform, -1);
+	}
+
+	/** A texture that only has a handle, for checking texture bindings without creating real textures. */
+	public static class TestTexture extends GLTexture {
+		public TestTexture (int handle) {
+			super(GL20.GL_TEXTURE_2D, handle);
+		}
+
+		public int getWidth () {
+			return 1;
+		}
+
+		public int getHeight () {
+			return 1;
+		}
+
+		public int getDepth () {
+			return 0;
+		}
+
+		public boolean isManaged () {
+			return false;
+		}
+
+		protected void reload () {
+		}
+	}
+}
@@ -0,0 +1,301 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import static com.cyphercove.gdx.flexbatch.utils.RecordingGL20.ARRAY;
+import static com.cyphercove.gdx.flexbatch.utils.RecordingGL20.call;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
+import com.cyphercove.gdx.flexbatch.utils.RecordingGL20.TestTexture;
+import com.cyphercove.gdx.flexbatch.utils.RenderContextAccumulator.Snapshot;
+
+public class RenderContextAccumulatorTest {
+
+	private RecordingGL20 gl;
+	private RenderContextAccumulator accumulator;
+	private final TestTexture texture0 = new TestTexture(10), texture1 = new TestTexture(11);
+
+	@Before
+	public void setUp () {
+		gl = RecordingGL20.install();
+		accumulator = new RenderContextAccumulator();
+	}
+
+	private static String activeTexture (int unit) {
+		return call("glActiveTexture", GL20.GL_TEXTURE0 + unit);
+	}
+
+	private static String bindTexture (TestTexture texture) {
+		return call("glBindTexture", GL20.GL_TEXTURE_2D, texture.getTextureObjectHandle());
+	}
+
+	/** @return A shader whose uniform locations come from the recording GL. It does not compile. */
+	private ShaderProgram newShader () {
+		ShaderProgram shader = new ShaderProgram("", "");
+		gl.clear();
+		return shader;
+	}
+
+	@Test
+	public void beginResetsStates () {
+		accumulator.begin();
+		gl.assertCalls(call("glDepthMask", true), call("glDisable", GL20.GL_DEPTH_TEST), call("glDisable", GL20.GL_CULL_FACE),
+			call("glDisable", GL20.GL_BLEND));
+	}
+
+	@Test
+	public void executeChangesSequence () {
+		accumulator.begin();
+		gl.clear();
+		accumulator.setDepthMasking(false);
+		accumulator.setDepthTesting(true);
+		accumulator.setDepthFunction(GL20.GL_LEQUAL, 0.25f, 0.75f);
+		accumulator.setBlending(true);
+		accumulator.setBlendFunction(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA, GL20.GL_ONE, GL20.GL_ONE_MINUS_SRC_ALPHA);
+		accumulator.setBlendEquation(GL20.GL_FUNC_REVERSE_SUBTRACT);
+		accumulator.executeChanges();
+		gl.assertCalls(call("glDepthMask", false), call("glEnable", GL20.GL_DEPTH_TEST), call("glDepthFunc", GL20.GL_LEQUAL),
+			call("glDepthRangef", 0.25f, 0.75f), call("glEnable", GL20.GL_BLEND),
+			call("glBlendFuncSeparate", GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA, GL20.GL_ONE, GL20.GL_ONE_MINUS_SRC_ALPHA),
+			call("glBlendEquation", GL20.GL_FUNC_REVERSE_SUBTRACT));
+
+		accumulator.end();
+		gl.assertCalls(call("glDepthMask", true), call("glDisable", GL20.GL_DEPTH_TEST), call("glDisable", GL20.GL_BLEND),
+			call("glActiveTexture", GL20.GL_TEXTURE0));
+	}
+
+	@Test
+	public void redundantChangesAreElided () {
+		accumulator.begin();
+		accumulator.setDepthTesting(true);
+		accumulator.setDepthFunction(GL20.GL_LESS);
+		accumulator.executeChanges();
+		gl.clear();
+
+		assertFalse(accumulator.setDepthTesting(true));
+		assertFalse(accumulator.setDepthFunction(GL20.GL_LESS));
+		assertFalse(accumulator.hasPendingChanges());
+		accumulator.executeChanges();
+		gl.assertCalls();
+
+		// Changing a value and changing it back before executing issues nothing.
+		assertTrue(accumulator.setDepthMasking(false));
+		assertTrue(accumulator.setDepthMasking(true));
+		assertFalse(accumulator.hasPendingChanges());
+		accumulator.executeChanges();
+		gl.assertCalls();
+
+		// Parameters of disabled states are not applied until the state is enabled.
+		assertFalse(accumulator.setBlendFunction(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA));
+		assertFalse(accumulator.hasPendingChanges());
+		accumulator.executeChanges();
+		gl.assertCalls();
+
+		assertTrue(accumulator.setBlending(true));
+		accumulator.executeChanges();
+		gl.assertCalls(call("glEnable", GL20.GL_BLEND), call("glBlendFunc", GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA));
+	}
+
+	@Test
+	public void textureUnitsAreBoundInUnitOrder () {
+		accumulator.begin();
+		gl.clear();
+		accumulator.setTextureUnit(texture1, 2);
+		accumulator.setTextureUnit(texture0, 0);
+		accumulator.executeChanges();
+		gl.assertCalls(activeTexture(0), bindTexture(texture0), activeTexture(2), bindTexture(texture1));
+
+		accumulator.end();
+		gl.assertCalls(activeTexture(0));
+	}
+
+	@Test
+	public void redundantTextureBindingsAreElided () {
+		accumulator.begin();
+		accumulator.setTextureUnit(texture0, 0);
+		accumulator.setTextureUnit(texture1, 1);
+		accumulator.executeChanges();
+		gl.clear();
+
+		assertFalse(accumulator.setTextureUnit(texture0, 0));
+		assertFalse(accumulator.hasPendingChanges());
+
+		// Changing a unit and changing it back before executing issues nothing.
+		assertTrue(accumulator.setTextureUnit(texture1, 0));
+		assertTrue(accumulator.setTextureUnit(texture0, 0));
+		assertFalse(accumulator.hasPendingChanges());
+		accumulator.executeChanges();
+		gl.assertCalls();
+
+		// Only the changed unit is bound.
+		accumulator.setTextureUnit(texture0, 1);
+		accumulator.executeChanges();
+		gl.assertCalls(activeTexture(1), bindTexture(texture0));
+	}
+
+	@Test
+	public void faceCulling () {
+		accumulator.begin();
+		gl.clear();
+
+		// The cull face of a disabled state is not applied until culling is enabled.
+		assertFalse(accumulator.setCullFace(GL20.GL_FRONT));
+		assertFalse(accumulator.hasPendingChanges());
+
+		accumulator.setRenderState(new RenderStateCache().obtain(new RenderState.Builder().cull(GL20.GL_FRONT)));
+		accumulator.executeChanges();
+		gl.assertCalls(call("glEnable", GL20.GL_DEPTH_TEST), call("glDepthFunc", GL20.GL_LESS), call("glDepthRangef", 0f, 1f),
+			call("glEnable", GL20.GL_CULL_FACE), call("glCullFace", GL20.GL_FRONT));
+		accumulator.setFaceCulling(false);
+		accumulator.executeChanges();
+		gl.assertCalls(call("glDisable", GL20.GL_CULL_FACE));
+	}
+
+	@Test
+	public void clearRenderStateResetsOnlyStatesOfARenderState () {
+		accumulator.begin();
+		accumulator.setDepthTesting(true);
+		accumulator.setDepthMasking(false);
+		accumulator.executeChanges();
+		gl.clear();
+
+		// States that were not set by a RenderState are left alone.
+		assertFalse(accumulator.clearRenderState());
+		assertFalse(accumulator.hasPendingChanges());
+
+		accumulator.setRenderState(new RenderStateCache().obtain(new RenderState.Builder().cull(GL20.GL_FRONT)));
+		accumulator.executeChanges();
+		gl.clear();
+		assertTrue(accumulator.clearRenderState());
+		accumulator.executeChanges();
+		gl.assertCalls(call("glDisable", GL20.GL_CULL_FACE));
+
+		// States set after the reset are left alone again.
+		accumulator.setDepthMasking(false);
+		assertFalse(accumulator.clearRenderState());
+		accumulator.executeChanges();
+		gl.assertCalls(call("glDepthMask", false));
+
+		// The flag is saved with a Snapshot.
+		accumulator.setRenderState(new RenderStateCache().obtain(new RenderState.Builder()));
+		Snapshot snapshot = new Snapshot();
+		accumulator.saveState(snapshot);
+		accumulator.clearRenderState();
+		accumulator.restoreState(snapshot);
+		assertTrue(accumulator.matchesState(snapshot));
+		accumulator.setDepthMasking(false);
+		assertTrue(accumulator.clearRenderState());
+	}
+
+	@Test
+	public void snapshotSaveRestoreAndMatch () {
+		accumulator.setBlending(true);
+		accumulator.setBlendFunction(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+		accumulator.setTextureUnit(texture0, 0);
+		Snapshot snapshot = new Snapshot();
+		accumulator.saveState(snapshot);
+		assertTrue(accumulator.matchesState(snapshot));
+
+		accumulator.setBlending(false);
+		assertFalse(accumulator.matchesState(snapshot));
+		accumulator.setBlending(true);
+		assertTrue(accumulator.matchesState(snapshot));
+		accumulator.setTextureUnit(texture1, 0);
+		assertFalse(accumulator.matchesState(snapshot));
+		accumulator.setTextureUnit(texture0, 0);
+		accumulator.setTextureUnit(texture1, 1);
+		assertFalse(accumulator.matchesState(snapshot));
+
+		// Changes after saving do not affect the snapshot.
+		accumulator.setBlending(false);
+		accumulator.restoreState(snapshot);
+		assertTrue(accumulator.matchesState(snapshot));
+		assertTrue(accumulator.isBlendingEnabled());
+
+		accumulator.begin();
+		gl.clear();
+		accumulator.executeChanges();
+		gl.assertCalls(call("glEnable", GL20.GL_BLEND), call("glBlendFunc", GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA),
+			activeTexture(0), bindTexture(texture0));
+
+		snapshot.clearTextureUnits();
+		assertFalse(accumulator.matchesState(snapshot));
+	}
+
+	@Test
+	public void snapshotIncludesUniforms () {
+		accumulator.setUniformf("u_tint", 0.5f);
+		Snapshot snapshot = new Snapshot();
+		accumulator.saveState(snapshot);
+		accumulator.setUniformf("u_tint", 1f);
+		assertFalse(accumulator.matchesState(snapshot));
+		accumulator.setUniformf("u_tint", 0.5f);
+		assertTrue(accumulator.matchesState(snapshot));
+
+		accumulator.setUniformf("u_tint", 1f);
+		accumulator.restoreState(snapshot);
+		accumulator.setShader(newShader());
+		accumulator.begin();
+		accumulator.executeChanges();
+		gl.assertCallsStartingWith("glUniform", call("glUniform1f", gl.getUniformLocation("u_tint"), 0.5f));
+	}
+
+	@Test
+	public void uniformSlotsAreSharedAndDeduplicated () {
+		ShaderProgram shader = newShader();
+		accumulator.setShader(shader);
+		accumulator.begin();
+		gl.clear();
+		final int a = gl.getUniformLocation("u_a"), b = gl.getUniformLocation("u_b"), i = gl.getUniformLocation("u_i"),
+			m = gl.getUniformLocation("u_m");
+
+		assertTrue(accumulator.setUniformf("u_a", 1f));
+		assertFalse(accumulator.setUniformf("u_a", 1f));
+		assertTrue(accumulator.setUniformf("u_b", 1f, 2f));
+		assertTrue(accumulator.setUniformi("u_i", 3));
+		Matrix4 matrix = new Matrix4().setToTranslation(1f, 2f, 3f);
+		assertTrue(accumulator.setUniformMatrix("u_m", matrix));
+		assertFalse(accumulator.setUniformMatrix("u_m", matrix));
+		assertTrue(accumulator.hasPendingChanges());
+		accumulator.executeChanges();
+		gl.assertCallsStartingWith("glUniform", call("glUniform1f", a, 1f), call("glUniform2f", b, 1f, 2f),
+			call("glUniform1i", i, 3), call("glUniformMatrix4fv", m, 1, false, ARRAY, 4));
+
+		// Values that were already uploaded are not uploaded again.
+		assertFalse(accumulator.hasPendingChanges());
+		accumulator.executeChanges();
+		gl.assertCalls();
+		accumulator.setUniformf("u_a", 2f);
+		accumulator.setUniformf("u_a", 1f);
+		assertFalse(accumulator.hasPendingChanges());
+		accumulator.executeChanges();
+		gl.assertCalls();
+
+		// Only changed uniforms are uploaded, once per shader location.
+		accumulator.setUniformf("u_b", 1f, 5f);
+		assertTrue(accumulator.hasPendingChanges());
+		accumulator.executeChanges();
+		gl.assertCalls(call("glUniform2f", b, 1f, 5f));
+
+		// Everything is uploaded again after invalidation or a shader change.
+		accumulator.invalidateUniforms();
+		accumulator.executeChanges();
+		gl.assertCallsStartingWith("glUniform", call("glUniform1f", a, 1f), call("glUniform2f", b, 1f, 5f),
+			call("glUniform1i", i, 3), call("glUniformMatrix4fv", m, 1, false, ARRAY, 4));
+		accumulator.setShader(newShader());
+		accumulator.executeChanges();
+		gl.assertCallsStartingWith("glUniform", call("glUniform1f", a, 1f), call("glUniform2f", b, 1f, 5f),
+			call("glUniform1i", i, 3), call("glUniformMatrix4fv", m, 1, false, ARRAY, 4));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void uniformTypeMustNotChange () {
+		accumulator.setUniformf("u_a", 1f);
+		accumulator.setUniformf("u_a", 1f, 2f);
+	}
+}
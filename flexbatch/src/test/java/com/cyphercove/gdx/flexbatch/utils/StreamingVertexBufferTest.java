@@ -0,0 +1,125 @@
+package com.cyphercove.gdx.flexbatch.utils;
+
+import static com.cyphercove.gdx.flexbatch.utils.RecordingGL20.BUFFER;
+import static com.cyphercove.gdx.flexbatch.utils.RecordingGL20.call;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.FloatBuffer;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.GL30;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+
+public class StreamingVertexBufferTest {
+
+	/** Skips binding the vertex attribute, so no shader is needed. */
+	private static final int[] NO_LOCATIONS = {-1};
+	/** Two floats per vertex, four vertices per batch. */
+	private static final int BATCH_SIZE_BYTES = 32;
+	private static final int MAP_WRITE = GL30.GL_MAP_WRITE_BIT;
+	private static final int MAP_UNSYNCHRONIZED_RANGE = MAP_WRITE | GL30.GL_MAP_INVALIDATE_RANGE_BIT
+		| GL30.GL_MAP_UNSYNCHRONIZED_BIT;
+	private static final int MAP_ORPHAN = MAP_WRITE | GL30.GL_MAP_INVALIDATE_BUFFER_BIT;
+
+	@BeforeClass
+	public static void loadNatives () {
+		GdxNativesLoader.load(); // for the staging buffer
+	}
+
+	private static VertexAttributes attributes () {
+		return new VertexAttributes(new VertexAttribute(Usage.Position, 2, ShaderProgram.POSITION_ATTRIBUTE));
+	}
+
+	private static void stage (StreamingVertexBuffer vertexBuffer, int vertexCount) {
+		FloatBuffer buffer = vertexBuffer.getBuffer();
+		buffer.clear();
+		for (int i = 0; i < vertexCount * 2; i++)
+			buffer.put(i);
+		buffer.flip();
+	}
+
+	private static String bindArrayBuffer (int handle) {
+		return call("glBindBuffer", GL20.GL_ARRAY_BUFFER, handle);
+	}
+
+	private static String bufferData (int size) {
+		return call("glBufferData", GL20.GL_ARRAY_BUFFER, size, null, GL20.GL_STREAM_DRAW);
+	}
+
+	private static String bufferSubData (int bytes) {
+		return call("glBufferSubData", GL20.GL_ARRAY_BUFFER, 0, bytes, BUFFER);
+	}
+
+	private static String mapBufferRange (int offset, int bytes, int access) {
+		return call("glMapBufferRange", GL20.GL_ARRAY_BUFFER, offset, bytes, access);
+	}
+
+	@Test
+	public void orphaningUploadsOnlyWhenDirty () {
+		RecordingGL20 gl = RecordingGL20.install();
+		OrphaningVertexBuffer vertexBuffer = new OrphaningVertexBuffer(4, attributes());
+		gl.assertCalls(call("glGenBuffer"), bindArrayBuffer(1), bufferData(BATCH_SIZE_BYTES), bindArrayBuffer(0));
+
+		stage(vertexBuffer, 3);
+		vertexBuffer.bind(null, NO_LOCATIONS);
+		gl.assertCalls(bindArrayBuffer(1), bufferData(BATCH_SIZE_BYTES), bufferSubData(24));
+		vertexBuffer.unbind(null, NO_LOCATIONS);
+		gl.assertCalls(bindArrayBuffer(0));
+
+		vertexBuffer.bind(null, NO_LOCATIONS);
+		gl.assertCalls(bindArrayBuffer(1));
+
+		stage(vertexBuffer, 4);
+		vertexBuffer.bind(null, NO_LOCATIONS);
+		gl.assertCalls(bindArrayBuffer(1), bufferData(BATCH_SIZE_BYTES), bufferSubData(BATCH_SIZE_BYTES));
+	}
+
+	@Test
+	public void roundRobinCyclesBuffers () {
+		RecordingGL20 gl = RecordingGL20.install();
+		RoundRobinVertexBuffer vertexBuffer = new RoundRobinVertexBuffer(4, attributes(), 3);
+		gl.assertCalls(call("glGenBuffer"), bindArrayBuffer(1), bufferData(BATCH_SIZE_BYTES), call("glGenBuffer"),
+			bindArrayBuffer(2), bufferData(BATCH_SIZE_BYTES), call("glGenBuffer"), bindArrayBuffer(3), bufferData(BATCH_SIZE_BYTES),
+			bindArrayBuffer(0));
+
+		for (int handle : new int[] {2, 3, 1, 2}) {
+			stage(vertexBuffer, 2);
+			vertexBuffer.bind(null, NO_LOCATIONS);
+			gl.assertCalls(bindArrayBuffer(handle), bufferSubData(16));
+		}
+		vertexBuffer.bind(null, NO_LOCATIONS);
+		gl.assertCalls(bindArrayBuffer(2));
+	}
+
+	@Test
+	public void mappedRingWrapsAndOrphans () {
+		RecordingGL20 gl = RecordingGL20.install(true);
+		assertTrue(MappedRingVertexBuffer.isSupported());
+		MappedRingVertexBuffer vertexBuffer = new MappedRingVertexBuffer(4, attributes(), 2);
+		gl.assertCallsStartingWith("glBuffer", bufferData(2 * BATCH_SIZE_BYTES));
+
+		int[] sizes = {24, 32, 16, 32};
+		int[] offsets = {0, 24, 0, 16};
+		int[] accesses = {MAP_UNSYNCHRONIZED_RANGE, MAP_UNSYNCHRONIZED_RANGE, MAP_ORPHAN, MAP_UNSYNCHRONIZED_RANGE};
+		for (int i = 0; i < sizes.length; i++) {
+			stage(vertexBuffer, sizes[i] / 8);
+			vertexBuffer.bind(null, NO_LOCATIONS);
+			gl.assertCalls(call("glBindVertexArray", 0), bindArrayBuffer(1), mapBufferRange(offsets[i], sizes[i], accesses[i]),
+				call("glUnmapBuffer", GL20.GL_ARRAY_BUFFER));
+		}
+	}
+
+	@Test
+	public void mappedRingRequiresGL30 () {
+		RecordingGL20.install(false);
+		assertFalse(MappedRingVertexBuffer.isSupported());
+	}
+}